@@ -15,6 +15,7 @@
 
 package org.kie.baaas.dfm.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.quarkus.runtime.annotations.RegisterForReflection;
@@ -31,6 +32,13 @@ public abstract class ResponseList {
     @JsonProperty("total")
     private long total;
 
+    /**
+     * Cursor to pass to continue the listing with the next page, absent on the last page.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("next")
+    private String next;
+
     public long getPage() {
         return page;
     }
@@ -54,4 +62,12 @@ public abstract class ResponseList {
     public void setTotal(long total) {
         this.total = total;
     }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
 }
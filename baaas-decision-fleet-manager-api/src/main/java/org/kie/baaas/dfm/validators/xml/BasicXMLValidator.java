@@ -14,15 +14,14 @@
  */
 package org.kie.baaas.dfm.validators.xml;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.StringReader;
 
 import javax.validation.ConstraintValidator;
 import javax.validation.ConstraintValidatorContext;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.xml.sax.InputSource;
 import org.xml.sax.helpers.DefaultHandler;
 
 public class BasicXMLValidator implements ConstraintValidator<BasicXML, String> {
@@ -46,8 +45,8 @@ public class BasicXMLValidator implements ConstraintValidator<BasicXML, String>
             SAXParser parser = fac.newSAXParser();
             // default handler, no special validation here
             DefaultHandler handler = new DefaultHandler();
-            // Transform the input string into InputStream
-            InputStream is = new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+            // Read the characters of the input string directly, there is no need to encode them to bytes
+            InputSource is = new InputSource(new StringReader(s));
             // try to parse
             parser.parse(is, handler);
         } catch (final Exception e) {
@@ -63,6 +63,13 @@ class BasicXMLValidatorTest {
         Assertions.assertTrue(violations.isEmpty());
     }
 
+    @Test
+    void testValidXMLWithNonAsciiContent() {
+        myDecision.getModel().setDmn("<xml><test>\"caf\u00e9 \u20ac \uD83D\uDE00\"</test></xml>");
+        Set<ConstraintViolation<DecisionBase>> violations = validator.validate(myDecision);
+        Assertions.assertTrue(violations.isEmpty());
+    }
+
     @Test
     void testInvalidXML() {
         myDecision.getModel().setDmn(myInvalidXML);
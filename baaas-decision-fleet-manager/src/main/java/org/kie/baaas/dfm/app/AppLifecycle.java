@@ -22,6 +22,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 
+import org.kie.baaas.dfm.app.dao.DecisionFleetShardCache;
 import org.kie.baaas.dfm.app.dao.DecisionFleetShardDAO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,15 +38,20 @@ public class AppLifecycle {
 
     private final DecisionFleetShardDAO decisionFleetShardDAO;
 
+    private final DecisionFleetShardCache decisionFleetShardCache;
+
     @Inject
-    public AppLifecycle(DecisionFleetShardDAO decisionFleetShardDAO) {
+    public AppLifecycle(DecisionFleetShardDAO decisionFleetShardDAO, DecisionFleetShardCache decisionFleetShardCache) {
         Objects.requireNonNull(decisionFleetShardDAO, "fleetShardDAO cannot be null");
+        Objects.requireNonNull(decisionFleetShardCache, "decisionFleetShardCache cannot be null");
         this.decisionFleetShardDAO = decisionFleetShardDAO;
+        this.decisionFleetShardCache = decisionFleetShardCache;
     }
 
     void onStart(@Observes StartupEvent ev) {
         LOGGER.info("{} is starting and will be ready to process requests.", componentName);
         decisionFleetShardDAO.init();
+        decisionFleetShardCache.invalidate();
     }
 
     void onStop(@Observes ShutdownEvent ev) {
@@ -35,6 +35,11 @@ public class APIConstants {
      */
     public static final int PAGE_MIN = 0;
 
+    /**
+     * The cursor query parameter name, continuing a listing from the page a previous response pointed to as next
+     */
+    public static final String CURSOR = "cursor";
+
     /**
      * The size query parameter name
      */
@@ -55,6 +60,16 @@ public class APIConstants {
      */
     public static final String SIZE_DEFAULT = "100";
 
+    /**
+     * The maximum number of Decisions in a single bulk import
+     */
+    public static final int IMPORT_SIZE_MAX = 1000;
+
+    /**
+     * The media type of streamed responses, one JSON document per line
+     */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private APIConstants() {
     }
 }
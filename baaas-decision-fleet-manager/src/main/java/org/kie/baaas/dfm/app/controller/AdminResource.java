@@ -15,33 +15,45 @@
 
 package org.kie.baaas.dfm.app.controller;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
 
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.eclipse.microprofile.openapi.annotations.enums.SecuritySchemeType;
 import org.eclipse.microprofile.openapi.annotations.security.SecurityRequirement;
 import org.eclipse.microprofile.openapi.annotations.security.SecurityScheme;
 import org.eclipse.microprofile.openapi.annotations.security.SecuritySchemes;
 import org.kie.baaas.dfm.app.controller.modelmappers.DecisionMapper;
+import org.kie.baaas.dfm.app.dao.DecisionFleetShardCache;
+import org.kie.baaas.dfm.app.dao.WebhookDeliveryDAO;
 import org.kie.baaas.dfm.app.manager.DecisionLifecycle;
 import org.kie.baaas.dfm.app.manager.DecisionLifecycleOrchestrator;
-import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.webhook.NotFoundWebhookException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.toList;
 
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
@@ -60,24 +72,36 @@ public class AdminResource {
 
     private final DecisionMapper decisionMapper;
 
+    private final DecisionFleetShardCache decisionFleetShardCache;
+
+    private final ObjectMapper objectMapper;
+
+    private final WebhookDeliveryDAO webhookDeliveryDAO;
+
     @Inject
     public AdminResource(DecisionLifecycleOrchestrator decisionLifecycle,
-            DecisionMapper decisionMapper) {
+            DecisionMapper decisionMapper, DecisionFleetShardCache decisionFleetShardCache, ObjectMapper objectMapper,
+            WebhookDeliveryDAO webhookDeliveryDAO) {
         requireNonNull(decisionLifecycle, "decisionLifecycle cannot be null");
         requireNonNull(decisionMapper, "decisionMapper cannot be null");
+        requireNonNull(decisionFleetShardCache, "decisionFleetShardCache cannot be null");
+        requireNonNull(objectMapper, "objectMapper cannot be null");
+        requireNonNull(webhookDeliveryDAO, "webhookDeliveryDAO cannot be null");
 
         this.decisionLifecycle = decisionLifecycle;
         this.decisionMapper = decisionMapper;
+        this.decisionFleetShardCache = decisionFleetShardCache;
+        this.objectMapper = objectMapper;
+        this.webhookDeliveryDAO = webhookDeliveryDAO;
     }
 
     @GET
     @Path("/decisions")
     @RolesAllowed({ "admin" })
-    public Response getDecisions() {
-        List<Decision> decisions = decisionLifecycle.listDecisions();
-        return Response.ok(decisions.stream()
-                .map(decisionMapper::mapToDecisionResponse)
-                .collect(toList())).build();
+    public Response getDecisions(@QueryParam("customerId") String customerId) {
+        LOGGER.info("Listing current versions of Decisions for customer '{}'...", customerId == null ? "*" : customerId);
+        StreamingOutput decisions = out -> writeDecisions(out, customerId);
+        return Response.ok(decisions).build();
     }
 
     @DELETE
@@ -98,4 +122,49 @@ public class AdminResource {
         DecisionVersion decisionVersion = decisionLifecycle.deleteVersion(id, version);
         return Response.ok(decisionMapper.mapVersionToDecisionResponse(decisionVersion)).build();
     }
+
+    @POST
+    @Path("/fleet-shards/refresh")
+    @RolesAllowed({ "admin" })
+    public Response refreshFleetShards() {
+        LOGGER.info("Refreshing Fleet Shards...");
+        decisionFleetShardCache.invalidate();
+        return Response.noContent().build();
+    }
+
+    @POST
+    @Path("/webhooks/dead-letters/replay")
+    @RolesAllowed({ "admin" })
+    public Response replayWebhookDeadLetters(@QueryParam("customerId") String customerId) {
+        LOGGER.info("Replaying dead-lettered webhook deliveries for customer '{}'...", customerId == null ? "*" : customerId);
+        int replayed = webhookDeliveryDAO.replay(customerId, ZonedDateTime.now(ZoneOffset.UTC));
+        return Response.ok(Collections.singletonMap("replayed", replayed)).build();
+    }
+
+    @POST
+    @Path("/webhooks/dead-letters/{id}/replay")
+    @RolesAllowed({ "admin" })
+    public Response replayWebhookDeadLetter(@PathParam("id") String id) {
+        LOGGER.info("Replaying dead-lettered webhook delivery with id '{}'...", id);
+        if (!webhookDeliveryDAO.replayById(id, ZonedDateTime.now(ZoneOffset.UTC))) {
+            throw new NotFoundWebhookException("No dead-lettered webhook delivery found with id: " + id);
+        }
+        return Response.noContent().build();
+    }
+
+    private void writeDecisions(OutputStream out, String customerId) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartArray();
+            decisionLifecycle.streamDecisions(customerId, decisionVersion -> writeDecision(generator, decisionVersion));
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeDecision(JsonGenerator generator, DecisionVersion decisionVersion) {
+        try {
+            generator.writeObject(decisionMapper.mapVersionToDecisionResponse(decisionVersion));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
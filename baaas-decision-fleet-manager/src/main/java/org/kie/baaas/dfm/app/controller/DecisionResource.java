@@ -15,23 +15,33 @@
 
 package org.kie.baaas.dfm.app.controller;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
@@ -43,21 +53,31 @@ import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.decisions.DecisionResponse;
 import org.kie.baaas.dfm.api.decisions.DecisionResponseList;
 import org.kie.baaas.dfm.app.controller.modelmappers.DecisionMapper;
+import org.kie.baaas.dfm.app.manager.DecisionImport;
+import org.kie.baaas.dfm.app.manager.DecisionImporter;
 import org.kie.baaas.dfm.app.manager.DecisionLifecycle;
 import org.kie.baaas.dfm.app.manager.DecisionLifecycleOrchestrator;
 import org.kie.baaas.dfm.app.manager.validators.WithinDecisionLimits;
+import org.kie.baaas.dfm.app.model.DMNCompression;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.resolvers.CustomerIdResolver;
+import org.kie.baaas.dfm.app.storage.DMNContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.quarkus.security.Authenticated;
 import io.quarkus.security.identity.SecurityIdentity;
 
 import static java.util.Objects.requireNonNull;
+import static org.kie.baaas.dfm.app.controller.APIConstants.APPLICATION_NDJSON;
+import static org.kie.baaas.dfm.app.controller.APIConstants.CURSOR;
+import static org.kie.baaas.dfm.app.controller.APIConstants.IMPORT_SIZE_MAX;
 import static org.kie.baaas.dfm.app.controller.APIConstants.PAGE;
 import static org.kie.baaas.dfm.app.controller.APIConstants.PAGE_DEFAULT;
 import static org.kie.baaas.dfm.app.controller.APIConstants.PAGE_MIN;
@@ -77,12 +97,20 @@ import static org.kie.baaas.dfm.app.controller.APIConstants.SIZE_MIN;
 @SecurityRequirement(name = "bearer")
 public class DecisionResource {
 
+    private static final String RANGE = "Range";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+
     private final Logger LOGGER = LoggerFactory.getLogger(DecisionResource.class);
 
     private final DecisionLifecycle decisionLifecycle;
 
     private final DecisionMapper decisionMapper;
 
+    private final DecisionImporter decisionImporter;
+
+    private final ObjectMapper objectMapper;
+
     @Inject
     CustomerIdResolver customerIdResolver;
 
@@ -91,20 +119,26 @@ public class DecisionResource {
 
     @Inject
     public DecisionResource(DecisionLifecycleOrchestrator decisionLifecycle,
-            DecisionMapper decisionMapper) {
+            DecisionMapper decisionMapper, DecisionImporter decisionImporter, ObjectMapper objectMapper) {
         requireNonNull(decisionLifecycle, "decisionLifecycle cannot be null");
         requireNonNull(decisionMapper, "decisionMapper cannot be null");
+        requireNonNull(decisionImporter, "decisionImporter cannot be null");
+        requireNonNull(objectMapper, "objectMapper cannot be null");
 
         this.decisionLifecycle = decisionLifecycle;
         this.decisionMapper = decisionMapper;
+        this.decisionImporter = decisionImporter;
+        this.objectMapper = objectMapper;
     }
 
     @GET
     @Authenticated
-    public Response listDecisions(@DefaultValue(PAGE_DEFAULT) @Min(PAGE_MIN) @QueryParam(PAGE) int page, @DefaultValue(SIZE_DEFAULT) @Min(SIZE_MIN) @Max(SIZE_MAX) @QueryParam(SIZE) int size) {
+    public Response listDecisions(@DefaultValue(PAGE_DEFAULT) @Min(PAGE_MIN) @QueryParam(PAGE) int page, @DefaultValue(SIZE_DEFAULT) @Min(SIZE_MIN) @Max(SIZE_MAX) @QueryParam(SIZE) int size,
+            @QueryParam(CURSOR) String cursor) {
         String customerId = customerIdResolver.getCustomerId(identity.getPrincipal());
         LOGGER.info("Listing all Decisions for customer with id '{}...'", customerId);
-        ListResult<Decision> decisions = decisionLifecycle.listDecisions(customerId, page, size);
+        ListResult<Decision> decisions = cursor == null ? decisionLifecycle.listDecisions(customerId, page, size)
+                : decisionLifecycle.listDecisions(customerId, PageCursor.decode(cursor), size);
         DecisionResponseList responseList = decisionMapper.mapToDecisionResponseList(decisions);
         return Response.ok(responseList).build();
     }
@@ -119,6 +153,18 @@ public class DecisionResource {
         return Response.status(Response.Status.CREATED).entity(decisionResponse).build();
     }
 
+    @POST
+    @Path("import")
+    @Produces(APPLICATION_NDJSON)
+    @Authenticated
+    public Response importDecisions(@NotEmpty @Size(max = IMPORT_SIZE_MAX) List<DecisionRequest> decisionRequests) {
+        String customerId = customerIdResolver.getCustomerId(identity.getPrincipal());
+        LOGGER.info("Import of '{}' Decisions received for processing for customer id '{}'...", decisionRequests.size(), customerId);
+        // Each DecisionRequest is validated by the import itself so that one invalid request does not reject the others
+        StreamingOutput results = out -> decisionImporter.importDecisions(customerId, decisionRequests, decisionImport -> writeImportResult(out, decisionImport));
+        return Response.ok(results).build();
+    }
+
     @GET
     @Path("{decisionNameOrId}")
     @Authenticated
@@ -154,10 +200,11 @@ public class DecisionResource {
     @Path("{decisionNameOrId}/versions")
     @Authenticated
     public Response listDecisionVersions(@PathParam("decisionNameOrId") String decisionNameOrId, @DefaultValue(PAGE_DEFAULT) @Min(PAGE_MIN) @QueryParam(PAGE) int page,
-            @DefaultValue(SIZE_DEFAULT) @Min(SIZE_MIN) @Max(SIZE_MAX) @QueryParam(SIZE) int size) {
+            @DefaultValue(SIZE_DEFAULT) @Min(SIZE_MIN) @Max(SIZE_MAX) @QueryParam(SIZE) int size, @QueryParam(CURSOR) String cursor) {
         String customerId = customerIdResolver.getCustomerId(identity.getPrincipal());
         LOGGER.info("Listing all versions for Decision with id or name '{}' for customer '{}'...", decisionNameOrId, customerId);
-        ListResult<DecisionVersion> versions = decisionLifecycle.listDecisionVersions(customerId, decisionNameOrId, page, size);
+        ListResult<DecisionVersion> versions = cursor == null ? decisionLifecycle.listDecisionVersions(customerId, decisionNameOrId, page, size)
+                : decisionLifecycle.listDecisionVersions(customerId, decisionNameOrId, PageCursor.decode(cursor), size);
         DecisionResponseList responseList = decisionMapper.mapVersionsToDecisionResponseList(versions);
         return Response.ok(responseList).build();
     }
@@ -199,22 +246,97 @@ public class DecisionResource {
     @Path("{decisionNameOrId}/versions/{version}/dmn")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
     @Authenticated
-    public Response getDecisionVersionDMN(@PathParam("decisionNameOrId") String decisionNameOrId, @PathParam("version") long version) {
+    public Response getDecisionVersionDMN(@PathParam("decisionNameOrId") String decisionNameOrId, @PathParam("version") long version,
+            @HeaderParam(RANGE) String range, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding, @Context Request request) {
         // TODO returns a formatted xml file.
 
         String customerId = customerIdResolver.getCustomerId(identity.getPrincipal());
         LOGGER.info("Requesting Decision version '{}' of with id or name '{}' for customer '{}' to be downloaded...",
                 version, decisionNameOrId, customerId);
 
-        ByteArrayOutputStream byteArrayOutputStream = decisionLifecycle.getDMN(customerId, decisionNameOrId, version);
+        DecisionVersion decisionVersion = decisionLifecycle.getVersion(customerId, decisionNameOrId, version);
+        // Compressed DMN is passed through as stored when the client accepts its encoding
+        DMNCompression compression = decisionVersion.getDmnCompression();
+        boolean passThrough = compression != null && accepts(acceptEncoding, compression.getContentEncoding());
+
+        // The DMN of a DecisionVersion never changes, so the stored checksum answers conditional requests without reading the DMN
+        EntityTag eTag = dmnETag(decisionVersion, passThrough);
+        if (eTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+            if (notModified != null) {
+                return notModified.build();
+            }
+        }
+
+        DMNContent dmn = decisionLifecycle.getDMN(customerId, decisionVersion, range);
+        if (!passThrough) {
+            dmn = dmn.decompressed();
+        }
 
-        Response.ResponseBuilder response = Response.ok((StreamingOutput) output -> byteArrayOutputStream.writeTo(output));
+        Response.ResponseBuilder response = Response.ok((StreamingOutput) dmn::writeTo);
+        if (dmn.isPartial()) {
+            response.status(Response.Status.PARTIAL_CONTENT);
+            response.header(CONTENT_RANGE, dmn.getContentRange());
+        }
         response.header("Content-Disposition", "attachment;filename=" + decisionNameOrId + ".xml");
         response.header("Content-Type", MediaType.APPLICATION_XML);
+        if (compression == null) {
+            response.header(ACCEPT_RANGES, "bytes");
+        } else {
+            response.header(ACCEPT_RANGES, "none");
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (passThrough) {
+            response.header(HttpHeaders.CONTENT_ENCODING, compression.getContentEncoding());
+        }
+        if (dmn.getContentLength() >= 0) {
+            response.header(HttpHeaders.CONTENT_LENGTH, dmn.getContentLength());
+        }
+        if (eTag != null) {
+            response.tag(eTag);
+        }
 
         return response.build();
     }
 
+    private EntityTag dmnETag(DecisionVersion decisionVersion, boolean passThrough) {
+        String md5 = decisionVersion.getDmnMd5();
+        if (md5 == null) {
+            return null;
+        }
+        // S3 reports ETags quoted, whereas EntityTag adds the quotes itself
+        String eTag = md5.replace("\"", "");
+        // The compressed and the decompressed DMN are different representations, so must not share an ETag
+        if (passThrough) {
+            eTag += "-" + decisionVersion.getDmnCompression().getContentEncoding();
+        }
+        return new EntityTag(eTag);
+    }
+
+    private boolean accepts(String acceptEncoding, String contentEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(contentEncoding)) {
+                // a quality of zero means the coding is not acceptable
+                return parts.length < 2 || !parts[1].trim().matches("(?i)q=0(\\.0{0,3})?");
+            }
+        }
+        return false;
+    }
+
+    private void writeImportResult(OutputStream out, DecisionImport decisionImport) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(decisionMapper.mapToDecisionImportResult(decisionImport)));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private Response mapDecisionVersion(DecisionVersion decisionVersion) {
         DecisionResponse response = decisionMapper.mapVersionToDecisionResponse(decisionVersion);
         return Response.ok(response).build();
@@ -41,6 +41,7 @@ import org.kie.baaas.dfm.api.webhook.WebhookResponse;
 import org.kie.baaas.dfm.api.webhook.WebhookResponseList;
 import org.kie.baaas.dfm.app.manager.WebhookManager;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.model.webhook.Webhook;
 import org.kie.baaas.dfm.app.resolvers.CustomerIdResolver;
 import org.slf4j.Logger;
@@ -49,6 +50,7 @@ import org.slf4j.LoggerFactory;
 import io.quarkus.security.Authenticated;
 import io.quarkus.security.identity.SecurityIdentity;
 
+import static org.kie.baaas.dfm.app.controller.APIConstants.CURSOR;
 import static org.kie.baaas.dfm.app.controller.APIConstants.PAGE;
 import static org.kie.baaas.dfm.app.controller.APIConstants.PAGE_DEFAULT;
 import static org.kie.baaas.dfm.app.controller.APIConstants.PAGE_MIN;
@@ -85,15 +87,20 @@ public class WebhookResource {
 
     @GET
     @Authenticated
-    public Response getWebooks(@QueryParam(PAGE) @Min(PAGE_MIN) @DefaultValue(PAGE_DEFAULT) int page, @QueryParam(SIZE) @DefaultValue(SIZE_DEFAULT) @Min(SIZE_MIN) @Max(SIZE_MAX) int size) {
+    public Response getWebooks(@QueryParam(PAGE) @Min(PAGE_MIN) @DefaultValue(PAGE_DEFAULT) int page, @QueryParam(SIZE) @DefaultValue(SIZE_DEFAULT) @Min(SIZE_MIN) @Max(SIZE_MAX) int size,
+            @QueryParam(CURSOR) String cursor) {
         String customerId = customerIdResolver.getCustomerId(identity.getPrincipal());
-        ListResult<Webhook> listResult = webhookManager.listCustomerWebhooks(customerId, page, size);
+        ListResult<Webhook> listResult = cursor == null ? webhookManager.listCustomerWebhooks(customerId, page, size)
+                : webhookManager.listCustomerWebhooks(customerId, PageCursor.decode(cursor), size);
         List<WebhookResponse> webhooks = listResult.getItems().stream().map(e -> WebhookResponse.from(e.getId(), e.getUrl())).collect(Collectors.toList());
         WebhookResponseList result = new WebhookResponseList();
         result.setItems(webhooks);
         result.setPage(listResult.getPage());
         result.setSize(listResult.getSize());
         result.setTotal(listResult.getTotal());
+        if (listResult.getNext() != null) {
+            result.setNext(listResult.getNext().encode());
+        }
         return Response.ok().entity(result).build();
     }
 
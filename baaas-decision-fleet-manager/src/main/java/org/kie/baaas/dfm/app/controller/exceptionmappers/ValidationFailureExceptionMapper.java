@@ -20,6 +20,7 @@ import java.util.Set;
 import javax.inject.Inject;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
@@ -54,7 +55,9 @@ public class ValidationFailureExceptionMapper implements ExceptionMapper<Constra
 
         LOGGER.info("Request for customer id '{}' failed validation.", customerId);
 
+        // Violations are reported as JSON even by resources producing other media types
         return Response.status(Response.Status.BAD_REQUEST)
+                .type(MediaType.APPLICATION_JSON)
                 .entity(violations.stream().map(violation -> "Field: '" + DecisionRequest.class.getSimpleName() + "." +
                         violation.getPropertyPath() + "' -> Provided value seems not to be valid, explanation: " +
                         violation.getMessage() + violation.getRootBeanClass()))
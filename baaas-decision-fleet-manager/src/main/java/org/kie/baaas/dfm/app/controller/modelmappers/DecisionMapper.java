@@ -21,16 +21,22 @@ import java.util.List;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.ws.rs.core.Response;
 
+import org.kie.baaas.dfm.api.decisions.DecisionImportResult;
 import org.kie.baaas.dfm.api.decisions.DecisionResponse;
 import org.kie.baaas.dfm.api.decisions.DecisionResponseList;
 import org.kie.baaas.dfm.api.decisions.ResponseModel;
 import org.kie.baaas.dfm.api.eventing.Eventing;
 import org.kie.baaas.dfm.api.eventing.kafka.Kafka;
+import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
+import org.kie.baaas.dfm.app.manager.DecisionImport;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
@@ -41,6 +47,10 @@ import static java.util.stream.Collectors.toList;
 @ApplicationScoped
 public class DecisionMapper {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionMapper.class);
+
+    private static final String IMPORT_FAILURE_MESSAGE = "Failed to import Decision.";
+
     private final HrefGenerator hrefGenerator;
 
     @Inject
@@ -90,6 +100,31 @@ public class DecisionMapper {
         return decisionResponse;
     }
 
+    public DecisionImportResult mapToDecisionImportResult(DecisionImport decisionImport) {
+        DecisionImportResult result = new DecisionImportResult();
+        result.setIndex(decisionImport.getIndex());
+        if (decisionImport.getRequest() != null) {
+            result.setName(decisionImport.getRequest().getName());
+        }
+
+        if (decisionImport.isFailed()) {
+            RuntimeException failure = decisionImport.getFailure();
+            if (failure instanceof DecisionFleetManagerException) {
+                result.setStatus(((DecisionFleetManagerException) failure).getStatusCode());
+                result.setError(failure.getMessage());
+            } else {
+                // the messages of unexpected failures may reveal internals, so they are only logged
+                LOGGER.error("Unexpected failure importing Decision at index '{}'", decisionImport.getIndex(), failure);
+                result.setStatus(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+                result.setError(IMPORT_FAILURE_MESSAGE);
+            }
+        } else {
+            result.setStatus(Response.Status.CREATED.getStatusCode());
+            result.setDecision(mapVersionToDecisionResponse(decisionImport.getDecisionVersion()));
+        }
+        return result;
+    }
+
     public DecisionResponse mapToDecisionResponse(Decision decision) {
         return mapVersionToDecisionResponse(decision.getCurrentVersion());
     }
@@ -115,6 +150,9 @@ public class DecisionMapper {
         responseList.setPage(listResult.getPage());
         responseList.setSize(listResult.getSize());
         responseList.setTotal(listResult.getTotal());
+        if (listResult.getNext() != null) {
+            responseList.setNext(listResult.getNext().encode());
+        }
     }
 
     public DecisionResponseList mapToDecisionResponseList(ListResult<Decision> decisions) {
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
+import javax.transaction.Transactional;
+
+import org.hibernate.LockOptions;
+import org.kie.baaas.dfm.app.model.DMNBlob;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepositoryBase;
+import io.quarkus.panache.common.Parameters;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * DAO implementation for maintaining the reference counts of content-addressed DMN.
+ */
+@ApplicationScoped
+@Transactional
+public class DMNBlobDAO implements PanacheRepositoryBase<DMNBlob, String> {
+
+    private static final String LOCATION_PARAM = "location";
+
+    private static final String LOCATIONS_PARAM = "locations";
+
+    private static final String REFERENCES_PARAM = "references";
+
+    private static final String RELEASED_AT_PARAM = "releasedAt";
+
+    private static final String LOCK_TIMEOUT_HINT = "javax.persistence.lock.timeout";
+
+    private final RowInserter rowInserter;
+
+    @Inject
+    public DMNBlobDAO(RowInserter rowInserter) {
+        requireNonNull(rowInserter, "rowInserter cannot be null");
+        this.rowInserter = rowInserter;
+    }
+
+    /**
+     * Records a new reference to the DMN at the given location.
+     *
+     * @param customerId - The customer that owns the DMN
+     * @param location - The location of the DMN
+     */
+    public void acquire(String customerId, String location) {
+        Parameters params = Parameters.with(LOCATION_PARAM, location);
+        if (update("#DMNBlob.acquire", params) > 0) {
+            return;
+        }
+
+        // The first reference may race with another, so the row is inserted unreferenced in its own transaction
+        track(customerId, location);
+        if (update("#DMNBlob.acquire", params) == 0) {
+            throw new IllegalStateException(String.format("Failed to reference DMN at '%s'.", location));
+        }
+    }
+
+    /**
+     * Records DMN that is about to be stored, without referencing it, so that it is removed in due course unless a
+     * reference to it is recorded. The DMN is recorded in a transaction of its own, which is committed even if the
+     * transaction that was to reference it rolls back. DMN that is already recorded is left as it is.
+     *
+     * @param customerId - The customer that owns the DMN
+     * @param location - The location of the DMN
+     */
+    public void track(String customerId, String location) {
+        DMNBlob blob = new DMNBlob();
+        blob.setLocation(location);
+        blob.setCustomerId(customerId);
+        blob.setRefCount(0);
+        blob.setReleasedAt(ZonedDateTime.now(ZoneOffset.UTC));
+        try {
+            rowInserter.insert(blob);
+        } catch (PersistenceException e) {
+            // already recorded
+        }
+    }
+
+    /**
+     * Removes references to content-addressed DMN. Once no references remain the DMN becomes eligible for removal
+     * from storage. Locations that are not content-addressed are ignored.
+     *
+     * @param references - The number of references to remove per DMN location
+     * @param releasedAt - The time at which the references were removed
+     */
+    public void release(Map<String, Long> references, ZonedDateTime releasedAt) {
+        if (references.isEmpty()) {
+            return;
+        }
+
+        List<String> tracked = getEntityManager().createNamedQuery("DMNBlob.tracked", String.class)
+                .setParameter(LOCATIONS_PARAM, references.keySet())
+                .getResultList();
+        if (tracked.isEmpty()) {
+            return;
+        }
+
+        tracked.forEach(location -> update("#DMNBlob.release", Parameters.with(LOCATION_PARAM, location).and(REFERENCES_PARAM, references.get(location).intValue())));
+        update("#DMNBlob.markReleased", Parameters.with(LOCATIONS_PARAM, tracked).and(RELEASED_AT_PARAM, releasedAt));
+    }
+
+    /**
+     * Removes DMN that has had no references since before the given time. The DMN stays locked until it has been
+     * removed from storage, so a concurrent {@link #acquire(String, String)} waits for the removal rather than
+     * referencing DMN that is about to disappear. Should the removal from storage fail, the DMN is kept.
+     *
+     * @param releasedBefore - The latest time the last reference may have been removed
+     * @param limit - The maximum number of DMN to remove
+     * @param remover - Removes the DMN at the given locations from storage
+     * @return - The locations of the removed DMN
+     */
+    public List<String> deleteUnreferenced(ZonedDateTime releasedBefore, int limit, Consumer<List<String>> remover) {
+        // DMN being referenced right now is skipped rather than waited for, as it will not be unreferenced any more
+        List<String> unreferenced = getEntityManager().createNamedQuery("DMNBlob.unreferencedBefore", DMNBlob.class)
+                .setParameter(RELEASED_AT_PARAM, releasedBefore)
+                .setMaxResults(limit)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setHint(LOCK_TIMEOUT_HINT, LockOptions.SKIP_LOCKED)
+                .getResultStream()
+                .map(DMNBlob::getLocation)
+                .collect(toList());
+        if (unreferenced.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        remover.accept(unreferenced);
+        delete("#DMNBlob.deleteByLocations", Parameters.with(LOCATIONS_PARAM, unreferenced));
+        return unreferenced;
+    }
+}
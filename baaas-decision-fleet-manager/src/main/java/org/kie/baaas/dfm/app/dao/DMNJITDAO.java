@@ -22,7 +22,6 @@ import java.util.Objects;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import javax.transaction.Transactional;
 
 import org.kie.baaas.dfm.api.DMNJIT;
 import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
@@ -34,17 +33,16 @@ import static java.util.stream.Collectors.toList;
 @ApplicationScoped
 public class DMNJITDAO {
 
-    private final DecisionFleetShardDAO decisionFleetShardDAO;
+    private final DecisionFleetShardCache decisionFleetShardCache;
 
     @Inject
-    public DMNJITDAO(DecisionFleetShardDAO decisionFleetShardDAO) {
-        Objects.requireNonNull(decisionFleetShardDAO, "fleetShardDAO cannot be null.");
-        this.decisionFleetShardDAO = decisionFleetShardDAO;
+    public DMNJITDAO(DecisionFleetShardCache decisionFleetShardCache) {
+        Objects.requireNonNull(decisionFleetShardCache, "decisionFleetShardCache cannot be null.");
+        this.decisionFleetShardCache = decisionFleetShardCache;
     }
 
-    @Transactional
     public ListResult<DMNJIT> listAll(int page, int size) {
-        ListResult<DecisionFleetShard> fleetShards = decisionFleetShardDAO.listAll(page, size);
+        ListResult<DecisionFleetShard> fleetShards = decisionFleetShardCache.getSnapshot().list(page, size);
         List<DMNJIT> jits = fleetShards.getItems().stream().map(this::createJitForShard).collect(toList());
         return new ListResult<>(jits, fleetShards.getPage(), fleetShards.getTotal());
     }
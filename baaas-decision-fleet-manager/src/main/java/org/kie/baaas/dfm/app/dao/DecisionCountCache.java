@@ -0,0 +1,138 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.Transactional;
+
+import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the number of Decisions of each customer in memory so that checking a request against the limit on the
+ * number of Decisions does not require a database round-trip.
+ *
+ * The limit itself is enforced by {@link #acquire(String)} in the transaction that creates the Decision. The counts
+ * held in memory follow committed creations and deletions on this instance and are reconciled on a schedule with the
+ * Decisions in the database, which picks up changes made by other instances and corrects any drift of the stored
+ * counts.
+ */
+@ApplicationScoped
+public class DecisionCountCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionCountCache.class);
+
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+
+    private final DecisionQuotaDAO decisionQuotaDAO;
+
+    private final DecisionFleetManagerConfig config;
+
+    private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Inject
+    public DecisionCountCache(DecisionQuotaDAO decisionQuotaDAO, DecisionFleetManagerConfig config, TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        requireNonNull(decisionQuotaDAO, "decisionQuotaDAO cannot be null");
+        requireNonNull(config, "config cannot be null");
+        requireNonNull(transactionSynchronizationRegistry, "transactionSynchronizationRegistry cannot be null");
+        this.decisionQuotaDAO = decisionQuotaDAO;
+        this.config = config;
+        this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+    }
+
+    /**
+     * @param customerId - The customer id
+     * @return - The number of Decisions of the customer, loading it if required
+     */
+    public long getDecisionCount(String customerId) {
+        Long count = counts.get(customerId);
+        if (count == null) {
+            count = decisionQuotaDAO.getDecisionCount(customerId);
+            counts.putIfAbsent(customerId, count);
+        }
+        return count;
+    }
+
+    /**
+     * Counts a new Decision of the customer, provided this keeps the customer within the limit on the number of
+     * Decisions. Must be called in the transaction that creates the Decision.
+     *
+     * @param customerId - The customer creating the Decision
+     * @return - false if the customer already has the maximum number of Decisions
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public boolean acquire(String customerId) {
+        if (!decisionQuotaDAO.acquire(customerId, config.getMaxAllowedDecisions())) {
+            return false;
+        }
+        adjustAfterCommit(customerId, 1);
+        return true;
+    }
+
+    /**
+     * Stops counting a Decision of the customer. Must be called in the transaction that deletes the Decision.
+     *
+     * @param customerId - The customer that owned the Decision
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void release(String customerId) {
+        decisionQuotaDAO.release(customerId);
+        adjustAfterCommit(customerId, -1);
+    }
+
+    @Scheduled(every = "{baaas.dfm.decisions.count.reconcile-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reconcile() {
+        List<String> customerIds = new ArrayList<>(counts.keySet());
+        for (int from = 0; from < customerIds.size(); from += RECONCILE_BATCH_SIZE) {
+            List<String> batch = customerIds.subList(from, Math.min(from + RECONCILE_BATCH_SIZE, customerIds.size()));
+            Map<String, Long> loaded = decisionQuotaDAO.recountDecisions(batch);
+            batch.forEach(customerId -> counts.put(customerId, loaded.getOrDefault(customerId, 0L)));
+        }
+        LOGGER.debug("Reconciled the Decision counts of '{}' customers", customerIds.size());
+    }
+
+    private void adjustAfterCommit(String customerId, long delta) {
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // Nothing to do until the outcome is known
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    counts.computeIfPresent(customerId, (id, count) -> Math.max(0, count + delta));
+                }
+            }
+        });
+    }
+}
@@ -15,6 +15,12 @@
 
 package org.kie.baaas.dfm.app.dao;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.transaction.Transactional;
 
@@ -23,6 +29,8 @@ import org.kie.baaas.dfm.app.model.Decision;
 import io.quarkus.hibernate.orm.panache.PanacheRepositoryBase;
 import io.quarkus.panache.common.Parameters;
 
+import static java.util.stream.Collectors.toMap;
+
 /**
  * DAO implementation for working with Decision Entities.
  */
@@ -35,12 +43,56 @@ public class DecisionDAO implements PanacheRepositoryBase<Decision, String> {
         return find("#Decision.byCustomerIdAndName", params).firstResult();
     }
 
+    /**
+     * Finds the Decisions of the customer with any of the given names.
+     *
+     * @param customerId - The customer id
+     * @param decisionNames - The names of the Decisions
+     * @return - The Decisions that exist, keyed by name
+     */
+    public Map<String, Decision> findByCustomerAndNames(String customerId, Collection<String> decisionNames) {
+        Parameters params = Parameters.with("names", decisionNames).and("customerId", customerId);
+        return find("#Decision.byCustomerIdAndNames", params).stream().collect(toMap(Decision::getName, Function.identity()));
+    }
+
     public Decision findByCustomerAndIdOrName(String customerId, String decisionIdOrName) {
         Parameters params = Parameters.with("idOrName", decisionIdOrName).and("customerId", customerId);
-        return find("#Decision.byCustomerAndIdOrName", params).firstResult();
+        for (String lookup : DecisionLookup.of(decisionIdOrName)) {
+            Decision decision = find("#Decision.byCustomerAndDecision" + lookup, params).firstResult();
+            if (decision != null) {
+                return decision;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Atomically increments the version sequence of the Decision, provided the Decision has not been modified since
+     * it was read by this transaction. The managed Decision is kept in step with the new value.
+     *
+     * @param decision - The Decision to allocate a version number for
+     * @return - false if the Decision has been modified concurrently and no version number was allocated
+     */
+    public boolean incrementNextVersion(Decision decision) {
+        Parameters params = Parameters.with("id", decision.getId()).and("lockVersion", decision.getLockVersion());
+        if (update("#Decision.incrementNextVersion", params) == 0) {
+            return false;
+        }
+        decision.setNextVersionNumber(decision.getNextVersionNumber() + 1);
+        return true;
     }
 
-    public long getDecisionCountByCustomerId(String customerId) {
-        return getEntityManager().createNamedQuery("Decision.decisionCountByCustomerId", Long.class).setParameter("customerId", customerId).getSingleResult();
+    /**
+     * Counts the Decisions placed on each Fleet Shard per customer.
+     *
+     * @return - The number of Decisions of each customer, keyed by Fleet Shard id
+     */
+    public Map<Integer, Map<String, Long>> countByFleetShardAndCustomer() {
+        List<Object[]> rows = getEntityManager().createNamedQuery("Decision.countByFleetShardAndCustomer", Object[].class).getResultList();
+        Map<Integer, Map<String, Long>> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.computeIfAbsent((Integer) row[0], id -> new HashMap<>()).put((String) row[1], (Long) row[2]);
+        }
+        return counts;
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the registered Fleet Shards in memory so that resolving a Fleet Shard does not require a database
+ * round-trip. Fleet Shards change rarely, so the snapshot is reloaded on a schedule and whenever it is
+ * invalidated following an administrative change on this instance.
+ */
+@ApplicationScoped
+public class DecisionFleetShardCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionFleetShardCache.class);
+
+    private final DecisionFleetShardDAO decisionFleetShardDAO;
+
+    private long version;
+
+    private volatile DecisionFleetShardSnapshot snapshot;
+
+    @Inject
+    public DecisionFleetShardCache(DecisionFleetShardDAO decisionFleetShardDAO) {
+        requireNonNull(decisionFleetShardDAO, "decisionFleetShardDAO cannot be null");
+        this.decisionFleetShardDAO = decisionFleetShardDAO;
+    }
+
+    /**
+     * @return - The current snapshot of the registered Fleet Shards, loading it if required
+     */
+    public DecisionFleetShardSnapshot getSnapshot() {
+        DecisionFleetShardSnapshot current = snapshot;
+        return current == null ? load() : current;
+    }
+
+    /**
+     * Discards the current snapshot so that the next read loads the Fleet Shards from the database.
+     */
+    public synchronized void invalidate() {
+        LOGGER.info("Invalidating Fleet Shard snapshot at version '{}'", snapshot == null ? null : snapshot.getVersion());
+        snapshot = null;
+    }
+
+    @Scheduled(every = "{baaas.dfm.dfs.snapshot.refresh-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void refresh() {
+        load();
+    }
+
+    private synchronized DecisionFleetShardSnapshot load() {
+        DecisionFleetShardSnapshot loaded = new DecisionFleetShardSnapshot(++version, decisionFleetShardDAO.listAll());
+        snapshot = loaded;
+        LOGGER.debug("Loaded Fleet Shard snapshot at version '{}' with '{}' Fleet Shards", loaded.getVersion(), loaded.getFleetShards().size());
+        return loaded;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+import org.kie.baaas.dfm.app.model.ListResult;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toUnmodifiableMap;
+
+/**
+ * Immutable view of the registered Fleet Shards at a point in time. Each snapshot loaded by the
+ * {@link DecisionFleetShardCache} carries a higher version than the one before it.
+ * <p>
+ * The Fleet Shards are detached and shared between callers, so must not be modified.
+ */
+public class DecisionFleetShardSnapshot {
+
+    private final long version;
+
+    private final List<DecisionFleetShard> fleetShards;
+
+    private final Map<Integer, DecisionFleetShard> fleetShardsById;
+
+    DecisionFleetShardSnapshot(long version, List<DecisionFleetShard> fleetShards) {
+        this.version = version;
+        this.fleetShards = fleetShards.stream()
+                .sorted(Comparator.comparing(DecisionFleetShard::getDmnJitUrl, Comparator.nullsLast(Comparator.naturalOrder())))
+                .collect(toList());
+        this.fleetShardsById = fleetShards.stream().collect(toUnmodifiableMap(DecisionFleetShard::getId, Function.identity()));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param id - The id of the Fleet Shard
+     * @return - The Fleet Shard, or null if no Fleet Shard with the id is registered
+     */
+    public DecisionFleetShard getFleetShard(int id) {
+        return fleetShardsById.get(id);
+    }
+
+    /**
+     * @return - All registered Fleet Shards, ordered by DMN JIT URL
+     */
+    public List<DecisionFleetShard> getFleetShards() {
+        return List.copyOf(fleetShards);
+    }
+
+    /**
+     * Pages through the registered Fleet Shards, ordered by DMN JIT URL.
+     *
+     * @param page - The page to return
+     * @param size - The number of Fleet Shards per page
+     * @return - The Fleet Shards on the requested page
+     */
+    public ListResult<DecisionFleetShard> list(int page, int size) {
+        List<DecisionFleetShard> items = fleetShards.stream()
+                .skip((long) page * size)
+                .limit(size)
+                .collect(toList());
+        return new ListResult<>(items, page, fleetShards.size());
+    }
+}
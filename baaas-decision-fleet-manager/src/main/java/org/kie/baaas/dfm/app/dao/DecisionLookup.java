@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.kie.baaas.dfm.app.dao;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decisions are addressed by either their id or their name. A single query matching either column cannot use an
+ * index, so each query has a variant by id and a variant by name, named with the suffix returned here, and the
+ * variants are tried in turn. Ids are generated UUIDs, so the id variant is tried first only for UUID shaped values.
+ */
+final class DecisionLookup {
+
+    static final String BY_ID = "Id";
+
+    static final String BY_NAME = "Name";
+
+    private static final List<String> ID_FIRST = List.of(BY_ID, BY_NAME);
+
+    private static final List<String> NAME_FIRST = List.of(BY_NAME, BY_ID);
+
+    private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private DecisionLookup() {
+    }
+
+    /**
+     * @param decisionIdOrName - The id or name of a Decision
+     * @return - The suffixes of the query variants, in the order to try them
+     */
+    static List<String> of(String decisionIdOrName) {
+        return UUID.matcher(decisionIdOrName).matches() ? ID_FIRST : NAME_FIRST;
+    }
+}
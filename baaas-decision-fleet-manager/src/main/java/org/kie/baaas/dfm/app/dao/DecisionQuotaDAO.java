@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
+import javax.transaction.Transactional;
+
+import org.kie.baaas.dfm.app.model.DecisionQuota;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepositoryBase;
+import io.quarkus.panache.common.Parameters;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * DAO implementation for maintaining the number of Decisions of each customer.
+ */
+@ApplicationScoped
+@Transactional
+public class DecisionQuotaDAO implements PanacheRepositoryBase<DecisionQuota, String> {
+
+    private static final String CUSTOMER_ID_PARAM = "customerId";
+
+    private static final String CUSTOMER_IDS_PARAM = "customerIds";
+
+    private static final String LIMIT_PARAM = "limit";
+
+    private final RowInserter rowInserter;
+
+    @Inject
+    public DecisionQuotaDAO(RowInserter rowInserter) {
+        requireNonNull(rowInserter, "rowInserter cannot be null");
+        this.rowInserter = rowInserter;
+    }
+
+    /**
+     * Counts a new Decision of the customer, provided the customer has fewer Decisions than the limit.
+     *
+     * @param customerId - The customer creating the Decision
+     * @param limit - The maximum number of Decisions of the customer, or -1 if the number is not limited
+     * @return - false if the customer already has the maximum number of Decisions and the Decision was not counted
+     */
+    public boolean acquire(String customerId, long limit) {
+        if (tryAcquire(customerId, limit)) {
+            return true;
+        }
+        if (limit == 0 || findById(customerId) != null) {
+            return false;
+        }
+
+        // The first Decision of the customer may race with another, so the row is inserted empty in its own transaction
+        DecisionQuota quota = new DecisionQuota();
+        quota.setCustomerId(customerId);
+        quota.setDecisionCount(0);
+        try {
+            rowInserter.insert(quota);
+        } catch (PersistenceException e) {
+            // inserted by a concurrent first Decision
+        }
+        return tryAcquire(customerId, limit);
+    }
+
+    private boolean tryAcquire(String customerId, long limit) {
+        Parameters params = Parameters.with(CUSTOMER_ID_PARAM, customerId);
+        return (limit < 0 ? update("#DecisionQuota.acquire", params) : update("#DecisionQuota.acquireWithinLimit", params.and(LIMIT_PARAM, limit))) > 0;
+    }
+
+    /**
+     * Stops counting a deleted Decision of the customer.
+     *
+     * @param customerId - The customer that owned the Decision
+     */
+    public void release(String customerId) {
+        update("#DecisionQuota.release", Parameters.with(CUSTOMER_ID_PARAM, customerId));
+    }
+
+    public long getDecisionCount(String customerId) {
+        DecisionQuota quota = findById(customerId);
+        return quota == null ? 0 : quota.getDecisionCount();
+    }
+
+    /**
+     * Gets the number of Decisions of each of the given customers.
+     *
+     * @param customerIds - The customers to count the Decisions of
+     * @return - The number of Decisions keyed by customer id. Customers without Decisions may be absent.
+     */
+    public Map<String, Long> getDecisionCounts(Collection<String> customerIds) {
+        return find("#DecisionQuota.byCustomerIds", Parameters.with(CUSTOMER_IDS_PARAM, customerIds)).stream()
+                .collect(toMap(DecisionQuota::getCustomerId, DecisionQuota::getDecisionCount));
+    }
+
+    /**
+     * Corrects the number of Decisions of each of the given customers by counting their Decisions. The rows of the
+     * customers are locked before counting, so that Decisions being created or deleted by transactions still in flight
+     * are counted once those transactions have committed.
+     *
+     * @param customerIds - The customers to count the Decisions of
+     * @return - The number of Decisions keyed by customer id. Customers without Decisions may be absent.
+     */
+    public Map<String, Long> recountDecisions(Collection<String> customerIds) {
+        // Locked in a consistent order, so that concurrent recounts do not deadlock
+        List<DecisionQuota> quotas = getEntityManager().createNamedQuery("DecisionQuota.byCustomerIdsOrdered", DecisionQuota.class)
+                .setParameter(CUSTOMER_IDS_PARAM, customerIds)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        if (quotas.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        // Counted in a statement of its own, which sees every change committed while waiting for the locks
+        Map<String, Long> counts = getEntityManager().createNamedQuery("Decision.countByCustomerIds", Object[].class)
+                .setParameter(CUSTOMER_IDS_PARAM, customerIds)
+                .getResultStream()
+                .collect(toMap(row -> (String) row[0], row -> (Long) row[1]));
+        quotas.forEach(quota -> quota.setDecisionCount(counts.getOrDefault(quota.getCustomerId(), 0L)));
+        return quotas.stream().collect(toMap(DecisionQuota::getCustomerId, DecisionQuota::getDecisionCount));
+    }
+}
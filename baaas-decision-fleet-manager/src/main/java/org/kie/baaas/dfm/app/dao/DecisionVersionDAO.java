@@ -15,14 +15,20 @@
 
 package org.kie.baaas.dfm.app.dao;
 
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.persistence.TypedQuery;
 import javax.transaction.Transactional;
 
+import org.kie.baaas.dfm.app.exceptions.InvalidPageCursorException;
+import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 
 import io.quarkus.hibernate.orm.panache.PanacheRepositoryBase;
 import io.quarkus.panache.common.Parameters;
@@ -36,6 +42,8 @@ import static java.util.Collections.emptyList;
 @Transactional
 public class DecisionVersionDAO implements PanacheRepositoryBase<DecisionVersion, String> {
 
+    private static final String AFTER_SUBMITTED_AT_PARAM = "afterSubmittedAt";
+
     private static final String CUSTOMER_ID_PARAM = "customerId";
 
     private static final String ID_PARAM = "id";
@@ -46,39 +54,133 @@ public class DecisionVersionDAO implements PanacheRepositoryBase<DecisionVersion
 
     private static final String NAME_PARAM = "name";
 
+    private static final String STATUS_PARAM = "status";
+
+    private static final String SUBMITTED_AT_PARAM = "submittedAt";
+
     private static final String VERSION_PARAM = "version";
 
     private Parameters customerIdParams(String customerId) {
         return Parameters.with(CUSTOMER_ID_PARAM, customerId);
     }
 
-    public long getNextVersionId(String customerId, String decisionName) {
-        Parameters params = customerIdParams(customerId).and(NAME_PARAM, decisionName);
-        return find("#DecisionVersion.countByCustomerAndName", params).count() + 1;
-    }
-
     public DecisionVersion getCurrentVersion(String customerId, String decisionIdOrName) {
         Parameters params = customerIdParams(customerId).and(ID_OR_NAME_PARAM, decisionIdOrName);
-        return find("#DecisionVersion.currentByCustomerAndDecisionIdOrName", params).firstResult();
+        return findByDecisionIdOrName("DecisionVersion.currentByCustomerAndDecision", decisionIdOrName, params);
     }
 
     public DecisionVersion getBuildingVersion(String customerId, String decisionIdOrName) {
         Parameters params = customerIdParams(customerId).and(ID_OR_NAME_PARAM, decisionIdOrName);
-        return find("#DecisionVersion.buildingByCustomerAndDecisionIdOrName", params).firstResult();
+        return findByDecisionIdOrName("DecisionVersion.buildingByCustomerAndDecision", decisionIdOrName, params);
     }
 
     public DecisionVersion findByCustomerAndDecisionIdOrName(String customerId, String decisionIdOrName, long decisionVersion) {
         Parameters params = customerIdParams(customerId).and(ID_OR_NAME_PARAM, decisionIdOrName).and(VERSION_PARAM, decisionVersion);
-        return find("#DecisionVersion.byCustomerDecisionIdOrNameAndVersion", params).firstResult();
+        return findByDecisionIdOrName("DecisionVersion.byCustomerVersionAndDecision", decisionIdOrName, params);
+    }
+
+    /**
+     * Finds a DecisionVersion for a deployment callback together with everything the callback works with: the
+     * Decision with its current and next versions, and the tags and configuration published with the resulting event.
+     *
+     * @param customerId - The customer id
+     * @param decisionIdOrName - The id or name of the Decision
+     * @param decisionVersion - The version of the Decision
+     * @return - The DecisionVersion, or null if it does not exist
+     */
+    public DecisionVersion findForCallback(String customerId, String decisionIdOrName, long decisionVersion) {
+        Parameters params = customerIdParams(customerId).and(ID_OR_NAME_PARAM, decisionIdOrName).and(VERSION_PARAM, decisionVersion);
+        return findByDecisionIdOrName("DecisionVersion.forCallbackByDecision", decisionIdOrName, params);
+    }
+
+    private DecisionVersion findByDecisionIdOrName(String query, String decisionIdOrName, Parameters params) {
+        for (String lookup : DecisionLookup.of(decisionIdOrName)) {
+            // Panache expects a # prefix on Named Queries
+            DecisionVersion decisionVersion = find("#" + query + lookup, params).firstResult();
+            if (decisionVersion != null) {
+                return decisionVersion;
+            }
+        }
+        return null;
     }
 
-    public List<DecisionVersion> listAll() {
-        return find("#DecisionVersion.listAll").list();
+    /**
+     * Lists the current version of every Decision, or only of the Decisions of the given customer, that follow the
+     * given DecisionVersion, ordered by customer, Decision name and Decision id. Continuing from the last
+     * DecisionVersion returned lists all Decisions a chunk at a time, each chunk in a short transaction of its own.
+     *
+     * @param customerId - The customer to list the Decisions of, or null to list the Decisions of all customers
+     * @param after - The last DecisionVersion of the previous chunk, or null to start from the first Decision
+     * @param limit - The maximum number of DecisionVersions to return
+     * @return - The current DecisionVersions following the given one
+     */
+    public List<DecisionVersion> listCurrentAfter(String customerId, DecisionVersion after, int limit) {
+        TypedQuery<String> idsQuery;
+        if (after == null) {
+            idsQuery = customerId == null ? getEntityManager().createNamedQuery("DecisionVersion.listCurrentIds", String.class)
+                    : getEntityManager().createNamedQuery("DecisionVersion.listCurrentIdsByCustomer", String.class).setParameter(CUSTOMER_ID_PARAM, customerId);
+        } else {
+            Decision decision = after.getDecision();
+            idsQuery = getEntityManager().createNamedQuery(customerId == null ? "DecisionVersion.listCurrentIdsAfter" : "DecisionVersion.listCurrentIdsByCustomerAfter", String.class)
+                    .setParameter(CUSTOMER_ID_PARAM, decision.getCustomerId())
+                    .setParameter(NAME_PARAM, decision.getName())
+                    .setParameter(ID_PARAM, decision.getId());
+        }
+
+        List<String> ids = idsQuery.setMaxResults(limit).getResultList();
+        if (ids.isEmpty()) {
+            return emptyList();
+        }
+        return getEntityManager().createNamedQuery("DecisionVersion.listCurrentByIds", DecisionVersion.class)
+                .setParameter(IDS_PARAM, ids)
+                .getResultList();
+    }
+
+    /**
+     * Lists the DecisionVersions that have been BUILDING since before the given time without the Fleet Shard having
+     * reported a deployment for them, following the given DecisionVersion. Continuing from the last DecisionVersion
+     * returned visits every such DecisionVersion in turn, however many of them remain unresolved.
+     *
+     * @param submittedBefore - The latest time the DecisionVersion may have been submitted
+     * @param after - The last DecisionVersion of the previous batch, or null to start from the oldest
+     * @param limit - The maximum number of DecisionVersions to return
+     * @return - The DecisionVersions awaiting the outcome of their deployment, oldest first
+     */
+    public List<DecisionVersion> listAwaitingDeployment(ZonedDateTime submittedBefore, DecisionVersion after, int limit) {
+        TypedQuery<DecisionVersion> query;
+        if (after == null) {
+            query = getEntityManager().createNamedQuery("DecisionVersion.buildingWithoutDeploymentBefore", DecisionVersion.class);
+        } else {
+            query = getEntityManager().createNamedQuery("DecisionVersion.buildingWithoutDeploymentBeforeAfter", DecisionVersion.class)
+                    .setParameter(AFTER_SUBMITTED_AT_PARAM, after.getSubmittedAt())
+                    .setParameter(ID_PARAM, after.getId());
+        }
+        return query.setParameter(STATUS_PARAM, DecisionVersionStatus.BUILDING)
+                .setParameter(SUBMITTED_AT_PARAM, submittedBefore)
+                .setMaxResults(limit)
+                .getResultList();
     }
 
     public ListResult<DecisionVersion> listCurrentByCustomerId(String customerId, int page, int pageSize) {
         Parameters p = customerIdParams(customerId);
-        return executePagedQuery("DecisionVersion.countCurrentByCustomer", "DecisionVersion.listCurrentIdsByCustomer", "DecisionVersion.listCurrentByCustomer", p, page, pageSize);
+        return executePagedQuery("DecisionVersion.countCurrentByCustomer", "DecisionVersion.listCurrentIdsByCustomer", "DecisionVersion.listCurrentByCustomer", p, page, pageSize,
+                DecisionVersionDAO::currentCursor);
+    }
+
+    /**
+     * Lists the current DecisionVersions of the customer that follow the given cursor, ordered by Decision name.
+     *
+     * @param customerId - The customer id
+     * @param cursor - The position to continue the listing from
+     * @param pageSize - The maximum number of DecisionVersions to return
+     * @return - The page of DecisionVersions following the cursor
+     */
+    public ListResult<DecisionVersion> listCurrentByCustomerId(String customerId, PageCursor cursor, int pageSize) {
+        TypedQuery<String> idsQuery = getEntityManager().createNamedQuery("DecisionVersion.listCurrentIdsByCustomerAfter", String.class)
+                .setParameter(CUSTOMER_ID_PARAM, customerId)
+                .setParameter(NAME_PARAM, cursor.getKey())
+                .setParameter(ID_PARAM, cursor.getId());
+        return executeCursorQuery(idsQuery, "DecisionVersion.listCurrentByCustomer", cursor, pageSize, DecisionVersionDAO::currentCursor);
     }
 
     private void addParamsToNamedQuery(Parameters params, TypedQuery<?> namedQuery) {
@@ -105,8 +207,12 @@ public class DecisionVersionDAO implements PanacheRepositoryBase<DecisionVersion
      * - Count the total number of entities
      * - Determine the ids of the entities that will be on the page the user is requesting
      * - Select the entities by id, performing the fetched join of related entities.
+     *
+     * One id more than the page holds is selected to find out whether there is a next page, in which case the result
+     * carries a cursor so that the listing can continue without an offset.
      */
-    private ListResult<DecisionVersion> executePagedQuery(String countQuery, String idsQuery, String versionsQuery, Parameters params, int page, int pageSize) {
+    private ListResult<DecisionVersion> executePagedQuery(String countQuery, String idsQuery, String versionsQuery, Parameters params, int page, int pageSize,
+            CursorFactory cursorFactory) {
 
         Long totalVersions = executeCountQuery(countQuery, params);
         if (totalVersions == 0L) {
@@ -114,15 +220,81 @@ public class DecisionVersionDAO implements PanacheRepositoryBase<DecisionVersion
         }
         int firstResult = getFirstResult(page, pageSize);
 
-        List<String> ids = executeIdsQuery(idsQuery, params, firstResult, pageSize);
+        List<String> ids = executeIdsQuery(idsQuery, params, firstResult, pageSize + 1);
+        return fetchPage(ids, versionsQuery, page, totalVersions, pageSize, cursorFactory);
+    }
+
+    /*
+     * Continues a listing from a cursor. The ids query selects the ids that sort after the cursor, so neither counting
+     * nor skipping over the previous pages is needed.
+     */
+    private ListResult<DecisionVersion> executeCursorQuery(TypedQuery<String> idsQuery, String versionsQuery, PageCursor cursor, int pageSize, CursorFactory cursorFactory) {
+        List<String> ids = idsQuery.setMaxResults(pageSize + 1).getResultList();
+        return fetchPage(ids, versionsQuery, cursor.getPage(), cursor.getTotal(), pageSize, cursorFactory);
+    }
+
+    private ListResult<DecisionVersion> fetchPage(List<String> ids, String versionsQuery, long page, long total, int pageSize, CursorFactory cursorFactory) {
+        if (ids.isEmpty()) {
+            return new ListResult<>(emptyList(), page, total);
+        }
+
+        boolean hasNext = ids.size() > pageSize;
         // Panache expects a # prefix on Named Queries
-        List<DecisionVersion> versions = list("#" + versionsQuery, Parameters.with(IDS_PARAM, ids));
-        return new ListResult<>(versions, page, totalVersions);
+        List<DecisionVersion> versions = list("#" + versionsQuery, Parameters.with(IDS_PARAM, hasNext ? ids.subList(0, pageSize) : ids));
+        PageCursor next = hasNext ? cursorFactory.create(page + 1, total, versions.get(versions.size() - 1)) : null;
+        return new ListResult<>(versions, page, total, next);
     }
 
     public ListResult<DecisionVersion> listByCustomerAndDecisionIdOrName(String customerId, String decisionIdOrName, int page, int pageSize) {
         Parameters p = customerIdParams(customerId).and(ID_OR_NAME_PARAM, decisionIdOrName);
-        return executePagedQuery("DecisionVersion.countByIdOrName", "DecisionVersion.listIdsByIdOrName", "DecisionVersion.listByIdOrName", p, page, pageSize);
+        for (String lookup : DecisionLookup.of(decisionIdOrName)) {
+            ListResult<DecisionVersion> versions = executePagedQuery("DecisionVersion.countByDecision" + lookup, "DecisionVersion.listIdsByDecision" + lookup,
+                    "DecisionVersion.listByIdOrName", p, page, pageSize, DecisionVersionDAO::versionCursor);
+            if (versions.getTotal() > 0) {
+                return versions;
+            }
+        }
+        return new ListResult<>(emptyList(), page, 0);
+    }
+
+    /**
+     * Lists the versions of the Decision that follow the given cursor, most recently submitted first.
+     *
+     * @param customerId - The customer id
+     * @param decisionIdOrName - The id or name of the Decision
+     * @param cursor - The position to continue the listing from
+     * @param pageSize - The maximum number of DecisionVersions to return
+     * @return - The page of DecisionVersions following the cursor
+     */
+    public ListResult<DecisionVersion> listByCustomerAndDecisionIdOrName(String customerId, String decisionIdOrName, PageCursor cursor, int pageSize) {
+        ZonedDateTime submittedAt;
+        try {
+            submittedAt = ZonedDateTime.parse(cursor.getKey());
+        } catch (DateTimeParseException e) {
+            throw new InvalidPageCursorException("Invalid page cursor '" + cursor.encode() + "' for the versions of a Decision", e);
+        }
+
+        ListResult<DecisionVersion> versions = null;
+        for (String lookup : DecisionLookup.of(decisionIdOrName)) {
+            TypedQuery<String> idsQuery = getEntityManager().createNamedQuery("DecisionVersion.listIdsAfterByDecision" + lookup, String.class)
+                    .setParameter(CUSTOMER_ID_PARAM, customerId)
+                    .setParameter(ID_OR_NAME_PARAM, decisionIdOrName)
+                    .setParameter(SUBMITTED_AT_PARAM, submittedAt)
+                    .setParameter(ID_PARAM, cursor.getId());
+            versions = executeCursorQuery(idsQuery, "DecisionVersion.listByIdOrName", cursor, pageSize, DecisionVersionDAO::versionCursor);
+            if (!versions.getItems().isEmpty()) {
+                break;
+            }
+        }
+        return versions;
+    }
+
+    private static PageCursor currentCursor(long page, long total, DecisionVersion last) {
+        return new PageCursor(page, total, last.getDecision().getName(), last.getDecision().getId());
+    }
+
+    private static PageCursor versionCursor(long page, long total, DecisionVersion last) {
+        return new PageCursor(page, total, last.getSubmittedAt().toString(), last.getId());
     }
 
     private int getFirstResult(int requestedPage, int requestedPageSize) {
@@ -132,4 +304,13 @@ public class DecisionVersionDAO implements PanacheRepositoryBase<DecisionVersion
 
         return requestedPage * requestedPageSize;
     }
+
+    /*
+     * Creates the cursor to the page that follows the given last DecisionVersion of a page.
+     */
+    @FunctionalInterface
+    private interface CursorFactory {
+
+        PageCursor create(long page, long total, DecisionVersion last);
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.transaction.Transactional;
+
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.model.DeploymentRequest;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepositoryBase;
+import io.quarkus.panache.common.Parameters;
+
+/**
+ * DAO implementation for the outbox of pending Fleet Shard deployment requests.
+ */
+@ApplicationScoped
+@Transactional
+public class DeploymentRequestDAO implements PanacheRepositoryBase<DeploymentRequest, String> {
+
+    private static final String ATTEMPTS_PARAM = "attempts";
+
+    private static final String AVAILABLE_AT_PARAM = "availableAt";
+
+    private static final String CREATED_AT_PARAM = "createdAt";
+
+    private static final String DECISION_ID_PARAM = "decisionId";
+
+    private static final String ID_PARAM = "id";
+
+    private static final String LAST_ERROR_PARAM = "lastError";
+
+    private static final String LEASE_UNTIL_PARAM = "leaseUntil";
+
+    private static final String NOW_PARAM = "now";
+
+    private static final String VERSION_PARAM = "version";
+
+    private Parameters decisionVersionParams(DecisionVersion decisionVersion) {
+        return Parameters.with(DECISION_ID_PARAM, decisionVersion.getDecision().getId()).and(VERSION_PARAM, decisionVersion.getVersion());
+    }
+
+    /**
+     * Records a request to deploy the given DecisionVersion.
+     *
+     * @param customerId - The customer that owns the DecisionVersion
+     * @param decisionVersion - The DecisionVersion to deploy
+     * @param now - The time of the request
+     * @param available - false if the request must wait to be released before it is dispatched
+     */
+    public void enqueue(String customerId, DecisionVersion decisionVersion, ZonedDateTime now, boolean available) {
+        DeploymentRequest request = new DeploymentRequest();
+        request.setCustomerId(customerId);
+        request.setDecisionId(decisionVersion.getDecision().getId());
+        request.setVersion(decisionVersion.getVersion());
+        request.setCreatedAt(now);
+        request.setAvailableAt(available ? now : null);
+        persist(request);
+    }
+
+    /**
+     * Makes a request waiting for the DMN of the DecisionVersion available for dispatch.
+     *
+     * @param decisionVersion - The DecisionVersion whose DMN has been stored
+     * @param now - The time from which the request can be dispatched
+     */
+    public void release(DecisionVersion decisionVersion, ZonedDateTime now) {
+        update("#DeploymentRequest.release", decisionVersionParams(decisionVersion).and(NOW_PARAM, now));
+    }
+
+    /**
+     * Lists the requests that are due for dispatch, oldest first.
+     *
+     * @param now - The current time
+     * @param limit - The maximum number of requests to return
+     * @return - The due requests
+     */
+    public List<DeploymentRequest> findDue(ZonedDateTime now, int limit) {
+        return getEntityManager().createNamedQuery("DeploymentRequest.due", DeploymentRequest.class)
+                .setParameter(NOW_PARAM, now)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Lists the requests that have been waiting for their DMN to be stored since before the given time.
+     *
+     * @param createdBefore - The latest time the request may have been recorded
+     * @param limit - The maximum number of requests to return
+     * @return - The requests still waiting for their DMN
+     */
+    public List<DeploymentRequest> findAwaitingDMN(ZonedDateTime createdBefore, int limit) {
+        return getEntityManager().createNamedQuery("DeploymentRequest.awaitingDMNBefore", DeploymentRequest.class)
+                .setParameter(CREATED_AT_PARAM, createdBefore)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Claims a request for dispatch, so that no other Fleet Manager dispatches it until the lease expires.
+     *
+     * @param request - The request as it was listed
+     * @param leaseUntil - The time at which the request becomes due again should this dispatch not complete
+     * @return - true if the request was claimed, false if it was claimed or completed elsewhere in the meantime
+     */
+    public boolean claim(DeploymentRequest request, ZonedDateTime leaseUntil) {
+        Parameters params = Parameters.with(ID_PARAM, request.getId()).and(ATTEMPTS_PARAM, request.getAttempts()).and(LEASE_UNTIL_PARAM, leaseUntil);
+        return update("#DeploymentRequest.claim", params) > 0;
+    }
+
+    /**
+     * Records a failed dispatch of a request, which is retried from the given time.
+     *
+     * @param request - The request as it was listed before it was claimed
+     * @param retryAt - The time from which the request can be dispatched again
+     * @param lastError - A description of the failure
+     */
+    public void retry(DeploymentRequest request, ZonedDateTime retryAt, String lastError) {
+        update("#DeploymentRequest.retry", claimed(request).and(AVAILABLE_AT_PARAM, retryAt).and(LAST_ERROR_PARAM, lastError));
+    }
+
+    /**
+     * Removes a request once its dispatch has concluded.
+     *
+     * @param request - The request as it was listed before it was claimed
+     * @return - true if the request was removed, false if it was claimed again after the lease expired
+     */
+    public boolean complete(DeploymentRequest request) {
+        return delete("#DeploymentRequest.complete", claimed(request)) > 0;
+    }
+
+    /**
+     * Removes a request that is still waiting for the DMN of its DecisionVersion to be stored.
+     *
+     * @param request - The request as it was listed
+     * @return - true if the request was removed, false if it was released in the meantime
+     */
+    public boolean deleteAwaitingDMN(DeploymentRequest request) {
+        return delete("#DeploymentRequest.deleteAwaitingDMN", Parameters.with(ID_PARAM, request.getId())) > 0;
+    }
+
+    /**
+     * Removes any pending request to deploy the given DecisionVersion.
+     *
+     * @param decisionVersion - The DecisionVersion
+     */
+    public void deleteByDecisionVersion(DecisionVersion decisionVersion) {
+        delete("#DeploymentRequest.deleteByDecisionVersion", decisionVersionParams(decisionVersion));
+    }
+
+    /**
+     * Matches the request only while it is still held by the claim made from the listed request, so that the outcome
+     * of a dispatch whose lease expired does not overwrite a later dispatch.
+     */
+    private static Parameters claimed(DeploymentRequest request) {
+        return Parameters.with(ID_PARAM, request.getId()).and(ATTEMPTS_PARAM, request.getAttempts() + 1);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Inserts rows in a transaction of their own, so that a row inserted concurrently by another transaction only fails
+ * the insert and not the transaction of the caller.
+ */
+@ApplicationScoped
+public class RowInserter {
+
+    private final EntityManager entityManager;
+
+    @Inject
+    public RowInserter(EntityManager entityManager) {
+        requireNonNull(entityManager, "entityManager cannot be null");
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Inserts the given entity and commits it immediately.
+     *
+     * @param entity - The entity to insert
+     * @throws javax.persistence.PersistenceException if the row already exists
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void insert(Object entity) {
+        entityManager.persist(entity);
+        entityManager.flush();
+    }
+}
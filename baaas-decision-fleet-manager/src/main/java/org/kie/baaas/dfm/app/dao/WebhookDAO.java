@@ -1,12 +1,15 @@
 package org.kie.baaas.dfm.app.dao;
 
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.transaction.Transactional;
 
+import org.kie.baaas.dfm.app.exceptions.InvalidPageCursorException;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.model.webhook.Webhook;
 
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
@@ -22,8 +25,39 @@ public class WebhookDAO implements PanacheRepository<Webhook> {
     public ListResult<Webhook> findByCustomer(String customerId, int page, int size) {
         Parameters params = Parameters.with("customerId", customerId);
         long count = find("#Webhook.byCustomerId", params).count();
-        List<Webhook> webhooks = find("#Webhook.byCustomerId", params).page(page, size).list();
-        return new ListResult<Webhook>(webhooks, page, count);
+        // One more than the page holds, to find out whether there is a next page
+        List<Webhook> webhooks = find("#Webhook.listByCustomerId", params).range(page * size, page * size + size).list();
+        return toListResult(webhooks, page, count, size);
+    }
+
+    /**
+     * Lists the Webhooks of the customer that follow the given cursor, ordered by URL.
+     *
+     * @param customerId - The customer id
+     * @param cursor - The position to continue the listing from
+     * @param size - The maximum number of Webhooks to return
+     * @return - The page of Webhooks following the cursor
+     */
+    public ListResult<Webhook> findByCustomer(String customerId, PageCursor cursor, int size) {
+        URL url;
+        try {
+            url = new URL(cursor.getKey());
+        } catch (MalformedURLException e) {
+            throw new InvalidPageCursorException("Invalid page cursor '" + cursor.encode() + "' for Webhooks", e);
+        }
+
+        Parameters params = Parameters.with("customerId", customerId).and("url", url).and("id", cursor.getId());
+        List<Webhook> webhooks = find("#Webhook.listByCustomerIdAfter", params).range(0, size).list();
+        return toListResult(webhooks, cursor.getPage(), cursor.getTotal(), size);
+    }
+
+    private ListResult<Webhook> toListResult(List<Webhook> webhooks, long page, long total, int size) {
+        if (webhooks.size() <= size) {
+            return new ListResult<>(webhooks, page, total);
+        }
+        List<Webhook> items = webhooks.subList(0, size);
+        Webhook last = items.get(size - 1);
+        return new ListResult<>(items, page, total, new PageCursor(page + 1, total, last.getUrl().toExternalForm(), last.getId()));
     }
 
     public List<Webhook> findByCustomerIdAndWebhookId(String customerId, String webhookId) {
@@ -0,0 +1,179 @@
+package org.kie.baaas.dfm.app.dao;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.transaction.Transactional;
+
+import org.kie.baaas.dfm.app.model.webhook.Webhook;
+import org.kie.baaas.dfm.app.model.webhook.WebhookDelivery;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepositoryBase;
+import io.quarkus.panache.common.Parameters;
+
+/**
+ * DAO implementation for the queue of pending and dead-lettered Webhook deliveries.
+ */
+@ApplicationScoped
+@Transactional
+public class WebhookDeliveryDAO implements PanacheRepositoryBase<WebhookDelivery, String> {
+
+    private static final String ATTEMPTS_PARAM = "attempts";
+
+    private static final String AVAILABLE_AT_PARAM = "availableAt";
+
+    private static final String CUSTOMER_ID_PARAM = "customerId";
+
+    private static final String DEAD_AT_PARAM = "deadAt";
+
+    private static final String EVENT_ID_PARAM = "eventId";
+
+    private static final String ID_PARAM = "id";
+
+    private static final String LAST_ERROR_PARAM = "lastError";
+
+    private static final String LEASE_UNTIL_PARAM = "leaseUntil";
+
+    private static final String NOW_PARAM = "now";
+
+    private static final String PAYLOAD_PARAM = "payload";
+
+    private static final String URL_PARAM = "url";
+
+    private static final String WEBHOOK_ID_PARAM = "webhookId";
+
+    /**
+     * Records the delivery of a CloudEvent to the given Webhook in the current transaction, so that the delivery is
+     * recorded if and only if the change the CloudEvent reports is committed. A CloudEvent is only delivered once to a
+     * Webhook: enqueueing it again violates the unique key on the Webhook and CloudEvent ids.
+     *
+     * @param webhook - The Webhook to deliver the CloudEvent to
+     * @param eventId - The id of the CloudEvent
+     * @param payload - The encoded CloudEvent
+     * @param now - The time of the event
+     * @return - true if the delivery was recorded, false if the Webhook no longer exists
+     */
+    public boolean enqueue(Webhook webhook, String eventId, byte[] payload, ZonedDateTime now) {
+        return getEntityManager().createNamedQuery("WebhookDelivery.enqueue")
+                .setParameter(ID_PARAM, UUID.randomUUID().toString())
+                .setParameter(WEBHOOK_ID_PARAM, webhook.getId())
+                .setParameter(CUSTOMER_ID_PARAM, webhook.getCustomerId())
+                .setParameter(EVENT_ID_PARAM, eventId)
+                .setParameter(URL_PARAM, webhook.getUrl().toExternalForm())
+                .setParameter(PAYLOAD_PARAM, payload)
+                .setParameter(NOW_PARAM, now)
+                .executeUpdate() > 0;
+    }
+
+    /**
+     * Lists the deliveries that are due to be sent, oldest first.
+     *
+     * @param now - The current time
+     * @param limit - The maximum number of deliveries to return
+     * @return - The due deliveries
+     */
+    public List<WebhookDelivery> findDue(ZonedDateTime now, int limit) {
+        return getEntityManager().createNamedQuery("WebhookDelivery.due", WebhookDelivery.class)
+                .setParameter(NOW_PARAM, now)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Claims a delivery, so that no other Fleet Manager sends it until the lease expires.
+     *
+     * @param delivery - The delivery as it was listed
+     * @param leaseUntil - The time at which the delivery becomes due again should this attempt not complete
+     * @return - true if the delivery was claimed, false if it was claimed or completed elsewhere in the meantime
+     */
+    public boolean claim(WebhookDelivery delivery, ZonedDateTime leaseUntil) {
+        Parameters params = Parameters.with(ID_PARAM, delivery.getId()).and(ATTEMPTS_PARAM, delivery.getAttempts()).and(LEASE_UNTIL_PARAM, leaseUntil);
+        return update("#WebhookDelivery.claim", params) > 0;
+    }
+
+    /**
+     * Postpones a delivery that was not sent, without using up an attempt.
+     *
+     * @param delivery - The delivery as it was listed
+     * @param availableAt - The time from which the delivery can be sent
+     */
+    public void defer(WebhookDelivery delivery, ZonedDateTime availableAt) {
+        update("#WebhookDelivery.defer", Parameters.with(ID_PARAM, delivery.getId()).and(ATTEMPTS_PARAM, delivery.getAttempts()).and(AVAILABLE_AT_PARAM, availableAt));
+    }
+
+    /**
+     * Gives back a claimed delivery that was not sent after all, without using up an attempt.
+     *
+     * @param delivery - The delivery as it was listed before it was claimed
+     * @param availableAt - The time from which the delivery can be sent
+     */
+    public void unclaim(WebhookDelivery delivery, ZonedDateTime availableAt) {
+        update("#WebhookDelivery.unclaim", claimed(delivery).and(AVAILABLE_AT_PARAM, availableAt));
+    }
+
+    /**
+     * Removes a delivery that was accepted by the Webhook.
+     *
+     * @param delivery - The delivery as it was listed before it was claimed
+     */
+    public void complete(WebhookDelivery delivery) {
+        delete("#WebhookDelivery.complete", claimed(delivery));
+    }
+
+    /**
+     * Records a failed attempt of a delivery, which is retried from the given time.
+     *
+     * @param delivery - The delivery as it was listed before it was claimed
+     * @param retryAt - The time from which the delivery can be sent again
+     * @param lastError - A description of the failure
+     */
+    public void retry(WebhookDelivery delivery, ZonedDateTime retryAt, String lastError) {
+        update("#WebhookDelivery.retry", claimed(delivery).and(AVAILABLE_AT_PARAM, retryAt).and(LAST_ERROR_PARAM, lastError));
+    }
+
+    /**
+     * Moves a delivery that exhausted its attempts to the dead letters, from which it is only sent once replayed.
+     *
+     * @param delivery - The delivery as it was listed before it was claimed
+     * @param deadAt - The time of the last attempt
+     * @param lastError - A description of the failure
+     */
+    public void deadLetter(WebhookDelivery delivery, ZonedDateTime deadAt, String lastError) {
+        update("#WebhookDelivery.deadLetter", claimed(delivery).and(DEAD_AT_PARAM, deadAt).and(LAST_ERROR_PARAM, lastError));
+    }
+
+    /**
+     * Makes the dead-lettered deliveries due again, with a fresh set of attempts.
+     *
+     * @param customerId - The customer to replay the deliveries of, or null for the deliveries of all customers
+     * @param now - The time from which the deliveries can be sent
+     * @return - The number of deliveries replayed
+     */
+    public int replay(String customerId, ZonedDateTime now) {
+        if (customerId == null) {
+            return update("#WebhookDelivery.replay", Parameters.with(NOW_PARAM, now));
+        }
+        return update("#WebhookDelivery.replayByCustomer", Parameters.with(CUSTOMER_ID_PARAM, customerId).and(NOW_PARAM, now));
+    }
+
+    /**
+     * Makes a dead-lettered delivery due again, with a fresh set of attempts.
+     *
+     * @param id - The id of the delivery
+     * @param now - The time from which the delivery can be sent
+     * @return - true if the delivery was replayed, false if there is no such dead-lettered delivery
+     */
+    public boolean replayById(String id, ZonedDateTime now) {
+        return update("#WebhookDelivery.replayById", Parameters.with(ID_PARAM, id).and(NOW_PARAM, now)) > 0;
+    }
+
+    /**
+     * Matches the delivery only while it is still held by the claim made from the listed delivery, so that the outcome
+     * of an attempt whose lease expired does not overwrite a later attempt.
+     */
+    private static Parameters claimed(WebhookDelivery delivery) {
+        return Parameters.with(ID_PARAM, delivery.getId()).and(ATTEMPTS_PARAM, delivery.getAttempts() + 1);
+    }
+}
@@ -31,4 +31,14 @@ public interface DecisionFleetShardSelector {
      * @return - The FleetShard that the Decision should be deployed to
      */
     DecisionFleetShard selectFleetShardForDeployment(Decision decision);
+
+    /**
+     * Chooses the FleetShard that a new Decision will be placed on. Every version of the Decision is
+     * subsequently deployed to that FleetShard. Must be called in the transaction that creates the Decision.
+     *
+     * @param decision - The Decision that is being created
+     * @return - The FleetShard that the Decision is placed on
+     * @throws NoFleetShardCapacityException - If no FleetShard can accept the Decision
+     */
+    DecisionFleetShard placeDecision(Decision decision);
 }
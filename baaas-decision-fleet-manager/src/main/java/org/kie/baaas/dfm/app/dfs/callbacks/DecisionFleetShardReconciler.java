@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dfs.callbacks;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.kie.baaas.dfm.app.dao.DecisionVersionDAO;
+import org.kie.baaas.dfm.app.dfs.DecisionFleetShardSelector;
+import org.kie.baaas.dfm.app.dfs.client.DecisionFleetShardClientFactory;
+import org.kie.baaas.dfm.app.dfs.client.DecisionFleetShardInformer;
+import org.kie.baaas.dfm.app.model.Decision;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfs.api.Webhook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Periodically concludes deployments whose callback from the Fleet Shard never arrived, so that a lost callback
+ * does not leave a DecisionVersion BUILDING and block further lifecycle operations on its Decision.
+ * <p>
+ * The outcome of each deployment is read from the {@link DecisionFleetShardInformer} of its Fleet Shard and processed
+ * exactly as the callback would have been. Only DecisionVersions that have never been deployed are reconciled, as the
+ * resources of a DecisionVersion being made current again already report the outcome of its earlier deployment.
+ * Each run continues from where the previous one stopped, so DecisionVersions that cannot be resolved, such as those
+ * on a Fleet Shard that is gone, do not keep the newer ones from being reconciled.
+ */
+@ApplicationScoped
+public class DecisionFleetShardReconciler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionFleetShardReconciler.class);
+
+    private final DecisionVersionDAO decisionVersionDAO;
+
+    private final DecisionFleetShardSelector fleetShardSelector;
+
+    private final DecisionFleetShardClientFactory clientFactory;
+
+    private final DecisionFleetShardCallbackResource callbackResource;
+
+    @ConfigProperty(name = "baaas.dfm.dfs.reconciler.batch-size", defaultValue = "100")
+    int batchSize;
+
+    // Time allowed for the callback to arrive before the deployment is reconciled
+    @ConfigProperty(name = "baaas.dfm.dfs.reconciler.callback-grace", defaultValue = "2M")
+    Duration callbackGrace;
+
+    // The last DecisionVersion reconciled by the previous run, or null to start again from the oldest
+    private DecisionVersion cursor;
+
+    @Inject
+    public DecisionFleetShardReconciler(DecisionVersionDAO decisionVersionDAO, DecisionFleetShardSelector fleetShardSelector, DecisionFleetShardClientFactory clientFactory,
+            DecisionFleetShardCallbackResource callbackResource) {
+        requireNonNull(decisionVersionDAO, "decisionVersionDAO cannot be null");
+        requireNonNull(fleetShardSelector, "fleetShardSelector cannot be null");
+        requireNonNull(clientFactory, "clientFactory cannot be null");
+        requireNonNull(callbackResource, "callbackResource cannot be null");
+        this.decisionVersionDAO = decisionVersionDAO;
+        this.fleetShardSelector = fleetShardSelector;
+        this.clientFactory = clientFactory;
+        this.callbackResource = callbackResource;
+    }
+
+    @Scheduled(every = "{baaas.dfm.dfs.reconciler.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reconcile() {
+        ZonedDateTime submittedBefore = ZonedDateTime.now(ZoneOffset.UTC).minus(callbackGrace);
+        try {
+            List<DecisionVersion> awaitingDeployment = decisionVersionDAO.listAwaitingDeployment(submittedBefore, cursor, batchSize);
+            awaitingDeployment.forEach(this::reconcile);
+            cursor = awaitingDeployment.size() < batchSize ? null : awaitingDeployment.get(awaitingDeployment.size() - 1);
+        } catch (Exception e) {
+            LOGGER.error("Failed to reconcile deployments with the Decision Fleet Shard.", e);
+        }
+    }
+
+    private void reconcile(DecisionVersion decisionVersion) {
+        Decision decision = decisionVersion.getDecision();
+        try {
+            DecisionFleetShardInformer informer = clientFactory.getInformer(fleetShardSelector.selectFleetShardForDeployment(decision));
+            if (!informer.hasSynced()) {
+                return;
+            }
+
+            Optional<Webhook> outcome = informer.getOutcome(decision.getCustomerId(), decision.getId(), decisionVersion.getVersion());
+            if (outcome.isPresent()) {
+                LOGGER.info("No callback received for Decision with id '{}' at version '{}' for customer '{}'. Reconciling phase '{}' from the Decision Fleet Shard.",
+                        decision.getId(), decisionVersion.getVersion(), decision.getCustomerId(), outcome.get().getPhase());
+                callbackResource.processCallback(outcome.get(), decision.getId(), decisionVersion.getVersion());
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to reconcile Decision with id '{}' at version '{}' for customer '{}'.", decision.getId(), decisionVersion.getVersion(), decision.getCustomerId(), e);
+        }
+    }
+}
@@ -15,39 +15,231 @@
 
 package org.kie.baaas.dfm.app.dfs.client;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
 import org.kie.baaas.dfm.app.dfs.DecisionFleetShardClient;
 import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.fabric8.kubernetes.client.Config;
 import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.HttpClientAware;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.scheduler.Scheduled;
+
+import okhttp3.OkHttpClient;
 
 import static java.util.Objects.requireNonNull;
 
 /**
- * Creates a client to interact with the given Fleet Shard
+ * Creates a client to interact with the given Fleet Shard.
+ * <p>
+ * The underlying KubernetesClient, with its connection pool and dispatcher threads, is created once per Fleet Shard
+ * and shared by all clients for that Fleet Shard. It is rebuilt if the Kubernetes API URL of the Fleet Shard changes.
+ * The replaced KubernetesClient is closed after a delay, so requests still using it can complete, or once the
+ * application shuts down. Namespaces verified to exist on the Fleet Shard are
+ * remembered alongside the KubernetesClient, so they are only looked up once.
+ * <p>
+ * The {@link DecisionFleetShardInformer} of a Fleet Shard is started on first use and shares its KubernetesClient.
  */
 @ApplicationScoped
 public class DecisionFleetShardClientFactory {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionFleetShardClientFactory.class);
+
+    private static final String UMETER_DAAAS_DFS_CLIENT_CONNECTIONS = "daaas.dfs.client.connections";
+    private static final String UMETER_DAAAS_DFS_CLIENT_IDLE_CONNECTIONS = "daaas.dfs.client.connections.idle";
+    private static final String UMETER_DAAAS_DFS_CLIENT_RUNNING_CALLS = "daaas.dfs.client.calls.running";
+    private static final String UMETER_DAAAS_DFS_CLIENT_QUEUED_CALLS = "daaas.dfs.client.calls.queued";
+    private static final String FLEET_SHARD_TAG = "fleetShard";
+
     private final DecisionFleetManagerConfig fmConfig;
 
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Integer, CachedClient> clients = new ConcurrentHashMap<>();
+
+    // clients replaced by a client for a new Kubernetes API URL, in the order they were replaced
+    private final Queue<CachedClient> retiredClients = new ConcurrentLinkedQueue<>();
+
+    @ConfigProperty(name = "baaas.dfm.dfs.informer.resync", defaultValue = "10M")
+    Duration informerResync;
+
+    @ConfigProperty(name = "baaas.dfm.dfs.client.close-delay", defaultValue = "1M")
+    Duration closeDelay;
+
     @Inject
-    public DecisionFleetShardClientFactory(DecisionFleetManagerConfig config) {
+    public DecisionFleetShardClientFactory(DecisionFleetManagerConfig config, MeterRegistry meterRegistry) {
         requireNonNull(config, "config cannot be null");
+        requireNonNull(meterRegistry, "meterRegistry cannot be null");
         this.fmConfig = config;
+        this.meterRegistry = meterRegistry;
     }
 
     public DecisionFleetShardClient createClientFor(DecisionFleetShard fleetShard) {
+        CachedClient cached = getCachedClient(fleetShard);
+        return new DefaultDecisionFleetShardClient(this.fmConfig, cached.client, fleetShard, cached.verifiedNamespaces);
+    }
+
+    /**
+     * Returns the informer watching the Decisions of the given Fleet Shard, starting it on first use.
+     *
+     * @param fleetShard - The Fleet Shard to watch
+     * @return - The informer for the Fleet Shard
+     */
+    public DecisionFleetShardInformer getInformer(DecisionFleetShard fleetShard) {
+        return getCachedClient(fleetShard).getInformer(informerResync);
+    }
+
+    /**
+     * Returns the cached KubernetesClient for the given Fleet Shard, creating it if the Fleet Shard has no client yet
+     * or its Kubernetes API URL has changed since the client was created.
+     *
+     * @param fleetShard - The Fleet Shard to return a client for
+     * @return - The KubernetesClient for the Fleet Shard
+     */
+    KubernetesClient getKubernetesClient(DecisionFleetShard fleetShard) {
+        return getCachedClient(fleetShard).client;
+    }
+
+    private CachedClient getCachedClient(DecisionFleetShard fleetShard) {
+        String kubernetesApiUrl = fleetShard.getKubernetesApiUrl();
+        CachedClient cached = clients.get(fleetShard.getId());
+        if (cached != null && cached.kubernetesApiUrl.equals(kubernetesApiUrl)) {
+            return cached;
+        }
+
+        CachedClient[] replaced = new CachedClient[1];
+        CachedClient current = clients.compute(fleetShard.getId(), (id, existing) -> {
+            if (existing != null && existing.kubernetesApiUrl.equals(kubernetesApiUrl)) {
+                return existing;
+            }
+            if (existing != null) {
+                // the gauges of the new client share the name and tags, so Micrometer would return these otherwise
+                existing.gauges.forEach(meterRegistry::remove);
+                existing.retiredAt = Instant.now();
+                replaced[0] = existing;
+            }
+            LOGGER.info("Creating Kubernetes client for Decision Fleet Shard '{}' at '{}'.", id, kubernetesApiUrl);
+            KubernetesClient client = newKubernetesClient(kubernetesApiUrl);
+            return new CachedClient(kubernetesApiUrl, client, registerGauges(id, client));
+        });
+
+        if (replaced[0] != null) {
+            LOGGER.info("Kubernetes API URL of Decision Fleet Shard '{}' changed from '{}' to '{}'. Closing the previous client in '{}'.",
+                    fleetShard.getId(), replaced[0].kubernetesApiUrl, kubernetesApiUrl, closeDelay);
+            retiredClients.add(replaced[0]);
+        }
+        return current;
+    }
+
+    KubernetesClient newKubernetesClient(String kubernetesApiUrl) {
+        Config config = new ConfigBuilder().withMasterUrl(kubernetesApiUrl).build();
+        return new DefaultKubernetesClient(config);
+    }
+
+    private List<Meter> registerGauges(int fleetShardId, KubernetesClient client) {
+        if (!(client instanceof HttpClientAware)) {
+            return List.of();
+        }
+
+        OkHttpClient httpClient = ((HttpClientAware) client).getHttpClient();
+        Tags tags = Tags.of(FLEET_SHARD_TAG, String.valueOf(fleetShardId));
+        return List.of(
+                Gauge.builder(UMETER_DAAAS_DFS_CLIENT_CONNECTIONS, httpClient, c -> c.connectionPool().connectionCount()).tags(tags).register(meterRegistry),
+                Gauge.builder(UMETER_DAAAS_DFS_CLIENT_IDLE_CONNECTIONS, httpClient, c -> c.connectionPool().idleConnectionCount()).tags(tags).register(meterRegistry),
+                Gauge.builder(UMETER_DAAAS_DFS_CLIENT_RUNNING_CALLS, httpClient, c -> c.dispatcher().runningCallsCount()).tags(tags).register(meterRegistry),
+                Gauge.builder(UMETER_DAAAS_DFS_CLIENT_QUEUED_CALLS, httpClient, c -> c.dispatcher().queuedCallsCount()).tags(tags).register(meterRegistry));
+    }
+
+    /**
+     * Closes the clients that were replaced at least the close delay ago.
+     */
+    @Scheduled(every = "{baaas.dfm.dfs.client.close-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void closeRetiredClients() {
+        Instant retiredBefore = Instant.now().minus(closeDelay);
+        for (Iterator<CachedClient> it = retiredClients.iterator(); it.hasNext();) {
+            CachedClient retired = it.next();
+            if (retired.retiredAt.isAfter(retiredBefore)) {
+                break;
+            }
+            it.remove();
+            close(retired);
+        }
+    }
+
+    private void close(CachedClient cached) {
+        try {
+            cached.closeInformer();
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to stop informer for '{}'.", cached.kubernetesApiUrl, e);
+        }
+        try {
+            cached.client.close();
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to close Kubernetes client for '{}'.", cached.kubernetesApiUrl, e);
+        }
+    }
+
+    @PreDestroy
+    void closeAll() {
+        clients.values().forEach(cached -> {
+            cached.gauges.forEach(meterRegistry::remove);
+            close(cached);
+        });
+        clients.clear();
+        retiredClients.forEach(this::close);
+        retiredClients.clear();
+    }
+
+    private static class CachedClient {
+
+        private final String kubernetesApiUrl;
+        private final KubernetesClient client;
+        private final List<Meter> gauges;
+        // namespaces of the Fleet Shard that are known to exist
+        private final Set<String> verifiedNamespaces = ConcurrentHashMap.newKeySet();
+        private DecisionFleetShardInformer informer;
+        private volatile Instant retiredAt;
+
+        private CachedClient(String kubernetesApiUrl, KubernetesClient client, List<Meter> gauges) {
+            this.kubernetesApiUrl = kubernetesApiUrl;
+            this.client = client;
+            this.gauges = gauges;
+        }
 
-        Config config = new ConfigBuilder().withMasterUrl(fleetShard.getKubernetesApiUrl()).build();
-        KubernetesClient client = new DefaultKubernetesClient(config);
+        private synchronized DecisionFleetShardInformer getInformer(Duration resync) {
+            if (informer == null) {
+                informer = new DecisionFleetShardInformer(client, resync.toMillis());
+            }
+            return informer;
+        }
 
-        return new DefaultDecisionFleetShardClient(this.fmConfig, client, fleetShard);
+        private synchronized void closeInformer() {
+            if (informer != null) {
+                informer.close();
+                informer = null;
+            }
+        }
     }
 }
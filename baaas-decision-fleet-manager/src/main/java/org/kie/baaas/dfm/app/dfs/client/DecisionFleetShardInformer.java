@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dfs.client;
+
+import java.net.URI;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kie.baaas.dfs.api.Decision;
+import org.kie.baaas.dfs.api.DecisionVersion;
+import org.kie.baaas.dfs.api.Phase;
+import org.kie.baaas.dfs.api.Webhook;
+import org.kie.baaas.dfs.api.WebhookBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.kubernetes.client.utils.Serialization;
+
+/**
+ * Watches the Decision and DecisionVersion resources of a Fleet Shard through shared informers, so that the outcome of
+ * a deployment can be looked up in memory instead of querying the Kubernetes API per Decision.
+ * <p>
+ * DecisionVersion resources are indexed by the Decision id and version of the Fleet Manager callback in their spec.
+ * A deployment has concluded once the Ready condition of the DecisionVersion is True, or False with a failure reason.
+ */
+public class DecisionFleetShardInformer implements AutoCloseable {
+
+    static final String CALLBACK_INDEX = "callback";
+
+    private static final Pattern CALLBACK_PATTERN = Pattern.compile("/callback/decisions/([^/]+)/versions/(\\d+)$");
+
+    private static final String READY_CONDITION = "Ready";
+
+    private static final String CONDITION_TRUE = "True";
+
+    private static final String CONDITION_FALSE = "False";
+
+    private static final String FAILED_REASON_SUFFIX = "Failed";
+
+    private static final String DECISION_KIND = "Decision";
+
+    private final SharedInformerFactory informerFactory;
+
+    private final SharedIndexInformer<Decision> decisions;
+
+    private final SharedIndexInformer<DecisionVersion> versions;
+
+    DecisionFleetShardInformer(KubernetesClient kubernetesClient, long resyncPeriodMillis) {
+        this.informerFactory = kubernetesClient.informers();
+        this.decisions = informerFactory.sharedIndexInformerFor(Decision.class, resyncPeriodMillis);
+        this.versions = informerFactory.sharedIndexInformerFor(DecisionVersion.class, resyncPeriodMillis);
+        this.versions.addIndexers(Map.of(CALLBACK_INDEX, version -> callbackKeys(tree(version))));
+        informerFactory.startAllRegisteredInformers();
+    }
+
+    /**
+     * Whether the informers have received the initial state of the Fleet Shard. Until then a deployment that has
+     * concluded may not be reported.
+     *
+     * @return - true if the informers are in sync with the Fleet Shard
+     */
+    public boolean hasSynced() {
+        return decisions.hasSynced() && versions.hasSynced();
+    }
+
+    /**
+     * Looks up the outcome of deploying the given version of a Decision.
+     *
+     * @param customerId - The customer that owns the Decision
+     * @param decisionId - The id of the Decision
+     * @param version - The version of the Decision
+     * @return - The outcome as the Fleet Shard reports it in its callback, or empty if the deployment has not concluded
+     */
+    public Optional<Webhook> getOutcome(String customerId, String decisionId, long version) {
+        for (DecisionVersion resource : versions.getIndexer().byIndex(CALLBACK_INDEX, callbackKey(decisionId, version))) {
+            JsonNode versionResource = tree(resource);
+            Decision decision = decisions.getIndexer().getByKey(resource.getMetadata().getNamespace() + "/" + decisionName(versionResource));
+            Optional<Webhook> outcome = outcome(customerId, version, versionResource, decision == null ? null : tree(decision));
+            if (outcome.isPresent()) {
+                return outcome;
+            }
+        }
+        return Optional.empty();
+    }
+
+    static String callbackKey(String decisionId, long version) {
+        return decisionId + "/" + version;
+    }
+
+    static List<String> callbackKeys(JsonNode versionResource) {
+        List<String> keys = new ArrayList<>();
+        for (JsonNode webhook : versionResource.path("spec").path("webhooks")) {
+            Matcher matcher = CALLBACK_PATTERN.matcher(webhook.asText());
+            if (matcher.find()) {
+                keys.add(callbackKey(matcher.group(1), Long.parseLong(matcher.group(2))));
+            }
+        }
+        return keys;
+    }
+
+    static Optional<Webhook> outcome(String customerId, long version, JsonNode versionResource, JsonNode decisionResource) {
+        JsonNode ready = readyCondition(versionResource);
+        if (ready == null) {
+            return Optional.empty();
+        }
+
+        Phase phase;
+        String status = ready.path("status").asText();
+        if (CONDITION_TRUE.equals(status)) {
+            if (decisionResource == null) {
+                // The endpoints of the Decision are not known yet
+                return Optional.empty();
+            }
+            phase = Phase.CURRENT;
+        } else if (CONDITION_FALSE.equals(status) && ready.path("reason").asText().endsWith(FAILED_REASON_SUFFIX)) {
+            phase = Phase.FAILED;
+        } else {
+            return Optional.empty();
+        }
+
+        JsonNode metadata = versionResource.path("metadata");
+        WebhookBuilder webhook = new WebhookBuilder()
+                .withAt(ready.path("lastTransitionTime").asText(ZonedDateTime.now(ZoneOffset.UTC).toString()))
+                .withCustomer(customerId)
+                .withDecision(decisionName(versionResource))
+                .withNamespace(metadata.path("namespace").asText(null))
+                .withVersionResource(metadata.path("name").asText(null))
+                .withVersion(String.valueOf(version))
+                .withPhase(phase)
+                .withMessage(ready.path("message").asText(null));
+        if (Phase.CURRENT == phase) {
+            webhook.withVersionEndpoint(endpoint(versionResource))
+                    .withCurrentEndpoint(endpoint(decisionResource));
+        }
+        return Optional.of(webhook.build());
+    }
+
+    private static JsonNode readyCondition(JsonNode resource) {
+        for (JsonNode condition : resource.path("status").path("conditions")) {
+            if (READY_CONDITION.equals(condition.path("type").asText())) {
+                return condition;
+            }
+        }
+        return null;
+    }
+
+    private static String decisionName(JsonNode versionResource) {
+        for (JsonNode owner : versionResource.path("metadata").path("ownerReferences")) {
+            if (DECISION_KIND.equals(owner.path("kind").asText())) {
+                return owner.path("name").asText(null);
+            }
+        }
+        return null;
+    }
+
+    private static URI endpoint(JsonNode resource) {
+        JsonNode endpoint = resource.path("status").path("endpoint");
+        return endpoint.isTextual() ? URI.create(endpoint.asText()) : null;
+    }
+
+    private static JsonNode tree(HasMetadata resource) {
+        return Serialization.jsonMapper().valueToTree(resource);
+    }
+
+    @Override
+    public void close() {
+        informerFactory.stopAllRegisteredInformers();
+    }
+}
@@ -17,6 +17,8 @@ package org.kie.baaas.dfm.app.dfs.client;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
 import org.kie.baaas.dfm.app.dfs.DecisionFleetShardClient;
@@ -34,16 +36,21 @@ import org.slf4j.LoggerFactory;
 
 import io.fabric8.kubernetes.api.model.Namespace;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Status;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.dsl.Resource;
 import io.fabric8.kubernetes.client.utils.KubernetesResourceUtil;
 
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 import static java.util.Collections.singleton;
 
 public class DefaultDecisionFleetShardClient implements DecisionFleetShardClient {
 
     private static final String CALLBACK_URL_SUFFIX = "/callback/decisions/%s/versions/%s";
 
+    private static final String NAMESPACES_KIND = "namespaces";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDecisionFleetShardClient.class);
 
     private final KubernetesClient kubernetesClient;
@@ -52,19 +59,36 @@ public class DefaultDecisionFleetShardClient implements DecisionFleetShardClient
 
     private final DecisionFleetManagerConfig config;
 
+    private final Set<String> verifiedNamespaces;
+
     public DefaultDecisionFleetShardClient(DecisionFleetManagerConfig config, KubernetesClient kubernetesClient, DecisionFleetShard fleetShard) {
+        this(config, kubernetesClient, fleetShard, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * @param verifiedNamespaces - Namespaces known to exist on the Fleet Shard, shared by all clients of the Fleet Shard
+     */
+    public DefaultDecisionFleetShardClient(DecisionFleetManagerConfig config, KubernetesClient kubernetesClient, DecisionFleetShard fleetShard,
+            Set<String> verifiedNamespaces) {
         this.kubernetesClient = kubernetesClient;
         this.fleetShard = fleetShard;
         this.config = config;
+        this.verifiedNamespaces = verifiedNamespaces;
     }
 
     private String getNamespace() {
 
-        Namespace namespace = kubernetesClient.namespaces().withName(fleetShard.getNamespace()).get();
+        String name = fleetShard.getNamespace();
+        if (verifiedNamespaces.contains(name)) {
+            return name;
+        }
+
+        Namespace namespace = kubernetesClient.namespaces().withName(name).get();
         if (namespace == null) {
-            throw new DecisionFleetManagerException("Cannot locate namespace '" + fleetShard.getNamespace() + "' for Decision Fleet Shard.");
+            throw new DecisionFleetManagerException("Cannot locate namespace '" + name + "' for Decision Fleet Shard.");
         }
 
+        verifiedNamespaces.add(name);
         return namespace.getMetadata().getName();
     }
 
@@ -73,7 +97,26 @@ public class DefaultDecisionFleetShardClient implements DecisionFleetShardClient
         String namespace = getNamespace();
         DecisionRequest decisionRequest = from(decisionVersion);
         LOGGER.info("Requesting deployment of Decision with name '{}' at version '{}' in namespace '{}'...", decisionRequest.getMetadata().getName(), decisionVersion.getVersion(), namespace);
-        kubernetesClient.customResources(DecisionRequest.class).inNamespace(namespace).createOrReplace(decisionRequest);
+        try {
+            kubernetesClient.customResources(DecisionRequest.class).inNamespace(namespace).createOrReplace(decisionRequest);
+        } catch (final KubernetesClientException e) {
+            if (isNamespaceNotFound(e, namespace)) {
+                // The namespace has been removed since it was verified
+                verifiedNamespaces.remove(namespace);
+                throw new DecisionFleetManagerException("Cannot locate namespace '" + namespace + "' for Decision Fleet Shard.", e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A 404 is also returned when the custom resource kind is not installed on the Fleet Shard, so only a 404 whose
+     * details name the namespace means that the namespace is gone.
+     */
+    private static boolean isNamespaceNotFound(KubernetesClientException e, String namespace) {
+        Status status = e.getStatus();
+        return e.getCode() == HTTP_NOT_FOUND && status != null && status.getDetails() != null
+                && NAMESPACES_KIND.equals(status.getDetails().getKind()) && namespace.equals(status.getDetails().getName());
     }
 
     private String getDecisionRequestName(DecisionVersion decisionVersion) {
@@ -114,67 +157,53 @@ public class DefaultDecisionFleetShardClient implements DecisionFleetShardClient
         return singleton(URI.create(callbackPath));
     }
 
-    private Resource<org.kie.baaas.dfs.api.DecisionVersion> getDecisionVersion(Deployment deployment) {
-
-        if (deployment != null) {
-            Namespace namespace = getDeploymentNamespace(deployment);
-            if (namespace != null) {
-                return kubernetesClient.customResources(org.kie.baaas.dfs.api.DecisionVersion.class).inNamespace(namespace.getMetadata().getName()).withName(deployment.getVersionName());
-            }
-        }
-
-        return null;
-    }
-
-    private Namespace getDeploymentNamespace(Deployment deployment) {
-        if (deployment != null && deployment.getNamespace() != null) {
-            return kubernetesClient.namespaces().withName(deployment.getNamespace()).get();
-        }
-
-        return null;
-    }
-
-    private Resource<org.kie.baaas.dfs.api.Decision> getDecision(Deployment deployment) {
-        if (deployment != null) {
-            Namespace namespace = getDeploymentNamespace(deployment);
-            if (namespace != null) {
-                return kubernetesClient.customResources(org.kie.baaas.dfs.api.Decision.class).inNamespace(namespace.getMetadata().getName()).withName(deployment.getName());
+    /**
+     * Deletes the given resource with a single request, treating a resource or namespace that no longer exists as
+     * already deleted.
+     *
+     * @return - true if the resource was deleted, false if it did not exist
+     */
+    private boolean delete(Resource<?> resource) {
+        try {
+            return Boolean.TRUE.equals(resource.delete());
+        } catch (final KubernetesClientException e) {
+            if (e.getCode() == HTTP_NOT_FOUND) {
+                return false;
             }
+            throw e;
         }
-
-        return null;
     }
 
     @Override
     public void delete(DecisionVersion decisionVersion) {
         Deployment deployment = decisionVersion.getDeployment();
-        org.kie.baaas.dfs.api.DecisionVersion deployedVersion = null;
-        Resource<org.kie.baaas.dfs.api.DecisionVersion> resource = getDecisionVersion(deployment);
-
-        if (resource != null) {
-            deployedVersion = resource.get();
+        if (deployment == null || deployment.getNamespace() == null || deployment.getVersionName() == null) {
+            return;
         }
 
-        if (deployedVersion != null) {
-            LOGGER.info("Deleting DecisionVersion '{}' from namespace '{}'", deployment.getVersionName(), deployment.getNamespace());
-            resource.delete();
+        LOGGER.info("Deleting DecisionVersion '{}' from namespace '{}'", deployment.getVersionName(), deployment.getNamespace());
+        boolean deleted = delete(kubernetesClient.customResources(org.kie.baaas.dfs.api.DecisionVersion.class)
+                .inNamespace(deployment.getNamespace())
+                .withName(deployment.getVersionName()));
+        if (!deleted) {
+            LOGGER.info("DecisionVersion '{}' did not exist in namespace '{}'", deployment.getVersionName(), deployment.getNamespace());
         }
     }
 
     @Override
     public void delete(Decision decision) {
         Deployment deployment = decision.getCurrentVersion().getDeployment();
-        org.kie.baaas.dfs.api.Decision deployedDecision = null;
-        Resource<org.kie.baaas.dfs.api.Decision> resource = getDecision(deployment);
-        if (resource != null) {
-            deployedDecision = resource.get();
+        if (deployment == null || deployment.getNamespace() == null || deployment.getName() == null) {
+            LOGGER.warn("Could not delete Decision with name '{}' from the fleet shard", decision.getName());
+            return;
         }
 
-        if (deployedDecision != null) {
-            LOGGER.info("Deleting Decision with name '{}' from namespace '{}'...", deployment.getName(), deployment.getNamespace());
-            resource.delete();
-        } else {
-            LOGGER.warn("Could not delete Decision with name '{}' from the fleet shard", decision.getName());
+        LOGGER.info("Deleting Decision with name '{}' from namespace '{}'...", deployment.getName(), deployment.getNamespace());
+        boolean deleted = delete(kubernetesClient.customResources(org.kie.baaas.dfs.api.Decision.class)
+                .inNamespace(deployment.getNamespace())
+                .withName(deployment.getName()));
+        if (!deleted) {
+            LOGGER.warn("Decision with name '{}' did not exist in namespace '{}'", deployment.getName(), deployment.getNamespace());
         }
     }
 }
@@ -15,28 +15,181 @@
 
 package org.kie.baaas.dfm.app.dfs.selector;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.Transactional;
 
+import org.kie.baaas.dfm.app.dao.DecisionDAO;
+import org.kie.baaas.dfm.app.dao.DecisionFleetShardCache;
 import org.kie.baaas.dfm.app.dao.DecisionFleetShardDAO;
+import org.kie.baaas.dfm.app.dao.DecisionFleetShardSnapshot;
 import org.kie.baaas.dfm.app.dfs.DecisionFleetShardSelector;
+import org.kie.baaas.dfm.app.dfs.NoFleetShardCapacityException;
+import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * Determines which Fleet Shard we will deploy the given Decision to.
+ * <p>
+ * Fleet Shards are resolved from the {@link DecisionFleetShardCache} rather than the database. New Decisions are
+ * placed across the registered Fleet Shards using the Decision counts of each Fleet Shard, which are refreshed
+ * periodically and whenever the Fleet Shard snapshot changes. A placed Decision is counted as soon as it is placed,
+ * so that concurrent creations see each other, and is uncounted if the transaction creating it rolls back. Until
+ * that transaction completes the Decision is carried over into refreshed counts, as the database does not have it
+ * yet. Once placed, every version of a Decision is deployed to the same Fleet Shard. Decisions created before
+ * placement existed are deployed to the default Fleet Shard.
  */
 @ApplicationScoped
 public class DefaultDecisionFleetShardSelector implements DecisionFleetShardSelector {
 
-    private final DecisionFleetShardDAO decisionFleetShardDAO;
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDecisionFleetShardSelector.class);
+
+    private final DecisionFleetShardCache decisionFleetShardCache;
+
+    private final DecisionDAO decisionDAO;
+
+    private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    // Placed Decisions whose creating transaction has not completed yet
+    private final List<PlacedDecision> pending = new ArrayList<>();
+
+    // Placed Decisions committed while counts were being loaded, which the loaded counts may not include
+    private final List<PlacedDecision> committedDuringRefresh = new ArrayList<>();
+
+    private FleetShardPlacement placement;
+
+    private long placementVersion;
+
+    private int refreshing;
 
     @Inject
-    public DefaultDecisionFleetShardSelector(DecisionFleetShardDAO decisionFleetShardDAO) {
-        this.decisionFleetShardDAO = decisionFleetShardDAO;
+    public DefaultDecisionFleetShardSelector(DecisionFleetShardCache decisionFleetShardCache, DecisionDAO decisionDAO,
+            TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        requireNonNull(decisionFleetShardCache, "decisionFleetShardCache cannot be null");
+        requireNonNull(decisionDAO, "decisionDAO cannot be null");
+        requireNonNull(transactionSynchronizationRegistry, "transactionSynchronizationRegistry cannot be null");
+        this.decisionFleetShardCache = decisionFleetShardCache;
+        this.decisionDAO = decisionDAO;
+        this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
     }
 
     public DecisionFleetShard selectFleetShardForDeployment(Decision decision) {
-        return decisionFleetShardDAO.findById(DecisionFleetShardDAO.DEFAULT_DFS_ID);
+        int fleetShardId = decision == null || decision.getFleetShardId() == null ? DecisionFleetShardDAO.DEFAULT_DFS_ID : decision.getFleetShardId();
+        DecisionFleetShard fleetShard = decisionFleetShardCache.getSnapshot().getFleetShard(fleetShardId);
+        if (fleetShard == null) {
+            // The Fleet Shard may have been registered since the snapshot was loaded
+            decisionFleetShardCache.invalidate();
+            fleetShard = decisionFleetShardCache.getSnapshot().getFleetShard(fleetShardId);
+        }
+        if (fleetShard == null) {
+            throw new DecisionFleetManagerException(String.format("Fleet Shard with id '%s' is not registered.", fleetShardId));
+        }
+        return fleetShard;
+    }
+
+    @Transactional(Transactional.TxType.MANDATORY)
+    public DecisionFleetShard placeDecision(Decision decision) {
+        DecisionFleetShardSnapshot snapshot = decisionFleetShardCache.getSnapshot();
+        if (isStale(snapshot)) {
+            refresh(snapshot);
+        }
+
+        PlacedDecision placed;
+        synchronized (this) {
+            DecisionFleetShard fleetShard = placement.place(decision.getCustomerId())
+                    .orElseThrow(() -> new NoFleetShardCapacityException("No Fleet Shard has capacity for a new Decision."));
+            placed = new PlacedDecision(fleetShard, decision.getCustomerId());
+            placement.count(placed.fleetShard.getId(), placed.customerId);
+            pending.add(placed);
+        }
+        completeOnTransactionEnd(placed);
+        LOGGER.debug("Placed Decision with name '{}' for customer with id '{}' on Fleet Shard with id '{}'", decision.getName(), decision.getCustomerId(),
+                placed.fleetShard.getId());
+        return placed.fleetShard;
+    }
+
+    @Scheduled(every = "{baaas.dfm.dfs.placement.refresh-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledRefresh() {
+        refresh(decisionFleetShardCache.getSnapshot());
+    }
+
+    private synchronized boolean isStale(DecisionFleetShardSnapshot snapshot) {
+        return placement == null || placementVersion != snapshot.getVersion();
+    }
+
+    private void refresh(DecisionFleetShardSnapshot snapshot) {
+        synchronized (this) {
+            refreshing++;
+        }
+        Map<Integer, Map<String, Long>> decisionCounts = null;
+        try {
+            // Loaded without holding the lock, so that placement is not blocked on the database
+            decisionCounts = decisionDAO.countByFleetShardAndCustomer();
+        } finally {
+            swap(snapshot, decisionCounts);
+        }
+    }
+
+    private synchronized void swap(DecisionFleetShardSnapshot snapshot, Map<Integer, Map<String, Long>> decisionCounts) {
+        refreshing--;
+        if (decisionCounts != null && (placement == null || snapshot.getVersion() >= placementVersion)) {
+            FleetShardPlacement refreshed = new FleetShardPlacement(snapshot.getFleetShards(), decisionCounts);
+            pending.forEach(placed -> refreshed.count(placed.fleetShard.getId(), placed.customerId));
+            committedDuringRefresh.forEach(placed -> refreshed.count(placed.fleetShard.getId(), placed.customerId));
+            placement = refreshed;
+            placementVersion = snapshot.getVersion();
+        }
+        if (refreshing == 0) {
+            committedDuringRefresh.clear();
+        }
+    }
+
+    private synchronized void complete(PlacedDecision placed, boolean committed) {
+        pending.remove(placed);
+        if (!committed) {
+            placement.uncount(placed.fleetShard.getId(), placed.customerId);
+        } else if (refreshing > 0) {
+            committedDuringRefresh.add(placed);
+        }
+    }
+
+    private void completeOnTransactionEnd(PlacedDecision placed) {
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // Nothing to do until the outcome is known
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                complete(placed, status == Status.STATUS_COMMITTED);
+            }
+        });
+    }
+
+    private static class PlacedDecision {
+
+        private final DecisionFleetShard fleetShard;
+
+        private final String customerId;
+
+        PlacedDecision(DecisionFleetShard fleetShard, String customerId) {
+            this.fleetShard = fleetShard;
+            this.customerId = customerId;
+        }
     }
 }
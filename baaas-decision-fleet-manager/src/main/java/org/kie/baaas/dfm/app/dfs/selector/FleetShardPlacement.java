@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dfs.selector;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+
+/**
+ * In-memory view of the registered Fleet Shards and the Decisions placed on each of them, used to place new
+ * Decisions without querying the database. Placed Decisions are counted through {@link #count(int, String)} as soon
+ * as they are placed, so that successive placements spread across the Fleet Shards before the next refresh, and
+ * uncounted through {@link #uncount(int, String)} if their creation is rolled back.
+ * <p>
+ * Not thread-safe; callers are expected to synchronize placement.
+ */
+class FleetShardPlacement {
+
+    private final Map<Integer, DecisionFleetShard> fleetShards;
+
+    private final Map<Integer, Map<String, Long>> decisionCounts;
+
+    FleetShardPlacement(List<DecisionFleetShard> fleetShards, Map<Integer, Map<String, Long>> decisionCounts) {
+        this.fleetShards = Collections.unmodifiableMap(fleetShards.stream().collect(Collectors.toMap(DecisionFleetShard::getId, Function.identity())));
+        this.decisionCounts = new HashMap<>();
+        decisionCounts.forEach((id, counts) -> this.decisionCounts.put(id, new HashMap<>(counts)));
+    }
+
+    DecisionFleetShard getFleetShard(int id) {
+        return fleetShards.get(id);
+    }
+
+    Collection<DecisionFleetShard> getFleetShards() {
+        return fleetShards.values();
+    }
+
+    long getDecisionCount(int fleetShardId) {
+        return decisionCounts.getOrDefault(fleetShardId, Collections.emptyMap()).values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    long getDecisionCount(int fleetShardId, String customerId) {
+        return decisionCounts.getOrDefault(fleetShardId, Collections.emptyMap()).getOrDefault(customerId, 0L);
+    }
+
+    /**
+     * Chooses the Fleet Shard for a new Decision of the given customer. Only schedulable Fleet Shards with spare
+     * capacity are considered. Of those, Fleet Shards already hosting Decisions of the customer are preferred,
+     * then the least utilised, then those hosting the fewest Decisions, then the lowest id so that placement is
+     * deterministic. Fleet Shards without a capacity count as unutilised.
+     *
+     * @param customerId - The customer creating the Decision
+     * @return - The chosen Fleet Shard, or empty if no Fleet Shard can accept the Decision
+     */
+    Optional<DecisionFleetShard> place(String customerId) {
+        return fleetShards.values().stream()
+                .filter(fleetShard -> fleetShard.isSchedulable() && hasCapacity(fleetShard))
+                .min(Comparator.<DecisionFleetShard> comparingInt(fleetShard -> getDecisionCount(fleetShard.getId(), customerId) > 0 ? 0 : 1)
+                        .thenComparingDouble(this::utilisation)
+                        .thenComparingLong(fleetShard -> getDecisionCount(fleetShard.getId()))
+                        .thenComparingInt(DecisionFleetShard::getId));
+    }
+
+    /**
+     * Counts a new Decision of the given customer on the given Fleet Shard.
+     *
+     * @param fleetShardId - The Fleet Shard the Decision was placed on
+     * @param customerId - The customer that created the Decision
+     */
+    void count(int fleetShardId, String customerId) {
+        decisionCounts.computeIfAbsent(fleetShardId, id -> new HashMap<>()).merge(customerId, 1L, Long::sum);
+    }
+
+    /**
+     * Removes a Decision of the given customer counted on the given Fleet Shard whose creation was rolled back.
+     *
+     * @param fleetShardId - The Fleet Shard the Decision was placed on
+     * @param customerId - The customer that created the Decision
+     */
+    void uncount(int fleetShardId, String customerId) {
+        Map<String, Long> counts = decisionCounts.get(fleetShardId);
+        if (counts != null) {
+            counts.computeIfPresent(customerId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private boolean hasCapacity(DecisionFleetShard fleetShard) {
+        return fleetShard.getCapacity() == null || getDecisionCount(fleetShard.getId()) < fleetShard.getCapacity();
+    }
+
+    private double utilisation(DecisionFleetShard fleetShard) {
+        if (fleetShard.getCapacity() == null) {
+            return 0;
+        }
+        return (double) getDecisionCount(fleetShard.getId()) / fleetShard.getCapacity();
+    }
+}
@@ -0,0 +1,42 @@
+package org.kie.baaas.dfm.app.listener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A single dispatch of an Event to the Listeners of a customer. Listeners that send the Event in an encoded form
+ * share the encoding through the dispatch, so it is produced once however many Listeners are notified.
+ *
+ * The Listeners of a dispatch are notified one after another, so a dispatch is not shared between threads.
+ */
+public final class EventDispatch {
+
+    private final Event event;
+
+    private final Map<Class<?>, Object> encodings = new HashMap<>(2);
+
+    public EventDispatch(Event event) {
+        this.event = event;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Gets the encoding of the Event of the given type, encoding the Event the first time it is requested.
+     *
+     * @param type - The type of the encoding
+     * @param encoder - Encodes the Event if no Listener has requested this encoding yet
+     * @return - The encoding shared by all Listeners of this dispatch
+     */
+    public <T> T getEncoding(Class<T> type, Function<Event, T> encoder) {
+        Object encoding = encodings.get(type);
+        if (encoding == null) {
+            encoding = encoder.apply(event);
+            encodings.put(type, encoding);
+        }
+        return type.cast(encoding);
+    }
+}
@@ -3,4 +3,14 @@ package org.kie.baaas.dfm.app.listener;
 public interface Listener {
 
     void onEvent(Event event);
+
+    /**
+     * Notifies the Listener of an Event dispatched to several Listeners. Listeners that encode the Event should
+     * override this to share the encoding with the other Listeners of the dispatch.
+     *
+     * @param dispatch - The dispatch of the Event
+     */
+    default void onEvent(EventDispatch dispatch) {
+        onEvent(dispatch.getEvent());
+    }
 }
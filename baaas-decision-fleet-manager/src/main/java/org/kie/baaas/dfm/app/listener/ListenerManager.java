@@ -1,9 +1,11 @@
 package org.kie.baaas.dfm.app.listener;
 
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -11,50 +13,70 @@ import javax.enterprise.context.ApplicationScoped;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Holds the Listeners of each customer and notifies them of the events of that customer only.
+ *
+ * Listeners are registered and removed concurrently with notifications, so the Listeners of a customer are held in
+ * a concurrent set. The set of a customer is kept once created, so adding and removing a Listener never has to
+ * coordinate with the removal of the set itself.
+ */
 @ApplicationScoped
 public class ListenerManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(ListenerManager.class);
 
-    private Set<Listener> listeners = new HashSet<>();
+    private final ConcurrentMap<String, Set<Listener>> listeners = new ConcurrentHashMap<>();
 
     public ListenerManager() {
     }
 
-    public void addListener(Listener listener) {
-        this.listeners.add(listener);
+    public void addListener(String customerId, Listener listener) {
+        this.listeners.computeIfAbsent(customerId, id -> ConcurrentHashMap.newKeySet()).add(listener);
     }
 
-    public void addListeners(Collection<Listener> listeners) {
-        this.listeners.addAll(listeners);
+    public void removeListener(String customerId, Listener listener) {
+        Set<Listener> customerListeners = this.listeners.get(customerId);
+        if (customerListeners != null) {
+            customerListeners.remove(listener);
+        }
     }
 
-    public void removeListener(Listener listener) {
-        this.listeners.remove(listener);
+    /**
+     * Removes the Listeners of the customer that match the filter.
+     *
+     * @param customerId - The customer to remove Listeners of
+     * @param filter - Selects the Listeners to remove
+     */
+    public void removeListeners(String customerId, Predicate<Listener> filter) {
+        Set<Listener> customerListeners = this.listeners.get(customerId);
+        if (customerListeners != null) {
+            customerListeners.removeIf(filter);
+        }
     }
 
-    public Set<Listener> getListeners() {
-        return this.listeners;
+    public Set<Listener> getListeners(String customerId) {
+        return Collections.unmodifiableSet(this.listeners.getOrDefault(customerId, Collections.emptySet()));
     }
 
-    public boolean hasListeners() {
-        return !this.listeners.isEmpty();
+    public boolean hasListeners(String customerId) {
+        return !getListeners(customerId).isEmpty();
     }
 
-    public void notifyListeners(Event event) {
-        for (Listener l : getListeners()) {
+    public void notifyListeners(String customerId, Event event) {
+        EventDispatch dispatch = new EventDispatch(event);
+        for (Listener l : getListeners(customerId)) {
             try {
-                l.onEvent(event);
+                l.onEvent(dispatch);
             } catch (Throwable t) {
                 LOG.error("Error notifying logger", t);
             }
         }
     }
 
-    public <E extends Event> Optional<E> notifyListeners(Supplier<E> eventSupplier) {
-        if (hasListeners()) {
+    public <E extends Event> Optional<E> notifyListeners(String customerId, Supplier<E> eventSupplier) {
+        if (hasListeners(customerId)) {
             E event = eventSupplier.get();
-            notifyListeners(event);
+            notifyListeners(customerId, event);
             return Optional.ofNullable(event);
         } else {
             return Optional.empty();
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.manager;
+
+import org.kie.baaas.dfm.api.decisions.DecisionRequest;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
+
+/**
+ * Tracks a single DecisionRequest through a bulk import. Each import either records a new DecisionVersion
+ * or fails with the reason it could not be imported.
+ */
+public class DecisionImport {
+
+    private final int index;
+
+    private final DecisionRequest request;
+
+    private DMNStorageRequest stagedDMN;
+
+    private DecisionVersion decisionVersion;
+
+    private RuntimeException failure;
+
+    public DecisionImport(int index, DecisionRequest request) {
+        this.index = index;
+        this.request = request;
+    }
+
+    /**
+     * @return - The position of the DecisionRequest within the bulk import
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public DecisionRequest getRequest() {
+        return request;
+    }
+
+    public DMNStorageRequest getStagedDMN() {
+        return stagedDMN;
+    }
+
+    public void setStagedDMN(DMNStorageRequest stagedDMN) {
+        this.stagedDMN = stagedDMN;
+    }
+
+    public DecisionVersion getDecisionVersion() {
+        return decisionVersion;
+    }
+
+    public void setDecisionVersion(DecisionVersion decisionVersion) {
+        this.decisionVersion = decisionVersion;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    public void fail(RuntimeException failure) {
+        this.failure = failure;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.manager;
+
+import javax.ws.rs.core.Response;
+
+import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
+
+/**
+ * Indicates that a DecisionRequest of a bulk import was rejected before any attempt to record it.
+ */
+public class DecisionImportException extends DecisionFleetManagerException {
+
+    public DecisionImportException(String message) {
+        super(message);
+    }
+
+    @Override
+    public int getStatusCode() {
+        return Response.Status.BAD_REQUEST.getStatusCode();
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.manager;
+
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.kie.baaas.dfm.api.decisions.DecisionRequest;
+import org.kie.baaas.dfm.api.eventing.Eventing;
+import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
+import org.kie.baaas.dfm.app.dao.DecisionCountCache;
+import org.kie.baaas.dfm.app.dao.DecisionDAO;
+import org.kie.baaas.dfm.app.event.BeforeCreateOrUpdateVersionEvent;
+import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
+import org.kie.baaas.dfm.app.listener.ListenerManager;
+import org.kie.baaas.dfm.app.manager.kafkaservice.KafkaServiceNotSupportedException;
+import org.kie.baaas.dfm.app.manager.kafkaservice.KafkaServiceProducer;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.model.deployment.Deployment;
+import org.kie.baaas.dfm.app.storage.DecisionDMNStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Imports many Decisions for a customer at once.
+ * <p>
+ * The DecisionRequests are validated and their DMN staged and promoted concurrently on the managed executor, with at
+ * most {@code baaas.dfm.decisions.import.concurrency} tasks of an import running at once. The DecisionVersions
+ * are then recorded in batches, each in a single transaction, after which the DMN of the batch is promoted
+ * concurrently and the deployments of the batch are released together. The outcome of each DecisionRequest is
+ * reported as soon as its batch completes, while the DMN of later batches continues to be staged.
+ */
+@ApplicationScoped
+public class DecisionImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionImporter.class);
+
+    private final DecisionManager decisionManager;
+
+    private final DecisionDAO decisionDAO;
+
+    private final DecisionCountCache decisionCountCache;
+
+    private final DecisionDMNStorage decisionDMNStorage;
+
+    private final ListenerManager listenerManager;
+
+    private final KafkaServiceProducer kafkaServiceProducer;
+
+    private final DecisionFleetManagerConfig config;
+
+    private final Validator validator;
+
+    private final ManagedExecutor executor;
+
+    @ConfigProperty(name = "baaas.dfm.decisions.import.concurrency", defaultValue = "8")
+    int concurrency;
+
+    @ConfigProperty(name = "baaas.dfm.decisions.import.batch-size", defaultValue = "50")
+    int batchSize;
+
+    @Inject
+    public DecisionImporter(DecisionManager decisionManager, DecisionDAO decisionDAO, DecisionCountCache decisionCountCache, DecisionDMNStorage decisionDMNStorage,
+            ListenerManager listenerManager, KafkaServiceProducer kafkaServiceProducer, DecisionFleetManagerConfig config, Validator validator,
+            ManagedExecutor executor) {
+        requireNonNull(decisionManager, "decisionManager cannot be null");
+        requireNonNull(decisionDAO, "decisionDAO cannot be null");
+        requireNonNull(decisionCountCache, "decisionCountCache cannot be null");
+        requireNonNull(decisionDMNStorage, "decisionDMNStorage cannot be null");
+        requireNonNull(listenerManager, "listenerManager cannot be null");
+        requireNonNull(kafkaServiceProducer, "kafkaServiceProducer cannot be null");
+        requireNonNull(config, "config cannot be null");
+        requireNonNull(validator, "validator cannot be null");
+        requireNonNull(executor, "executor cannot be null");
+        this.decisionManager = decisionManager;
+        this.decisionDAO = decisionDAO;
+        this.decisionCountCache = decisionCountCache;
+        this.decisionDMNStorage = decisionDMNStorage;
+        this.listenerManager = listenerManager;
+        this.kafkaServiceProducer = kafkaServiceProducer;
+        this.config = config;
+        this.validator = validator;
+        this.executor = executor;
+    }
+
+    /**
+     * Imports the given DecisionRequests for the customer. Each DecisionRequest is imported independently, so the
+     * failure of one does not prevent the others from being imported.
+     *
+     * @param customerId - The id of the customer that owns the Decisions
+     * @param decisionRequests - The DecisionRequests to import, each for a different Decision
+     * @param results - Receives each import once it has completed, on the calling thread
+     */
+    public void importDecisions(String customerId, List<DecisionRequest> decisionRequests, Consumer<DecisionImport> results) {
+        List<DecisionImport> decisionImports = IntStream.range(0, decisionRequests.size())
+                .mapToObj(index -> new DecisionImport(index, decisionRequests.get(index)))
+                .collect(toList());
+        LOGGER.info("Importing '{}' Decisions for customer with id '{}'...", decisionImports.size(), customerId);
+
+        ImportTasks tasks = new ImportTasks();
+        join(decisionImports.stream().map(decisionImport -> tasks.runAsync(() -> validate(decisionImport))).collect(toList()));
+        rejectDuplicateNames(decisionImports);
+        enforceDecisionLimit(customerId, decisionImports);
+
+        List<CompletableFuture<Void>> staging = decisionImports.stream().map(decisionImport -> {
+            if (decisionImport.isFailed()) {
+                return CompletableFuture.<Void> completedFuture(null);
+            }
+            listenerManager.notifyListeners(customerId, () -> new BeforeCreateOrUpdateVersionEvent(decisionImport.getRequest()));
+            return tasks.runAsync(() -> stage(customerId, decisionImport));
+        }).collect(toList());
+
+        for (int from = 0; from < decisionImports.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, decisionImports.size());
+            join(staging.subList(from, to));
+            List<DecisionImport> batch = decisionImports.subList(from, to);
+            record(customerId, batch, tasks);
+            batch.forEach(decisionImport -> report(decisionImport, results));
+        }
+
+        LOGGER.info("Imported '{}' of '{}' Decisions for customer with id '{}'", decisionImports.stream().filter(decisionImport -> !decisionImport.isFailed()).count(),
+                decisionImports.size(), customerId);
+    }
+
+    private void validate(DecisionImport decisionImport) {
+        DecisionRequest decisionRequest = decisionImport.getRequest();
+        if (decisionRequest == null) {
+            decisionImport.fail(new DecisionImportException("The Decision must not be null."));
+            return;
+        }
+
+        Set<ConstraintViolation<DecisionRequest>> violations;
+        try {
+            violations = validator.validate(decisionRequest);
+        } catch (RuntimeException e) {
+            decisionImport.fail(e);
+            return;
+        }
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(violation -> "Field: '" + DecisionRequest.class.getSimpleName() + "." + violation.getPropertyPath() + "' " + violation.getMessage())
+                    .sorted()
+                    .collect(joining(", "));
+            decisionImport.fail(new DecisionImportException(message));
+            return;
+        }
+
+        Eventing eventing = decisionRequest.getEventing();
+        if (eventing != null && eventing.getKafka() != null && !kafkaServiceProducer.isKafkaServiceEnabled()) {
+            decisionImport.fail(new KafkaServiceNotSupportedException("Kafka service is not supported in this environment."));
+        }
+    }
+
+    private void rejectDuplicateNames(List<DecisionImport> decisionImports) {
+        Set<String> names = new HashSet<>();
+        decisionImports.stream()
+                .filter(decisionImport -> !decisionImport.isFailed())
+                .filter(decisionImport -> !names.add(decisionImport.getRequest().getName()))
+                .forEach(decisionImport -> decisionImport
+                        .fail(new DecisionImportException("Decision with name '" + decisionImport.getRequest().getName() + "' appears more than once in the import.")));
+    }
+
+    private void enforceDecisionLimit(String customerId, List<DecisionImport> decisionImports) {
+        if (config.getMaxAllowedDecisions() == -1) {
+            return;
+        }
+
+        List<DecisionImport> pending = decisionImports.stream().filter(decisionImport -> !decisionImport.isFailed()).collect(toList());
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Set<String> existing = decisionDAO.findByCustomerAndNames(customerId, pending.stream().map(decisionImport -> decisionImport.getRequest().getName()).collect(toList()))
+                .keySet();
+        long remaining = config.getMaxAllowedDecisions() - decisionCountCache.getDecisionCount(customerId);
+        for (DecisionImport decisionImport : pending) {
+            if (existing.contains(decisionImport.getRequest().getName())) {
+                continue;
+            }
+            if (remaining > 0) {
+                remaining--;
+            } else {
+                decisionImport.fail(new DecisionImportException("The number of created decision has reached the limit."));
+            }
+        }
+    }
+
+    private void stage(String customerId, DecisionImport decisionImport) {
+        try {
+            decisionImport.setStagedDMN(decisionDMNStorage.stageDMN(customerId, decisionImport.getRequest()));
+        } catch (RuntimeException e) {
+            decisionImport.fail(e);
+        }
+    }
+
+    private void record(String customerId, List<DecisionImport> batch, ImportTasks tasks) {
+        List<DecisionImport> staged = batch.stream().filter(decisionImport -> !decisionImport.isFailed()).collect(toList());
+        if (staged.isEmpty()) {
+            return;
+        }
+
+        try {
+            decisionManager.importVersions(customerId, staged);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to record batch of '{}' imported Decisions for customer with id '{}'", staged.size(), customerId, e);
+            staged.forEach(decisionImport -> decisionImport.fail(new DecisionFleetManagerException("Failed to record Decision.", e)));
+        }
+
+        staged.stream()
+                .filter(DecisionImport::isFailed)
+                .forEach(decisionImport -> decisionDMNStorage.discardStagedDMN(decisionImport.getStagedDMN()));
+
+        List<DecisionImport> recorded = staged.stream().filter(decisionImport -> !decisionImport.isFailed()).collect(toList());
+        join(recorded.stream().map(decisionImport -> tasks.runNextAsync(() -> promote(customerId, decisionImport))).collect(toList()));
+
+        List<DecisionVersion> promoted = recorded.stream()
+                .filter(decisionImport -> !decisionImport.isFailed())
+                .map(DecisionImport::getDecisionVersion)
+                .collect(toList());
+        if (!promoted.isEmpty()) {
+            decisionManager.releaseDeployments(promoted);
+        }
+    }
+
+    private void promote(String customerId, DecisionImport decisionImport) {
+        DecisionVersion decisionVersion = decisionImport.getDecisionVersion();
+        try {
+            decisionDMNStorage.promoteDMN(decisionImport.getStagedDMN(), customerId, decisionVersion);
+        } catch (RuntimeException e) {
+            decisionImport.fail(new DecisionFleetManagerException("Failed to store DMN of Decision with name '" + decisionImport.getRequest().getName() + "'.", e));
+            try {
+                Deployment deployment = new Deployment();
+                deployment.setStatusMessage("Failed to store DMN of Decision.");
+                decisionManager.failed(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), deployment);
+            } catch (RuntimeException failure) {
+                LOGGER.error("Failed to mark version '{}' of Decision with name '{}' as FAILED for customer with id '{}'", decisionVersion.getVersion(),
+                        decisionImport.getRequest().getName(), customerId, failure);
+            }
+        }
+    }
+
+    private void report(DecisionImport decisionImport, Consumer<DecisionImport> results) {
+        try {
+            results.accept(decisionImport);
+        } catch (RuntimeException e) {
+            // The import is not abandoned when the result cannot be reported, e.g. because the client has gone away
+            LOGGER.warn("Failed to report the result of importing the Decision at index '{}'", decisionImport.getIndex(), e);
+        }
+    }
+
+    private void join(List<CompletableFuture<Void>> futures) {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Runs the tasks of an import on the managed executor, with at most the configured number of them running at once.
+     * Tasks beyond that are queued, without blocking the calling thread, and are started as earlier tasks complete.
+     * Promotions are queued ahead of staging, so that a recorded batch is not held up by the staging of later batches.
+     */
+    private final class ImportTasks {
+
+        private final Semaphore permits = new Semaphore(concurrency);
+
+        private final Deque<Runnable> waiting = new ConcurrentLinkedDeque<>();
+
+        CompletableFuture<Void> runAsync(Runnable task) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            waiting.addLast(() -> start(task, result));
+            drain();
+            return result;
+        }
+
+        CompletableFuture<Void> runNextAsync(Runnable task) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            waiting.addFirst(() -> start(task, result));
+            drain();
+            return result;
+        }
+
+        private void start(Runnable task, CompletableFuture<Void> result) {
+            CompletableFuture<Void> running;
+            try {
+                running = executor.runAsync(task);
+            } catch (RuntimeException e) {
+                running = CompletableFuture.failedFuture(e);
+            }
+            running.whenComplete((ignored, failure) -> {
+                permits.release();
+                drain();
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(null);
+                }
+            });
+        }
+
+        private void drain() {
+            while (!waiting.isEmpty() && permits.tryAcquire()) {
+                Runnable next = waiting.pollFirst();
+                if (next == null) {
+                    // Taken by a concurrent drain, which holds its own permit
+                    permits.release();
+                } else {
+                    next.run();
+                }
+            }
+        }
+    }
+}
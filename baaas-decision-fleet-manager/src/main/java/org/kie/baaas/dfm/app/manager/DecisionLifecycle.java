@@ -15,14 +15,15 @@
 
 package org.kie.baaas.dfm.app.manager;
 
-import java.io.ByteArrayOutputStream;
-import java.util.List;
+import java.util.function.Consumer;
 
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.model.deployment.Deployment;
+import org.kie.baaas.dfm.app.storage.DMNContent;
 
 /**
  * Core interface for working with the lifecycle of a Decision.
@@ -66,11 +67,12 @@ public interface DecisionLifecycle {
     DecisionVersion setCurrentVersion(String customerId, String decisionIdOrName, long version);
 
     /**
-     * List all Decisions
+     * Streams the current version of all Decisions
      *
-     * @return - The List of Decisions
+     * @param customerId - The id of the customer to stream the Decisions of, or null for all customers
+     * @param consumer - Receives the current version of each Decision
      */
-    List<Decision> listDecisions();
+    void streamDecisions(String customerId, Consumer<DecisionVersion> consumer);
 
     /**
      * List all Decisions for the specified Customer
@@ -80,6 +82,16 @@ public interface DecisionLifecycle {
      */
     ListResult<Decision> listDecisions(String customerId, int page, int pageSize);
 
+    /**
+     * Continues listing the Decisions for the specified Customer from a cursor
+     *
+     * @param customerId - The id of the customer that owns the Decisions
+     * @param cursor - The cursor returned with the previous page
+     * @param pageSize - The maximum number of Decisions to return
+     * @return - The List of Decisions following the cursor (can be empty)
+     */
+    ListResult<Decision> listDecisions(String customerId, PageCursor cursor, int pageSize);
+
     /**
      * Gets the building version of the specified decision owned by the customer id.
      *
@@ -139,14 +151,25 @@ public interface DecisionLifecycle {
     ListResult<DecisionVersion> listDecisionVersions(String customerId, String decisionIdOrName, int page, int pageSize);
 
     /**
-     * Retrieve the requested dmn file from S3 Bucket as ByteArrayOutputStream
+     * Continues listing the versions of the specified decision from a cursor
      *
-     * @param customerId - The id of the customer that owns the Decision
+     * @param customerId - The id of the customer that owns the decision
      * @param decisionIdOrName - The id or name of the Decision
-     * @param version - The version of the Decision
-     * @return the request dmn file as ByteArrayOutputStream
+     * @param cursor - The cursor returned with the previous page
+     * @param pageSize - The maximum number of versions to return
+     * @return - The list of versions following the cursor (can be empty)
+     */
+    ListResult<DecisionVersion> listDecisionVersions(String customerId, String decisionIdOrName, PageCursor cursor, int pageSize);
+
+    /**
+     * Opens a stream over the dmn file of the given version without buffering it in memory.
+     *
+     * @param customerId - The id of the customer that owns the Decision
+     * @param decisionVersion - The version of the Decision, as resolved by {@link #getVersion(String, String, long)}
+     * @param range - An HTTP byte range of the dmn file to read, or null to read the complete file
+     * @return the open dmn file, which the caller must close
      */
-    ByteArrayOutputStream getDMN(String customerId, String decisionIdOrName, long version);
+    DMNContent getDMN(String customerId, DecisionVersion decisionVersion, String range);
 
     /**
      * Callback method invoked when we have failed to deploy the specified version of a Decision.
@@ -15,11 +15,11 @@
 
 package org.kie.baaas.dfm.app.manager;
 
-import java.io.ByteArrayOutputStream;
-import java.util.List;
+import java.util.function.Consumer;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.transaction.Transactional;
 
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.eventing.Eventing;
@@ -38,9 +38,12 @@ import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionFleetShard;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.model.deployment.Deployment;
-import org.kie.baaas.dfm.app.model.eventing.Credential;
+import org.kie.baaas.dfm.app.storage.DMNContent;
+import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
 import org.kie.baaas.dfm.app.storage.DecisionDMNStorage;
+import org.kie.baaas.dfm.app.storage.cache.DMNCache;
 
 /**
  * This class orchestrates a number of internal components to manage the lifecycle of a Decision.
@@ -64,22 +67,21 @@ public class DecisionLifecycleOrchestrator implements DecisionLifecycle {
 
     private final KafkaServiceProducer kafkaServiceProducer;
 
-    private final KafkaService kafkaService;
+    private final DMNCache dmnCache;
 
     @Inject
     public DecisionLifecycleOrchestrator(DecisionFleetShardClientFactory clientFactory, DecisionFleetShardSelector fleetShardSelector, DecisionManager decisionManager,
             DecisionDMNStorage decisionDMNStorage,
             ListenerManager listenerManager,
-            DecisionMapper decisionMapper, KafkaService kafkaService,
-            KafkaServiceProducer kafkaServiceProducer) {
+            DecisionMapper decisionMapper, KafkaServiceProducer kafkaServiceProducer, DMNCache dmnCache) {
         this.clientFactory = clientFactory;
         this.fleetShardSelector = fleetShardSelector;
         this.decisionManager = decisionManager;
         this.decisionDMNStorage = decisionDMNStorage;
         this.listenerManager = listenerManager;
         this.decisionMapper = decisionMapper;
-        this.kafkaService = kafkaService;
         this.kafkaServiceProducer = kafkaServiceProducer;
+        this.dmnCache = dmnCache;
     }
 
     @Override
@@ -88,6 +90,7 @@ public class DecisionLifecycleOrchestrator implements DecisionLifecycle {
         Decision decision = decisionManager.deleteDecision(id);
         DecisionFleetShardClient client = getFleetShardClient(decision);
         client.delete(decision);
+        dmnCache.invalidate(decision.getCustomerId(), decision.getId());
         decisionDMNStorage.deleteDMN(decision.getCustomerId(), decision);
         return decision;
     }
@@ -98,6 +101,7 @@ public class DecisionLifecycleOrchestrator implements DecisionLifecycle {
         Decision decision = decisionManager.deleteDecision(customerId, decisionNameOrId);
         DecisionFleetShardClient client = getFleetShardClient(decision);
         client.delete(decision);
+        dmnCache.invalidate(customerId, decision.getId());
         decisionDMNStorage.deleteDMN(customerId, decision);
         return decision;
     }
@@ -109,30 +113,37 @@ public class DecisionLifecycleOrchestrator implements DecisionLifecycle {
             throw new KafkaServiceNotSupportedException("Kafka service is not supported in this environment.");
         }
 
-        listenerManager.notifyListeners(() -> new BeforeCreateOrUpdateVersionEvent(decisionRequest));
-        // TODO - chicken and egg problem here.  The DecisionVersion requires information about the DMN
-        // storage location, but the storage requires the DecisionVersion. We therefore have the write
-        // to storage happening within the DecisionManager implementation. Ideally the write should happen
-        // outside of this as we don't want to write to remote resources within a transaction boundary.
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(customerId, decisionRequest);
-
-        if (decisionVersion.getKafkaConfig() != null) {
-            Credential credential = kafkaService.getCustomerCredential(customerId);
-            decisionVersion.getKafkaConfig().setCredential(credential);
+        listenerManager.notifyListeners(customerId, () -> new BeforeCreateOrUpdateVersionEvent(decisionRequest));
+
+        /*
+         * The DecisionVersion requires information about the DMN storage location, but we don't want to write
+         * to remote storage within a transaction boundary. We therefore upload the DMN to a staging location first,
+         * record the DecisionVersion and then move the staged DMN to the location of the DecisionVersion.
+         *
+         * The request to deploy the DecisionVersion is recorded along with it and dispatched to the Fleet Shard
+         * in the background by the DeploymentDispatcher once the DMN has been stored.
+         */
+        DMNStorageRequest stagedDMN = decisionDMNStorage.stageDMN(customerId, decisionRequest);
+        DecisionVersion decisionVersion;
+        try {
+            decisionVersion = decisionManager.createOrUpdateVersion(customerId, decisionRequest, stagedDMN);
+        } catch (RuntimeException e) {
+            decisionDMNStorage.discardStagedDMN(stagedDMN);
+            throw e;
         }
-
-        return requestDeployment(customerId, decisionVersion);
+        promoteDMN(customerId, decisionVersion, stagedDMN);
+        decisionManager.releaseDeployment(decisionVersion);
+        return decisionVersion;
     }
 
     @Override
     public DecisionVersion setCurrentVersion(String customerId, String decisionIdOrName, long version) {
-        DecisionVersion decisionVersion = decisionManager.setCurrentVersion(customerId, decisionIdOrName, version);
-        return requestDeployment(customerId, decisionVersion);
+        return decisionManager.setCurrentVersion(customerId, decisionIdOrName, version);
     }
 
     @Override
-    public List<Decision> listDecisions() {
-        return decisionManager.listDecisions();
+    public void streamDecisions(String customerId, Consumer<DecisionVersion> consumer) {
+        decisionManager.streamDecisions(customerId, consumer);
     }
 
     @Override
@@ -140,6 +151,11 @@ public class DecisionLifecycleOrchestrator implements DecisionLifecycle {
         return decisionManager.listDecisions(customerId, page, pageSize);
     }
 
+    @Override
+    public ListResult<Decision> listDecisions(String customerId, PageCursor cursor, int pageSize) {
+        return decisionManager.listDecisions(customerId, cursor, pageSize);
+    }
+
     @Override
     public DecisionVersion getBuildingVersion(String customerId, String decisionIdOrName) {
         return decisionManager.getBuildingVersion(customerId, decisionIdOrName);
@@ -177,37 +193,48 @@ public class DecisionLifecycleOrchestrator implements DecisionLifecycle {
     }
 
     @Override
-    public ByteArrayOutputStream getDMN(String customerId, String decisionIdOrName, long version) {
-        return decisionManager.getDMN(customerId, decisionIdOrName, version);
+    public ListResult<DecisionVersion> listDecisionVersions(String customerId, String decisionIdOrName, PageCursor cursor, int pageSize) {
+        return decisionManager.listDecisionVersions(customerId, decisionIdOrName, cursor, pageSize);
+    }
+
+    @Override
+    public DMNContent getDMN(String customerId, DecisionVersion decisionVersion, String range) {
+        // ranges of compressed DMN cannot be mapped onto the stored bytes, so the complete DMN is returned instead
+        if (range != null && decisionVersion.getDmnCompression() == null) {
+            return decisionDMNStorage.openDMN(customerId, decisionVersion, range);
+        }
+        return dmnCache.get(customerId, decisionVersion, () -> decisionDMNStorage.openDMN(customerId, decisionVersion, null));
     }
 
+    // The Event is recorded for delivery in the transaction that records the outcome of the deployment
     @Override
+    @Transactional
     public DecisionVersion failed(String customerId, String decisionIdOrName, long version, Deployment deployment) {
         DecisionVersion decisionVersion = decisionManager.failed(customerId, decisionIdOrName, version, deployment);
-        listenerManager.notifyListeners(() -> new AfterFailedEvent(decisionMapper.mapVersionToDecisionResponse(decisionVersion)));
+        listenerManager.notifyListeners(customerId, () -> new AfterFailedEvent(decisionMapper.mapVersionToDecisionResponse(decisionVersion)));
         return decisionVersion;
     }
 
     @Override
+    @Transactional
     public DecisionVersion deployed(String customerId, String decisionIdOrName, long version, Deployment deployment) {
         DecisionVersion decisionVersion = decisionManager.deployed(customerId, decisionIdOrName, version, deployment);
-        listenerManager.notifyListeners(() -> new AfterDeployedEvent(decisionMapper.mapVersionToDecisionResponse(decisionVersion)));
+        listenerManager.notifyListeners(customerId, () -> new AfterDeployedEvent(decisionMapper.mapVersionToDecisionResponse(decisionVersion)));
         return decisionVersion;
     }
 
-    private DecisionVersion requestDeployment(String customerId, DecisionVersion decisionVersion) {
-        DecisionFleetShardClient client = getFleetShardClient(decisionVersion.getDecision());
+    private void promoteDMN(String customerId, DecisionVersion decisionVersion, DMNStorageRequest stagedDMN) {
         try {
-            client.deploy(decisionVersion);
-            return decisionVersion;
+            decisionDMNStorage.promoteDMN(stagedDMN, customerId, decisionVersion);
         } catch (Exception e) {
-            decisionManager.failed(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), failedToDeploy());
-            throw failedToDeploy(customerId, decisionVersion, e);
+            decisionManager.failed(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), failedDeployment("Failed to store DMN of Decision."));
+            throw failedLifecycleOperation("Failed to store DMN", customerId, decisionVersion, e);
         }
     }
 
-    private DecisionFleetManagerException failedToDeploy(String customerId, DecisionVersion decisionVersion, Throwable t) {
-        String message = new StringBuilder("Failed to request deployment of Decision with id '")
+    private DecisionFleetManagerException failedLifecycleOperation(String operation, String customerId, DecisionVersion decisionVersion, Throwable t) {
+        String message = new StringBuilder(operation)
+                .append(" of Decision with id '")
                 .append(decisionVersion.getDecision().getId())
                 .append("' at version '")
                 .append(decisionVersion.getVersion())
@@ -217,9 +244,9 @@ public class DecisionLifecycleOrchestrator implements DecisionLifecycle {
         return new DecisionFleetManagerException(message, t);
     }
 
-    private Deployment failedToDeploy() {
+    private Deployment failedDeployment(String statusMessage) {
         Deployment deployment = new Deployment();
-        deployment.setStatusMessage("Failed to deploy Decision.");
+        deployment.setStatusMessage(statusMessage);
         return deployment;
     }
 
@@ -15,24 +15,32 @@
 
 package org.kie.baaas.dfm.app.manager;
 
-import java.io.ByteArrayOutputStream;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.eventing.Eventing;
+import org.kie.baaas.dfm.app.dao.DMNBlobDAO;
+import org.kie.baaas.dfm.app.dao.DecisionCountCache;
 import org.kie.baaas.dfm.app.dao.DecisionDAO;
 import org.kie.baaas.dfm.app.dao.DecisionVersionDAO;
+import org.kie.baaas.dfm.app.dao.DeploymentRequestDAO;
+import org.kie.baaas.dfm.app.dfs.DecisionFleetShardSelector;
+import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.model.deployment.Deployment;
 import org.kie.baaas.dfm.app.model.eventing.KafkaConfig;
 import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
@@ -40,15 +48,20 @@ import org.kie.baaas.dfm.app.storage.DecisionDMNStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 
 /**
  * Manages the core lifecycle for Decisions. Our API should ensure valid Payload and then
  * delegate to the DecisionManager to complete the lifecycle management.
+ *
+ * All operations are transactional and so must not perform long-running remote calls. Remote calls, such
+ * as the upload of DMN, are the responsibility of the {@link DecisionLifecycleOrchestrator}.
  */
 @ApplicationScoped
 @Transactional
-public class DecisionManager implements DecisionLifecycle {
+public class DecisionManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DecisionManager.class);
 
@@ -56,16 +69,36 @@ public class DecisionManager implements DecisionLifecycle {
 
     private final DecisionVersionDAO decisionVersionDAO;
 
+    private final DMNBlobDAO dmnBlobDAO;
+
+    private final DeploymentRequestDAO deploymentRequestDAO;
+
+    private final DecisionFleetShardSelector fleetShardSelector;
+
     private final DecisionDMNStorage decisionDMNStorage;
 
+    private final DecisionCountCache decisionCountCache;
+
+    @ConfigProperty(name = "baaas.dfm.decisions.stream.fetch-size", defaultValue = "100")
+    int streamFetchSize;
+
     @Inject
-    public DecisionManager(DecisionDAO decisionDAO, DecisionVersionDAO decisionVersionDAO, DecisionDMNStorage decisionDMNStorage) {
+    public DecisionManager(DecisionDAO decisionDAO, DecisionVersionDAO decisionVersionDAO, DMNBlobDAO dmnBlobDAO, DeploymentRequestDAO deploymentRequestDAO,
+            DecisionFleetShardSelector fleetShardSelector, DecisionDMNStorage decisionDMNStorage, DecisionCountCache decisionCountCache) {
         Objects.requireNonNull(decisionDAO, "decisionDAO cannot be null");
         Objects.requireNonNull(decisionVersionDAO, "decisionVersionDAO cannot be null");
+        Objects.requireNonNull(dmnBlobDAO, "dmnBlobDAO cannot be null");
+        Objects.requireNonNull(deploymentRequestDAO, "deploymentRequestDAO cannot be null");
+        Objects.requireNonNull(fleetShardSelector, "fleetShardSelector cannot be null");
         Objects.requireNonNull(decisionDMNStorage, "decisionDMNStorage cannot be null");
+        Objects.requireNonNull(decisionCountCache, "decisionCountCache cannot be null");
         this.decisionDAO = decisionDAO;
         this.decisionVersionDAO = decisionVersionDAO;
+        this.dmnBlobDAO = dmnBlobDAO;
+        this.deploymentRequestDAO = deploymentRequestDAO;
+        this.fleetShardSelector = fleetShardSelector;
         this.decisionDMNStorage = decisionDMNStorage;
+        this.decisionCountCache = decisionCountCache;
     }
 
     /**
@@ -76,7 +109,6 @@ public class DecisionManager implements DecisionLifecycle {
      * @param decisionVersion - The version of the Decision
      * @return - The Decision Version
      */
-    @Override
     public DecisionVersion getVersion(String customerId, String decisionIdOrName, long decisionVersion) {
         return findDecisionVersion(customerId, decisionIdOrName, decisionVersion);
     }
@@ -88,7 +120,6 @@ public class DecisionManager implements DecisionLifecycle {
      * @param decisionIdOrName - the decision id or name
      * @return - The decision version
      */
-    @Override
     public DecisionVersion getCurrentVersion(String customerId, String decisionIdOrName) {
         DecisionVersion decisionVersion = decisionVersionDAO.getCurrentVersion(customerId, decisionIdOrName);
         if (decisionVersion == null) {
@@ -104,7 +135,6 @@ public class DecisionManager implements DecisionLifecycle {
      * @param decisionIdOrName - The decision id or name
      * @return - The list of versions.
      */
-    @Override
     public ListResult<DecisionVersion> listDecisionVersions(String customerId, String decisionIdOrName, int page, int pageSize) {
         ListResult<DecisionVersion> versions = decisionVersionDAO.listByCustomerAndDecisionIdOrName(customerId, decisionIdOrName, page, pageSize);
         if (versions.getItems().isEmpty()) {
@@ -114,13 +144,35 @@ public class DecisionManager implements DecisionLifecycle {
     }
 
     /**
-     * Lists all the decisions.
+     * Continues listing the versions of a Decision from a cursor. The Decision is known to exist as the cursor was
+     * returned with a previous page of its versions, so an empty page is returned once its versions are exhausted.
      *
-     * @return - The list of decisions.
+     * @param customerId - The customer id
+     * @param decisionIdOrName - The decision id or name
+     * @param cursor - The cursor returned with the previous page
+     * @param pageSize - The maximum number of versions to return
+     * @return - The list of versions following the cursor
      */
-    public List<Decision> listDecisions() {
-        List<DecisionVersion> versions = decisionVersionDAO.listAll();
-        return versions.stream().map(DecisionVersion::getDecision).collect(toList());
+    public ListResult<DecisionVersion> listDecisionVersions(String customerId, String decisionIdOrName, PageCursor cursor, int pageSize) {
+        return decisionVersionDAO.listByCustomerAndDecisionIdOrName(customerId, decisionIdOrName, cursor, pageSize);
+    }
+
+    /**
+     * Streams the current version of all decisions, or of the decisions of a single customer.
+     *
+     * The decisions are read a chunk at a time, each chunk in its own transaction, so no transaction or connection
+     * is held while the consumer writes them out.
+     *
+     * @param customerId - The customer to stream the decisions of, or null for all customers
+     * @param consumer - Receives the current version of each decision
+     */
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public void streamDecisions(String customerId, Consumer<DecisionVersion> consumer) {
+        List<DecisionVersion> chunk = decisionVersionDAO.listCurrentAfter(customerId, null, streamFetchSize);
+        while (!chunk.isEmpty()) {
+            chunk.forEach(consumer);
+            chunk = chunk.size() < streamFetchSize ? List.of() : decisionVersionDAO.listCurrentAfter(customerId, chunk.get(chunk.size() - 1), streamFetchSize);
+        }
     }
 
     /**
@@ -129,14 +181,27 @@ public class DecisionManager implements DecisionLifecycle {
      * @param customerId - The customer id to find decisions for
      * @return - The list of decisions for this customer.
      */
-    @Override
     public ListResult<Decision> listDecisions(String customerId, int page, int pageSize) {
-        ListResult<DecisionVersion> versions = decisionVersionDAO.listCurrentByCustomerId(customerId, page, pageSize);
+        return toDecisions(decisionVersionDAO.listCurrentByCustomerId(customerId, page, pageSize));
+    }
+
+    /**
+     * Continues listing the currently known Decisions for the specified Customer from a cursor.
+     *
+     * @param customerId - The customer id to find decisions for
+     * @param cursor - The cursor returned with the previous page
+     * @param pageSize - The maximum number of decisions to return
+     * @return - The list of decisions following the cursor.
+     */
+    public ListResult<Decision> listDecisions(String customerId, PageCursor cursor, int pageSize) {
+        return toDecisions(decisionVersionDAO.listCurrentByCustomerId(customerId, cursor, pageSize));
+    }
+
+    private ListResult<Decision> toDecisions(ListResult<DecisionVersion> versions) {
         List<Decision> decisions = versions.getItems().stream().map(DecisionVersion::getDecision).collect(toList());
-        return new ListResult<>(decisions, versions.getPage(), versions.getTotal());
+        return new ListResult<>(decisions, versions.getPage(), versions.getTotal(), versions.getNext());
     }
 
-    @Override
     public DecisionVersion getBuildingVersion(String customerId, String decisionIdOrName) {
         DecisionVersion decisionVersion = decisionVersionDAO.getBuildingVersion(customerId, decisionIdOrName);
         if (decisionVersion == null) {
@@ -147,17 +212,70 @@ public class DecisionManager implements DecisionLifecycle {
     }
 
     /**
+     * Records the new DecisionVersion together with a request to deploy it. The deployment request is only dispatched
+     * once released through {@link #releaseDeployment(DecisionVersion)}, after the DMN has been stored.
+     *
      * @param customerId - The id of the customer for the Decision
      * @param decisionRequest - The API processed request
+     * @param stagedDMN - The result of staging the DMN of the request
      * @return - the updated Decision
      */
-    @Override
-    public DecisionVersion createOrUpdateVersion(String customerId, DecisionRequest decisionRequest) {
+    public DecisionVersion createOrUpdateVersion(String customerId, DecisionRequest decisionRequest, DMNStorageRequest stagedDMN) {
         Decision decision = decisionDAO.findByCustomerAndName(customerId, decisionRequest.getName());
+        return createOrUpdateVersion(customerId, decision, decisionRequest, stagedDMN);
+    }
+
+    /**
+     * Records new DecisionVersions for a batch of imported DecisionRequests, together with a request to deploy each
+     * of them. The existing Decisions are looked up once for the whole batch. Imports that cannot be recorded are
+     * marked as failed without affecting the rest of the batch.
+     *
+     * @param customerId - The id of the customer for the Decisions
+     * @param decisionImports - The imports to record, each with distinct Decision names and staged DMN
+     */
+    public void importVersions(String customerId, List<DecisionImport> decisionImports) {
+        List<String> names = decisionImports.stream().map(decisionImport -> decisionImport.getRequest().getName()).collect(toList());
+        Map<String, Decision> decisions = decisionDAO.findByCustomerAndNames(customerId, names);
+
+        for (DecisionImport decisionImport : decisionImports) {
+            DecisionRequest decisionRequest = decisionImport.getRequest();
+            try {
+                decisionImport.setDecisionVersion(createOrUpdateVersion(customerId, decisions.get(decisionRequest.getName()), decisionRequest,
+                        decisionImport.getStagedDMN()));
+            } catch (DecisionFleetManagerException e) {
+                decisionImport.fail(e);
+            }
+        }
+    }
+
+    private DecisionVersion createOrUpdateVersion(String customerId, Decision decision, DecisionRequest decisionRequest, DMNStorageRequest stagedDMN) {
+        DecisionVersion decisionVersion;
         if (decision == null) {
-            return createDecision(customerId, decisionRequest);
+            decisionVersion = createDecision(customerId, decisionRequest, stagedDMN);
+        } else {
+            decisionVersion = updateDecision(customerId, decision, decisionRequest, stagedDMN);
         }
-        return updateDecision(customerId, decision, decisionRequest);
+        deploymentRequestDAO.enqueue(customerId, decisionVersion, decisionVersion.getSubmittedAt(), false);
+        return decisionVersion;
+    }
+
+    /**
+     * Makes the request to deploy the given DecisionVersion available for dispatch to the Fleet Shard.
+     *
+     * @param decisionVersion - The DecisionVersion whose DMN has been stored
+     */
+    public void releaseDeployment(DecisionVersion decisionVersion) {
+        deploymentRequestDAO.release(decisionVersion, ZonedDateTime.now(ZoneOffset.UTC));
+    }
+
+    /**
+     * Makes the requests to deploy the given DecisionVersions available for dispatch to the Fleet Shard together.
+     *
+     * @param decisionVersions - The DecisionVersions whose DMN has been stored
+     */
+    public void releaseDeployments(List<DecisionVersion> decisionVersions) {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        decisionVersions.forEach(decisionVersion -> deploymentRequestDAO.release(decisionVersion, now));
     }
 
     /**
@@ -169,15 +287,15 @@ public class DecisionManager implements DecisionLifecycle {
      * @param deployment - The deployment for the DecisionVersion
      * @return - The updated Decision with the result of the failure recorded.
      */
-    @Override
     public DecisionVersion failed(String customerId, String decisionIdOrName, long version, Deployment deployment) {
-        DecisionVersion decisionVersion = findDecisionVersion(customerId, decisionIdOrName, version);
+        DecisionVersion decisionVersion = findDecisionVersionForCallback(customerId, decisionIdOrName, version);
         Decision decision = decisionVersion.getDecision();
         verifyCorrectVersionForCallback(decision, decisionVersion.getVersion(), DecisionVersionStatus.BUILDING);
         decisionVersion.setDeployment(deployment);
 
         decisionVersion.setStatus(DecisionVersionStatus.FAILED);
         decision.setNextVersion(null);
+        deploymentRequestDAO.deleteByDecisionVersion(decisionVersion);
 
         /*
          * In the case of multiple failures in a row, make the most recent failure the CURRENT
@@ -203,9 +321,8 @@ public class DecisionManager implements DecisionLifecycle {
      * @param deployment - The deployment record.
      * @return - The updated Decision with the result of the deployment recorded.
      */
-    @Override
     public DecisionVersion deployed(String customerId, String decisionIdOrName, long version, Deployment deployment) {
-        DecisionVersion decisionVersion = findDecisionVersion(customerId, decisionIdOrName, version);
+        DecisionVersion decisionVersion = findDecisionVersionForCallback(customerId, decisionIdOrName, version);
         Decision decision = decisionVersion.getDecision();
         verifyCorrectVersionForCallback(decision, decisionVersion.getVersion(), DecisionVersionStatus.BUILDING);
 
@@ -220,6 +337,7 @@ public class DecisionManager implements DecisionLifecycle {
 
         decision.setCurrentVersion(decisionVersion);
         decision.setNextVersion(null);
+        deploymentRequestDAO.deleteByDecisionVersion(decisionVersion);
 
         LOGGER.info("Marked version '{}' of Decision '{}' as CURRENT for customer id '{}", decisionVersion.getVersion(), decision.getName(), customerId);
 
@@ -234,7 +352,6 @@ public class DecisionManager implements DecisionLifecycle {
      * @param version - The version to use in the CURRENT endpoint
      * @return - The Decision Version we are attempting to use as current one.
      */
-    @Override
     public DecisionVersion setCurrentVersion(String customerId, String decisionIdOrName, long version) {
         DecisionVersion decisionVersion = findDecisionVersion(customerId, decisionIdOrName, version);
         checkForExistingLifecycleOperation(decisionVersion.getDecision());
@@ -246,23 +363,10 @@ public class DecisionManager implements DecisionLifecycle {
 
         decisionVersion.setStatus(DecisionVersionStatus.BUILDING);
         decisionVersion.getDecision().setNextVersion(decisionVersion);
+        deploymentRequestDAO.enqueue(customerId, decisionVersion, ZonedDateTime.now(ZoneOffset.UTC), true);
         return decisionVersion;
     }
 
-    /**
-     * Reads the given dmn version and name from associated customerId
-     *
-     * @param customerId - The customer that owns the Decision
-     * @param decisionNameOrId - The name or the id of the decision to be returned
-     * @param version - The version of the decision to be returned
-     * @return - The dmn as String from S3 bucket
-     */
-    @Override
-    public ByteArrayOutputStream getDMN(String customerId, String decisionNameOrId, long version) {
-        DecisionVersion decisionVersion = findDecisionVersion(customerId, decisionNameOrId, version);
-        return decisionDMNStorage.readDMN(customerId, decisionVersion);
-    }
-
     /**
      * Attempts to delete the specified version of a Decision
      *
@@ -270,7 +374,6 @@ public class DecisionManager implements DecisionLifecycle {
      * @param version - The version of the Decision to delete.
      * @return - The deleted version of the Decision.
      */
-    @Override
     public DecisionVersion deleteVersion(String decisionId, long version) {
         Decision decision = decisionDAO.findById(decisionId);
         if (decision == null) {
@@ -287,7 +390,6 @@ public class DecisionManager implements DecisionLifecycle {
      * @param version - The version of the Decision to delete.
      * @return - The deleted version of the Decision.
      */
-    @Override
     public DecisionVersion deleteVersion(String customerId, String decisionNameOrId, long version) {
         DecisionVersion decisionVersion = findDecisionVersion(customerId, decisionNameOrId, version);
         return deleteDecisionVersion(decisionVersion);
@@ -299,7 +401,6 @@ public class DecisionManager implements DecisionLifecycle {
      * @param decisionId - The id of the Decision to delete.
      * @return - The deleted decision.
      */
-    @Override
     public Decision deleteDecision(String decisionId) {
         Decision decision = decisionDAO.findById(decisionId);
         return deleteDecision(decision, decision != null ? decision.getCustomerId() : "<UNKNOWN>", decisionId);
@@ -322,6 +423,11 @@ public class DecisionManager implements DecisionLifecycle {
         return findDecisionVersion(decisionVersion, customerId, decisionName, version);
     }
 
+    private DecisionVersion findDecisionVersionForCallback(String customerId, String decisionIdOrName, long version) {
+        DecisionVersion decisionVersion = decisionVersionDAO.findForCallback(customerId, decisionIdOrName, version);
+        return findDecisionVersion(decisionVersion, customerId, decisionIdOrName, version);
+    }
+
     private DecisionVersion deleteDecisionVersion(DecisionVersion decisionVersion) {
         // Can't delete a version whilst it is current
         if (DecisionVersionStatus.CURRENT == decisionVersion.getStatus()) {
@@ -350,7 +456,12 @@ public class DecisionManager implements DecisionLifecycle {
             throw decisionDoesNotExist(customerId, decisionNameOrId);
         }
 
+        // Content-addressed DMN may be shared with other Decisions, so only release our references to it
+        Map<String, Long> dmnReferences = decision.getVersions().stream().collect(groupingBy(DecisionVersion::getDmnLocation, counting()));
+        dmnBlobDAO.release(dmnReferences, ZonedDateTime.now(ZoneOffset.UTC));
+
         decisionDAO.delete(decision);
+        decisionCountCache.release(decision.getCustomerId());
         LOGGER.info("Deleted Decision with name '{}' and customer id '{}'", decisionNameOrId, customerId);
         return decision;
     }
@@ -378,11 +489,11 @@ public class DecisionManager implements DecisionLifecycle {
         return new NoSuchDecisionException(message);
     }
 
-    private DecisionVersion createDecisionVersion(String customerId, DecisionRequest decisionRequest) {
+    private DecisionVersion createDecisionVersion(DecisionRequest decisionRequest, long version) {
         DecisionVersion decisionVersion = new DecisionVersion();
         decisionVersion.setStatus(DecisionVersionStatus.BUILDING);
         decisionVersion.setSubmittedAt(ZonedDateTime.now(ZoneOffset.UTC));
-        decisionVersion.setVersion(decisionVersionDAO.getNextVersionId(customerId, decisionRequest.getName()));
+        decisionVersion.setVersion(version);
         decisionVersion.setConfiguration(decisionRequest.getConfiguration());
         decisionVersion.setTags(decisionRequest.getTags());
         decisionVersion.setDescription(decisionRequest.getDescription());
@@ -401,37 +512,57 @@ public class DecisionManager implements DecisionLifecycle {
         return decisionVersion;
     }
 
-    private DecisionVersion createDecision(String customerId, DecisionRequest decisionRequest) {
+    private void setDMNStorage(String customerId, DecisionVersion decisionVersion, DMNStorageRequest stagedDMN) {
+        decisionVersion.setDmnMd5(stagedDMN.getMd5Hash());
+        decisionVersion.setDmnCompression(stagedDMN.getCompression());
+        decisionVersion.setDmnLocation(decisionDMNStorage.getDMNLocation(stagedDMN, customerId, decisionVersion));
+        if (stagedDMN.isContentAddressed()) {
+            dmnBlobDAO.acquire(customerId, decisionVersion.getDmnLocation());
+        }
+    }
+
+    private DecisionVersion createDecision(String customerId, DecisionRequest decisionRequest, DMNStorageRequest stagedDMN) {
+        if (!decisionCountCache.acquire(customerId)) {
+            throw new DecisionLimitExceededException("Customer with id '" + customerId + "' has reached the maximum number of Decisions.");
+        }
+
         Decision decision = new Decision();
         decision.setCustomerId(customerId);
         decision.setName(decisionRequest.getName());
+        try {
+            decision.setFleetShardId(fleetShardSelector.placeDecision(decision).getId());
+        } catch (RuntimeException e) {
+            // importVersions records the rest of the batch in this transaction, so the Decision must not stay counted
+            decisionCountCache.release(customerId);
+            throw e;
+        }
 
-        DecisionVersion decisionVersion = createDecisionVersion(customerId, decisionRequest);
+        long version = decision.getNextVersionNumber();
+        decision.setNextVersionNumber(version + 1);
+        DecisionVersion decisionVersion = createDecisionVersion(decisionRequest, version);
         decision.addVersion(decisionVersion);
         decision.setNextVersion(decisionVersion);
         decision.setCurrentVersion(decisionVersion);
-
-        //TODO - this is occurring within a transaction. If the write to storage takes a long time, the transaction
-        // will be held open.
-        DMNStorageRequest dmnStorageRequest = decisionDMNStorage.writeDMN(customerId, decisionRequest, decisionVersion);
-        decisionVersion.setDmnMd5(dmnStorageRequest.getMd5Hash());
-        decisionVersion.setDmnLocation(dmnStorageRequest.getProviderUrl());
+        setDMNStorage(customerId, decisionVersion, stagedDMN);
 
         decisionDAO.persist(decision);
         LOGGER.info("Created new Decision with name '{}' at version '{}' for customer with id '{}'", decision.getName(), decisionVersion.getVersion(), customerId);
         return decisionVersion;
     }
 
-    private DecisionVersion updateDecision(String customerId, Decision decision, DecisionRequest decisionRequest) {
+    private DecisionVersion updateDecision(String customerId, Decision decision, DecisionRequest decisionRequest, DMNStorageRequest stagedDMN) {
         checkForExistingLifecycleOperation(decision);
 
-        DecisionVersion decisionVersion = createDecisionVersion(customerId, decisionRequest);
+        long version = decision.getNextVersionNumber();
+        if (!decisionDAO.incrementNextVersion(decision)) {
+            throw new DecisionLifecycleException(
+                    "Decision with name '" + decision.getName() + "' for customer id '" + customerId + "' was modified concurrently. Please retry the update.");
+        }
+
+        DecisionVersion decisionVersion = createDecisionVersion(decisionRequest, version);
         decision.addVersion(decisionVersion);
         decision.setNextVersion(decisionVersion);
-
-        DMNStorageRequest dmnStorageRequest = decisionDMNStorage.writeDMN(customerId, decisionRequest, decisionVersion);
-        decisionVersion.setDmnMd5(dmnStorageRequest.getMd5Hash());
-        decisionVersion.setDmnLocation(dmnStorageRequest.getProviderUrl());
+        setDMNStorage(customerId, decisionVersion, stagedDMN);
 
         decisionDAO.persist(decision);
         LOGGER.info("Updating Decision with name '{}' with new version '{}' for customer with id '{}'", decision.getName(), decisionVersion.getVersion(), customerId);
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.manager;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.kie.baaas.dfm.app.dao.DecisionVersionDAO;
+import org.kie.baaas.dfm.app.dao.DeploymentRequestDAO;
+import org.kie.baaas.dfm.app.dfs.DecisionFleetShardSelector;
+import org.kie.baaas.dfm.app.dfs.client.DecisionFleetShardClientFactory;
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
+import org.kie.baaas.dfm.app.model.DeploymentRequest;
+import org.kie.baaas.dfm.app.model.deployment.Deployment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Periodically dispatches the pending deployment requests recorded by the {@link DecisionManager} to the Fleet Shard,
+ * so that the API does not wait on the Fleet Shard and a transient Fleet Shard failure does not fail a DecisionVersion.
+ * <p>
+ * Failed requests are retried with exponential backoff. The DecisionVersion is marked as FAILED once the maximum
+ * number of attempts is exhausted, or if its DMN was never stored.
+ */
+@ApplicationScoped
+public class DeploymentDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeploymentDispatcher.class);
+
+    private static final int MAX_BACKOFF_EXPONENT = 20;
+
+    private final DeploymentRequestDAO deploymentRequestDAO;
+
+    private final DecisionVersionDAO decisionVersionDAO;
+
+    private final DecisionFleetShardSelector fleetShardSelector;
+
+    private final DecisionFleetShardClientFactory clientFactory;
+
+    private final KafkaService kafkaService;
+
+    private final DecisionLifecycle decisionLifecycle;
+
+    @ConfigProperty(name = "baaas.dfm.deployment.dispatcher.batch-size", defaultValue = "50")
+    int batchSize;
+
+    @ConfigProperty(name = "baaas.dfm.deployment.dispatcher.max-attempts", defaultValue = "10")
+    int maxAttempts;
+
+    @ConfigProperty(name = "baaas.dfm.deployment.dispatcher.initial-backoff", defaultValue = "1S")
+    Duration initialBackoff;
+
+    @ConfigProperty(name = "baaas.dfm.deployment.dispatcher.max-backoff", defaultValue = "5M")
+    Duration maxBackoff;
+
+    @ConfigProperty(name = "baaas.dfm.deployment.dispatcher.lease", defaultValue = "2M")
+    Duration lease;
+
+    // Staged DMN not stored within this period has been removed by the staging reaper
+    @ConfigProperty(name = "baaas.dfm.dmn.staging.max-age", defaultValue = "1H")
+    Duration maxDMNAge;
+
+    @Inject
+    public DeploymentDispatcher(DeploymentRequestDAO deploymentRequestDAO, DecisionVersionDAO decisionVersionDAO, DecisionFleetShardSelector fleetShardSelector,
+            DecisionFleetShardClientFactory clientFactory, KafkaService kafkaService, DecisionLifecycle decisionLifecycle) {
+        requireNonNull(deploymentRequestDAO, "deploymentRequestDAO cannot be null");
+        requireNonNull(decisionVersionDAO, "decisionVersionDAO cannot be null");
+        requireNonNull(fleetShardSelector, "fleetShardSelector cannot be null");
+        requireNonNull(clientFactory, "clientFactory cannot be null");
+        requireNonNull(kafkaService, "kafkaService cannot be null");
+        requireNonNull(decisionLifecycle, "decisionLifecycle cannot be null");
+        this.deploymentRequestDAO = deploymentRequestDAO;
+        this.decisionVersionDAO = decisionVersionDAO;
+        this.fleetShardSelector = fleetShardSelector;
+        this.clientFactory = clientFactory;
+        this.kafkaService = kafkaService;
+        this.decisionLifecycle = decisionLifecycle;
+    }
+
+    @Scheduled(every = "{baaas.dfm.deployment.dispatcher.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void dispatch() {
+        try {
+            failAwaitingDMN();
+        } catch (Exception e) {
+            LOGGER.error("Failed to process deployment requests whose DMN was never stored.", e);
+        }
+
+        try {
+            dispatchDue();
+        } catch (Exception e) {
+            LOGGER.error("Failed to dispatch deployment requests.", e);
+        }
+    }
+
+    void failAwaitingDMN() {
+        ZonedDateTime createdBefore = now().minus(maxDMNAge);
+        for (DeploymentRequest request : deploymentRequestDAO.findAwaitingDMN(createdBefore, batchSize)) {
+            // Unless the DMN was stored and the request released in the meantime
+            if (deploymentRequestDAO.deleteAwaitingDMN(request)) {
+                LOGGER.warn("DMN of version '{}' of Decision with id '{}' for customer '{}' was not stored before '{}'.",
+                        request.getVersion(), request.getDecisionId(), request.getCustomerId(), createdBefore);
+                failDeployment(request, "Failed to store DMN of Decision.");
+            }
+        }
+    }
+
+    void dispatchDue() {
+        ZonedDateTime now = now();
+        for (DeploymentRequest request : deploymentRequestDAO.findDue(now, batchSize)) {
+            if (deploymentRequestDAO.claim(request, now.plus(lease))) {
+                dispatch(request);
+            }
+        }
+    }
+
+    private void dispatch(DeploymentRequest request) {
+        DecisionVersion decisionVersion = decisionVersionDAO.findByCustomerAndDecisionIdOrName(request.getCustomerId(), request.getDecisionId(), request.getVersion());
+        if (decisionVersion == null || DecisionVersionStatus.BUILDING != decisionVersion.getStatus()) {
+            // The DecisionVersion has been deleted or its deployment concluded in the meantime
+            deploymentRequestDAO.complete(request);
+            return;
+        }
+
+        try {
+            if (decisionVersion.getKafkaConfig() != null) {
+                decisionVersion.getKafkaConfig().setCredential(kafkaService.getCustomerCredential(request.getCustomerId()));
+            }
+            DecisionFleetShard fleetShard = fleetShardSelector.selectFleetShardForDeployment(decisionVersion.getDecision());
+            clientFactory.createClientFor(fleetShard).deploy(decisionVersion);
+            deploymentRequestDAO.complete(request);
+        } catch (Exception e) {
+            int attempts = request.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                LOGGER.error("Failed to request deployment of version '{}' of Decision with id '{}' for customer '{}' after '{}' attempts.",
+                        request.getVersion(), request.getDecisionId(), request.getCustomerId(), attempts, e);
+                // Unless claimed again after the lease expired, in which case the later dispatch concludes the request
+                if (deploymentRequestDAO.complete(request)) {
+                    failDeployment(request, "Failed to deploy Decision.");
+                }
+            } else {
+                ZonedDateTime retryAt = now().plus(backoff(attempts));
+                LOGGER.warn("Failed to request deployment of version '{}' of Decision with id '{}' for customer '{}'. Retrying at '{}'.",
+                        request.getVersion(), request.getDecisionId(), request.getCustomerId(), retryAt, e);
+                deploymentRequestDAO.retry(request, retryAt, e.getMessage());
+            }
+        }
+    }
+
+    private void failDeployment(DeploymentRequest request, String statusMessage) {
+        Deployment deployment = new Deployment();
+        deployment.setStatusMessage(statusMessage);
+        try {
+            decisionLifecycle.failed(request.getCustomerId(), request.getDecisionId(), request.getVersion(), deployment);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to mark version '{}' of Decision with id '{}' for customer '{}' as FAILED.", request.getVersion(), request.getDecisionId(), request.getCustomerId(), e);
+        }
+    }
+
+    Duration backoff(int attempts) {
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, MAX_BACKOFF_EXPONENT));
+        return backoff.compareTo(maxBackoff) < 0 ? backoff : maxBackoff;
+    }
+
+    private ZonedDateTime now() {
+        return ZonedDateTime.now(ZoneOffset.UTC);
+    }
+}
@@ -4,19 +4,18 @@ import java.net.URL;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 
-import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.context.ManagedExecutor;
 import org.kie.baaas.dfm.api.webhook.WebhookRegistrationRequest;
 import org.kie.baaas.dfm.app.dao.WebhookDAO;
+import org.kie.baaas.dfm.app.dao.WebhookDeliveryDAO;
 import org.kie.baaas.dfm.app.listener.ListenerManager;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.model.webhook.Webhook;
 import org.kie.baaas.dfm.app.webhook.AlreadyExistingWebhookException;
 import org.kie.baaas.dfm.app.webhook.NotFoundWebhookException;
@@ -26,7 +25,6 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.runtime.Startup;
 
 @Startup
@@ -37,27 +35,19 @@ public class WebhookManager {
 
     private final WebhookDAO webhookDAO;
     private final ListenerManager listenerManager;
-    private final ManagedExecutor executorService;
-    private final MeterRegistry meterRegistry;
+    private final WebhookDeliveryDAO webhookDeliveryDAO;
     private final ObjectMapper objectMapper;
 
-    @ConfigProperty(name = "baaas.webhook.delivery-retries", defaultValue = "3")
-    Integer MAX_RETRY;
-    @ConfigProperty(name = "baaas.webhook.delivery-timeout", defaultValue = "10")
-    Integer TIMEOUT;
-
     @Inject
-    public WebhookManager(WebhookDAO webhookDAO, ListenerManager listenerManager, ManagedExecutor executorService, MeterRegistry meterRegistry, ObjectMapper objectMapper) {
+    public WebhookManager(WebhookDAO webhookDAO, ListenerManager listenerManager, WebhookDeliveryDAO webhookDeliveryDAO, ObjectMapper objectMapper) {
         Objects.requireNonNull(webhookDAO, "webhookDAO cannot be null");
         Objects.requireNonNull(listenerManager, "listenerManager cannot be null");
-        Objects.requireNonNull(executorService, "executorService cannot be null");
-        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        Objects.requireNonNull(webhookDeliveryDAO, "webhookDeliveryDAO cannot be null");
         Objects.requireNonNull(objectMapper, "objectMapper cannot be null");
 
         this.webhookDAO = webhookDAO;
         this.listenerManager = listenerManager;
-        this.executorService = executorService;
-        this.meterRegistry = meterRegistry;
+        this.webhookDeliveryDAO = webhookDeliveryDAO;
         this.objectMapper = objectMapper;
     }
 
@@ -66,7 +56,7 @@ public class WebhookManager {
         List<Webhook> listAll = listAll();
         LOG.info("init() with {}", listAll);
         for (Webhook e : listAll) {
-            listenerManager.addListener(new WebhookListener(e, executorService, meterRegistry, objectMapper, MAX_RETRY, TIMEOUT));
+            listenerManager.addListener(e.getCustomerId(), new WebhookListener(e, webhookDeliveryDAO, objectMapper));
         }
     }
 
@@ -78,6 +68,10 @@ public class WebhookManager {
         return webhookDAO.findByCustomer(customerId, page, size);
     }
 
+    public ListResult<Webhook> listCustomerWebhooks(String customerId, PageCursor cursor, int size) {
+        return webhookDAO.findByCustomer(customerId, cursor, size);
+    }
+
     public Webhook registerWebhook(String customerId, WebhookRegistrationRequest webhookReq) {
         LOG.debug("registerWebhook {}", webhookReq);
         List<Webhook> alreadyExisting = webhookDAO.findByCustomerIdAndUrl(customerId, webhookReq.getUrl());
@@ -85,7 +79,7 @@ public class WebhookManager {
             throw new AlreadyExistingWebhookException("The webhook is already existing: " + alreadyExisting);
         }
         Webhook webhook = new Webhook(customerId, webhookReq.getUrl());
-        listenerManager.addListener(new WebhookListener(webhook, executorService, meterRegistry, objectMapper, MAX_RETRY, TIMEOUT));
+        listenerManager.addListener(customerId, new WebhookListener(webhook, webhookDeliveryDAO, objectMapper));
         webhookDAO.persist(webhook);
         LOG.info("Persisted new Webhook with id '{}' for URL '{}'", webhook.getId(), webhook.getUrl());
         return webhook;
@@ -119,12 +113,6 @@ public class WebhookManager {
             throw new NotFoundWebhookException("No webhook found to be deleted for lookupRef: " + lookupRef);
         }
         final Predicate<WebhookListener> lookup = (WebhookListener l) -> l.getWebhook().getUrl().toString().equals(lookupRef) || l.getWebhook().getId().equals(lookupRef);
-        List<WebhookListener> toBeRemoved = listenerManager.getListeners()
-                .stream()
-                .filter(WebhookListener.class::isInstance)
-                .map(WebhookListener.class::cast)
-                .filter(lookup::test)
-                .collect(Collectors.toList());
-        toBeRemoved.forEach(listenerManager::removeListener);
+        listenerManager.removeListeners(customerId, l -> l instanceof WebhookListener && lookup.test((WebhookListener) l));
     }
 }
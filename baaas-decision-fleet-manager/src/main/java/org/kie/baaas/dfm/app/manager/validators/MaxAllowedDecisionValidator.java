@@ -22,7 +22,7 @@ import javax.validation.ConstraintValidatorContext;
 
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
-import org.kie.baaas.dfm.app.dao.DecisionDAO;
+import org.kie.baaas.dfm.app.dao.DecisionCountCache;
 import org.kie.baaas.dfm.app.resolvers.CustomerIdResolver;
 
 import io.quarkus.security.identity.SecurityIdentity;
@@ -36,7 +36,7 @@ import io.quarkus.security.identity.SecurityIdentity;
 @ApplicationScoped
 public class MaxAllowedDecisionValidator implements ConstraintValidator<WithinDecisionLimits, DecisionRequest> {
     @Inject
-    DecisionDAO decisionDAO;
+    DecisionCountCache decisionCountCache;
 
     @Inject
     CustomerIdResolver resolver;
@@ -61,7 +61,8 @@ public class MaxAllowedDecisionValidator implements ConstraintValidator<WithinDe
             return true;
         }
 
-        long decisionCount = decisionDAO.getDecisionCountByCustomerId(resolver.getCustomerId(identity.getPrincipal()));
+        // A cheap check against the count held in memory, the limit is enforced when the Decision is created
+        long decisionCount = decisionCountCache.getDecisionCount(resolver.getCustomerId(identity.getPrincipal()));
         return isDecisionCountWithinLimit(decisionCount);
     }
 }
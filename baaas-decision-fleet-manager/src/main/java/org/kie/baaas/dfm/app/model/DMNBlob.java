@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.model;
+
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Tracks how many DecisionVersions reference a content-addressed DMN so that the DMN is only removed from storage
+ * once no DecisionVersion references it any more.
+ */
+@NamedQueries({
+        @NamedQuery(name = "DMNBlob.acquire",
+                query = "update DMNBlob b set b.refCount = b.refCount + 1, b.releasedAt = null where b.location=:location"),
+        @NamedQuery(name = "DMNBlob.tracked",
+                query = "select b.location from DMNBlob b where b.location in (:locations)"),
+        @NamedQuery(name = "DMNBlob.release",
+                query = "update DMNBlob b set b.refCount = b.refCount - :references where b.location=:location"),
+        @NamedQuery(name = "DMNBlob.markReleased",
+                query = "update DMNBlob b set b.releasedAt=:releasedAt where b.location in (:locations) and b.refCount <= 0"),
+        @NamedQuery(name = "DMNBlob.unreferencedBefore",
+                query = "from DMNBlob b where b.refCount <= 0 and b.releasedAt < :releasedAt"),
+        @NamedQuery(name = "DMNBlob.deleteByLocations",
+                query = "delete from DMNBlob b where b.location in (:locations)")
+})
+@Entity
+@Table(name = "DMN_BLOB")
+public class DMNBlob {
+
+    @Id
+    private String location;
+
+    @Basic
+    @Column(name = "customer_id", nullable = false)
+    private String customerId;
+
+    @Basic
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Basic
+    @Column(name = "released_at")
+    private ZonedDateTime releasedAt;
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public ZonedDateTime getReleasedAt() {
+        return releasedAt;
+    }
+
+    public void setReleasedAt(ZonedDateTime releasedAt) {
+        this.releasedAt = releasedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DMNBlob dmnBlob = (DMNBlob) o;
+        return location.equals(dmnBlob.location);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(location);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.model;
+
+/**
+ * Models the compression applied to the DMN of a Decision Version when it was written to storage.
+ */
+public enum DMNCompression {
+
+    GZIP("gzip");
+
+    private final String contentEncoding;
+
+    DMNCompression(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * The HTTP Content-Encoding of DMN stored with this compression.
+     *
+     * @return - The content coding name
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+}
@@ -37,8 +37,15 @@ import javax.persistence.Version;
 
 @NamedQueries({
         @NamedQuery(name = "Decision.byCustomerIdAndName", query = "from Decision where customerId=:customerId and name=:name"),
-        @NamedQuery(name = "Decision.byCustomerAndIdOrName", query = "from Decision where customerId=:customerId and (name=:idOrName or id=:idOrName)"),
-        @NamedQuery(name = "Decision.decisionCountByCustomerId", query = "select count(d.id) from Decision d where d.customerId=:customerId")
+        @NamedQuery(name = "Decision.byCustomerIdAndNames", query = "from Decision where customerId=:customerId and name in (:names)"),
+        @NamedQuery(name = "Decision.byCustomerAndDecisionId", query = "from Decision where customerId=:customerId and id=:idOrName"),
+        @NamedQuery(name = "Decision.byCustomerAndDecisionName", query = "from Decision where customerId=:customerId and name=:idOrName"),
+        @NamedQuery(name = "Decision.incrementNextVersion",
+                query = "update Decision d set d.nextVersionNumber = d.nextVersionNumber + 1 where d.id=:id and d.lockVersion=:lockVersion"),
+        @NamedQuery(name = "Decision.countByFleetShardAndCustomer",
+                query = "select d.fleetShardId, d.customerId, count(d.id) from Decision d where d.fleetShardId is not null group by d.fleetShardId, d.customerId"),
+        @NamedQuery(name = "Decision.countByCustomerIds",
+                query = "select d.customerId, count(d.id) from Decision d where d.customerId in (:customerIds) group by d.customerId")
 })
 @Entity
 @Table(name = "DECISION")
@@ -55,6 +62,10 @@ public class Decision {
     @Column(nullable = false, updatable = false)
     private String name;
 
+    @Basic
+    @Column(name = "fleet_shard_id")
+    private Integer fleetShardId;
+
     @JoinColumn(name = "current_version_id")
     @OneToOne(optional = false, fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     private DecisionVersion currentVersion;
@@ -67,6 +78,13 @@ public class Decision {
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "decision", orphanRemoval = true, cascade = CascadeType.ALL)
     private List<DecisionVersion> versions = new ArrayList<>();
 
+    /*
+     * Only ever incremented through Decision.incrementNextVersion so that allocating a version number is atomic.
+     */
+    @Basic
+    @Column(name = "next_version", nullable = false, updatable = false)
+    private long nextVersionNumber = 1;
+
     @Version
     @Column(name = "lock_version", nullable = false)
     private int lockVersion = 0;
@@ -83,6 +101,10 @@ public class Decision {
         return name;
     }
 
+    public Integer getFleetShardId() {
+        return fleetShardId;
+    }
+
     public DecisionVersion getCurrentVersion() {
         return currentVersion;
     }
@@ -95,6 +117,14 @@ public class Decision {
         return versions;
     }
 
+    public long getNextVersionNumber() {
+        return nextVersionNumber;
+    }
+
+    public int getLockVersion() {
+        return lockVersion;
+    }
+
     public void setId(String id) {
         this.id = id;
     }
@@ -107,6 +137,10 @@ public class Decision {
         this.name = name;
     }
 
+    public void setFleetShardId(Integer fleetShardId) {
+        this.fleetShardId = fleetShardId;
+    }
+
     public void setCurrentVersion(DecisionVersion currentVersion) {
         this.currentVersion = currentVersion;
     }
@@ -119,6 +153,10 @@ public class Decision {
         this.versions = versions;
     }
 
+    public void setNextVersionNumber(long nextVersionNumber) {
+        this.nextVersionNumber = nextVersionNumber;
+    }
+
     public void addVersion(DecisionVersion decisionVersion) {
         if (decisionVersion != null) {
             versions.add(decisionVersion);
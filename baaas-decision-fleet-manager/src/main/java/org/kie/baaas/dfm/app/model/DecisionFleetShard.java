@@ -48,6 +48,14 @@ public class DecisionFleetShard {
     @Column(name = "dmn_jit_url", nullable = false)
     private String dmnJitUrl;
 
+    @Basic
+    @Column(name = "capacity")
+    private Integer capacity;
+
+    @Basic
+    @Column(name = "schedulable", nullable = false)
+    private boolean schedulable = true;
+
     public int getId() {
         return id;
     }
@@ -72,6 +80,32 @@ public class DecisionFleetShard {
         this.dmnJitUrl = dmnJITUrl;
     }
 
+    /**
+     * The maximum number of Decisions that can be placed on the Fleet Shard.
+     *
+     * @return - The capacity of the Fleet Shard, or null if it is unbounded
+     */
+    public Integer getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(Integer capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Whether new Decisions can be placed on the Fleet Shard. Decisions already placed on it remain there.
+     *
+     * @return - true if new Decisions can be placed on the Fleet Shard
+     */
+    public boolean isSchedulable() {
+        return schedulable;
+    }
+
+    public void setSchedulable(boolean schedulable) {
+        this.schedulable = schedulable;
+    }
+
     public String getNamespace() {
         return namespace;
     }
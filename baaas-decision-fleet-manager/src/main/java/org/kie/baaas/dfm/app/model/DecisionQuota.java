@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.model;
+
+import java.util.Objects;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Counts the Decisions of a customer so that the limit on the number of Decisions can be enforced atomically with
+ * their creation. Concurrent creations for the same customer are serialised on the row of the customer.
+ */
+@NamedQueries({
+        @NamedQuery(name = "DecisionQuota.acquire",
+                query = "update DecisionQuota q set q.decisionCount = q.decisionCount + 1 where q.customerId=:customerId"),
+        @NamedQuery(name = "DecisionQuota.acquireWithinLimit",
+                query = "update DecisionQuota q set q.decisionCount = q.decisionCount + 1 where q.customerId=:customerId and q.decisionCount < :limit"),
+        @NamedQuery(name = "DecisionQuota.release",
+                query = "update DecisionQuota q set q.decisionCount = q.decisionCount - 1 where q.customerId=:customerId and q.decisionCount > 0"),
+        @NamedQuery(name = "DecisionQuota.byCustomerIds", query = "from DecisionQuota q where q.customerId in (:customerIds)"),
+        @NamedQuery(name = "DecisionQuota.byCustomerIdsOrdered", query = "from DecisionQuota q where q.customerId in (:customerIds) order by q.customerId")
+})
+@Entity
+@Table(name = "DECISION_QUOTA")
+public class DecisionQuota {
+
+    @Id
+    @Column(name = "customer_id")
+    private String customerId;
+
+    @Basic
+    @Column(name = "decision_count", nullable = false)
+    private long decisionCount;
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public long getDecisionCount() {
+        return decisionCount;
+    }
+
+    public void setDecisionCount(long decisionCount) {
+        this.decisionCount = decisionCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DecisionQuota that = (DecisionQuota) o;
+        return customerId.equals(that.customerId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(customerId);
+    }
+}
@@ -38,6 +38,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.MapKeyColumn;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
 import javax.persistence.Version;
 
@@ -48,25 +49,54 @@ import org.kie.baaas.dfm.app.model.eventing.KafkaConfig;
  * Encapsulates a version of a Decision.
  */
 @NamedQueries({
-        @NamedQuery(name = "DecisionVersion.countByCustomerAndName", query = "from DecisionVersion dv where dv.decision.customerId=:customerId and dv.decision.name=:name"),
         @NamedQuery(name = "DecisionVersion.countCurrentByCustomer", query = "select count(d.currentVersion.id) from Decision d where d.customerId=:customerId"),
-        @NamedQuery(name = "DecisionVersion.listCurrentIdsByCustomer", query = "select d.currentVersion.id from Decision d where d.customerId=:customerId order by d.name"),
-        @NamedQuery(name = "DecisionVersion.countByIdOrName",
-                query = "select count(dv.id) from DecisionVersion dv where dv.decision.customerId=:customerId and (dv.decision.name=:idOrName or dv.decision.id=:idOrName)"),
-        @NamedQuery(name = "DecisionVersion.listIdsByIdOrName",
-                query = "select dv.id from DecisionVersion dv where dv.decision.customerId=:customerId and (dv.decision.name=:idOrName or dv.decision.id=:idOrName)"),
+        @NamedQuery(name = "DecisionVersion.listCurrentIdsByCustomer", query = "select d.currentVersion.id from Decision d where d.customerId=:customerId and d.currentVersion.id is not null order by d.name, d.id"),
+        @NamedQuery(name = "DecisionVersion.listCurrentIdsByCustomerAfter",
+                query = "select d.currentVersion.id from Decision d where d.customerId=:customerId and d.currentVersion.id is not null and (d.name > :name or (d.name = :name and d.id > :id)) order by d.name, d.id"),
+        @NamedQuery(name = "DecisionVersion.countByDecisionId",
+                query = "select count(dv.id) from DecisionVersion dv where dv.decision.customerId=:customerId and dv.decision.id=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.listIdsByDecisionId",
+                query = "select dv.id from DecisionVersion dv where dv.decision.customerId=:customerId and dv.decision.id=:idOrName order by dv.submittedAt desc, dv.id desc"),
+        @NamedQuery(name = "DecisionVersion.listIdsAfterByDecisionId",
+                query = "select dv.id from DecisionVersion dv where dv.decision.customerId=:customerId and dv.decision.id=:idOrName and (dv.submittedAt < :submittedAt or (dv.submittedAt = :submittedAt and dv.id < :id)) order by dv.submittedAt desc, dv.id desc"),
+        @NamedQuery(name = "DecisionVersion.countByDecisionName",
+                query = "select count(dv.id) from DecisionVersion dv where dv.decision.customerId=:customerId and dv.decision.name=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.listIdsByDecisionName",
+                query = "select dv.id from DecisionVersion dv where dv.decision.customerId=:customerId and dv.decision.name=:idOrName order by dv.submittedAt desc, dv.id desc"),
+        @NamedQuery(name = "DecisionVersion.listIdsAfterByDecisionName",
+                query = "select dv.id from DecisionVersion dv where dv.decision.customerId=:customerId and dv.decision.name=:idOrName and (dv.submittedAt < :submittedAt or (dv.submittedAt = :submittedAt and dv.id < :id)) order by dv.submittedAt desc, dv.id desc"),
         @NamedQuery(name = "DecisionVersion.listByIdOrName",
-                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id in (:ids) order by dv.submittedAt desc"),
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id in (:ids) order by dv.submittedAt desc, dv.id desc"),
         @NamedQuery(name = "DecisionVersion.listCurrentByCustomer",
-                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id in (:ids) order by dv.decision.name"),
-        @NamedQuery(name = "DecisionVersion.currentByCustomerAndDecisionIdOrName",
-                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id=dv.decision.currentVersion.id and dv.decision.customerId=:customerId and (dv.decision.id=:idOrName or dv.decision.name=:idOrName)"),
-        @NamedQuery(name = "DecisionVersion.buildingByCustomerAndDecisionIdOrName",
-                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id=dv.decision.nextVersion.id and dv.decision.customerId=:customerId and (dv.decision.id=:idOrName or dv.decision.name=:idOrName)"),
-        @NamedQuery(name = "DecisionVersion.byCustomerDecisionIdOrNameAndVersion",
-                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.version=:version and dv.decision.customerId=:customerId and (dv.decision.id=:idOrName or dv.decision.name=:idOrName)"),
-        @NamedQuery(name = "DecisionVersion.listAll",
-                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision order by dv.decision.name")
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id in (:ids) order by dv.decision.name, dv.decision.id"),
+        @NamedQuery(name = "DecisionVersion.currentByCustomerAndDecisionId",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id=dv.decision.currentVersion.id and dv.decision.customerId=:customerId and dv.decision.id=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.buildingByCustomerAndDecisionId",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id=dv.decision.nextVersion.id and dv.decision.customerId=:customerId and dv.decision.id=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.byCustomerVersionAndDecisionId",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.version=:version and dv.decision.customerId=:customerId and dv.decision.id=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.currentByCustomerAndDecisionName",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id=dv.decision.currentVersion.id and dv.decision.customerId=:customerId and dv.decision.name=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.buildingByCustomerAndDecisionName",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id=dv.decision.nextVersion.id and dv.decision.customerId=:customerId and dv.decision.name=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.byCustomerVersionAndDecisionName",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.version=:version and dv.decision.customerId=:customerId and dv.decision.name=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.forCallbackByDecisionId",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision d left join fetch d.currentVersion left join fetch d.nextVersion where dv.version=:version and d.customerId=:customerId and d.id=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.forCallbackByDecisionName",
+                query = "select dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision d left join fetch d.currentVersion left join fetch d.nextVersion where dv.version=:version and d.customerId=:customerId and d.name=:idOrName"),
+        @NamedQuery(name = "DecisionVersion.listCurrentIds",
+                query = "select d.currentVersion.id from Decision d where d.currentVersion.id is not null order by d.customerId, d.name, d.id"),
+        @NamedQuery(name = "DecisionVersion.listCurrentIdsAfter",
+                query = "select d.currentVersion.id from Decision d where d.currentVersion.id is not null and (d.customerId > :customerId or (d.customerId = :customerId and (d.name > :name or (d.name = :name and d.id > :id)))) order by d.customerId, d.name, d.id"),
+        @NamedQuery(name = "DecisionVersion.listCurrentByIds",
+                query = "select distinct dv from DecisionVersion dv left join fetch dv.tags left join fetch dv.configuration join fetch dv.decision where dv.id in (:ids) order by dv.decision.customerId, dv.decision.name, dv.decision.id",
+                hints = @QueryHint(name = "hibernate.query.passDistinctThrough", value = "false")),
+        @NamedQuery(name = "DecisionVersion.buildingWithoutDeploymentBefore",
+                query = "select dv from DecisionVersion dv join fetch dv.decision where dv.status=:status and dv.deployment.versionName is null and dv.submittedAt < :submittedAt order by dv.submittedAt, dv.id"),
+        @NamedQuery(name = "DecisionVersion.buildingWithoutDeploymentBeforeAfter",
+                query = "select dv from DecisionVersion dv join fetch dv.decision where dv.status=:status and dv.deployment.versionName is null and dv.submittedAt < :submittedAt "
+                        + "and (dv.submittedAt > :afterSubmittedAt or (dv.submittedAt = :afterSubmittedAt and dv.id > :id)) order by dv.submittedAt, dv.id")
 })
 @Entity
 @Table(name = "DECISION_VERSION")
@@ -108,6 +138,10 @@ public class DecisionVersion {
     @Column(name = "dmn_md5", updatable = false)
     private String dmnMd5;
 
+    @Column(name = "dmn_compression", updatable = false)
+    @Enumerated(EnumType.STRING)
+    private DMNCompression dmnCompression;
+
     @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(
             name = "DECISION_VERSION_TAG",
@@ -191,6 +225,10 @@ public class DecisionVersion {
         return dmnMd5;
     }
 
+    public DMNCompression getDmnCompression() {
+        return dmnCompression;
+    }
+
     public void setDecision(Decision decision) {
         this.decision = decision;
     }
@@ -219,6 +257,10 @@ public class DecisionVersion {
         this.dmnMd5 = dmnMd5;
     }
 
+    public void setDmnCompression(DMNCompression dmnCompression) {
+        this.dmnCompression = dmnCompression;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.model;
+
+import java.time.ZonedDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * A pending request to deploy a DecisionVersion to the Fleet Shard. Requests are recorded in the same transaction
+ * as the DecisionVersion and are dispatched to the Fleet Shard in the background.
+ * <p>
+ * A request without an availableAt time is waiting for the DMN of the DecisionVersion to be stored.
+ */
+@NamedQueries({
+        @NamedQuery(name = "DeploymentRequest.due",
+                query = "from DeploymentRequest r where r.availableAt <= :now order by r.availableAt"),
+        @NamedQuery(name = "DeploymentRequest.awaitingDMNBefore",
+                query = "from DeploymentRequest r where r.availableAt is null and r.createdAt < :createdAt"),
+        @NamedQuery(name = "DeploymentRequest.release",
+                query = "update DeploymentRequest r set r.availableAt=:now where r.decisionId=:decisionId and r.version=:version and r.availableAt is null"),
+        @NamedQuery(name = "DeploymentRequest.claim",
+                query = "update DeploymentRequest r set r.availableAt=:leaseUntil, r.attempts = r.attempts + 1 where r.id=:id and r.attempts=:attempts"),
+        @NamedQuery(name = "DeploymentRequest.retry",
+                query = "update DeploymentRequest r set r.availableAt=:availableAt, r.lastError=:lastError where r.id=:id and r.attempts=:attempts"),
+        @NamedQuery(name = "DeploymentRequest.complete",
+                query = "delete from DeploymentRequest r where r.id=:id and r.attempts=:attempts"),
+        @NamedQuery(name = "DeploymentRequest.deleteAwaitingDMN",
+                query = "delete from DeploymentRequest r where r.id=:id and r.availableAt is null"),
+        @NamedQuery(name = "DeploymentRequest.deleteByDecisionVersion",
+                query = "delete from DeploymentRequest r where r.decisionId=:decisionId and r.version=:version")
+})
+@Entity
+@Table(name = "DEPLOYMENT_REQUEST")
+public class DeploymentRequest {
+
+    @Id
+    private String id = UUID.randomUUID().toString();
+
+    @Basic
+    @Column(name = "customer_id", nullable = false, updatable = false)
+    private String customerId;
+
+    @Basic
+    @Column(name = "decision_id", nullable = false, updatable = false)
+    private String decisionId;
+
+    @Column(nullable = false, updatable = false)
+    private long version;
+
+    @Basic
+    @Column(nullable = false)
+    private int attempts;
+
+    @Basic
+    @Column(name = "created_at", nullable = false, updatable = false, columnDefinition = "TIMESTAMP")
+    private ZonedDateTime createdAt;
+
+    @Basic
+    @Column(name = "available_at", columnDefinition = "TIMESTAMP")
+    private ZonedDateTime availableAt;
+
+    @Basic
+    @Column(name = "last_error")
+    private String lastError;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public String getDecisionId() {
+        return decisionId;
+    }
+
+    public void setDecisionId(String decisionId) {
+        this.decisionId = decisionId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public ZonedDateTime getAvailableAt() {
+        return availableAt;
+    }
+
+    public void setAvailableAt(ZonedDateTime availableAt) {
+        this.availableAt = availableAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DeploymentRequest that = (DeploymentRequest) o;
+        return id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
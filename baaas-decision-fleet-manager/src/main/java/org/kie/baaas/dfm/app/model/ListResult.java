@@ -20,7 +20,7 @@ import java.util.List;
 /**
  * Encapsulates the result of calling a DAO method than returns a list. It not only includes
  * the results of the query, but also details on the total number of items, the page and number of items
- * on the page.
+ * on the page, together with the cursor to the next page when there is one.
  * 
  * @param <T> - The type of the entity returned in the list.
  */
@@ -32,10 +32,17 @@ public class ListResult<T> {
 
     private final long page;
 
+    private final PageCursor next;
+
     public ListResult(List<T> items, long page, long total) {
+        this(items, page, total, null);
+    }
+
+    public ListResult(List<T> items, long page, long total, PageCursor next) {
         this.items = items;
         this.page = page;
         this.total = total;
+        this.next = next;
     }
 
     public long getPage() {
@@ -53,4 +60,8 @@ public class ListResult<T> {
     public List<T> getItems() {
         return items;
     }
+
+    public PageCursor getNext() {
+        return next;
+    }
 }
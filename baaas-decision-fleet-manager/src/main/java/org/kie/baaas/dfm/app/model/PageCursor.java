@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.kie.baaas.dfm.app.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.kie.baaas.dfm.app.exceptions.InvalidPageCursorException;
+
+/**
+ * The position a paged listing continues from. A listing is ordered by a key and the id of each item, so the next
+ * page is the items that sort after the last item of the previous page. Continuing from a cursor therefore costs the
+ * same however deep into the listing the page is, rather than growing with the offset of the page.
+ * <p>
+ * The cursor also carries the number of the page and the total counted when the listing started, so that pages
+ * reached through a cursor do not count the items again. The total is therefore only approximate once items are
+ * added or removed during the listing.
+ */
+public class PageCursor {
+
+    private static final String SEPARATOR = "\n";
+
+    private final long page;
+
+    private final long total;
+
+    private final String key;
+
+    private final String id;
+
+    public PageCursor(long page, long total, String key, String id) {
+        this.page = page;
+        this.total = total;
+        this.key = key;
+        this.id = id;
+    }
+
+    public long getPage() {
+        return page;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Encodes this cursor as an opaque token that is safe to use in a URL.
+     *
+     * @return - The encoded cursor
+     */
+    public String encode() {
+        String cursor = page + SEPARATOR + total + SEPARATOR + id + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously returned by {@link #encode()}.
+     *
+     * @param cursor - The encoded cursor
+     * @return - The decoded cursor
+     * @throws InvalidPageCursorException - if the cursor was not produced by {@link #encode()}
+     */
+    public static PageCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, 4);
+            if (parts.length != 4) {
+                throw new InvalidPageCursorException("Invalid page cursor '" + cursor + "'");
+            }
+            return new PageCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[3], parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageCursorException("Invalid page cursor '" + cursor + "'", e);
+        }
+    }
+}
@@ -13,6 +13,9 @@ import javax.persistence.Table;
 
 @NamedQueries({
         @NamedQuery(name = "Webhook.byCustomerId", query = "from Webhook w where w.customerId=:customerId"),
+        @NamedQuery(name = "Webhook.listByCustomerId", query = "from Webhook w where w.customerId=:customerId order by w.url, w.id"),
+        @NamedQuery(name = "Webhook.listByCustomerIdAfter",
+                query = "from Webhook w where w.customerId=:customerId and (w.url > :url or (w.url = :url and w.id > :id)) order by w.url, w.id"),
         @NamedQuery(name = "Webhook.byCustomerIdAndWebhookId", query = "from Webhook w where w.customerId=:customerId and w.id=:id"),
         @NamedQuery(name = "Webhook.byCustomerIdAndUrl", query = "from Webhook w where w.customerId=:customerId and w.url=:url")
 })
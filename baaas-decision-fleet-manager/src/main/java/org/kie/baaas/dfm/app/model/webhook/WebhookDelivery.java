@@ -0,0 +1,202 @@
+package org.kie.baaas.dfm.app.model.webhook;
+
+import java.time.ZonedDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedNativeQuery;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * A CloudEvent to be delivered to a Webhook. Deliveries are recorded when the event occurs and are sent to the
+ * Webhook in the background, so that they survive a restart of the Fleet Manager and an outage of the receiver.
+ * <p>
+ * A delivery that exhausted its attempts is dead-lettered: it has a deadAt time instead of an availableAt time and
+ * is only sent again once replayed.
+ */
+// Only inserted while the Webhook exists, so that enqueueing for a Webhook deleted meanwhile does not fail the enclosing
+// transaction on the foreign key
+@NamedNativeQuery(name = "WebhookDelivery.enqueue",
+        query = "insert into WEBHOOK_DELIVERY (id, webhook_id, customer_id, event_id, url, payload, attempts, created_at, available_at) "
+                + "select :id, w.id, :customerId, :eventId, :url, :payload, 0, cast(:now as timestamp), cast(:now as timestamp) from WEBHOOK w where w.id=:webhookId")
+@NamedQueries({
+        @NamedQuery(name = "WebhookDelivery.due",
+                query = "from WebhookDelivery d where d.availableAt <= :now order by d.availableAt"),
+        @NamedQuery(name = "WebhookDelivery.claim",
+                query = "update WebhookDelivery d set d.availableAt=:leaseUntil, d.attempts = d.attempts + 1 where d.id=:id and d.attempts=:attempts"),
+        @NamedQuery(name = "WebhookDelivery.defer",
+                query = "update WebhookDelivery d set d.availableAt=:availableAt where d.id=:id and d.attempts=:attempts"),
+        @NamedQuery(name = "WebhookDelivery.unclaim",
+                query = "update WebhookDelivery d set d.availableAt=:availableAt, d.attempts = d.attempts - 1 where d.id=:id and d.attempts=:attempts"),
+        @NamedQuery(name = "WebhookDelivery.retry",
+                query = "update WebhookDelivery d set d.availableAt=:availableAt, d.lastError=:lastError where d.id=:id and d.attempts=:attempts"),
+        @NamedQuery(name = "WebhookDelivery.deadLetter",
+                query = "update WebhookDelivery d set d.availableAt = null, d.deadAt=:deadAt, d.lastError=:lastError where d.id=:id and d.attempts=:attempts"),
+        @NamedQuery(name = "WebhookDelivery.complete",
+                query = "delete from WebhookDelivery d where d.id=:id and d.attempts=:attempts"),
+        @NamedQuery(name = "WebhookDelivery.replay",
+                query = "update WebhookDelivery d set d.availableAt=:now, d.attempts = 0, d.deadAt = null where d.deadAt is not null"),
+        @NamedQuery(name = "WebhookDelivery.replayByCustomer",
+                query = "update WebhookDelivery d set d.availableAt=:now, d.attempts = 0, d.deadAt = null where d.customerId=:customerId and d.deadAt is not null"),
+        @NamedQuery(name = "WebhookDelivery.replayById",
+                query = "update WebhookDelivery d set d.availableAt=:now, d.attempts = 0, d.deadAt = null where d.id=:id and d.deadAt is not null")
+})
+@Entity
+@Table(name = "WEBHOOK_DELIVERY")
+public class WebhookDelivery {
+
+    @Id
+    private String id = UUID.randomUUID().toString();
+
+    @Basic
+    @Column(name = "webhook_id", nullable = false, updatable = false)
+    private String webhookId;
+
+    @Basic
+    @Column(name = "customer_id", nullable = false, updatable = false)
+    private String customerId;
+
+    @Basic
+    @Column(name = "event_id", nullable = false, updatable = false)
+    private String eventId;
+
+    @Basic
+    @Column(nullable = false, updatable = false)
+    private String url;
+
+    @Basic
+    @Column(nullable = false, updatable = false)
+    private byte[] payload;
+
+    @Basic
+    @Column(nullable = false)
+    private int attempts;
+
+    @Basic
+    @Column(name = "created_at", nullable = false, updatable = false, columnDefinition = "TIMESTAMP")
+    private ZonedDateTime createdAt;
+
+    @Basic
+    @Column(name = "available_at", columnDefinition = "TIMESTAMP")
+    private ZonedDateTime availableAt;
+
+    @Basic
+    @Column(name = "dead_at", columnDefinition = "TIMESTAMP")
+    private ZonedDateTime deadAt;
+
+    @Basic
+    @Column(name = "last_error")
+    private String lastError;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getWebhookId() {
+        return webhookId;
+    }
+
+    public void setWebhookId(String webhookId) {
+        this.webhookId = webhookId;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public ZonedDateTime getAvailableAt() {
+        return availableAt;
+    }
+
+    public void setAvailableAt(ZonedDateTime availableAt) {
+        this.availableAt = availableAt;
+    }
+
+    public ZonedDateTime getDeadAt() {
+        return deadAt;
+    }
+
+    public void setDeadAt(ZonedDateTime deadAt) {
+        this.deadAt = deadAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        WebhookDelivery that = (WebhookDelivery) o;
+        return id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "WebhookDelivery [id=" + id + ", webhookId=" + webhookId + ", eventId=" + eventId + ", url=" + url + "]";
+    }
+}
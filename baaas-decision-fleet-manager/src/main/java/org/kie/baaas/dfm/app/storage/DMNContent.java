@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.kie.baaas.dfm.app.model.DMNCompression;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An open stream over DMN held by the configured provider storage. The stream is not buffered in memory and
+ * must be closed once consumed, which {@link #writeTo(OutputStream)} does.
+ */
+public class DMNContent implements Closeable {
+
+    private final InputStream content;
+
+    private final String eTag;
+
+    private final long contentLength;
+
+    private final String contentRange;
+
+    private final DMNCompression compression;
+
+    public DMNContent(InputStream content, String eTag, long contentLength, String contentRange) {
+        this(content, eTag, contentLength, contentRange, null);
+    }
+
+    public DMNContent(InputStream content, String eTag, long contentLength, String contentRange, DMNCompression compression) {
+        requireNonNull(content, "content cannot be null");
+
+        this.content = content;
+        this.eTag = eTag;
+        this.contentLength = contentLength;
+        this.contentRange = contentRange;
+        this.compression = compression;
+    }
+
+    /**
+     * The ETag of the stored DMN, without surrounding quotes.
+     *
+     * @return - The ETag of the stored DMN
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * The number of bytes that will be written by {@link #writeTo(OutputStream)}.
+     *
+     * @return - The length of the streamed content or -1 if unknown
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * The Content-Range of the streamed content when only part of the DMN was requested.
+     *
+     * @return - The Content-Range or null if the complete DMN is streamed
+     */
+    public String getContentRange() {
+        return contentRange;
+    }
+
+    public boolean isPartial() {
+        return contentRange != null;
+    }
+
+    /**
+     * The compression of the streamed content, as it was written to storage.
+     *
+     * @return - The compression of the streamed content or null if it is not compressed
+     */
+    public DMNCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Returns the uncompressed DMN. The DMN is decompressed as it is streamed, so its length is not known up front.
+     *
+     * @return - This content if it is not compressed, otherwise a stream that decompresses this content
+     */
+    public DMNContent decompressed() {
+        if (compression == null) {
+            return this;
+        }
+
+        try {
+            return new DMNContent(new GZIPInputStream(content), eTag, -1, null);
+        } catch (IOException e) {
+            throw new DecisionDMNStorageException("Failed to decompress decision read from storage.", e);
+        }
+    }
+
+    /**
+     * Copies the DMN to the given output with a bounded buffer and closes the underlying stream.
+     *
+     * @param output - The output to write the DMN to
+     * @throws IOException - If reading the DMN or writing to the output fails
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        try (InputStream in = content) {
+            in.transferTo(output);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.kie.baaas.dfm.app.dao.DMNBlobDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Periodically removes staged DMN that was never promoted to a DecisionVersion, for example because
+ * the transaction recording the DecisionVersion failed or the Fleet Manager stopped mid-upload.
+ * <p>
+ * Content-addressed DMN that has not been referenced by any DecisionVersion for the same period is removed as well.
+ */
+@ApplicationScoped
+public class DMNStagingReaper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DMNStagingReaper.class);
+
+    private static final int MAX_UNREFERENCED_DMN_PER_RUN = 1000;
+
+    private final DecisionDMNStorage decisionDMNStorage;
+
+    private final DMNBlobDAO dmnBlobDAO;
+
+    @ConfigProperty(name = "baaas.dfm.dmn.staging.max-age", defaultValue = "1H")
+    Duration maxAge;
+
+    @Inject
+    public DMNStagingReaper(DecisionDMNStorage decisionDMNStorage, DMNBlobDAO dmnBlobDAO) {
+        requireNonNull(decisionDMNStorage, "decisionDMNStorage cannot be null");
+        requireNonNull(dmnBlobDAO, "dmnBlobDAO cannot be null");
+        this.decisionDMNStorage = decisionDMNStorage;
+        this.dmnBlobDAO = dmnBlobDAO;
+    }
+
+    @Scheduled(every = "{baaas.dfm.dmn.staging.reaper.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reap() {
+        try {
+            int deleted = decisionDMNStorage.deleteStagedDMNOlderThan(maxAge);
+            if (deleted > 0) {
+                LOGGER.info("Removed '{}' orphaned staged DMN files older than '{}'.", deleted, maxAge);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to remove orphaned staged DMN files.", e);
+        }
+
+        try {
+            reapUnreferenced();
+        } catch (Exception e) {
+            LOGGER.error("Failed to remove unreferenced DMN files.", e);
+        }
+    }
+
+    private void reapUnreferenced() {
+        ZonedDateTime releasedBefore = ZonedDateTime.now(ZoneOffset.UTC).minus(maxAge);
+        // DMN is only forgotten once removed from storage, and cannot be referenced again while it is being removed
+        List<String> unreferenced = dmnBlobDAO.deleteUnreferenced(releasedBefore, MAX_UNREFERENCED_DMN_PER_RUN, decisionDMNStorage::deleteDMN);
+        if (!unreferenced.isEmpty()) {
+            LOGGER.info("Removed '{}' DMN files unreferenced since '{}'.", unreferenced.size(), releasedBefore);
+        }
+    }
+}
@@ -17,6 +17,8 @@ package org.kie.baaas.dfm.app.storage;
 
 import java.util.Objects;
 
+import org.kie.baaas.dfm.app.model.DMNCompression;
+
 /**
  * Encapsulates the result of writing DMN to the configured provider storage.
  */
@@ -26,12 +28,26 @@ public class DMNStorageRequest {
 
     private final String md5Hash;
 
+    private final boolean contentAddressed;
+
+    private final DMNCompression compression;
+
     public DMNStorageRequest(String providerUrl, String md5Hash) {
+        this(providerUrl, md5Hash, false);
+    }
+
+    public DMNStorageRequest(String providerUrl, String md5Hash, boolean contentAddressed) {
+        this(providerUrl, md5Hash, contentAddressed, null);
+    }
+
+    public DMNStorageRequest(String providerUrl, String md5Hash, boolean contentAddressed, DMNCompression compression) {
         Objects.requireNonNull(providerUrl, "providerUrl cannot be null");
         Objects.requireNonNull(md5Hash, "md5Hash cannot be null");
 
         this.providerUrl = providerUrl;
         this.md5Hash = md5Hash;
+        this.contentAddressed = contentAddressed;
+        this.compression = compression;
     }
 
     /**
@@ -51,4 +67,23 @@ public class DMNStorageRequest {
     public String getMd5Hash() {
         return md5Hash;
     }
+
+    /**
+     * Whether the DMN was written to a location derived from its content, which may be shared by several
+     * DecisionVersions.
+     *
+     * @return - true if the DMN is stored content-addressed
+     */
+    public boolean isContentAddressed() {
+        return contentAddressed;
+    }
+
+    /**
+     * The compression applied to the DMN written to storage.
+     *
+     * @return - The compression of the DMN or null if it is stored uncompressed
+     */
+    public DMNCompression getCompression() {
+        return compression;
+    }
 }
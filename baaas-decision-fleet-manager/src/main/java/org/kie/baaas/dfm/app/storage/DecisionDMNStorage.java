@@ -15,17 +15,89 @@
 
 package org.kie.baaas.dfm.app.storage;
 
-import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Collection;
 
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 
+/**
+ * Storage for the DMN of each DecisionVersion.
+ *
+ * DMN is written in two phases so that no remote write happens inside a database transaction:
+ * the DMN is first uploaded to a staging location with {@link #stageDMN(String, DecisionRequest)}, the
+ * DecisionVersion is then recorded against {@link #getDMNLocation(DMNStorageRequest, String, DecisionVersion)} and finally
+ * the staged DMN is moved into place with {@link #promoteDMN(DMNStorageRequest, String, DecisionVersion)}.
+ * <p>
+ * When content-addressed storage is enabled, identical DMN is stored once per customer and shared between
+ * DecisionVersions. Such DMN is written directly to its final location and is removed with
+ * {@link #deleteDMN(Collection)} once no DecisionVersion references it.
+ */
 public interface DecisionDMNStorage {
 
-    DMNStorageRequest writeDMN(String customerId, DecisionRequest decisionRequest, DecisionVersion decisionVersion);
+    /**
+     * Uploads the DMN of the request to a staging location.
+     *
+     * @param customerId - The customer that owns the Decision
+     * @param decisionRequest - The API request containing the DMN
+     * @return - The staging location and MD5 hash of the uploaded DMN
+     */
+    DMNStorageRequest stageDMN(String customerId, DecisionRequest decisionRequest);
+
+    /**
+     * Returns the provider URL at which the DMN of the given DecisionVersion is stored once promoted.
+     *
+     * @param stagedDMN - The result of staging the DMN
+     * @param customerId - The customer that owns the Decision
+     * @param decisionVersion - The DecisionVersion
+     * @return - The provider URL for the DMN of the DecisionVersion
+     */
+    String getDMNLocation(DMNStorageRequest stagedDMN, String customerId, DecisionVersion decisionVersion);
+
+    /**
+     * Moves a staged DMN to the location of the given DecisionVersion.
+     *
+     * @param stagedDMN - The result of staging the DMN
+     * @param customerId - The customer that owns the Decision
+     * @param decisionVersion - The DecisionVersion the DMN belongs to
+     */
+    void promoteDMN(DMNStorageRequest stagedDMN, String customerId, DecisionVersion decisionVersion);
+
+    /**
+     * Removes a staged DMN that will never be promoted. Failures are not propagated, as orphaned
+     * staged DMN is eventually removed by {@link #deleteStagedDMNOlderThan(Duration)}.
+     *
+     * @param stagedDMN - The result of staging the DMN
+     */
+    void discardStagedDMN(DMNStorageRequest stagedDMN);
+
+    /**
+     * Removes all staged DMN that has not been promoted within the given age.
+     *
+     * @param age - The minimum age of the staged DMN to remove
+     * @return - The number of staged DMN removed
+     */
+    int deleteStagedDMNOlderThan(Duration age);
 
     void deleteDMN(String customerId, Decision decision);
 
-    ByteArrayOutputStream readDMN(String customerId, DecisionVersion decisionVersion);
+    /**
+     * Removes content-addressed DMN that is no longer referenced by any DecisionVersion.
+     *
+     * @param dmnLocations - The provider URLs of the DMN to remove
+     */
+    void deleteDMN(Collection<String> dmnLocations);
+
+    /**
+     * Opens a stream over the DMN of the given DecisionVersion, without reading it into memory. DMN that was stored
+     * compressed is streamed as stored, so that it can be passed on as is; use {@link DMNContent#decompressed()} to
+     * read the DMN itself.
+     *
+     * @param customerId - The customer that owns the Decision
+     * @param decisionVersion - The DecisionVersion to read the DMN for
+     * @param range - An HTTP byte range of the DMN to read, or null to read the complete DMN
+     * @return - The open DMN stream, which the caller must close
+     */
+    DMNContent openDMN(String customerId, DecisionVersion decisionVersion, String range);
 }
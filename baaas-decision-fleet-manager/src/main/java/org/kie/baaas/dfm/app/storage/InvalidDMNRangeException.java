@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage;
+
+import javax.ws.rs.core.Response;
+
+/**
+ * Indicates that the requested byte range of a DMN cannot be satisfied.
+ */
+public class InvalidDMNRangeException extends DecisionDMNStorageException {
+
+    public InvalidDMNRangeException(String message) {
+        super(message);
+    }
+
+    public InvalidDMNRangeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public int getStatusCode() {
+        return Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode();
+    }
+}
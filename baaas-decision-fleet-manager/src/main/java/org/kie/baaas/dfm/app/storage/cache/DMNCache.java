@@ -0,0 +1,314 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.kie.baaas.dfm.app.model.DMNCompression;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.storage.DMNContent;
+import org.kie.baaas.dfm.app.storage.DecisionDMNStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Read-through cache of DMN content. The DMN of a DecisionVersion never changes once written, so entries are keyed
+ * by the owning customer, Decision, version and DMN checksum and are only removed when evicted or when the Decision
+ * is deleted.
+ * <p>
+ * The cache is bounded by the total number of bytes held, evicting the least recently read entries first. Entries can
+ * optionally be held gzip compressed and/or in direct (off-heap) buffers.
+ * <p>
+ * Concurrent misses on the same entry are collapsed into a single load from storage, with the other readers waiting
+ * for its outcome.
+ */
+@ApplicationScoped
+public class DMNCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DMNCache.class);
+
+    private static final String UMETER_DAAAS_DMN_CACHE_HITS = "daaas.dmn.cache.hits";
+    private static final String UMETER_DAAAS_DMN_CACHE_MISSES = "daaas.dmn.cache.misses";
+    private static final String UMETER_DAAAS_DMN_CACHE_EVICTIONS = "daaas.dmn.cache.evictions";
+    private static final String UMETER_DAAAS_DMN_CACHE_SIZE = "daaas.dmn.cache.size.bytes";
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean compress;
+    private final boolean offHeap;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final AtomicLong size = new AtomicLong();
+
+    // access ordered, so iteration starts at the least recently read entry
+    private final LinkedHashMap<DMNCacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // the loads in progress, completed with the loaded entry or with null if the DMN is too large to be cached
+    private final ConcurrentMap<DMNCacheKey, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+
+    @Inject
+    public DMNCache(MeterRegistry meterRegistry,
+            @ConfigProperty(name = "baaas.dfm.dmn.cache.max-bytes", defaultValue = "67108864") long maxBytes,
+            @ConfigProperty(name = "baaas.dfm.dmn.cache.max-entry-bytes", defaultValue = "4194304") long maxEntryBytes,
+            @ConfigProperty(name = "baaas.dfm.dmn.cache.compress", defaultValue = "false") boolean compress,
+            @ConfigProperty(name = "baaas.dfm.dmn.cache.off-heap", defaultValue = "false") boolean offHeap) {
+        requireNonNull(meterRegistry, "meterRegistry cannot be null");
+
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.compress = compress;
+        this.offHeap = offHeap;
+
+        this.hits = meterRegistry.counter(UMETER_DAAAS_DMN_CACHE_HITS);
+        this.misses = meterRegistry.counter(UMETER_DAAAS_DMN_CACHE_MISSES);
+        this.evictions = meterRegistry.counter(UMETER_DAAAS_DMN_CACHE_EVICTIONS);
+        meterRegistry.gauge(UMETER_DAAAS_DMN_CACHE_SIZE, size);
+    }
+
+    /**
+     * Returns the DMN of the given DecisionVersion from the cache, or opens it with the given loader and caches it.
+     * DMN larger than the maximum entry size is streamed from the loader without being cached. Concurrent misses on
+     * the same DMN wait for the first of them to load it rather than each opening it from storage.
+     *
+     * @param customerId - The customer that owns the Decision
+     * @param decisionVersion - The DecisionVersion to read the DMN of
+     * @param loader - Opens the DMN from storage on a cache miss
+     * @return - The DMN content
+     */
+    public DMNContent get(String customerId, DecisionVersion decisionVersion, Supplier<DMNContent> loader) {
+
+        DMNCacheKey key = new DMNCacheKey(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), decisionVersion.getDmnMd5());
+        Entry entry = getEntry(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.toContent();
+        }
+
+        CompletableFuture<Entry> load = new CompletableFuture<>();
+        CompletableFuture<Entry> inProgress = loading.putIfAbsent(key, load);
+        if (inProgress != null) {
+            entry = await(inProgress);
+            if (entry == null) {
+                // too large to be cached, so each reader streams its own copy
+                return loader.get();
+            }
+            hits.increment();
+            return entry.toContent();
+        }
+
+        try {
+            // the entry may have been loaded between the lookup above and this load being registered
+            entry = getEntry(key);
+            if (entry != null) {
+                load.complete(entry);
+                hits.increment();
+                return entry.toContent();
+            }
+            misses.increment();
+            return load(key, loader, load);
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private DMNContent load(DMNCacheKey key, Supplier<DMNContent> loader, CompletableFuture<Entry> load) {
+        DMNContent dmn = loader.get();
+        if (maxEntryBytes <= 0 || dmn.getContentLength() < 0 || dmn.getContentLength() > maxEntryBytes) {
+            load.complete(null);
+            return dmn;
+        }
+
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) dmn.getContentLength());
+            dmn.writeTo(buffer);
+            byte[] bytes = buffer.toByteArray();
+            // DMN stored compressed is held as it is, compressing it again gains nothing
+            boolean compressed = compress && dmn.getCompression() == null;
+            Entry entry = new Entry(store(bytes, compressed), compressed, bytes.length, dmn.getETag(), dmn.getCompression());
+            put(key, entry);
+            load.complete(entry);
+            return new DMNContent(new ByteArrayInputStream(bytes), dmn.getETag(), bytes.length, null, dmn.getCompression());
+        } catch (IOException e) {
+            throw new DecisionDMNStorageException("Failed to read decision from storage.", e);
+        }
+    }
+
+    private Entry getEntry(DMNCacheKey key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private static Entry await(CompletableFuture<Entry> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            // the reader that loaded the DMN failed, so the waiting readers fail the same way
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Removes all cached DMN of the given Decision.
+     *
+     * @param customerId - The customer that owns the Decision
+     * @param decisionId - The id of the Decision
+     */
+    public void invalidate(String customerId, String decisionId) {
+        synchronized (entries) {
+            Iterator<Map.Entry<DMNCacheKey, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<DMNCacheKey, Entry> cached = it.next();
+                if (cached.getKey().isFor(customerId, decisionId)) {
+                    size.addAndGet(-cached.getValue().storedBytes());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void put(DMNCacheKey key, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                size.addAndGet(-previous.storedBytes());
+            }
+            size.addAndGet(entry.storedBytes());
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (size.get() > maxBytes && it.hasNext()) {
+                Entry evicted = it.next();
+                size.addAndGet(-evicted.storedBytes());
+                it.remove();
+                evictions.increment();
+            }
+        }
+        LOGGER.debug("Cached DMN {}; cache now holds {} bytes.", key, size.get());
+    }
+
+    private ByteBuffer store(byte[] dmn, boolean compressed) throws IOException {
+        byte[] stored = dmn;
+        if (compressed) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(dmn.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(dmn);
+            }
+            stored = compressed.toByteArray();
+        }
+
+        if (offHeap) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(stored.length);
+            buffer.put(stored).flip();
+            return buffer.asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(stored).asReadOnlyBuffer();
+    }
+
+    private class Entry {
+
+        private final ByteBuffer stored;
+        private final boolean compressed;
+        private final long contentLength;
+        private final String eTag;
+        private final DMNCompression compression;
+
+        private Entry(ByteBuffer stored, boolean compressed, long contentLength, String eTag, DMNCompression compression) {
+            this.stored = stored;
+            this.compressed = compressed;
+            this.contentLength = contentLength;
+            this.eTag = eTag;
+            this.compression = compression;
+        }
+
+        private long storedBytes() {
+            return stored.capacity();
+        }
+
+        private DMNContent toContent() {
+            InputStream in = new ByteBufferInputStream(stored.duplicate());
+            if (compressed) {
+                try {
+                    in = new GZIPInputStream(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return new DMNContent(in, eTag, contentLength, null, compression);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage.cache;
+
+import java.util.Objects;
+
+/**
+ * Identifies the DMN of a single DecisionVersion in the {@link DMNCache}.
+ */
+class DMNCacheKey {
+
+    private final String customerId;
+
+    private final String decisionId;
+
+    private final long version;
+
+    private final String md5;
+
+    DMNCacheKey(String customerId, String decisionId, long version, String md5) {
+        this.customerId = customerId;
+        this.decisionId = decisionId;
+        this.version = version;
+        this.md5 = md5;
+    }
+
+    boolean isFor(String customerId, String decisionId) {
+        return this.customerId.equals(customerId) && this.decisionId.equals(decisionId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DMNCacheKey that = (DMNCacheKey) o;
+        return version == that.version &&
+                customerId.equals(that.customerId) &&
+                decisionId.equals(that.decisionId) &&
+                Objects.equals(md5, that.md5);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(customerId, decisionId, version, md5);
+    }
+
+    @Override
+    public String toString() {
+        return "customers/" + customerId + "/" + decisionId + "/" + version + " (" + md5 + ")";
+    }
+}
@@ -15,22 +15,136 @@
 
 package org.kie.baaas.dfm.app.storage.hash;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
 
 import javax.enterprise.context.ApplicationScoped;
 
-import software.amazon.awssdk.utils.Md5Utils;
-
 @ApplicationScoped
 public class DMNHashGenerator {
 
+    // number of chars encoded and hashed per step
+    private static final int CHUNK_SIZE = 8192;
+
     /**
-     * MD5 checksum sum calculator, based on aws md5 utils
+     * MD5 checksum sum calculator
      *
      * @param plainTextDmn
      * @return md5 checksum as string
      */
     public String generateHash(String plainTextDmn) {
-        return Md5Utils.md5AsBase64(plainTextDmn.getBytes(StandardCharsets.UTF_8));
+        return encode(plainTextDmn).getMd5Hash();
+    }
+
+    /**
+     * Encodes the DMN as UTF-8 into an exactly sized buffer, updating the MD5 checksum chunk by chunk as it is
+     * encoded, so the DMN is only encoded once and never copied.
+     *
+     * @param plainTextDmn
+     * @return the encoded DMN and its md5 checksum
+     */
+    public DMNPayload encode(String plainTextDmn) {
+
+        byte[] content = new byte[encodedLength(plainTextDmn)];
+        ByteBuffer out = ByteBuffer.wrap(content);
+        CharBuffer in = CharBuffer.wrap(plainTextDmn);
+        // replace unpaired surrogates with '?' as String.getBytes does
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        MessageDigest md5 = newMD5();
+
+        int end = 0;
+        while (end < plainTextDmn.length()) {
+            end = Math.min(end + CHUNK_SIZE, plainTextDmn.length());
+            in.limit(end);
+
+            int start = out.position();
+            // a surrogate pair split by the chunk boundary is left in the input for the next chunk
+            CoderResult result = encoder.encode(in, out, end == plainTextDmn.length());
+            if (result.isOverflow()) {
+                throw new IllegalStateException("Encoded DMN is larger than its computed length.");
+            }
+            md5.update(content, start, out.position() - start);
+        }
+
+        return new DMNPayload(content, Base64.getEncoder().encodeToString(md5.digest()));
+    }
+
+    /**
+     * Gzip compresses the encoded DMN, updating the MD5 checksum of the compressed bytes as they are written.
+     *
+     * @param payload - the encoded DMN
+     * @return the compressed DMN and its md5 checksum
+     */
+    public DMNPayload gzip(DMNPayload payload) {
+
+        // DMN XML typically compresses to well under a quarter of its size
+        ExposedByteArrayOutputStream compressed = new ExposedByteArrayOutputStream((int) payload.getContentLength() / 4 + 64);
+        MessageDigest md5 = newMD5();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new DigestOutputStream(compressed, md5), CHUNK_SIZE)) {
+            payload.newInputStream().transferTo(gzip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new DMNPayload(compressed.buffer(), compressed.size(), Base64.getEncoder().encodeToString(md5.digest()));
+    }
+
+    /**
+     * Computes the number of bytes the given DMN takes once encoded as UTF-8.
+     */
+    static int encodedLength(String plainTextDmn) {
+        int length = 0;
+        for (int i = 0; i < plainTextDmn.length(); i++) {
+            char c = plainTextDmn.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < plainTextDmn.length() && Character.isLowSurrogate(plainTextDmn.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static MessageDigest newMD5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported by this JVM.", e);
+        }
+    }
+
+    /**
+     * Gives access to the written bytes without the copy made by {@link #toByteArray()}.
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
     }
 }
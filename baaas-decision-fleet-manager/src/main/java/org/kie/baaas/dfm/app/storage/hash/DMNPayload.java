@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage.hash;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * DMN encoded as UTF-8 together with its MD5 hash. The DMN is encoded once per request and the same bytes are
+ * shared by everything that needs them, so the payload must not be modified once created.
+ */
+public class DMNPayload {
+
+    private final byte[] content;
+
+    private final int length;
+
+    private final String md5Hash;
+
+    public DMNPayload(byte[] content, String md5Hash) {
+        this(content, content.length, md5Hash);
+    }
+
+    /**
+     * @param content - Buffer holding the encoded DMN
+     * @param length - The number of bytes of the buffer that hold the encoded DMN
+     * @param md5Hash - The base64 encoded MD5 hash of the encoded DMN
+     */
+    public DMNPayload(byte[] content, int length, String md5Hash) {
+        requireNonNull(content, "content cannot be null");
+        requireNonNull(md5Hash, "md5Hash cannot be null");
+
+        this.content = content;
+        this.length = length;
+        this.md5Hash = md5Hash;
+    }
+
+    /**
+     * The base64 encoded MD5 hash of the encoded DMN.
+     *
+     * @return - The MD5 hash of the DMN
+     */
+    public String getMd5Hash() {
+        return md5Hash;
+    }
+
+    public long getContentLength() {
+        return length;
+    }
+
+    /**
+     * Opens a new stream over the encoded DMN without copying it.
+     *
+     * @return - A stream over the encoded DMN
+     */
+    public InputStream newInputStream() {
+        return new ByteArrayInputStream(content, 0, length);
+    }
+}
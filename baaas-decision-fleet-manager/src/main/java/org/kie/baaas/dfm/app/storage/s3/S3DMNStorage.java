@@ -15,33 +15,62 @@
 
 package org.kie.baaas.dfm.app.storage.s3;
 
-import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Predicate;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.ws.rs.core.Response;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
+import org.kie.baaas.dfm.app.dao.DMNBlobDAO;
 import org.kie.baaas.dfm.app.manager.DecisionManager;
+import org.kie.baaas.dfm.app.model.DMNCompression;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.storage.DMNContent;
 import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
 import org.kie.baaas.dfm.app.storage.DecisionDMNStorage;
 import org.kie.baaas.dfm.app.storage.DecisionDMNStorageException;
+import org.kie.baaas.dfm.app.storage.InvalidDMNRangeException;
 import org.kie.baaas.dfm.app.storage.hash.DMNHashGenerator;
+import org.kie.baaas.dfm.app.storage.hash.DMNPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.core.sync.ResponseTransformer;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.utils.BinaryUtils;
 
 import static java.util.Objects.requireNonNull;
 
@@ -54,51 +83,129 @@ public class S3DMNStorage implements DecisionDMNStorage {
     private final String S3_DMN_ENDPOINT = "s3://%s";
     // base file location customers/<customer_id>/<decision_id>/<decision_version>/dmn.xml
     private final String DMN_LOCATION = "customers/%s/%s/%d/dmn.xml";
+    // staged files are not yet attached to a decision version
+    private final String STAGING_PREFIX = "staging/";
+    // staged file location staging/<customer_id>/<upload_id>/dmn.xml
+    private final String STAGING_LOCATION = STAGING_PREFIX + "%s/%s/dmn.xml";
+    // content-addressed file location customers/<customer_id>/blobs/<md5_hex>/dmn.xml
+    private final String BLOB_LOCATION = "customers/%s/blobs/%s/dmn.xml";
+    private final String COMPRESSED_BLOB_LOCATION = BLOB_LOCATION + ".gz";
+    // all files of a decision customers/<customer_id>/<decision_id>/
+    private final String DECISION_PREFIX = "customers/%s/%s/";
+    // S3 DeleteObjects accepts at most 1000 keys per request
+    private static final int MAX_DELETE_BATCH_SIZE = 1000;
+
+    private static final String UMETER_DAAAS_DMN_DELETED_OBJECTS = "daaas.dmn.storage.deleted.objects";
+    private static final String UMETER_DAAAS_DMN_DEDUPLICATED = "daaas.dmn.storage.deduplicated";
 
     private final DecisionFleetManagerConfig config;
     private final S3Client s3Client;
     private final DMNHashGenerator hashGenerator;
     private final DecisionManager decisionManager;
+    private final DMNBlobDAO dmnBlobDAO;
+    private final MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "baaas.dfm.dmn.storage.content-addressed", defaultValue = "false")
+    boolean contentAddressed;
+
+    @ConfigProperty(name = "baaas.dfm.dmn.storage.compression")
+    Optional<DMNCompression> compression = Optional.empty();
 
     @Inject
     public S3DMNStorage(DecisionFleetManagerConfig config, DMNHashGenerator hashGenerator, S3Client s3Client,
-            DecisionManager decisionManager) {
+            DecisionManager decisionManager, DMNBlobDAO dmnBlobDAO, MeterRegistry meterRegistry) {
 
         requireNonNull(config, "config cannot be null");
         requireNonNull(s3Client, "s3Client cannot be null");
         requireNonNull(hashGenerator, "hashGenerator cannot be null");
         requireNonNull(decisionManager, "decisionManager cannot be null");
+        requireNonNull(dmnBlobDAO, "dmnBlobDAO cannot be null");
+        requireNonNull(meterRegistry, "meterRegistry cannot be null");
 
         this.config = config;
         this.s3Client = s3Client;
         this.hashGenerator = hashGenerator;
         this.decisionManager = decisionManager;
+        this.dmnBlobDAO = dmnBlobDAO;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public DMNStorageRequest stageDMN(String customerId, DecisionRequest decisionRequest) {
+
+        DMNPayload payload = hashGenerator.encode(decisionRequest.getModel().getDmn());
+        DMNCompression dmnCompression = compression.orElse(null);
+        DMNPayload stored = dmnCompression == null ? payload : hashGenerator.gzip(payload);
+        if (contentAddressed) {
+            return storeContentAddressed(customerId, decisionRequest, payload, stored, dmnCompression);
+        }
+
+        String stagingLocation = String.format(STAGING_LOCATION, customerId, UUID.randomUUID());
+
+        PutObjectResponse response = s3Client.putObject(putObjectRequest(stagingLocation, stored.getMd5Hash(), dmnCompression), requestBody(stored));
+
+        LOGGER.info("DMN file {} successfully staged at {}.", decisionRequest.getName(), stagingLocation);
+        return new DMNStorageRequest(stagingLocation, response.eTag(), false, dmnCompression);
+    }
+
+    @Override
+    public String getDMNLocation(DMNStorageRequest stagedDMN, String customerId, DecisionVersion decisionVersion) {
+        if (stagedDMN.isContentAddressed()) {
+            return composeS3URL(stagedDMN.getProviderUrl());
+        }
+        return composeS3URL(composeDMNLocation(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion()));
     }
 
     @Override
-    public DMNStorageRequest writeDMN(String customerId, DecisionRequest decisionRequest, DecisionVersion decisionVersion) {
+    public void promoteDMN(DMNStorageRequest stagedDMN, String customerId, DecisionVersion decisionVersion) {
+
+        if (stagedDMN.isContentAddressed()) {
+            // Already in place. Make sure it was not removed as unreferenced between upload and being referenced.
+            if (headObject(stagedDMN.getProviderUrl()) == null) {
+                throw new DecisionDMNStorageException(String.format("Content-addressed DMN file %s no longer exists.", stagedDMN.getProviderUrl()));
+            }
+            return;
+        }
 
         String dmnLocation = composeDMNLocation(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion());
 
-        PutObjectResponse response = s3Client.putObject(
-                putObjectRequest(dmnLocation, hashGenerator.generateHash(decisionRequest.getModel().getDmn())),
-                RequestBody.fromBytes(decisionRequest.getModel().getDmn().getBytes(StandardCharsets.UTF_8)));
+        s3Client.copyObject(copyObjectRequest(stagedDMN.getProviderUrl(), dmnLocation));
+        s3Client.deleteObject(deleteObjectRequest(stagedDMN.getProviderUrl()));
+
+        LOGGER.info("Staged DMN file {} successfully promoted to {}.", stagedDMN.getProviderUrl(), composeS3URL(dmnLocation));
+    }
+
+    @Override
+    public void discardStagedDMN(DMNStorageRequest stagedDMN) {
+        if (stagedDMN.isContentAddressed()) {
+            // May be shared with other DecisionVersions, so it is only removed once unreferenced. It was recorded as
+            // unreferenced when it was stored, so it is removed in due course unless referenced by then.
+            return;
+        }
+        try {
+            s3Client.deleteObject(deleteObjectRequest(stagedDMN.getProviderUrl()));
+            LOGGER.info("Staged DMN file {} discarded.", stagedDMN.getProviderUrl());
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to discard staged DMN file {}. It will be removed by the staging reaper.", stagedDMN.getProviderUrl(), e);
+        }
+    }
+
+    @Override
+    public int deleteStagedDMNOlderThan(Duration age) {
 
-        String dmnURL = composeS3URL(dmnLocation);
-        LOGGER.info("DMN file {} successfully written at {}.", decisionRequest.getName(), dmnURL);
-        return new DMNStorageRequest(dmnURL, response.eTag());
+        Instant cutOff = Instant.now().minus(age);
+        return deleteObjects(STAGING_PREFIX, obj -> obj.lastModified().isBefore(cutOff));
     }
 
     @Override
     public void deleteDMN(String customerId, Decision decision) {
-        // get objects from bucket
-        ListObjectsV2Response objectsInBucket = s3Client
-                .listObjectsV2(ListObjectsV2Request
-                        .builder()
-                        .bucket(config.getBucketName())
-                        .build());
-
-        if (objectsInBucket.contents().isEmpty()) {
+
+        String decisionPrefix = String.format(DECISION_PREFIX, customerId, decision.getId());
+        int deleted = deleteObjects(decisionPrefix, obj -> true);
+        meterRegistry.summary(UMETER_DAAAS_DMN_DELETED_OBJECTS).record(deleted);
+
+        // content-addressed DMN is not stored under the decision, and is removed once unreferenced
+        if (deleted == 0 && !contentAddressed) {
             throw new DecisionDMNStorageException(
                     String.format("There is no object on bucket %s that matches customer id %s and decision name %s",
                             config.getBucketName(),
@@ -106,28 +213,160 @@ public class S3DMNStorage implements DecisionDMNStorage {
                             decision.getId()));
         }
 
-        objectsInBucket.contents().stream()
-                .filter(obj -> obj.key().contains(customerId) && obj.key().contains(decision.getId()))
-                .forEach(obj -> {
-                    s3Client.deleteObject(deleteObjectRequest(obj.key()));
-                    LOGGER.info("Object {} deleted from bucket {}.", obj.key(), config.getBucketName());
-                });
+        LOGGER.info("{} objects with prefix {} deleted from bucket {}.", deleted, decisionPrefix, config.getBucketName());
     }
 
     @Override
-    public ByteArrayOutputStream readDMN(String customerId, DecisionVersion decisionVersion) {
+    public void deleteDMN(Collection<String> dmnLocations) {
 
-        String dmnLocation = composeDMNLocation(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion());
+        List<ObjectIdentifier> batch = new ArrayList<>();
+        for (String dmnLocation : dmnLocations) {
+            batch.add(ObjectIdentifier.builder().key(toObjectKey(dmnLocation)).build());
+            if (batch.size() == MAX_DELETE_BATCH_SIZE) {
+                deleteBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleteBatch(batch);
+        }
+        LOGGER.info("{} unreferenced DMN files deleted from bucket {}.", dmnLocations.size(), config.getBucketName());
+    }
+
+    @Override
+    public DMNContent openDMN(String customerId, DecisionVersion decisionVersion, String range) {
+
+        String dmnLocation = decisionVersion.getDmnLocation() != null
+                ? toObjectKey(decisionVersion.getDmnLocation())
+                : composeDMNLocation(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion());
 
         try {
-            ByteArrayOutputStream dmnBaos = new ByteArrayOutputStream();
-            s3Client.getObject(getObjectRequest(dmnLocation), ResponseTransformer.toOutputStream(dmnBaos));
-            return dmnBaos;
+            ResponseInputStream<GetObjectResponse> dmn = s3Client.getObject(getObjectRequest(dmnLocation, range));
+            GetObjectResponse response = dmn.response();
+            long contentLength = response.contentLength() == null ? -1 : response.contentLength();
+            return new DMNContent(dmn, unquote(response.eTag()), contentLength, response.contentRange(), decisionVersion.getDmnCompression());
+        } catch (final S3Exception e) {
+            if (e.statusCode() == Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode()) {
+                throw new InvalidDMNRangeException(String.format("Range '%s' cannot be satisfied for DMN %s.", range, dmnLocation), e);
+            }
+            throw new DecisionDMNStorageException("Failed to read decision from S3 Bucket.", e);
         } catch (final Exception e) {
             throw new DecisionDMNStorageException("Failed to read decision from S3 Bucket.", e);
         }
     }
 
+    /**
+     * Stores the DMN at a location derived from its MD5 hash, skipping the upload if identical DMN is already stored.
+     *
+     * @param customerId - The customer that owns the Decision
+     * @param decisionRequest - The API request containing the DMN
+     * @param payload - The encoded DMN
+     * @param stored - The encoded DMN as it is to be stored
+     * @param dmnCompression - The compression applied to the stored DMN, or null if it is stored uncompressed
+     * @return the content-addressed location and MD5 hash of the stored DMN.
+     */
+    private DMNStorageRequest storeContentAddressed(String customerId, DecisionRequest decisionRequest, DMNPayload payload, DMNPayload stored,
+            DMNCompression dmnCompression) {
+
+        // the same DMN stored compressed and uncompressed must not share a location
+        String blobLocation = String.format(dmnCompression == null ? BLOB_LOCATION : COMPRESSED_BLOB_LOCATION,
+                customerId, BinaryUtils.toHex(BinaryUtils.fromBase64(payload.getMd5Hash())));
+
+        HeadObjectResponse existing = headObject(blobLocation);
+        if (existing != null) {
+            meterRegistry.counter(UMETER_DAAAS_DMN_DEDUPLICATED).increment();
+            LOGGER.info("DMN file {} is already stored at {}, skipping upload.", decisionRequest.getName(), blobLocation);
+            return new DMNStorageRequest(blobLocation, existing.eTag(), true, dmnCompression);
+        }
+
+        // Recorded before the upload, so that the DMN is removed should the DecisionVersion referencing it never be recorded
+        dmnBlobDAO.track(customerId, composeS3URL(blobLocation));
+        PutObjectResponse response = s3Client.putObject(putObjectRequest(blobLocation, stored.getMd5Hash(), dmnCompression), requestBody(stored));
+
+        LOGGER.info("DMN file {} successfully stored at {}.", decisionRequest.getName(), blobLocation);
+        return new DMNStorageRequest(blobLocation, response.eTag(), true, dmnCompression);
+    }
+
+    /**
+     * Returns the metadata of the given object.
+     *
+     * @param objectKey - The object key on bucket
+     * @return the object metadata or null if the object does not exist.
+     */
+    private HeadObjectResponse headObject(String objectKey) {
+        try {
+            return s3Client.headObject(HeadObjectRequest
+                    .builder()
+                    .bucket(config.getBucketName())
+                    .key(objectKey)
+                    .build());
+        } catch (final NoSuchKeyException e) {
+            return null;
+        } catch (final S3Exception e) {
+            if (e.statusCode() == Response.Status.NOT_FOUND.getStatusCode()) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Return the object key on bucket for the given full s3 url.
+     *
+     * @param dmnLocation - The full s3 url as returned by {@link #composeS3URL(String)}
+     * @return the object key of the dmn.
+     */
+    private String toObjectKey(String dmnLocation) {
+        String bucketURL = composeS3URL("");
+        return dmnLocation.startsWith(bucketURL) ? dmnLocation.substring(bucketURL.length()) : dmnLocation;
+    }
+
+    /**
+     * Deletes all objects under the given prefix that match the given filter. The prefix is listed page by page
+     * and matching keys are removed with DeleteObjects batches of at most {@value #MAX_DELETE_BATCH_SIZE} keys.
+     *
+     * @param prefix - The key prefix to list
+     * @param filter - Selects the listed objects to delete
+     * @return the number of deleted objects.
+     */
+    private int deleteObjects(String prefix, Predicate<S3Object> filter) {
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                .bucket(config.getBucketName())
+                .prefix(prefix)
+                .build();
+
+        int deleted = 0;
+        List<ObjectIdentifier> batch = new ArrayList<>();
+        for (S3Object obj : s3Client.listObjectsV2Paginator(listRequest).contents()) {
+            if (filter.test(obj)) {
+                batch.add(ObjectIdentifier.builder().key(obj.key()).build());
+                if (batch.size() == MAX_DELETE_BATCH_SIZE) {
+                    deleted += deleteBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleted += deleteBatch(batch);
+        }
+        return deleted;
+    }
+
+    private int deleteBatch(List<ObjectIdentifier> batch) {
+        DeleteObjectsResponse response = s3Client.deleteObjects(deleteObjectsRequest(batch));
+        if (!response.errors().isEmpty()) {
+            S3Error error = response.errors().get(0);
+            throw new DecisionDMNStorageException(
+                    String.format("Failed to delete %d of %d objects from bucket %s. First failure on %s: %s",
+                            response.errors().size(),
+                            batch.size(),
+                            config.getBucketName(),
+                            error.key(),
+                            error.message()));
+        }
+        return batch.size();
+    }
+
     /**
      * Return the full s3 url for the given dmn
      *
@@ -159,14 +398,42 @@ public class S3DMNStorage implements DecisionDMNStorage {
      *
      * @param decisionName - The decision name to be persisted
      * @param md5Checksum - The decision checksum (MD5)
+     * @param dmnCompression - The compression applied to the dmn, or null if it is uncompressed
      * @return PutObjectRequest with dmn file information.
      */
-    private PutObjectRequest putObjectRequest(String decisionName, String md5Checksum) {
+    private PutObjectRequest putObjectRequest(String decisionName, String md5Checksum, DMNCompression dmnCompression) {
         return PutObjectRequest.builder()
                 .bucket(config.getBucketName())
                 .key(decisionName)
                 .contentMD5(md5Checksum)
                 .contentType("application/xml")
+                .contentEncoding(dmnCompression == null ? null : dmnCompression.getContentEncoding())
+                .build();
+    }
+
+    /**
+     * Builds a request body that streams the already encoded dmn, without copying it.
+     *
+     * @param payload - The encoded dmn
+     * @return RequestBody over the encoded dmn.
+     */
+    private RequestBody requestBody(DMNPayload payload) {
+        return RequestBody.fromContentProvider(payload::newInputStream, payload.getContentLength(), "application/xml");
+    }
+
+    /**
+     * Builds a copy object request that moves the given staged dmn to its final location.
+     *
+     * @param stagingLocation - The location of the staged dmn on bucket
+     * @param dmnLocation - The final location of the dmn on bucket
+     * @return CopyObjectRequest with dmn file information.
+     */
+    private CopyObjectRequest copyObjectRequest(String stagingLocation, String dmnLocation) {
+        return CopyObjectRequest
+                .builder()
+                .copySource(URLEncoder.encode(config.getBucketName() + "/" + stagingLocation, StandardCharsets.UTF_8))
+                .bucket(config.getBucketName())
+                .key(dmnLocation)
                 .build();
     }
 
@@ -174,13 +441,42 @@ public class S3DMNStorage implements DecisionDMNStorage {
      * Builds a get object request for the given dmn.
      *
      * @param dmnLocation - The decision location on bucket
+     * @param range - The HTTP byte range to read, or null to read the whole dmn
      * @return GetObjectRequest with dmn file information.
      */
-    private GetObjectRequest getObjectRequest(String dmnLocation) {
+    private GetObjectRequest getObjectRequest(String dmnLocation, String range) {
         return GetObjectRequest
                 .builder()
                 .bucket(config.getBucketName())
                 .key(dmnLocation)
+                .range(range)
+                .build();
+    }
+
+    /**
+     * S3 returns ETags as quoted strings.
+     *
+     * @param eTag - The ETag as returned by S3
+     * @return the ETag without surrounding quotes.
+     */
+    private String unquote(String eTag) {
+        if (eTag != null && eTag.length() > 1 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            return eTag.substring(1, eTag.length() - 1);
+        }
+        return eTag;
+    }
+
+    /**
+     * Builds a quiet delete objects request for the given batch of keys.
+     *
+     * @param objects - The keys to delete, at most {@value #MAX_DELETE_BATCH_SIZE}
+     * @return DeleteObjectsRequest with the keys to delete.
+     */
+    private DeleteObjectsRequest deleteObjectsRequest(List<ObjectIdentifier> objects) {
+        return DeleteObjectsRequest
+                .builder()
+                .bucket(config.getBucketName())
+                .delete(Delete.builder().objects(objects).quiet(true).build())
                 .build();
     }
 
@@ -0,0 +1,67 @@
+package org.kie.baaas.dfm.app.webhook;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.util.UUID;
+
+import org.kie.baaas.dfm.app.listener.Event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.cloudevents.CloudEvent;
+import io.cloudevents.core.builder.CloudEventBuilder;
+
+/**
+ * An Event encoded as the JSON of a CloudEvent, ready to be delivered to any number of webhooks. The encoding is
+ * immutable and so is shared by the deliveries to all webhooks notified of the Event.
+ */
+public final class EncodedCloudEvent {
+
+    private static final URI SOURCE = URI.create("daaswebhook");
+
+    private final String eventId;
+
+    private final byte[] body;
+
+    private EncodedCloudEvent(String eventId, byte[] body) {
+        this.eventId = eventId;
+        this.body = body;
+    }
+
+    public static EncodedCloudEvent encode(Event event, ObjectMapper objectMapper) {
+        try {
+            String eventId = event.getEventId().orElse(UUID.randomUUID().toString());
+            CloudEvent cloudEvent = CloudEventBuilder.v1().withId(eventId)
+                    .withSource(SOURCE).withType(event.getClass().getCanonicalName())
+                    .withData(objectMapper.writeValueAsBytes(event)).build();
+            return new EncodedCloudEvent(eventId, objectMapper.writeValueAsBytes(cloudEvent));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return - The id of the CloudEvent, by which receivers recognise a CloudEvent delivered more than once
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * @return - A publisher of the encoded CloudEvent that reads the shared encoding without copying it
+     */
+    public BodyPublisher bodyPublisher() {
+        return BodyPublishers.ofByteArray(body);
+    }
+
+    public int length() {
+        return body.length;
+    }
+
+    byte[] toByteArray() {
+        return body.clone();
+    }
+}
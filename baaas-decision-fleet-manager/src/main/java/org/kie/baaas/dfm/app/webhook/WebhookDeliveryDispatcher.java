@@ -0,0 +1,282 @@
+package org.kie.baaas.dfm.app.webhook;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.kie.baaas.dfm.app.dao.WebhookDeliveryDAO;
+import org.kie.baaas.dfm.app.model.webhook.WebhookDelivery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Periodically sends the Webhook deliveries recorded by the {@link WebhookListener}.
+ * <p>
+ * Deliveries are claimed in the database, so that any number of Fleet Managers can send them, and are sent without
+ * waiting for their responses. The outcome of each delivery is recorded by a pool of workers, so the number of
+ * deliveries in flight is bounded by configuration rather than by the HTTP threads. A failed delivery is retried with
+ * exponential backoff and jitter, and is dead-lettered once the maximum number of attempts is exhausted.
+ * <p>
+ * Each endpoint is guarded by a {@link WebhookEndpoint}. Deliveries to an endpoint whose circuit is open, or that
+ * already has as many deliveries in flight as its bulkhead allows, are deferred without using up an attempt, so that
+ * they do not hold up the deliveries to other endpoints. A delivery that cannot be sent within its lease, because the
+ * host already has as many requests in flight as it allows, is given back without using up an attempt.
+ */
+@ApplicationScoped
+public class WebhookDeliveryDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookDeliveryDispatcher.class);
+
+    private static final String UMETER_DAAAS_WEBHOOK_INVOCATIONS = "daaas.webhook.invocations";
+    private static final String UMETER_DAAAS_WEBHOOK_SUCCESS = "daaas.webhook.success";
+    private static final String UMETER_DAAAS_WEBHOOK_FAILURE = "daaas.webhook.failure";
+    private static final String UMETER_DAAAS_WEBHOOK_DEAD_LETTERS = "daaas.webhook.dead-letters";
+    private static final String UMETER_DAAAS_WEBHOOK_SHED = "daaas.webhook.shed";
+
+    private static final int MAX_BACKOFF_EXPONENT = 20;
+
+    private final WebhookDeliveryDAO webhookDeliveryDAO;
+
+    private final WebhookHttpClient httpClient;
+
+    private final WebhookEndpoints webhookEndpoints;
+
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @ConfigProperty(name = "baaas.webhook.delivery.batch-size", defaultValue = "100")
+    int batchSize;
+
+    @ConfigProperty(name = "baaas.webhook.delivery.workers", defaultValue = "4")
+    int workers;
+
+    @ConfigProperty(name = "baaas.webhook.delivery.max-in-flight", defaultValue = "500")
+    int maxInFlight;
+
+    @ConfigProperty(name = "baaas.webhook.delivery.max-attempts", defaultValue = "10")
+    int maxAttempts;
+
+    @ConfigProperty(name = "baaas.webhook.delivery.initial-backoff", defaultValue = "1S")
+    Duration initialBackoff;
+
+    @ConfigProperty(name = "baaas.webhook.delivery.max-backoff", defaultValue = "10M")
+    Duration maxBackoff;
+
+    @ConfigProperty(name = "baaas.webhook.delivery.timeout", defaultValue = "10S")
+    Duration timeout;
+
+    // How long a claimed delivery may wait for its turn to be sent to its host
+    @ConfigProperty(name = "baaas.webhook.delivery.max-wait", defaultValue = "30S")
+    Duration maxWait;
+
+    // Must exceed the maximum wait plus the timeout, so that a delivery is not sent again while it is still in flight
+    @ConfigProperty(name = "baaas.webhook.delivery.lease", defaultValue = "1M")
+    Duration lease;
+
+    private ExecutorService executor;
+
+    @Inject
+    public WebhookDeliveryDispatcher(WebhookDeliveryDAO webhookDeliveryDAO, WebhookHttpClient httpClient, WebhookEndpoints webhookEndpoints,
+            MeterRegistry meterRegistry) {
+        requireNonNull(webhookDeliveryDAO, "webhookDeliveryDAO cannot be null");
+        requireNonNull(httpClient, "httpClient cannot be null");
+        requireNonNull(webhookEndpoints, "webhookEndpoints cannot be null");
+        requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.webhookDeliveryDAO = webhookDeliveryDAO;
+        this.httpClient = httpClient;
+        this.webhookEndpoints = webhookEndpoints;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "webhook-delivery-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        meterRegistry.gauge("daaas.webhook.delivery.in-flight", inFlight);
+    }
+
+    /**
+     * Stops recording the outcome of deliveries. Deliveries still in flight are sent again once their lease expires.
+     */
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Scheduled(every = "{baaas.webhook.delivery.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void dispatch() {
+        try {
+            dispatchDue();
+        } catch (Exception e) {
+            LOG.error("Failed to dispatch webhook deliveries.", e);
+        }
+    }
+
+    void dispatchDue() {
+        int capacity = Math.min(batchSize, maxInFlight - inFlight.get());
+        if (capacity <= 0) {
+            return;
+        }
+
+        ZonedDateTime now = now();
+        for (WebhookDelivery delivery : webhookDeliveryDAO.findDue(now, capacity)) {
+            WebhookEndpoint endpoint = webhookEndpoints.get(delivery.getUrl());
+            Optional<WebhookEndpoint.Permit> permit = endpoint.tryAcquire(System.nanoTime());
+            if (permit.isEmpty()) {
+                shed(delivery, endpoint, now);
+            } else if (claim(delivery, endpoint, permit.get(), now)) {
+                send(delivery, endpoint, permit.get());
+            }
+        }
+    }
+
+    private boolean claim(WebhookDelivery delivery, WebhookEndpoint endpoint, WebhookEndpoint.Permit permit, ZonedDateTime now) {
+        boolean claimed = false;
+        try {
+            claimed = webhookDeliveryDAO.claim(delivery, now.plus(lease));
+        } finally {
+            if (!claimed) {
+                endpoint.cancel(permit);
+            }
+        }
+        return claimed;
+    }
+
+    private void shed(WebhookDelivery delivery, WebhookEndpoint endpoint, ZonedDateTime now) {
+        // Until the circuit is due to let a trial through, or until the bulkhead is likely to have room again
+        Duration delay = endpoint.getRemainingOpen(System.nanoTime());
+        ZonedDateTime availableAt = now.plus(delay.isZero() ? initialBackoff : delay);
+        LOG.debug("Deferring {} to '{}' as endpoint is {} with '{}' deliveries in flight.", delivery, availableAt, endpoint.getState(), endpoint.getInFlight());
+        meterRegistry.counter(UMETER_DAAAS_WEBHOOK_SHED, "url", delivery.getUrl()).increment();
+        webhookDeliveryDAO.defer(delivery, availableAt);
+    }
+
+    private void send(WebhookDelivery delivery, WebhookEndpoint endpoint, WebhookEndpoint.Permit permit) {
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            HttpRequest request = HttpRequest.newBuilder().POST(BodyPublishers.ofByteArray(delivery.getPayload()))
+                    .uri(URI.create(delivery.getUrl())).header("Accept", "application/json")
+                    .timeout(timeout).build();
+            meterRegistry.counter(UMETER_DAAAS_WEBHOOK_INVOCATIONS, "url", delivery.getUrl()).increment();
+            httpClient.sendAsync(request, BodyHandlers.discarding(), maxWait)
+                    .whenCompleteAsync((response, t) -> complete(delivery, endpoint, permit, start, response, t), executor);
+        } catch (RuntimeException e) {
+            complete(delivery, endpoint, permit, start, null, e);
+        }
+    }
+
+    private void complete(WebhookDelivery delivery, WebhookEndpoint endpoint, WebhookEndpoint.Permit permit, long start, HttpResponse<?> response, Throwable t) {
+        if (unwrap(t) instanceof TimeoutException) {
+            unclaim(delivery, endpoint, permit);
+            return;
+        }
+
+        boolean success = response != null && isSuccessful(response.statusCode());
+        long end = System.nanoTime();
+        endpoint.release(permit, success, Duration.ofNanos(end - start), end);
+        try {
+            if (success) {
+                meterRegistry.counter(UMETER_DAAAS_WEBHOOK_SUCCESS, "url", delivery.getUrl()).increment();
+                webhookDeliveryDAO.complete(delivery);
+                return;
+            }
+
+            meterRegistry.counter(UMETER_DAAAS_WEBHOOK_FAILURE, "url", delivery.getUrl()).increment();
+            String error = response != null ? "Response status " + response.statusCode() : String.valueOf(t);
+            int attempts = delivery.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                LOG.error("Failed to deliver {} after '{}' attempts: {}. Moving it to the dead letters.", delivery, attempts, error);
+                meterRegistry.counter(UMETER_DAAAS_WEBHOOK_DEAD_LETTERS, "url", delivery.getUrl()).increment();
+                webhookDeliveryDAO.deadLetter(delivery, now(), error);
+            } else {
+                ZonedDateTime retryAt = now().plus(jitter(backoff(attempts)));
+                LOG.warn("Failed to deliver {}: {}. Retrying at '{}'.", delivery, error, retryAt);
+                webhookDeliveryDAO.retry(delivery, retryAt, error);
+            }
+        } catch (Exception e) {
+            // The delivery is sent again once its lease expires
+            LOG.error("Failed to record the outcome of {}.", delivery, e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void unclaim(WebhookDelivery delivery, WebhookEndpoint endpoint, WebhookEndpoint.Permit permit) {
+        endpoint.cancel(permit);
+        try {
+            ZonedDateTime availableAt = now().plus(initialBackoff);
+            LOG.debug("Deferring {} to '{}' as it was not sent within '{}'.", delivery, availableAt, maxWait);
+            meterRegistry.counter(UMETER_DAAAS_WEBHOOK_SHED, "url", delivery.getUrl()).increment();
+            webhookDeliveryDAO.unclaim(delivery, availableAt);
+        } catch (Exception e) {
+            // The delivery is sent again once its lease expires
+            LOG.error("Failed to defer {}.", delivery, e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    private static boolean isSuccessful(int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    Duration backoff(int attempts) {
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, MAX_BACKOFF_EXPONENT));
+        return backoff.compareTo(maxBackoff) < 0 ? backoff : maxBackoff;
+    }
+
+    /**
+     * Spreads the retries of deliveries that failed together, such as all the deliveries to a receiver that was down,
+     * over the second half of the backoff, so that the receiver is not hit by all of them at once when it recovers.
+     */
+    static Duration jitter(Duration backoff) {
+        long half = backoff.toMillis() / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    private ZonedDateTime now() {
+        return ZonedDateTime.now(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,241 @@
+package org.kie.baaas.dfm.app.webhook;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The circuit breaker and bulkhead of a single webhook endpoint.
+ * <p>
+ * The bulkhead caps the deliveries in flight to the endpoint, so that a slow endpoint cannot take up the capacity of
+ * the dispatcher. The circuit breaker opens once the share of failed or slow deliveries among the most recent ones
+ * reaches a threshold, and then sheds the deliveries to the endpoint for a while. A single trial delivery is then let
+ * through: the circuit closes if it succeeds promptly and otherwise opens again for twice as long, so that an endpoint
+ * that stays down is tried less and less often. Each delivery holds a {@link Permit} recording the state the circuit
+ * was in when it was let through, so that deliveries completing after the circuit has moved on only give up their
+ * place in the bulkhead and do not decide the outcome of the trial.
+ * <p>
+ * Times are given as {@link System#nanoTime()} values.
+ */
+public final class WebhookEndpoint {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * A place in the bulkhead taken for a delivery.
+     */
+    static final class Permit {
+
+        private final long generation;
+
+        private final boolean trial;
+
+        private Permit(long generation, boolean trial) {
+            this.generation = generation;
+            this.trial = trial;
+        }
+    }
+
+    private final int maxInFlight;
+
+    private final int minimumCalls;
+
+    private final int failureRateThreshold;
+
+    private final int slowCallRateThreshold;
+
+    private final Duration slowCallDuration;
+
+    private final Duration openDuration;
+
+    private final Duration maxOpenDuration;
+
+    // The outcomes of the most recent deliveries, in a ring
+    private final boolean[] failed;
+
+    private final boolean[] slow;
+
+    private int calls;
+
+    private int next;
+
+    private int failures;
+
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+
+    // Incremented on every change of state, so that permits taken in an earlier state can be told apart
+    private long generation;
+
+    private int inFlight;
+
+    private boolean trialStarted;
+
+    private long openedAt;
+
+    private Duration openFor;
+
+    private long lastUsed = System.nanoTime();
+
+    /**
+     * @param maxInFlight - The maximum number of deliveries in flight to the endpoint
+     * @param window - The number of recent deliveries the failure and slow call rates are computed over
+     * @param minimumCalls - The number of deliveries required before the circuit can open
+     * @param failureRateThreshold - The percentage of failed deliveries at which the circuit opens
+     * @param slowCallRateThreshold - The percentage of slow deliveries at which the circuit opens
+     * @param slowCallDuration - The duration beyond which a delivery is slow
+     * @param openDuration - How long the circuit stays open when it first opens
+     * @param maxOpenDuration - How long the circuit stays open at most, however many trials failed
+     */
+    WebhookEndpoint(int maxInFlight, int window, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold,
+            Duration slowCallDuration, Duration openDuration, Duration maxOpenDuration) {
+        this.maxInFlight = maxInFlight;
+        this.minimumCalls = Math.min(minimumCalls, window);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.openDuration = openDuration;
+        this.maxOpenDuration = maxOpenDuration;
+        this.failed = new boolean[window];
+        this.slow = new boolean[window];
+        this.openFor = openDuration;
+    }
+
+    /**
+     * Takes a place in the bulkhead for a delivery, provided the circuit lets it through.
+     *
+     * @param now - The current time
+     * @return - The place taken if the delivery can be sent, empty if it must be deferred
+     */
+    synchronized Optional<Permit> tryAcquire(long now) {
+        lastUsed = now;
+        if (state == State.OPEN) {
+            if (now - openedAt < openFor.toNanos()) {
+                return Optional.empty();
+            }
+            transition(State.HALF_OPEN);
+            trialStarted = false;
+        }
+        if (inFlight >= maxInFlight || (state == State.HALF_OPEN && trialStarted)) {
+            return Optional.empty();
+        }
+        boolean trial = state == State.HALF_OPEN;
+        trialStarted |= trial;
+        inFlight++;
+        return Optional.of(new Permit(generation, trial));
+    }
+
+    /**
+     * Gives up a place taken for a delivery that was not sent after all.
+     *
+     * @param permit - The place taken for the delivery
+     */
+    synchronized void cancel(Permit permit) {
+        inFlight--;
+        if (permit.trial && permit.generation == generation) {
+            trialStarted = false;
+        }
+    }
+
+    /**
+     * Records the outcome of a delivery and gives up its place in the bulkhead. The outcome is only recorded if the
+     * circuit is still in the state it let the delivery through in.
+     *
+     * @param permit - The place taken for the delivery
+     * @param success - true if the endpoint accepted the delivery
+     * @param latency - How long the delivery took
+     * @param now - The current time
+     */
+    synchronized void release(Permit permit, boolean success, Duration latency, long now) {
+        inFlight--;
+        lastUsed = now;
+        if (permit.generation != generation) {
+            return;
+        }
+        boolean slowCall = latency.compareTo(slowCallDuration) > 0;
+        if (state == State.HALF_OPEN && permit.trial) {
+            if (success && !slowCall) {
+                close();
+            } else {
+                Duration doubled = openFor.multipliedBy(2);
+                open(now, doubled.compareTo(maxOpenDuration) < 0 ? doubled : maxOpenDuration);
+            }
+        } else if (state == State.CLOSED) {
+            record(!success, slowCall);
+            if (calls >= minimumCalls && (failures * 100 >= failureRateThreshold * calls || slowCalls * 100 >= slowCallRateThreshold * calls)) {
+                open(now, openDuration);
+            }
+        }
+    }
+
+    /**
+     * @param now - The current time
+     * @return - How much longer the circuit stays open, zero if it is not open
+     */
+    synchronized Duration getRemainingOpen(long now) {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        Duration remaining = openFor.minusNanos(now - openedAt);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * @param now - The current time
+     * @param idleTimeout - How long the endpoint must have been unused for
+     * @return - true if the endpoint has no deliveries in flight, has been unused for the idle timeout and would not
+     *         shed a delivery because its circuit is open
+     */
+    synchronized boolean isIdle(long now, Duration idleTimeout) {
+        return inFlight == 0 && now - lastUsed >= idleTimeout.toNanos() && getRemainingOpen(now).isZero();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        if (calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private void transition(State to) {
+        state = to;
+        generation++;
+    }
+
+    private void open(long now, Duration duration) {
+        transition(State.OPEN);
+        openedAt = now;
+        openFor = duration;
+    }
+
+    private void close() {
+        transition(State.CLOSED);
+        openFor = openDuration;
+        Arrays.fill(failed, false);
+        Arrays.fill(slow, false);
+        calls = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package org.kie.baaas.dfm.app.webhook;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.scheduler.Scheduled;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the {@link WebhookEndpoint} of each webhook URL, exposing the state of its circuit breaker and the
+ * deliveries in flight to it as gauges. Endpoints that have been idle for a while are evicted along with their gauges,
+ * so that the endpoints of webhooks that are no longer delivered to do not accumulate.
+ */
+@ApplicationScoped
+public class WebhookEndpoints {
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, RegisteredEndpoint> endpoints = new ConcurrentHashMap<>();
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.max-in-flight", defaultValue = "10")
+    int maxInFlight;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.circuit-breaker.window", defaultValue = "20")
+    int window;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.circuit-breaker.minimum-calls", defaultValue = "10")
+    int minimumCalls;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.circuit-breaker.failure-rate-threshold", defaultValue = "50")
+    int failureRateThreshold;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.circuit-breaker.slow-call-rate-threshold", defaultValue = "50")
+    int slowCallRateThreshold;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.circuit-breaker.slow-call-duration", defaultValue = "5S")
+    Duration slowCallDuration;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.circuit-breaker.open-duration", defaultValue = "30S")
+    Duration openDuration;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.circuit-breaker.max-open-duration", defaultValue = "10M")
+    Duration maxOpenDuration;
+
+    @ConfigProperty(name = "baaas.webhook.endpoint.idle-timeout", defaultValue = "15M")
+    Duration idleTimeout;
+
+    @Inject
+    public WebhookEndpoints(MeterRegistry meterRegistry) {
+        requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.meterRegistry = meterRegistry;
+    }
+
+    public WebhookEndpoint get(String url) {
+        return endpoints.computeIfAbsent(url, this::create).endpoint;
+    }
+
+    /**
+     * Evicts the endpoints that have been idle for the idle timeout and removes their gauges.
+     */
+    @Scheduled(every = "{baaas.webhook.endpoint.evict-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void evictIdle() {
+        long now = System.nanoTime();
+        endpoints.forEach((url, registered) -> {
+            if (registered.endpoint.isIdle(now, idleTimeout) && endpoints.remove(url, registered)) {
+                registered.gauges.forEach(meterRegistry::remove);
+            }
+        });
+    }
+
+    private RegisteredEndpoint create(String url) {
+        WebhookEndpoint endpoint = new WebhookEndpoint(maxInFlight, window, minimumCalls, failureRateThreshold, slowCallRateThreshold,
+                slowCallDuration, openDuration, maxOpenDuration);
+        Tags tags = Tags.of("url", url);
+        return new RegisteredEndpoint(endpoint, List.of(
+                // 0 while closed, 1 while open and 2 while half-open
+                Gauge.builder("daaas.webhook.endpoint.state", endpoint, e -> e.getState().ordinal()).tags(tags).register(meterRegistry),
+                Gauge.builder("daaas.webhook.endpoint.in-flight", endpoint, WebhookEndpoint::getInFlight).tags(tags).register(meterRegistry)));
+    }
+
+    private static class RegisteredEndpoint {
+
+        private final WebhookEndpoint endpoint;
+
+        private final List<Meter> gauges;
+
+        private RegisteredEndpoint(WebhookEndpoint endpoint, List<Meter> gauges) {
+            this.endpoint = endpoint;
+            this.gauges = gauges;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.kie.baaas.dfm.app.webhook;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of requests in flight to a single host. Requests beyond the limit are queued rather than
+ * rejected and are started, without blocking any thread, as earlier requests to the host complete. A request whose
+ * turn only comes after its deadline is not started and fails with a {@link TimeoutException}.
+ */
+class WebhookHostLimiter {
+
+    private final int maxInFlight;
+
+    private final Semaphore permits;
+
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    private volatile long lastUsed = System.nanoTime();
+
+    WebhookHostLimiter(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @param request - Starts the request
+     * @param deadline - The {@link System#nanoTime()} after which the request is no longer started
+     * @return - The response, or a {@link TimeoutException} if the request was not started by the deadline
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request, long deadline) {
+        lastUsed = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        waiting.add(() -> start(request, deadline, result));
+        drain();
+        return result;
+    }
+
+    int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @param now - The current {@link System#nanoTime()}
+     * @param idleTimeout - How long the host must have been unused for
+     * @return - true if no request to the host is in flight or waiting and none was submitted within the idle timeout
+     */
+    boolean isIdle(long now, Duration idleTimeout) {
+        return waiting.isEmpty() && permits.availablePermits() == maxInFlight && now - lastUsed >= idleTimeout.toNanos();
+    }
+
+    private <T> void start(Supplier<CompletableFuture<T>> request, long deadline, CompletableFuture<T> result) {
+        if (System.nanoTime() - deadline > 0) {
+            // Gives the permit straight back to the draining loop
+            permits.release();
+            result.completeExceptionally(new TimeoutException("Request not started before its deadline"));
+            return;
+        }
+
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((r, t) -> {
+            permits.release();
+            drain();
+            if (t != null) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete(r);
+            }
+        });
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                // Taken by a concurrent drain, which holds its own permit
+                permits.release();
+            } else {
+                next.run();
+            }
+        }
+    }
+}
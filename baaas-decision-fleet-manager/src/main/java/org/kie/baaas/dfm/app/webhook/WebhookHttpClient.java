@@ -0,0 +1,125 @@
+package org.kie.baaas.dfm.app.webhook;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.scheduler.Scheduled;
+
+/**
+ * The HTTP clients shared by all webhook deliveries. A small pool of clients serves every webhook, with the requests
+ * to a host always sent by the same client so that they are multiplexed over its HTTP/2 connection to the host
+ * where the host supports it. The number of requests in flight to each host is limited, bounding the connections
+ * opened to hosts that only support HTTP/1.1. The limits of hosts that have been idle for a while are evicted.
+ */
+@ApplicationScoped
+public class WebhookHttpClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookHttpClient.class);
+
+    @ConfigProperty(name = "baaas.webhook.http.clients", defaultValue = "1")
+    int clients;
+
+    @ConfigProperty(name = "baaas.webhook.http.threads", defaultValue = "4")
+    int threads;
+
+    @ConfigProperty(name = "baaas.webhook.http.connect-timeout", defaultValue = "5S")
+    Duration connectTimeout;
+
+    @ConfigProperty(name = "baaas.webhook.http.max-connections-per-host", defaultValue = "20")
+    int maxConnectionsPerHost;
+
+    @ConfigProperty(name = "baaas.webhook.http.host-idle-timeout", defaultValue = "15M")
+    Duration hostIdleTimeout;
+
+    private final ConcurrentMap<String, WebhookHostLimiter> hosts = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    private HttpClient[] httpClients;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "webhook-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpClients = new HttpClient[clients];
+        for (int i = 0; i < clients; i++) {
+            httpClients[i] = HttpClient.newBuilder()
+                    .executor(executor)
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
+                    .build();
+        }
+        LOG.info("Created '{}' webhook HTTP clients with '{}' threads", clients, threads);
+    }
+
+    /**
+     * Closes the clients. The JDK client has no close operation, so its connections are released by stopping the
+     * threads it runs on and dropping the clients.
+     */
+    @PreDestroy
+    void shutdown() {
+        httpClients = new HttpClient[0];
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends a request to a webhook once the number of requests in flight to its host allows.
+     *
+     * @param request - The request
+     * @param responseBodyHandler - Handles the body of the response
+     * @param maxWait - How long the request may wait for its turn to be sent
+     * @return - The response, or a {@link java.util.concurrent.TimeoutException} if the request was not sent within
+     *         the maximum wait
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, BodyHandler<T> responseBodyHandler, Duration maxWait) {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        String host = hostOf(request.uri());
+        HttpClient httpClient = httpClients[Math.floorMod(host.hashCode(), httpClients.length)];
+        return hosts.computeIfAbsent(host, h -> new WebhookHostLimiter(maxConnectionsPerHost))
+                .submit(() -> httpClient.sendAsync(request, responseBodyHandler), deadline);
+    }
+
+    /**
+     * Evicts the limits of the hosts that have been idle for the idle timeout.
+     */
+    @Scheduled(every = "{baaas.webhook.http.evict-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void evictIdleHosts() {
+        long now = System.nanoTime();
+        hosts.entrySet().removeIf(host -> host.getValue().isIdle(now, hostIdleTimeout));
+    }
+
+    private static String hostOf(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+}
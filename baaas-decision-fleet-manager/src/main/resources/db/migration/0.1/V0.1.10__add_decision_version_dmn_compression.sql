@@ -0,0 +1 @@
+ALTER TABLE decision_version add dmn_compression varchar(16);
@@ -0,0 +1,14 @@
+create table DEPLOYMENT_REQUEST
+(
+    id           varchar(255) NOT NULL PRIMARY KEY,
+    customer_id  varchar(255) NOT NULL,
+    decision_id  varchar(255) NOT NULL,
+    version      integer      NOT NULL,
+    attempts     integer      NOT NULL default 0,
+    created_at   timestamp    NOT NULL,
+    available_at timestamp,
+    last_error   text,
+    constraint fk_deployment_request_decision foreign key (decision_id) references DECISION (id) on delete cascade
+);
+
+create index idx_deployment_request_available on DEPLOYMENT_REQUEST (available_at);
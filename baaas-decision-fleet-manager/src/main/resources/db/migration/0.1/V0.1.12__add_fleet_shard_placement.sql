@@ -0,0 +1,12 @@
+alter table DECISION_FLEET_SHARD
+    add column capacity integer;
+alter table DECISION_FLEET_SHARD
+    add column schedulable boolean NOT NULL default true;
+
+-- Existing Decisions were deployed to the only Fleet Shard
+alter table DECISION
+    add column fleet_shard_id integer;
+update DECISION
+set fleet_shard_id = 1;
+
+create index idx_decision_fleet_shard on DECISION (fleet_shard_id, customer_id);
@@ -0,0 +1,5 @@
+-- Version numbers are allocated from a per-Decision sequence rather than by counting the DecisionVersions
+alter table DECISION
+    add column next_version integer NOT NULL default 1;
+update DECISION
+set next_version = (select coalesce(max(version), 0) + 1 from DECISION_VERSION where DECISION_VERSION.decision_id = DECISION.id);
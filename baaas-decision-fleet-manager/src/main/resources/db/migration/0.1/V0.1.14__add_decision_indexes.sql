@@ -0,0 +1,18 @@
+-- Versions of a Decision are listed newest first, continuing from a (submitted_at, id) cursor
+create index idx_decision_version_decision_submitted on DECISION_VERSION (decision_id, submitted_at, id);
+-- Versions awaiting the outcome of their deployment
+create index idx_decision_version_status_submitted on DECISION_VERSION (status, submitted_at);
+
+-- Tags and configuration are fetched with their DecisionVersion
+create index idx_decision_version_tag_version on DECISION_VERSION_TAG (decision_version_id);
+create index idx_decision_version_config_version on DECISION_VERSION_CONFIG (decision_version_id);
+
+-- Removing a DecisionVersion checks that no Decision still points at it
+create index idx_decision_current_version on DECISION (current_version_id);
+create index idx_decision_next_version on DECISION (next_version_id);
+
+-- Webhooks are listed and looked up per customer by URL
+create index idx_webhook_customer_url on WEBHOOK (customer_id, url);
+
+-- Deployment requests are released and removed per DecisionVersion
+create index idx_deployment_request_decision_version on DEPLOYMENT_REQUEST (decision_id, version);
@@ -0,0 +1,10 @@
+-- The number of Decisions of each customer, maintained on creation and deletion to enforce baaas.dfm.max.allowed.decisions
+create table DECISION_QUOTA
+(
+    customer_id    varchar(255) NOT NULL PRIMARY KEY,
+    decision_count bigint       NOT NULL
+);
+insert into DECISION_QUOTA (customer_id, decision_count)
+select customer_id, count(id)
+from DECISION
+group by customer_id;
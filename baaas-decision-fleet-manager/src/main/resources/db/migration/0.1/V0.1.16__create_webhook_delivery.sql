@@ -0,0 +1,20 @@
+-- Pending and dead-lettered webhook deliveries. A delivery without an available_at time has been dead-lettered.
+create table WEBHOOK_DELIVERY
+(
+    id           varchar(255) NOT NULL PRIMARY KEY,
+    webhook_id   varchar(255) NOT NULL,
+    customer_id  varchar(255) NOT NULL,
+    event_id     varchar(255) NOT NULL,
+    url          varchar(255) NOT NULL,
+    payload      bytea        NOT NULL,
+    attempts     integer      NOT NULL default 0,
+    created_at   timestamp    NOT NULL,
+    available_at timestamp,
+    dead_at      timestamp,
+    last_error   text,
+    constraint fk_webhook_delivery_webhook foreign key (webhook_id) references WEBHOOK (id) on delete cascade,
+    constraint uk_webhook_delivery_event unique (webhook_id, event_id)
+);
+
+create index idx_webhook_delivery_available on WEBHOOK_DELIVERY (available_at);
+create index idx_webhook_delivery_dead on WEBHOOK_DELIVERY (customer_id, dead_at);
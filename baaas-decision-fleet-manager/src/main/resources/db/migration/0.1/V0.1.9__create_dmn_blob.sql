@@ -0,0 +1,9 @@
+create table DMN_BLOB
+(
+    location    varchar(255) NOT NULL PRIMARY KEY,
+    customer_id varchar(255) NOT NULL,
+    ref_count   integer      NOT NULL,
+    released_at timestamp
+);
+
+create index idx_dmn_blob_released on DMN_BLOB (ref_count, released_at);
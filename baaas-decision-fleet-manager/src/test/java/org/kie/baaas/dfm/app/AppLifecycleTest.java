@@ -17,6 +17,7 @@ package org.kie.baaas.dfm.app;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.app.dao.DecisionFleetShardCache;
 import org.kie.baaas.dfm.app.dao.DecisionFleetShardDAO;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -32,6 +33,9 @@ public class AppLifecycleTest {
     @Mock
     private DecisionFleetShardDAO decisionFleetShardDAO;
 
+    @Mock
+    private DecisionFleetShardCache decisionFleetShardCache;
+
     @InjectMocks
     private AppLifecycle appLifecycle;
 
@@ -39,5 +43,6 @@ public class AppLifecycleTest {
     public void onStart() {
         appLifecycle.onStart(new StartupEvent());
         verify(decisionFleetShardDAO).init();
+        verify(decisionFleetShardCache).invalidate();
     }
 }
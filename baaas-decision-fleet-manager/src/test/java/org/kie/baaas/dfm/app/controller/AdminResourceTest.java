@@ -15,9 +15,11 @@
 
 package org.kie.baaas.dfm.app.controller;
 
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.ws.rs.core.Response;
 
@@ -25,6 +27,8 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.kie.baaas.dfm.api.decisions.DecisionResponse;
+import org.kie.baaas.dfm.app.dao.DecisionFleetShardCache;
+import org.kie.baaas.dfm.app.dao.WebhookDeliveryDAO;
 import org.kie.baaas.dfm.app.manager.DecisionLifecycleOrchestrator;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
@@ -38,7 +42,12 @@ import io.quarkus.test.security.TestSecurity;
 import io.restassured.RestAssured;
 
 import static org.kie.baaas.dfm.app.TestConstants.DEFAULT_CUSTOMER_ID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @QuarkusTest
@@ -50,6 +59,12 @@ public class AdminResourceTest {
     @InjectMock
     DecisionLifecycleOrchestrator decisionLifecycle;
 
+    @InjectMock
+    DecisionFleetShardCache decisionFleetShardCache;
+
+    @InjectMock
+    WebhookDeliveryDAO webhookDeliveryDAO;
+
     @Test
     @TestSecurity(user = DEFAULT_CUSTOMER_ID, roles = { "user" })
     public void unauthorized() {
@@ -95,9 +110,12 @@ public class AdminResourceTest {
     @TestSecurity(user = DEFAULT_CUSTOMER_ID, roles = { "admin" })
     public void listDecisions() {
         Decision decision = createDecision();
-        List<Decision> listResult = Collections.singletonList(decision);
 
-        when(decisionLifecycle.listDecisions()).thenReturn(listResult);
+        doAnswer(invocation -> {
+            Consumer<DecisionVersion> consumer = invocation.getArgument(1);
+            consumer.accept(decision.getCurrentVersion());
+            return null;
+        }).when(decisionLifecycle).streamDecisions(isNull(), any());
 
         List<DecisionResponse> decisions = Arrays.asList(RestAssured.given()
                 .get("/admin/decisions")
@@ -110,6 +128,68 @@ public class AdminResourceTest {
         Assertions.assertEquals(decision.getName(), decisions.get(0).getName());
     }
 
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID, roles = { "admin" })
+    public void listDecisions_forCustomer() {
+        List<DecisionResponse> decisions = Arrays.asList(RestAssured.given()
+                .queryParam("customerId", DEFAULT_CUSTOMER_ID)
+                .get("/admin/decisions")
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode())
+                .extract()
+                .as(DecisionResponse[].class));
+
+        Assertions.assertTrue(decisions.isEmpty());
+        verify(decisionLifecycle).streamDecisions(eq(DEFAULT_CUSTOMER_ID), any());
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID, roles = { "admin" })
+    public void refreshFleetShards() {
+        RestAssured.given()
+                .post("/admin/fleet-shards/refresh")
+                .then()
+                .statusCode(Response.Status.NO_CONTENT.getStatusCode());
+
+        verify(decisionFleetShardCache).invalidate();
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID, roles = { "admin" })
+    public void replayWebhookDeadLetters() {
+        when(webhookDeliveryDAO.replay(eq(DEFAULT_CUSTOMER_ID), any(ZonedDateTime.class))).thenReturn(2);
+
+        int replayed = RestAssured.given()
+                .queryParam("customerId", DEFAULT_CUSTOMER_ID)
+                .post("/admin/webhooks/dead-letters/replay")
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode())
+                .extract()
+                .path("replayed");
+
+        Assertions.assertEquals(2, replayed);
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID, roles = { "admin" })
+    public void replayWebhookDeadLetter() {
+        when(webhookDeliveryDAO.replayById(eq("delivery-id"), any(ZonedDateTime.class))).thenReturn(true);
+
+        RestAssured.given()
+                .post("/admin/webhooks/dead-letters/delivery-id/replay")
+                .then()
+                .statusCode(Response.Status.NO_CONTENT.getStatusCode());
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID, roles = { "admin" })
+    public void replayWebhookDeadLetter_notFound() {
+        RestAssured.given()
+                .post("/admin/webhooks/dead-letters/delivery-id/replay")
+                .then()
+                .statusCode(Response.Status.NOT_FOUND.getStatusCode());
+    }
+
     private Decision createDecision() {
         DecisionVersion decisionVersion = new DecisionVersion();
         decisionVersion.setVersion(1L);
@@ -15,24 +15,34 @@
 
 package org.kie.baaas.dfm.app.controller;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.core.Response;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.api.decisions.DecisionImportResult;
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.decisions.DecisionResponse;
 import org.kie.baaas.dfm.api.decisions.DecisionResponseList;
 import org.kie.baaas.dfm.api.decisions.Model;
 import org.kie.baaas.dfm.api.decisions.ResponseModel;
 import org.kie.baaas.dfm.app.controller.modelmappers.DecisionMapper;
+import org.kie.baaas.dfm.app.manager.DecisionImport;
+import org.kie.baaas.dfm.app.manager.DecisionImporter;
 import org.kie.baaas.dfm.app.manager.DecisionLifecycleOrchestrator;
+import org.kie.baaas.dfm.app.model.DMNCompression;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.storage.DMNContent;
 import org.mockito.ArgumentCaptor;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -46,9 +56,17 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.kie.baaas.dfm.app.TestConstants.DEFAULT_CUSTOMER_ID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @QuarkusTest
@@ -65,6 +83,9 @@ public class DecisionResourceTest {
     @InjectMock
     DecisionMapper decisionMapper;
 
+    @InjectMock
+    DecisionImporter decisionImporter;
+
     private DecisionRequest buildDecisionRequest() {
         Model model = new Model();
         model.setDmn("<xml test=\"123\">foo</xml>");
@@ -112,6 +133,57 @@ public class DecisionResourceTest {
         assertThat(decision, equalTo(decisionResponse));
     }
 
+    private DecisionImportResult buildImportResult(int index, int status) {
+        DecisionImportResult result = new DecisionImportResult();
+        result.setIndex(index);
+        result.setName("decision-" + index);
+        result.setStatus(status);
+        return result;
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID)
+    public void importDecisions() {
+        DecisionImport created = new DecisionImport(0, buildDecisionRequest());
+        DecisionImport rejected = new DecisionImport(1, buildDecisionRequest());
+        doAnswer(invocation -> {
+            Consumer<DecisionImport> results = invocation.getArgument(2);
+            results.accept(created);
+            results.accept(rejected);
+            return null;
+        }).when(decisionImporter).importDecisions(eq(DEFAULT_CUSTOMER_ID), anyList(), any());
+        when(decisionMapper.mapToDecisionImportResult(created)).thenReturn(buildImportResult(0, Response.Status.CREATED.getStatusCode()));
+        when(decisionMapper.mapToDecisionImportResult(rejected)).thenReturn(buildImportResult(1, Response.Status.BAD_REQUEST.getStatusCode()));
+
+        String body = RestAssured.given()
+                .contentType(ContentType.JSON)
+                .body(List.of(buildDecisionRequest(), buildDecisionRequest()))
+                .post("/decisions/import")
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode())
+                .header("Content-Type", containsString(APIConstants.APPLICATION_NDJSON))
+                .extract()
+                .asString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines.length, equalTo(2));
+        assertThat(lines[0], containsString("\"status\":201"));
+        assertThat(lines[1], containsString("\"status\":400"));
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID)
+    public void importDecisions_empty() {
+        RestAssured.given()
+                .contentType(ContentType.JSON)
+                .body(List.of())
+                .post("/decisions/import")
+                .then()
+                .statusCode(Response.Status.BAD_REQUEST.getStatusCode());
+
+        verify(decisionImporter, never()).importDecisions(anyString(), anyList(), any());
+    }
+
     @Test
     @TestSecurity(user = DEFAULT_CUSTOMER_ID)
     public void deleteDecision() {
@@ -146,22 +218,127 @@ public class DecisionResourceTest {
         assertThat(decision, equalTo(decisionResponse));
     }
 
+    private DMNContent createDMNContent(String dmn, String contentRange) {
+        byte[] bytes = dmn.getBytes(StandardCharsets.UTF_8);
+        return new DMNContent(new ByteArrayInputStream(bytes), "dmn-md5", bytes.length, contentRange);
+    }
+
+    private DMNContent createCompressedDMNContent(String dmn) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(dmn.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = compressed.toByteArray();
+        return new DMNContent(new ByteArrayInputStream(bytes), "dmn-md5", bytes.length, null, DMNCompression.GZIP);
+    }
+
+    private DecisionVersion mockDMNVersion(long version) {
+        return mockDMNVersion(version, null);
+    }
+
+    private DecisionVersion mockDMNVersion(long version, DMNCompression compression) {
+        DecisionVersion decisionVersion = mock(DecisionVersion.class);
+        when(decisionVersion.getDmnMd5()).thenReturn("\"dmn-md5\"");
+        when(decisionVersion.getDmnCompression()).thenReturn(compression);
+        when(decisionLifecycle.getVersion(DEFAULT_CUSTOMER_ID, DECISION_ID, version)).thenReturn(decisionVersion);
+        return decisionVersion;
+    }
+
     @Test
     @TestSecurity(user = DEFAULT_CUSTOMER_ID)
     public void getDecisionVersionDMN() {
 
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        b.writeBytes("<xml test=\"123\">foo</xml>".getBytes(StandardCharsets.UTF_8));
-
         long version = 1L;
 
-        when(decisionLifecycle.getDMN(DEFAULT_CUSTOMER_ID, DECISION_ID, version)).thenReturn(b);
+        DecisionVersion decisionVersion = mockDMNVersion(version);
+        when(decisionLifecycle.getDMN(DEFAULT_CUSTOMER_ID, decisionVersion, null)).thenReturn(createDMNContent("<xml test=\"123\">foo</xml>", null));
 
         RestAssured.given()
                 .get("/decisions/" + DECISION_ID + "/versions/" + version + "/dmn")
                 .then()
                 .statusCode(Response.Status.OK.getStatusCode())
+                .header("ETag", "\"dmn-md5\"")
+                .header("Accept-Ranges", "bytes")
                 .body(containsString("123"));
+
+        // the DMN is opened for the version resolved to answer conditional requests
+        verify(decisionLifecycle).getVersion(DEFAULT_CUSTOMER_ID, DECISION_ID, version);
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID)
+    public void getDecisionVersionDMNNotModified() {
+
+        long version = 1L;
+
+        mockDMNVersion(version);
+
+        RestAssured.given()
+                .header("If-None-Match", "\"dmn-md5\"")
+                .get("/decisions/" + DECISION_ID + "/versions/" + version + "/dmn")
+                .then()
+                .statusCode(Response.Status.NOT_MODIFIED.getStatusCode());
+
+        verify(decisionLifecycle, never()).getDMN(anyString(), any(), any());
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID)
+    public void getDecisionVersionDMNRange() {
+
+        long version = 1L;
+
+        DecisionVersion decisionVersion = mockDMNVersion(version);
+        when(decisionLifecycle.getDMN(DEFAULT_CUSTOMER_ID, decisionVersion, "bytes=0-3")).thenReturn(createDMNContent("<xml", "bytes 0-3/25"));
+
+        RestAssured.given()
+                .header("Range", "bytes=0-3")
+                .get("/decisions/" + DECISION_ID + "/versions/" + version + "/dmn")
+                .then()
+                .statusCode(Response.Status.PARTIAL_CONTENT.getStatusCode())
+                .header("Content-Range", "bytes 0-3/25")
+                .body(equalTo("<xml"));
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID)
+    public void getDecisionVersionDMNCompressedPassThrough() throws IOException {
+
+        long version = 1L;
+
+        DecisionVersion decisionVersion = mockDMNVersion(version, DMNCompression.GZIP);
+        when(decisionLifecycle.getDMN(DEFAULT_CUSTOMER_ID, decisionVersion, null)).thenReturn(createCompressedDMNContent("<xml test=\"123\">foo</xml>"));
+
+        // the client decompresses the response itself
+        RestAssured.given()
+                .header("Accept-Encoding", "gzip")
+                .get("/decisions/" + DECISION_ID + "/versions/" + version + "/dmn")
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode())
+                .header("Content-Encoding", "gzip")
+                .header("ETag", "\"dmn-md5-gzip\"")
+                .header("Vary", "Accept-Encoding")
+                .header("Accept-Ranges", "none")
+                .body(equalTo("<xml test=\"123\">foo</xml>"));
+    }
+
+    @Test
+    @TestSecurity(user = DEFAULT_CUSTOMER_ID)
+    public void getDecisionVersionDMNCompressedNotAccepted() throws IOException {
+
+        long version = 1L;
+
+        DecisionVersion decisionVersion = mockDMNVersion(version, DMNCompression.GZIP);
+        when(decisionLifecycle.getDMN(DEFAULT_CUSTOMER_ID, decisionVersion, null)).thenReturn(createCompressedDMNContent("<xml test=\"123\">foo</xml>"));
+
+        RestAssured.given()
+                .header("Accept-Encoding", "gzip;q=0, identity")
+                .get("/decisions/" + DECISION_ID + "/versions/" + version + "/dmn")
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode())
+                .header("Content-Encoding", nullValue())
+                .header("ETag", "\"dmn-md5\"")
+                .body(equalTo("<xml test=\"123\">foo</xml>"));
     }
 
     @Test
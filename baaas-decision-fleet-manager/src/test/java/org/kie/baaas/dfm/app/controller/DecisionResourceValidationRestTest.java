@@ -57,7 +57,7 @@ public class DecisionResourceValidationRestTest {
 
     private DMNStorageRequest createStorageRequest() {
         DMNStorageRequest request = new DMNStorageRequest("provider-url", "hash");
-        when(dmnStorage.writeDMN(anyString(), Mockito.any(DecisionRequest.class), Mockito.any(DecisionVersion.class))).thenReturn(request);
+        when(dmnStorage.getDMNLocation(Mockito.any(DMNStorageRequest.class), anyString(), Mockito.any(DecisionVersion.class))).thenReturn(request.getProviderUrl());
         return request;
     }
 
@@ -79,11 +79,11 @@ public class DecisionResourceValidationRestTest {
         //Max allowed decision is 1 for this test
 
         //Mock a storage for DMN
-        createStorageRequest();
+        DMNStorageRequest request = createStorageRequest();
 
         //creates the first decision
         DecisionRequest apiRequest = createApiRequest();
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         //creates 2nd one through HTTP and fails at max allowed limit validator
         given().when()
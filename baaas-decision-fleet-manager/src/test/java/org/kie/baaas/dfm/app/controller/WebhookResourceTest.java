@@ -38,6 +38,7 @@ import org.kie.baaas.dfm.app.manager.DecisionLifecycleOrchestrator;
 import org.kie.baaas.dfm.app.manager.DecisionManager;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.deployment.Deployment;
+import org.kie.baaas.dfm.app.storage.s3.S3DMNStorage;
 import org.kie.baaas.dfm.app.vault.VaultService;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
@@ -48,6 +49,7 @@ import com.github.tomakehurst.wiremock.stubbing.Scenario;
 
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
 import io.quarkus.test.junit.mockito.InjectMock;
 import io.quarkus.test.oidc.server.OidcWiremockTestResource;
 import io.quarkus.test.security.TestSecurity;
@@ -72,6 +74,7 @@ import static org.mockito.Mockito.verify;
 
 @QuarkusTest
 @QuarkusTestResource(OidcWiremockTestResource.class)
+@TestProfile(WebhookDeliveryTestProfile.class)
 public class WebhookResourceTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(WebhookResourceTest.class);
@@ -94,6 +97,9 @@ public class WebhookResourceTest {
     @InjectMock
     DecisionMapper decisionMapper;
 
+    @InjectMock
+    S3DMNStorage dmnStorage;
+
     @InjectMock
     VaultService vaultService;
 
@@ -199,7 +205,7 @@ public class WebhookResourceTest {
                 .path("id");
 
         DecisionVersion decisionVersion = new DecisionVersion();
-        Mockito.when(decisionManager.createOrUpdateVersion(any(), any())).thenReturn(decisionVersion);
+        Mockito.when(decisionManager.createOrUpdateVersion(any(), any(), any())).thenReturn(decisionVersion);
         Mockito.when(decisionManager.deployed(any(), any(), anyLong(), any())).thenReturn(decisionVersion);
         Mockito.when(decisionManager.failed(any(), any(), anyLong(), any())).thenReturn(decisionVersion);
         DecisionResponse decisionResponse = new DecisionResponse();
@@ -210,7 +216,7 @@ public class WebhookResourceTest {
         Mockito.when(clientFactory.createClientFor(any())).thenReturn(clientMock);
         DecisionRequest decisionRequest = new DecisionRequest();
         decisionRequest.setDescription("Mocked DecisionRequest");
-        decisionLifeCycleOrchestrator.createOrUpdateVersion("myCustomer", decisionRequest);
+        decisionLifeCycleOrchestrator.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, decisionRequest);
 
         // a total of 1 webhook is currently registered
         await().atMost(5, TimeUnit.SECONDS)
@@ -233,7 +239,7 @@ public class WebhookResourceTest {
                 .post("/webhooks")
                 .then()
                 .statusCode(200);
-        decisionLifeCycleOrchestrator.createOrUpdateVersion("myCustomer", decisionRequest);
+        decisionLifeCycleOrchestrator.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, decisionRequest);
         await().atMost(5, TimeUnit.SECONDS)
                 .pollInterval(1, TimeUnit.SECONDS)
                 .untilAsserted(() -> verify(1, postRequestedFor(urlEqualTo("/mywebhook2"))));
@@ -251,20 +257,20 @@ public class WebhookResourceTest {
                 .post("/webhooks")
                 .then()
                 .statusCode(200);
-        decisionLifeCycleOrchestrator.createOrUpdateVersion("myCustomer", decisionRequest);
+        decisionLifeCycleOrchestrator.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, decisionRequest);
         await().atMost(5, TimeUnit.SECONDS)
                 .pollInterval(1, TimeUnit.SECONDS)
                 .untilAsserted(() -> verify(2, postRequestedFor(urlEqualTo("/mywebhook"))));
         verify(1, postRequestedFor(urlEqualTo("/mywebhook2")));
 
         // one more callback for .deployed()
-        decisionLifeCycleOrchestrator.deployed("x", "x", 1L, new Deployment());
+        decisionLifeCycleOrchestrator.deployed(DEFAULT_CUSTOMER_ID, "x", 1L, new Deployment());
         await().atMost(5, TimeUnit.SECONDS)
                 .pollInterval(1, TimeUnit.SECONDS)
                 .untilAsserted(() -> verify(3, postRequestedFor(urlEqualTo("/mywebhook"))));
 
         // one more callback for .failed()
-        decisionLifeCycleOrchestrator.failed("x", "x", 1L, new Deployment());
+        decisionLifeCycleOrchestrator.failed(DEFAULT_CUSTOMER_ID, "x", 1L, new Deployment());
         await().atMost(5, TimeUnit.SECONDS)
                 .pollInterval(1, TimeUnit.SECONDS)
                 .untilAsserted(() -> verify(4, postRequestedFor(urlEqualTo("/mywebhook"))));
@@ -336,13 +342,13 @@ public class WebhookResourceTest {
                 .path("id");
 
         DecisionVersion decisionVersion = new DecisionVersion();
-        Mockito.when(decisionManager.createOrUpdateVersion(any(), any())).thenReturn(decisionVersion);
+        Mockito.when(decisionManager.createOrUpdateVersion(any(), any(), any())).thenReturn(decisionVersion);
         Mockito.when(fleetShardSelector.selectFleetShardForDeployment(any())).thenReturn(null);
         DecisionFleetShardClient clientMock = Mockito.mock(DecisionFleetShardClient.class);
         Mockito.when(clientFactory.createClientFor(any())).thenReturn(clientMock);
         DecisionRequest decisionRequest = new DecisionRequest();
         decisionRequest.setDescription("Mocked DecisionRequest");
-        decisionLifeCycleOrchestrator.createOrUpdateVersion("myCustomer", decisionRequest);
+        decisionLifeCycleOrchestrator.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, decisionRequest);
 
         // a total of 1 webhook is currently registered
         await().atMost(5, TimeUnit.SECONDS)
@@ -382,13 +388,13 @@ public class WebhookResourceTest {
                 .statusCode(200);
 
         DecisionVersion decisionVersion = new DecisionVersion();
-        Mockito.when(decisionManager.createOrUpdateVersion(any(), any())).thenReturn(decisionVersion);
+        Mockito.when(decisionManager.createOrUpdateVersion(any(), any(), any())).thenReturn(decisionVersion);
         Mockito.when(fleetShardSelector.selectFleetShardForDeployment(any())).thenReturn(null);
         DecisionFleetShardClient clientMock = Mockito.mock(DecisionFleetShardClient.class);
         Mockito.when(clientFactory.createClientFor(any())).thenReturn(clientMock);
         DecisionRequest decisionRequest = new DecisionRequest();
         decisionRequest.setDescription("Mocked DecisionRequest");
-        decisionLifeCycleOrchestrator.createOrUpdateVersion("myCustomer", decisionRequest);
+        decisionLifeCycleOrchestrator.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, decisionRequest);
 
         await().atMost(20, TimeUnit.SECONDS)
                 .pollInterval(1, TimeUnit.SECONDS)
@@ -418,15 +424,15 @@ public class WebhookResourceTest {
                 .statusCode(200);
 
         DecisionVersion decisionVersion = new DecisionVersion();
-        Mockito.when(decisionManager.createOrUpdateVersion(any(), any())).thenReturn(decisionVersion);
+        Mockito.when(decisionManager.createOrUpdateVersion(any(), any(), any())).thenReturn(decisionVersion);
         Mockito.when(fleetShardSelector.selectFleetShardForDeployment(any())).thenReturn(null);
         DecisionFleetShardClient clientMock = Mockito.mock(DecisionFleetShardClient.class);
         Mockito.when(clientFactory.createClientFor(any())).thenReturn(clientMock);
         DecisionRequest decisionRequest = new DecisionRequest();
         decisionRequest.setDescription("Mocked DecisionRequest");
-        decisionLifeCycleOrchestrator.createOrUpdateVersion("myCustomer", decisionRequest);
+        decisionLifeCycleOrchestrator.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, decisionRequest);
 
-        await().atMost(10, TimeUnit.SECONDS)
+        await().atMost(15, TimeUnit.SECONDS)
                 .pollInterval(1, TimeUnit.SECONDS)
                 .untilAsserted(() -> verify(3, postRequestedFor(urlEqualTo("/nonoyes-webhook"))));
         assertEquals(RETRY_STATE_3, getAllScenarios().stream().filter(s -> s.getName().equals(SCENARIO_RETRY)).findFirst().get().getState());
@@ -23,11 +23,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.core.Response;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.api.decisions.DecisionImportResult;
+import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.decisions.DecisionResponse;
 import org.kie.baaas.dfm.api.decisions.DecisionResponseList;
+import org.kie.baaas.dfm.app.manager.DecisionImport;
+import org.kie.baaas.dfm.app.manager.DecisionImportException;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
@@ -207,4 +213,28 @@ public class DecisionMapperTest {
         assertDecisionResponse(responseList.getItems().get(0), decision2, decisionVersion2, false);
         assertDecisionResponse(responseList.getItems().get(1), decision, decisionVersion, false);
     }
+
+    @Test
+    public void mapToDecisionImportResult() {
+        Decision decision = createDecision("my-first-decision");
+        DecisionImport created = new DecisionImport(0, new DecisionRequest());
+        created.setDecisionVersion(createDecisionVersion(decision));
+        DecisionImport rejected = new DecisionImport(1, new DecisionRequest());
+        rejected.fail(new DecisionImportException("Decision is invalid."));
+        DecisionImport failed = new DecisionImport(2, new DecisionRequest());
+        failed.fail(new IllegalStateException("Connection to jdbc:postgresql://internal-host/baaas-dfm refused"));
+
+        DecisionImportResult createdResult = decisionMapper.mapToDecisionImportResult(created);
+        assertThat(createdResult.getStatus(), equalTo(Response.Status.CREATED.getStatusCode()));
+        assertDecisionResponse(createdResult.getDecision(), decision, created.getDecisionVersion(), false);
+
+        DecisionImportResult rejectedResult = decisionMapper.mapToDecisionImportResult(rejected);
+        assertThat(rejectedResult.getIndex(), equalTo(1));
+        assertThat(rejectedResult.getStatus(), equalTo(Response.Status.BAD_REQUEST.getStatusCode()));
+        assertThat(rejectedResult.getError(), equalTo("Decision is invalid."));
+
+        DecisionImportResult failedResult = decisionMapper.mapToDecisionImportResult(failed);
+        assertThat(failedResult.getStatus(), equalTo(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode()));
+        assertThat(failedResult.getError(), equalTo("Failed to import Decision."));
+    }
 }
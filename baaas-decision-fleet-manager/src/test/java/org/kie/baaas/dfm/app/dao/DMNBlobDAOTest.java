@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.inject.Inject;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kie.baaas.dfm.app.model.DMNBlob;
+
+import io.quarkus.test.TestTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@QuarkusTest
+public class DMNBlobDAOTest {
+
+    private static final String CUSTOMER_ID = "dmn-blob-customer";
+
+    @Inject
+    DMNBlobDAO dmnBlobDAO;
+
+    @Inject
+    RowInserter rowInserter;
+
+    private ZonedDateTime now;
+
+    @BeforeEach
+    public void beforeEach() {
+        now = ZonedDateTime.now(ZoneOffset.UTC);
+    }
+
+    private String location() {
+        return "s3://bucket/customers/" + CUSTOMER_ID + "/blobs/" + UUID.randomUUID() + "/dmn.xml";
+    }
+
+    private DMNBlob createBlob(String location, int refCount, ZonedDateTime releasedAt) {
+        DMNBlob blob = new DMNBlob();
+        blob.setLocation(location);
+        blob.setCustomerId(CUSTOMER_ID);
+        blob.setRefCount(refCount);
+        blob.setReleasedAt(releasedAt);
+        return blob;
+    }
+
+    @Test
+    @TestTransaction
+    public void acquire() {
+        String location = location();
+
+        dmnBlobDAO.acquire(CUSTOMER_ID, location);
+        dmnBlobDAO.acquire(CUSTOMER_ID, location);
+
+        dmnBlobDAO.getEntityManager().clear();
+        DMNBlob blob = dmnBlobDAO.findById(location);
+        assertThat(blob.getRefCount(), equalTo(2));
+        assertThat(blob.getReleasedAt(), is(nullValue()));
+    }
+
+    @Test
+    @TestTransaction
+    public void deleteUnreferenced() {
+        String unreferenced = location();
+        String referenced = location();
+        dmnBlobDAO.persist(createBlob(unreferenced, 0, now.minusHours(2)));
+        dmnBlobDAO.persist(createBlob(referenced, 1, null));
+
+        List<String> removed = new ArrayList<>();
+        List<String> deleted = dmnBlobDAO.deleteUnreferenced(now.minusHours(1), 1000, removed::addAll);
+
+        assertThat(deleted, hasItem(unreferenced));
+        assertThat(deleted, not(hasItem(referenced)));
+        assertThat(removed, equalTo(deleted));
+        dmnBlobDAO.getEntityManager().clear();
+        assertThat(dmnBlobDAO.findById(unreferenced), is(nullValue()));
+        assertThat(dmnBlobDAO.findById(referenced), is(notNullValue()));
+    }
+
+    @Test
+    public void deleteUnreferenced_keepsDMNWhenRemovalFails() {
+        String location = location();
+        rowInserter.insert(createBlob(location, 0, now.minusHours(2)));
+        try {
+            assertThrows(IllegalStateException.class, () -> dmnBlobDAO.deleteUnreferenced(now.minusHours(1), 1000, locations -> {
+                throw new IllegalStateException("Nope!");
+            }));
+
+            assertThat(dmnBlobDAO.findById(location), is(notNullValue()));
+        } finally {
+            dmnBlobDAO.deleteById(location);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dao;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+import org.kie.baaas.dfm.app.model.ListResult;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DecisionFleetShardCacheTest {
+
+    @Mock
+    private DecisionFleetShardDAO decisionFleetShardDAO;
+
+    private DecisionFleetShardCache cache;
+
+    @BeforeEach
+    public void beforeEach() {
+        cache = new DecisionFleetShardCache(decisionFleetShardDAO);
+    }
+
+    private DecisionFleetShard createFleetShard(int id, String dmnJitUrl) {
+        DecisionFleetShard fleetShard = new DecisionFleetShard();
+        fleetShard.setId(id);
+        fleetShard.setDmnJitUrl(dmnJitUrl);
+        return fleetShard;
+    }
+
+    @Test
+    public void getSnapshot_loadsOnce() {
+        DecisionFleetShard fleetShard = createFleetShard(1, "https://jit-1");
+        when(decisionFleetShardDAO.listAll()).thenReturn(List.of(fleetShard));
+
+        DecisionFleetShardSnapshot snapshot = cache.getSnapshot();
+        assertThat(cache.getSnapshot(), is(sameInstance(snapshot)));
+        assertThat(snapshot.getFleetShard(1), is(sameInstance(fleetShard)));
+        assertThat(snapshot.getFleetShard(2), is(nullValue()));
+
+        verify(decisionFleetShardDAO).listAll();
+    }
+
+    @Test
+    public void invalidate_reloadsWithNewVersion() {
+        when(decisionFleetShardDAO.listAll()).thenReturn(List.of(createFleetShard(1, "https://jit-1")));
+        long version = cache.getSnapshot().getVersion();
+
+        cache.invalidate();
+
+        assertThat(cache.getSnapshot().getVersion(), equalTo(version + 1));
+        verify(decisionFleetShardDAO, times(2)).listAll();
+    }
+
+    @Test
+    public void refresh_replacesSnapshot() {
+        DecisionFleetShard fleetShard = createFleetShard(2, "https://jit-2");
+        when(decisionFleetShardDAO.listAll()).thenReturn(List.of(createFleetShard(1, "https://jit-1")), List.of(fleetShard));
+        cache.getSnapshot();
+
+        cache.refresh();
+
+        assertThat(cache.getSnapshot().getFleetShard(1), is(nullValue()));
+        assertThat(cache.getSnapshot().getFleetShard(2), is(sameInstance(fleetShard)));
+    }
+
+    @Test
+    public void list_pagesByDmnJitUrl() {
+        DecisionFleetShard first = createFleetShard(2, "https://jit-a");
+        DecisionFleetShard second = createFleetShard(1, "https://jit-b");
+        DecisionFleetShard third = createFleetShard(3, "https://jit-c");
+        when(decisionFleetShardDAO.listAll()).thenReturn(List.of(third, second, first));
+
+        ListResult<DecisionFleetShard> page = cache.getSnapshot().list(1, 2);
+
+        assertThat(page.getItems(), contains(third));
+        assertThat(page.getPage(), equalTo(1L));
+        assertThat(page.getTotal(), equalTo(3L));
+        assertThat(cache.getSnapshot().list(0, 2).getItems(), contains(first, second));
+    }
+}
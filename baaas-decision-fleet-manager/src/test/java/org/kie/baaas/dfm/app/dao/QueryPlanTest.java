@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.kie.baaas.dfm.app.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.Query;
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.test.TestTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Locks in the query plans of the hot named queries, so that a change to the queries or the migrations that falls
+ * back to scanning a table is caught. The SQL explained is the SQL Hibernate generates for each named query.
+ * <p>
+ * The test database is H2, which indexes foreign keys itself, so an index is only asserted by name where no such
+ * implicit index competes with it.
+ */
+@QuarkusTest
+public class QueryPlanTest {
+
+    private static final String TABLE_SCAN = "TABLESCAN";
+
+    @Inject
+    EntityManager entityManager;
+
+    private String toSql(String namedQuery) {
+        String hql = entityManager.createNamedQuery(namedQuery).unwrap(Query.class).getQueryString();
+        SessionFactoryImplementor sessionFactory = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        return sessionFactory.getQueryPlanCache().getHQLQueryPlan(hql, false, Collections.emptyMap()).getSqlStrings()[0];
+    }
+
+    private String explain(String namedQuery) {
+        String sql = toSql(namedQuery);
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+                // the plan does not depend on the values, but every parameter must be bound
+                for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+                    statement.setObject(i, null);
+                }
+                try (ResultSet plan = statement.executeQuery()) {
+                    plan.next();
+                    return plan.getString(1).toUpperCase();
+                }
+            }
+        });
+    }
+
+    @TestTransaction
+    @Test
+    public void decisionByName() {
+        assertThat(explain("Decision.byCustomerAndDecisionName"), not(containsString(TABLE_SCAN)));
+    }
+
+    @TestTransaction
+    @Test
+    public void decisionById() {
+        assertThat(explain("Decision.byCustomerAndDecisionId"), containsString("PRIMARY_KEY"));
+    }
+
+    @TestTransaction
+    @Test
+    public void versionsOfDecision() {
+        for (String namedQuery : new String[] { "DecisionVersion.listIdsByDecisionId", "DecisionVersion.listIdsAfterByDecisionId",
+                "DecisionVersion.listIdsByDecisionName", "DecisionVersion.listIdsAfterByDecisionName" }) {
+            String plan = explain(namedQuery);
+            assertThat(namedQuery, plan, not(containsString(TABLE_SCAN)));
+            assertThat(namedQuery, plan, containsString("IDX_DECISION_VERSION_DECISION_SUBMITTED"));
+        }
+    }
+
+    @TestTransaction
+    @Test
+    public void versionOfDecision() {
+        for (String namedQuery : new String[] { "DecisionVersion.currentByCustomerAndDecisionId", "DecisionVersion.currentByCustomerAndDecisionName",
+                "DecisionVersion.byCustomerVersionAndDecisionId", "DecisionVersion.byCustomerVersionAndDecisionName" }) {
+            assertThat(namedQuery, explain(namedQuery), not(containsString(TABLE_SCAN)));
+        }
+    }
+
+    @TestTransaction
+    @Test
+    public void versionsAwaitingDeployment() {
+        assertThat(explain("DecisionVersion.buildingWithoutDeploymentBefore"), containsString("IDX_DECISION_VERSION_STATUS_SUBMITTED"));
+        assertThat(explain("DecisionVersion.buildingWithoutDeploymentBeforeAfter"), containsString("IDX_DECISION_VERSION_STATUS_SUBMITTED"));
+    }
+
+    @TestTransaction
+    @Test
+    public void tagsAndConfigurationOfVersion() {
+        assertThat(explain("DecisionVersion.listByIdOrName"), not(containsString(TABLE_SCAN)));
+    }
+
+    @TestTransaction
+    @Test
+    public void webhooksOfCustomer() {
+        assertThat(explain("Webhook.listByCustomerIdAfter"), containsString("IDX_WEBHOOK_CUSTOMER_URL"));
+    }
+}
@@ -28,6 +28,9 @@ import io.quarkus.test.junit.QuarkusTest;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.kie.baaas.dfm.app.TestConstants.DEFAULT_CUSTOMER_ID;
 
 @QuarkusTest
@@ -82,6 +85,25 @@ public class WebhookDAOTest {
         assertThat(webhookListResult.getItems().get(0).getUrl().toExternalForm(), equalTo("https://example.com/callback2"));
     }
 
+    @Test
+    @TestTransaction
+    public void listAll_withCursor() {
+        Webhook w = create("https://example.com/callback1");
+        Webhook w2 = create("https://example.com/callback2");
+
+        webhookDAO.persist(w, w2);
+
+        ListResult<Webhook> webhookListResult = webhookDAO.findByCustomer(DEFAULT_CUSTOMER_ID, 0, 2);
+        assertThat(webhookListResult.getNext(), is(notNullValue()));
+
+        webhookListResult = webhookDAO.findByCustomer(DEFAULT_CUSTOMER_ID, webhookListResult.getNext(), 2);
+        assertThat(webhookListResult.getPage(), equalTo(1L));
+        assertThat(webhookListResult.getSize(), equalTo(1L));
+        assertThat(webhookListResult.getTotal(), equalTo(3L));
+        assertThat(webhookListResult.getItems().get(0).getUrl().toExternalForm(), equalTo("https://example.com/callback2"));
+        assertThat(webhookListResult.getNext(), is(nullValue()));
+    }
+
     private Webhook create(String url) {
         Webhook w = new Webhook();
         try {
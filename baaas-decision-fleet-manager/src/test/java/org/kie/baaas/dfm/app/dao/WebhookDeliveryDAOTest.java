@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.kie.baaas.dfm.app.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.persistence.PersistenceException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kie.baaas.dfm.app.model.webhook.Webhook;
+import org.kie.baaas.dfm.app.model.webhook.WebhookDelivery;
+
+import io.quarkus.test.TestTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.kie.baaas.dfm.app.TestConstants.DEFAULT_CUSTOMER_ID;
+
+@QuarkusTest
+public class WebhookDeliveryDAOTest {
+
+    private static final String EVENT_ID = "event-id";
+
+    private static final byte[] PAYLOAD = "{}".getBytes(StandardCharsets.UTF_8);
+
+    @Inject
+    WebhookDAO webhookDAO;
+
+    @Inject
+    WebhookDeliveryDAO webhookDeliveryDAO;
+
+    private Webhook webhook;
+
+    private ZonedDateTime now;
+
+    @BeforeEach
+    public void beforeEach() {
+        // taken from test data
+        webhook = webhookDAO.findByCustomerIdAndWebhookId(DEFAULT_CUSTOMER_ID, "test-builtin-webhook").get(0);
+        now = ZonedDateTime.now(ZoneOffset.UTC);
+    }
+
+    private WebhookDelivery reload(WebhookDelivery delivery) {
+        webhookDeliveryDAO.flush();
+        webhookDeliveryDAO.getEntityManager().clear();
+        return webhookDeliveryDAO.findById(delivery.getId());
+    }
+
+    private WebhookDelivery enqueue() {
+        assertThat(webhookDeliveryDAO.enqueue(webhook, EVENT_ID, PAYLOAD, now), is(true));
+        List<WebhookDelivery> due = webhookDeliveryDAO.findDue(now, 10);
+        assertThat(due.size(), equalTo(1));
+        return due.get(0);
+    }
+
+    @Test
+    @TestTransaction
+    public void enqueue_recordsDelivery() {
+        WebhookDelivery delivery = enqueue();
+
+        assertThat(delivery.getWebhookId(), equalTo(webhook.getId()));
+        assertThat(delivery.getCustomerId(), equalTo(DEFAULT_CUSTOMER_ID));
+        assertThat(delivery.getEventId(), equalTo(EVENT_ID));
+        assertThat(delivery.getUrl(), equalTo(webhook.getUrl().toExternalForm()));
+        assertThat(delivery.getPayload(), equalTo(PAYLOAD));
+        assertThat(delivery.getAttempts(), equalTo(0));
+    }
+
+    @Test
+    @TestTransaction
+    public void enqueue_isIdempotentByEventId() {
+        enqueue();
+
+        // Rejected by the unique key, failing the transaction that enqueues the CloudEvent again
+        assertThrows(PersistenceException.class, () -> webhookDeliveryDAO.enqueue(webhook, EVENT_ID, PAYLOAD, now));
+    }
+
+    @Test
+    @TestTransaction
+    public void enqueue_skipsDeletedWebhook() {
+        Webhook deleted = new Webhook(DEFAULT_CUSTOMER_ID, webhook.getUrl());
+
+        assertThat(webhookDeliveryDAO.enqueue(deleted, EVENT_ID, PAYLOAD, now), is(false));
+        assertThat(webhookDeliveryDAO.findDue(now, 10), is(empty()));
+    }
+
+    @Test
+    @TestTransaction
+    public void claim() {
+        WebhookDelivery delivery = enqueue();
+
+        assertThat(webhookDeliveryDAO.claim(delivery, now.plusMinutes(1)), is(true));
+        // Claimed with the attempts it was listed with, which the first claim incremented
+        assertThat(webhookDeliveryDAO.claim(delivery, now.plusMinutes(1)), is(false));
+
+        assertThat(reload(delivery).getAttempts(), equalTo(1));
+        assertThat(webhookDeliveryDAO.findDue(now, 10), is(empty()));
+    }
+
+    @Test
+    @TestTransaction
+    public void outcomeOfExpiredClaimIsIgnored() {
+        WebhookDelivery delivery = enqueue();
+        webhookDeliveryDAO.claim(delivery, now);
+        // The lease expired and the delivery was claimed again
+        webhookDeliveryDAO.getEntityManager().clear();
+        WebhookDelivery reclaimed = webhookDeliveryDAO.findDue(now, 10).get(0);
+        webhookDeliveryDAO.claim(reclaimed, now.plusMinutes(1));
+
+        webhookDeliveryDAO.retry(delivery, now, "Response status 500");
+        webhookDeliveryDAO.deadLetter(delivery, now, "Response status 500");
+        webhookDeliveryDAO.unclaim(delivery, now);
+        webhookDeliveryDAO.complete(delivery);
+
+        WebhookDelivery stored = reload(delivery);
+        assertThat(stored.getAttempts(), equalTo(2));
+        assertThat(stored.getDeadAt(), is(nullValue()));
+        assertThat(stored.getLastError(), is(nullValue()));
+
+        webhookDeliveryDAO.unclaim(reclaimed, now);
+        assertThat(reload(delivery).getAttempts(), equalTo(1));
+    }
+
+    @Test
+    @TestTransaction
+    public void deadLetterAndReplay() {
+        WebhookDelivery delivery = enqueue();
+        webhookDeliveryDAO.claim(delivery, now.plusMinutes(1));
+
+        webhookDeliveryDAO.deadLetter(delivery, now, "Response status 500");
+        WebhookDelivery dead = reload(delivery);
+        assertThat(dead.getAvailableAt(), is(nullValue()));
+        assertThat(dead.getDeadAt(), is(notNullValue()));
+        assertThat(dead.getLastError(), equalTo("Response status 500"));
+        assertThat(webhookDeliveryDAO.findDue(now.plusYears(1), 10), is(empty()));
+
+        assertThat(webhookDeliveryDAO.replay("another-customer-id", now), equalTo(0));
+        assertThat(webhookDeliveryDAO.replay(DEFAULT_CUSTOMER_ID, now), equalTo(1));
+        WebhookDelivery replayed = reload(delivery);
+        assertThat(replayed.getAttempts(), equalTo(0));
+        assertThat(replayed.getDeadAt(), is(nullValue()));
+        assertThat(webhookDeliveryDAO.findDue(now, 10), contains(replayed));
+
+        // Only dead-lettered deliveries are replayed
+        assertThat(webhookDeliveryDAO.replayById(delivery.getId(), now), is(false));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dfs.callbacks;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.app.dao.DecisionVersionDAO;
+import org.kie.baaas.dfm.app.dfs.DecisionFleetShardSelector;
+import org.kie.baaas.dfm.app.dfs.client.DecisionFleetShardClientFactory;
+import org.kie.baaas.dfm.app.dfs.client.DecisionFleetShardInformer;
+import org.kie.baaas.dfm.app.model.Decision;
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfs.api.Phase;
+import org.kie.baaas.dfs.api.Webhook;
+import org.kie.baaas.dfs.api.WebhookBuilder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DecisionFleetShardReconcilerTest {
+
+    @Mock
+    private DecisionVersionDAO decisionVersionDAO;
+
+    @Mock
+    private DecisionFleetShardSelector selector;
+
+    @Mock
+    private DecisionFleetShardClientFactory clientFactory;
+
+    @Mock
+    private DecisionFleetShardInformer informer;
+
+    @Mock
+    private DecisionFleetShard fleetShard;
+
+    @Mock
+    private DecisionFleetShardCallbackResource callbackResource;
+
+    private DecisionFleetShardReconciler reconciler;
+
+    private Decision decision;
+
+    @BeforeEach
+    public void beforeEach() {
+        reconciler = new DecisionFleetShardReconciler(decisionVersionDAO, selector, clientFactory, callbackResource);
+        reconciler.batchSize = 10;
+        reconciler.callbackGrace = Duration.ofMinutes(2);
+
+        decision = new Decision();
+        decision.setCustomerId("customer");
+    }
+
+    private DecisionVersion awaitingDeployment(long version) {
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setDecision(decision);
+        decisionVersion.setVersion(version);
+        return decisionVersion;
+    }
+
+    private void informer(boolean synced) {
+        when(selector.selectFleetShardForDeployment(decision)).thenReturn(fleetShard);
+        when(clientFactory.getInformer(fleetShard)).thenReturn(informer);
+        when(informer.hasSynced()).thenReturn(synced);
+    }
+
+    private Webhook outcome(Phase phase) {
+        return new WebhookBuilder().withCustomer("customer").withPhase(phase).withVersion("1").build();
+    }
+
+    @Test
+    public void reconcile() {
+        when(decisionVersionDAO.listAwaitingDeployment(any(ZonedDateTime.class), isNull(), eq(10))).thenReturn(List.of(awaitingDeployment(1L)));
+        informer(true);
+        Webhook webhook = outcome(Phase.CURRENT);
+        when(informer.getOutcome("customer", decision.getId(), 1L)).thenReturn(Optional.of(webhook));
+
+        reconciler.reconcile();
+
+        verify(callbackResource).processCallback(webhook, decision.getId(), 1L);
+    }
+
+    @Test
+    public void reconcile_notConcluded() {
+        when(decisionVersionDAO.listAwaitingDeployment(any(ZonedDateTime.class), isNull(), eq(10))).thenReturn(List.of(awaitingDeployment(1L)));
+        informer(true);
+        when(informer.getOutcome("customer", decision.getId(), 1L)).thenReturn(Optional.empty());
+
+        reconciler.reconcile();
+
+        verify(callbackResource, never()).processCallback(any(), any(), anyLong());
+    }
+
+    @Test
+    public void reconcile_informerNotSynced() {
+        when(decisionVersionDAO.listAwaitingDeployment(any(ZonedDateTime.class), isNull(), eq(10))).thenReturn(List.of(awaitingDeployment(1L)));
+        informer(false);
+
+        reconciler.reconcile();
+
+        verify(informer, never()).getOutcome(any(), any(), anyLong());
+        verify(callbackResource, never()).processCallback(any(), any(), anyLong());
+    }
+
+    @Test
+    public void reconcile_continuesAfterFailure() {
+        Decision otherDecision = new Decision();
+        otherDecision.setCustomerId("customer");
+        DecisionVersion otherVersion = new DecisionVersion();
+        otherVersion.setDecision(otherDecision);
+        otherVersion.setVersion(2L);
+        when(decisionVersionDAO.listAwaitingDeployment(any(ZonedDateTime.class), isNull(), eq(10))).thenReturn(List.of(awaitingDeployment(1L), otherVersion));
+        when(selector.selectFleetShardForDeployment(any(Decision.class))).thenReturn(fleetShard);
+        when(clientFactory.getInformer(fleetShard)).thenReturn(informer);
+        when(informer.hasSynced()).thenReturn(true);
+        Webhook failed = outcome(Phase.FAILED);
+        Webhook current = outcome(Phase.CURRENT);
+        when(informer.getOutcome("customer", decision.getId(), 1L)).thenReturn(Optional.of(failed));
+        when(informer.getOutcome("customer", otherDecision.getId(), 2L)).thenReturn(Optional.of(current));
+        doThrow(new RuntimeException("Nope!")).when(callbackResource).processCallback(failed, decision.getId(), 1L);
+
+        reconciler.reconcile();
+
+        verify(callbackResource).processCallback(current, otherDecision.getId(), 2L);
+    }
+
+    @Test
+    public void reconcile_continuesFromPreviousRun() {
+        reconciler.batchSize = 1;
+        DecisionVersion unresolved = awaitingDeployment(1L);
+        DecisionVersion newer = awaitingDeployment(2L);
+        when(decisionVersionDAO.listAwaitingDeployment(any(ZonedDateTime.class), isNull(), eq(1))).thenReturn(List.of(unresolved));
+        when(decisionVersionDAO.listAwaitingDeployment(any(ZonedDateTime.class), eq(unresolved), eq(1))).thenReturn(List.of(newer));
+        when(decisionVersionDAO.listAwaitingDeployment(any(ZonedDateTime.class), eq(newer), eq(1))).thenReturn(List.of());
+        informer(false);
+
+        reconciler.reconcile();
+        reconciler.reconcile();
+        reconciler.reconcile();
+        // Having reached the newest, the next run starts again from the oldest
+        reconciler.reconcile();
+
+        verify(decisionVersionDAO, times(2)).listAwaitingDeployment(any(ZonedDateTime.class), isNull(), eq(1));
+        verify(decisionVersionDAO).listAwaitingDeployment(any(ZonedDateTime.class), eq(newer), eq(1));
+    }
+}
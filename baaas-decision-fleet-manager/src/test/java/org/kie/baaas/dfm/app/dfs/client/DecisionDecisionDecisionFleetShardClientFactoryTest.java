@@ -15,6 +15,8 @@
 
 package org.kie.baaas.dfm.app.dfs.client;
 
+import java.time.Duration;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -24,10 +26,26 @@ import org.kie.baaas.dfm.app.model.DecisionFleetShard;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import okhttp3.OkHttpClient;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 @ExtendWith(MockitoExtension.class)
 public class DecisionDecisionDecisionFleetShardClientFactoryTest {
@@ -38,11 +56,21 @@ public class DecisionDecisionDecisionFleetShardClientFactoryTest {
     @Mock
     private DecisionFleetManagerConfig config;
 
+    private MeterRegistry meterRegistry;
+
     private DecisionFleetShardClientFactory factory;
 
     @BeforeEach
     public void before() {
-        factory = new DecisionFleetShardClientFactory(config);
+        meterRegistry = new SimpleMeterRegistry();
+        factory = new DecisionFleetShardClientFactory(config, meterRegistry);
+        factory.closeDelay = Duration.ofMinutes(1);
+    }
+
+    private KubernetesClient mockKubernetesClient() {
+        KubernetesClient client = mock(KubernetesClient.class, withSettings().extraInterfaces(HttpClientAware.class));
+        when(((HttpClientAware) client).getHttpClient()).thenReturn(new OkHttpClient());
+        return client;
     }
 
     @Test
@@ -53,4 +81,63 @@ public class DecisionDecisionDecisionFleetShardClientFactoryTest {
         DecisionFleetShardClient controlPlaneClient = factory.createClientFor(fleetShard);
         assertThat(controlPlaneClient, is(notNullValue()));
     }
+
+    @Test
+    public void reusesKubernetesClientForFleetShard() {
+        when(fleetShard.getId()).thenReturn(1);
+        when(fleetShard.getKubernetesApiUrl()).thenReturn("https://kube.baaas.redhat.com");
+
+        KubernetesClient client = factory.getKubernetesClient(fleetShard);
+        assertThat(factory.getKubernetesClient(fleetShard), is(sameInstance(client)));
+        assertThat(meterRegistry.find("daaas.dfs.client.connections").tag("fleetShard", "1").gauges(), hasSize(1));
+
+        factory.closeAll();
+        assertThat(meterRegistry.find("daaas.dfs.client.connections").gauges(), is(empty()));
+    }
+
+    @Test
+    public void rebuildsKubernetesClientWhenFleetShardChanges() {
+        KubernetesClient previous = mock(KubernetesClient.class);
+        KubernetesClient current = mock(KubernetesClient.class);
+        factory = spy(factory);
+        doReturn(previous).when(factory).newKubernetesClient("https://kube.baaas.redhat.com");
+        doReturn(current).when(factory).newKubernetesClient("https://kube2.baaas.redhat.com");
+        when(fleetShard.getId()).thenReturn(1);
+        when(fleetShard.getKubernetesApiUrl()).thenReturn("https://kube.baaas.redhat.com", "https://kube2.baaas.redhat.com");
+
+        assertThat(factory.getKubernetesClient(fleetShard), is(sameInstance(previous)));
+        assertThat(factory.getKubernetesClient(fleetShard), is(sameInstance(current)));
+
+        // the previous client may still be in use, so it is only closed after the delay
+        factory.closeRetiredClients();
+        verify(previous, never()).close();
+
+        factory.closeDelay = Duration.ZERO;
+        factory.closeRetiredClients();
+        verify(previous).close();
+        verify(current, never()).close();
+    }
+
+    @Test
+    public void rebuildsGaugesWhenFleetShardChanges() {
+        KubernetesClient previous = mockKubernetesClient();
+        KubernetesClient current = mockKubernetesClient();
+        factory = spy(factory);
+        doReturn(previous).when(factory).newKubernetesClient("https://kube.baaas.redhat.com");
+        doReturn(current).when(factory).newKubernetesClient("https://kube2.baaas.redhat.com");
+        when(fleetShard.getId()).thenReturn(1);
+        when(fleetShard.getKubernetesApiUrl()).thenReturn("https://kube.baaas.redhat.com", "https://kube2.baaas.redhat.com");
+
+        factory.getKubernetesClient(fleetShard);
+        factory.getKubernetesClient(fleetShard);
+        factory.closeDelay = Duration.ZERO;
+        factory.closeRetiredClients();
+
+        assertThat(meterRegistry.find("daaas.dfs.client.connections").tag("fleetShard", "1").gauges(), hasSize(1));
+        verify(previous).close();
+
+        factory.closeAll();
+        verify(current).close();
+        assertThat(meterRegistry.find("daaas.dfs.client.connections").gauges(), is(empty()));
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dfs.client;
+
+import java.net.URI;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.kie.baaas.dfs.api.Phase;
+import org.kie.baaas.dfs.api.Webhook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DecisionFleetShardInformerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String VERSION_RESOURCE = "{"
+            + "\"metadata\": {\"name\": \"my-decision-1\", \"namespace\": \"customer-ns\","
+            + "  \"ownerReferences\": [{\"kind\": \"Decision\", \"name\": \"my-decision\"}]},"
+            + "\"spec\": {\"webhooks\": [\"https://dfm.example.com/callback/decisions/decision-id/versions/1\"]},"
+            + "\"status\": {\"endpoint\": \"https://my-decision-1.example.com\","
+            + "  \"conditions\": [{\"type\": \"Ready\", \"status\": \"%s\", \"reason\": \"%s\", \"message\": \"message\"}]}"
+            + "}";
+
+    private static final String DECISION_RESOURCE = "{\"status\": {\"endpoint\": \"https://my-decision.example.com\"}}";
+
+    private JsonNode versionResource(String status, String reason) throws Exception {
+        return MAPPER.readTree(String.format(VERSION_RESOURCE, status, reason));
+    }
+
+    @Test
+    public void callbackKeys() throws Exception {
+        assertThat(DecisionFleetShardInformer.callbackKeys(versionResource("True", "Ready")), contains("decision-id/1"));
+        assertThat(DecisionFleetShardInformer.callbackKeys(MAPPER.readTree("{\"spec\": {}}")), is(empty()));
+    }
+
+    @Test
+    public void outcome_ready() throws Exception {
+        Optional<Webhook> outcome = DecisionFleetShardInformer.outcome("customer", 1L, versionResource("True", "Ready"), MAPPER.readTree(DECISION_RESOURCE));
+
+        Webhook webhook = outcome.orElseThrow();
+        assertThat(webhook.getPhase(), equalTo(Phase.CURRENT));
+        assertThat(webhook.getCustomer(), equalTo("customer"));
+        assertThat(webhook.getDecision(), equalTo("my-decision"));
+        assertThat(webhook.getNamespace(), equalTo("customer-ns"));
+        assertThat(webhook.getVersionResource(), equalTo("my-decision-1"));
+        assertThat(webhook.getVersion(), equalTo("1"));
+        assertThat(webhook.getVersionEndpoint(), equalTo(URI.create("https://my-decision-1.example.com")));
+        assertThat(webhook.getCurrentEndpoint(), equalTo(URI.create("https://my-decision.example.com")));
+    }
+
+    @Test
+    public void outcome_readyWithoutDecision() throws Exception {
+        assertThat(DecisionFleetShardInformer.outcome("customer", 1L, versionResource("True", "Ready"), null).isPresent(), is(false));
+    }
+
+    @Test
+    public void outcome_failed() throws Exception {
+        Optional<Webhook> outcome = DecisionFleetShardInformer.outcome("customer", 1L, versionResource("False", "BuildFailed"), null);
+
+        Webhook webhook = outcome.orElseThrow();
+        assertThat(webhook.getPhase(), equalTo(Phase.FAILED));
+        assertThat(webhook.getMessage(), equalTo("message"));
+        assertThat(webhook.getVersionEndpoint(), is(nullValue()));
+    }
+
+    @Test
+    public void outcome_inProgress() throws Exception {
+        assertThat(DecisionFleetShardInformer.outcome("customer", 1L, versionResource("False", "Building"), null).isPresent(), is(false));
+        assertThat(DecisionFleetShardInformer.outcome("customer", 1L, versionResource("Unknown", "Pending"), null).isPresent(), is(false));
+        assertThat(DecisionFleetShardInformer.outcome("customer", 1L, MAPPER.readTree("{\"status\": {}}"), null).isPresent(), is(false));
+    }
+}
@@ -17,6 +17,8 @@ package org.kie.baaas.dfm.app.dfs.client;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -24,7 +26,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
 import org.kie.baaas.dfm.app.dao.DecisionFleetShardDAO;
+import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
 import org.kie.baaas.dfm.app.model.Decision;
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
 import org.kie.baaas.dfm.app.model.deployment.Deployment;
@@ -34,7 +38,10 @@ import org.kie.baaas.dfs.api.DecisionRequest;
 
 import io.fabric8.kubernetes.api.model.Namespace;
 import io.fabric8.kubernetes.api.model.NamespaceBuilder;
+import io.fabric8.kubernetes.api.model.Status;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
 import io.fabric8.kubernetes.client.utils.KubernetesResourceUtil;
 import io.quarkus.test.common.QuarkusTestResource;
@@ -42,12 +49,18 @@ import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.kubernetes.client.KubernetesMockServerTestResource;
 import io.quarkus.test.kubernetes.client.MockServer;
 
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.kie.baaas.dfm.app.TestConstants.DEFAULT_CUSTOMER_ID;
 
 @QuarkusTestResource(KubernetesMockServerTestResource.class)
@@ -201,6 +214,72 @@ public class DefaultDecisionDecisionFleetShardClientTest {
                 equalTo(config.getApiBaseUrl() + "/callback/decisions/" + decisionVersion.getDecision().getId() + "/versions/" + decisionVersion.getVersion()));
     }
 
+    private Status notFound() {
+        return new StatusBuilder().withCode(HTTP_NOT_FOUND).withReason("NotFound").build();
+    }
+
+    private Status namespaceNotFound(String namespace) {
+        return new StatusBuilder().withCode(HTTP_NOT_FOUND).withReason("NotFound")
+                .withNewDetails().withKind("namespaces").withName(namespace).endDetails()
+                .build();
+    }
+
+    private DecisionFleetShard createFleetShard(String namespace) {
+        DecisionFleetShard fleetShard = new DecisionFleetShard();
+        fleetShard.setNamespace(namespace);
+        return fleetShard;
+    }
+
+    @Test
+    public void deploy_namespaceVerifiedOnce() {
+
+        String namespace = "deploy-verified-once";
+        Set<String> verifiedNamespaces = ConcurrentHashMap.newKeySet();
+        client = new DefaultDecisionFleetShardClient(config, kubernetesClient, createFleetShard(namespace), verifiedNamespaces);
+
+        Namespace ns = new NamespaceBuilder().withNewMetadata().withName(namespace).and().build();
+        mockServer.expect().get().withPath("/api/v1/namespaces/" + namespace).andReturn(200, ns).once();
+        mockServer.expect().post().withPath("/apis/operator.baaas/v1alpha1/namespaces/" + namespace + "/decisionrequests")
+                .andReply(new FleetShardResponseBuilder<>(DecisionRequest.class)).times(2);
+
+        // the namespace lookup is only answered once, so the second deploy must not repeat it
+        client.deploy(createDecisionVersion(false));
+        client.deploy(createDecisionVersion(false));
+
+        assertThat(verifiedNamespaces, contains(namespace));
+    }
+
+    @Test
+    public void deploy_namespaceRemoved() {
+
+        String namespace = "deploy-namespace-removed";
+        Set<String> verifiedNamespaces = ConcurrentHashMap.newKeySet();
+        verifiedNamespaces.add(namespace);
+        client = new DefaultDecisionFleetShardClient(config, kubernetesClient, createFleetShard(namespace), verifiedNamespaces);
+
+        mockServer.expect().post().withPath("/apis/operator.baaas/v1alpha1/namespaces/" + namespace + "/decisionrequests")
+                .andReturn(HTTP_NOT_FOUND, namespaceNotFound(namespace)).once();
+
+        assertThrows(DecisionFleetManagerException.class, () -> client.deploy(createDecisionVersion(false)));
+        assertThat(verifiedNamespaces, is(empty()));
+    }
+
+    @Test
+    public void deploy_resourceKindNotFound() {
+
+        String namespace = "deploy-kind-not-found";
+        Set<String> verifiedNamespaces = ConcurrentHashMap.newKeySet();
+        verifiedNamespaces.add(namespace);
+        client = new DefaultDecisionFleetShardClient(config, kubernetesClient, createFleetShard(namespace), verifiedNamespaces);
+
+        // the DecisionRequest kind is not installed, while the namespace still exists
+        mockServer.expect().post().withPath("/apis/operator.baaas/v1alpha1/namespaces/" + namespace + "/decisionrequests")
+                .andReturn(HTTP_NOT_FOUND, notFound()).once();
+
+        assertThrows(KubernetesClientException.class, () -> client.deploy(createDecisionVersion(false)));
+        assertThat(verifiedNamespaces, contains(namespace));
+    }
+
     private DecisionVersion createDecisionVersionWithDeployment(boolean addKafka) {
         DecisionVersion decisionVersion = createDecisionVersion(addKafka);
         Deployment deployment = new Deployment();
@@ -211,29 +290,11 @@ public class DefaultDecisionDecisionFleetShardClientTest {
         return decisionVersion;
     }
 
-    private void createDeploymentNamespace(Deployment deployment) {
-        createNamespace(deployment.getNamespace());
-    }
-
-    private void createDecision(Deployment deployment) {
-        org.kie.baaas.dfs.api.Decision decision = new org.kie.baaas.dfs.api.Decision();
-        String path = "/apis/operator.baaas/v1alpha1/namespaces/" + deployment.getNamespace() + "/decisions/" + deployment.getName();
-        mockServer.expect().get().withPath(path).andReturn(200, decision).once();
-    }
-
-    private void createDecisionVersion(Deployment deployment) {
-        org.kie.baaas.dfs.api.DecisionVersion dv = new org.kie.baaas.dfs.api.DecisionVersion();
-        String path = "/apis/operator.baaas/v1alpha1/namespaces/" + deployment.getNamespace() + "/decisionversions/" + deployment.getVersionName();
-        mockServer.expect().get().withPath(path).andReturn(200, dv).once();
-    }
-
     @Test
     public void deleteVersion() {
 
         DecisionVersion decisionVersion = createDecisionVersionWithDeployment(false);
         Deployment deployment = decisionVersion.getDeployment();
-        createDeploymentNamespace(deployment);
-        createDecisionVersion(deployment);
 
         FleetShardResponseBuilder<org.kie.baaas.dfs.api.DecisionVersion> deleteResponse = new FleetShardResponseBuilder<>(org.kie.baaas.dfs.api.DecisionVersion.class);
         String deletePath = "/apis/operator.baaas/v1alpha1/namespaces/" + deployment.getNamespace() + "/decisionversions/" + deployment.getVersionName();
@@ -245,19 +306,20 @@ public class DefaultDecisionDecisionFleetShardClientTest {
     }
 
     @Test
-    public void deleteVersion_versionDoesNotExist() {
+    public void deleteVersion_versionDoesNotExist() throws InterruptedException {
 
         DecisionVersion decisionVersion = createDecisionVersionWithDeployment(false);
         Deployment deployment = decisionVersion.getDeployment();
-        createDeploymentNamespace(deployment);
 
-        FleetShardResponseBuilder<org.kie.baaas.dfs.api.DecisionVersion> deleteResponse = new FleetShardResponseBuilder<>(org.kie.baaas.dfs.api.DecisionVersion.class);
         String deletePath = "/apis/operator.baaas/v1alpha1/namespaces/" + deployment.getNamespace() + "/decisionversions/" + deployment.getVersionName();
-        mockServer.expect().delete().withPath(deletePath).andReply(deleteResponse).once();
+        mockServer.expect().delete().withPath(deletePath).andReturn(HTTP_NOT_FOUND, notFound()).once();
 
+        // a version that no longer exists is already deleted
         client.delete(decisionVersion);
 
-        assertThat(deleteResponse.isInvoked(), is(false));
+        RecordedRequest request = mockServer.getLastRequest();
+        assertThat(request.getMethod(), equalTo("DELETE"));
+        assertThat(request.getPath(), equalTo(deletePath));
     }
 
     @Test
@@ -282,8 +344,6 @@ public class DefaultDecisionDecisionFleetShardClientTest {
 
         DecisionVersion decisionVersion = createDecisionVersionWithDeployment(false);
         Deployment deployment = decisionVersion.getDeployment();
-        createDeploymentNamespace(deployment);
-        createDecision(deployment);
 
         FleetShardResponseBuilder<org.kie.baaas.dfs.api.Decision> deleteResponse = new FleetShardResponseBuilder<>(org.kie.baaas.dfs.api.Decision.class);
         String deletePath = "/apis/operator.baaas/v1alpha1/namespaces/" + deployment.getNamespace() + "/decisions/" + deployment.getName();
@@ -295,17 +355,19 @@ public class DefaultDecisionDecisionFleetShardClientTest {
     }
 
     @Test
-    public void deleteDecision_decisionDoesNotExist() {
+    public void deleteDecision_decisionDoesNotExist() throws InterruptedException {
 
         DecisionVersion decisionVersion = createDecisionVersionWithDeployment(false);
         Deployment deployment = decisionVersion.getDeployment();
-        createDeploymentNamespace(deployment);
 
-        FleetShardResponseBuilder<org.kie.baaas.dfs.api.Decision> deleteResponse = new FleetShardResponseBuilder<>(org.kie.baaas.dfs.api.Decision.class);
         String deletePath = "/apis/operator.baaas/v1alpha1/namespaces/" + deployment.getNamespace() + "/decisions/" + deployment.getName();
-        mockServer.expect().delete().withPath(deletePath).andReply(deleteResponse).once();
+        mockServer.expect().delete().withPath(deletePath).andReturn(HTTP_NOT_FOUND, notFound()).once();
 
+        // a decision that no longer exists is already deleted
         client.delete(decisionVersion.getDecision());
-        assertThat(deleteResponse.isInvoked(), is(false));
+
+        RecordedRequest request = mockServer.getLastRequest();
+        assertThat(request.getMethod(), equalTo("DELETE"));
+        assertThat(request.getPath(), equalTo(deletePath));
     }
 }
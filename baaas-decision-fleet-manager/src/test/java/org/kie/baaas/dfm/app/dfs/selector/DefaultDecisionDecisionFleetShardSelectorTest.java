@@ -19,31 +19,49 @@ import javax.inject.Inject;
 
 import org.junit.jupiter.api.Test;
 import org.kie.baaas.dfm.app.dao.DecisionFleetShardDAO;
+import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionFleetShard;
-import org.mockito.Mock;
 
+import io.quarkus.test.TestTransaction;
 import io.quarkus.test.junit.QuarkusTest;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @QuarkusTest
 public class DefaultDecisionDecisionFleetShardSelectorTest {
 
-    @Mock
-    private Decision decision;
-
     @Inject
     DefaultDecisionFleetShardSelector selector;
 
     @Test
     public void selectFleetShardForDeployment() {
 
-        DecisionFleetShard planeForDeployment = selector.selectFleetShardForDeployment(decision);
+        DecisionFleetShard planeForDeployment = selector.selectFleetShardForDeployment(new Decision());
         assertThat(planeForDeployment, is(notNullValue()));
         assertThat(planeForDeployment.getId(), equalTo(DecisionFleetShardDAO.DEFAULT_DFS_ID));
     }
+
+    @Test
+    @TestTransaction
+    public void selectFleetShardForDeployment_placedDecision() {
+        Decision decision = new Decision();
+        decision.setCustomerId("placed-customer");
+        decision.setName("placed-decision");
+        decision.setFleetShardId(selector.placeDecision(decision).getId());
+
+        assertThat(selector.selectFleetShardForDeployment(decision).getId(), equalTo(decision.getFleetShardId()));
+    }
+
+    @Test
+    public void selectFleetShardForDeployment_unregisteredFleetShard() {
+        Decision decision = new Decision();
+        decision.setFleetShardId(-1);
+
+        assertThrows(DecisionFleetManagerException.class, () -> selector.selectFleetShardForDeployment(decision));
+    }
 }
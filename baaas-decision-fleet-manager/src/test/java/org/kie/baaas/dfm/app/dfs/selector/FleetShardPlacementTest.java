@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.dfs.selector;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class FleetShardPlacementTest {
+
+    private static final String CUSTOMER_ID = "customer-1";
+
+    private static final String OTHER_CUSTOMER_ID = "customer-2";
+
+    private DecisionFleetShard createFleetShard(int id, Integer capacity, boolean schedulable) {
+        DecisionFleetShard fleetShard = new DecisionFleetShard();
+        fleetShard.setId(id);
+        fleetShard.setCapacity(capacity);
+        fleetShard.setSchedulable(schedulable);
+        return fleetShard;
+    }
+
+    private int place(FleetShardPlacement placement, String customerId) {
+        int fleetShardId = placement.place(customerId).map(DecisionFleetShard::getId).orElse(-1);
+        placement.count(fleetShardId, customerId);
+        return fleetShardId;
+    }
+
+    @Test
+    public void place_leastUtilised() {
+        FleetShardPlacement placement = new FleetShardPlacement(List.of(createFleetShard(1, 10, true), createFleetShard(2, 4, true)),
+                Map.of(1, Map.of(OTHER_CUSTOMER_ID, 4L), 2, Map.of(OTHER_CUSTOMER_ID, 1L)));
+
+        assertThat(place(placement, CUSTOMER_ID), equalTo(2));
+        assertThat(placement.getDecisionCount(2, CUSTOMER_ID), equalTo(1L));
+    }
+
+    @Test
+    public void place_prefersCustomerAffinity() {
+        FleetShardPlacement placement = new FleetShardPlacement(List.of(createFleetShard(1, 10, true), createFleetShard(2, 10, true)),
+                Map.of(2, Map.of(CUSTOMER_ID, 5L)));
+
+        assertThat(place(placement, CUSTOMER_ID), equalTo(2));
+        assertThat(place(placement, OTHER_CUSTOMER_ID), equalTo(1));
+    }
+
+    @Test
+    public void place_skipsFullAndUnschedulable() {
+        FleetShardPlacement placement = new FleetShardPlacement(
+                List.of(createFleetShard(1, 1, true), createFleetShard(2, null, false), createFleetShard(3, 2, true)),
+                Map.of(1, Map.of(CUSTOMER_ID, 1L)));
+
+        assertThat(place(placement, CUSTOMER_ID), equalTo(3));
+        assertThat(place(placement, CUSTOMER_ID), equalTo(3));
+        assertThat(placement.place(CUSTOMER_ID).isPresent(), is(false));
+    }
+
+    @Test
+    public void place_countsOnlyCountedDecisions() {
+        FleetShardPlacement placement = new FleetShardPlacement(List.of(createFleetShard(1, 1, true)), Collections.emptyMap());
+
+        assertThat(placement.place(CUSTOMER_ID).isPresent(), is(true));
+        assertThat(placement.getDecisionCount(1), equalTo(0L));
+        assertThat(placement.place(CUSTOMER_ID).isPresent(), is(true));
+    }
+
+    @Test
+    public void place_spreadsAcrossFleetShards() {
+        FleetShardPlacement placement = new FleetShardPlacement(List.of(createFleetShard(1, null, true), createFleetShard(2, null, true)),
+                Collections.emptyMap());
+
+        assertThat(place(placement, CUSTOMER_ID), equalTo(1));
+        assertThat(place(placement, OTHER_CUSTOMER_ID), equalTo(2));
+        assertThat(placement.getDecisionCount(1), equalTo(1L));
+        assertThat(placement.getDecisionCount(2), equalTo(1L));
+    }
+
+    @Test
+    public void place_uncountedDecisionFreesCapacity() {
+        FleetShardPlacement placement = new FleetShardPlacement(List.of(createFleetShard(1, 1, true)), Collections.emptyMap());
+
+        assertThat(place(placement, CUSTOMER_ID), equalTo(1));
+        assertThat(placement.place(CUSTOMER_ID).isPresent(), is(false));
+
+        placement.uncount(1, CUSTOMER_ID);
+        assertThat(placement.getDecisionCount(1, CUSTOMER_ID), equalTo(0L));
+        assertThat(placement.place(CUSTOMER_ID).isPresent(), is(true));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class ListenerManagerTest {
+
+    private static final String CUSTOMER_ID = "customer-id";
+
+    private static final String OTHER_CUSTOMER_ID = "other-customer-id";
+
+    private final ListenerManager listenerManager = new ListenerManager();
+
+    private static class RecordingListener implements Listener {
+
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onEvent(Event event) {
+            events.add(event);
+        }
+    }
+
+    @Test
+    public void notifiesOnlyListenersOfCustomer() {
+        RecordingListener listener = new RecordingListener();
+        RecordingListener otherListener = new RecordingListener();
+        listenerManager.addListener(CUSTOMER_ID, listener);
+        listenerManager.addListener(OTHER_CUSTOMER_ID, otherListener);
+
+        Event event = new Event() {
+        };
+        listenerManager.notifyListeners(CUSTOMER_ID, event);
+
+        assertThat(listener.events, contains(event));
+        assertThat(otherListener.events, is(empty()));
+    }
+
+    @Test
+    public void doesNotCreateEventWithoutListeners() {
+        listenerManager.addListener(OTHER_CUSTOMER_ID, new RecordingListener());
+
+        assertThat(listenerManager.notifyListeners(CUSTOMER_ID, () -> {
+            throw new AssertionError("The event should not be created");
+        }).isPresent(), is(false));
+    }
+
+    @Test
+    public void removeListeners() {
+        RecordingListener listener = new RecordingListener();
+        RecordingListener otherListener = new RecordingListener();
+        listenerManager.addListener(CUSTOMER_ID, listener);
+        listenerManager.addListener(CUSTOMER_ID, otherListener);
+
+        listenerManager.removeListeners(CUSTOMER_ID, listener::equals);
+        assertThat(listenerManager.getListeners(CUSTOMER_ID), contains(otherListener));
+
+        listenerManager.removeListener(CUSTOMER_ID, otherListener);
+        assertThat(listenerManager.hasListeners(CUSTOMER_ID), is(false));
+    }
+
+    @Test
+    public void concurrentRegistration() {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Void>> registrations = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String customerId = i % 2 == 0 ? CUSTOMER_ID : OTHER_CUSTOMER_ID;
+                registrations.add(CompletableFuture.runAsync(() -> {
+                    Listener listener = new RecordingListener();
+                    listenerManager.addListener(customerId, listener);
+                    listenerManager.notifyListeners(customerId, new Event() {
+                    });
+                    if (customerId.equals(OTHER_CUSTOMER_ID)) {
+                        listenerManager.removeListener(customerId, listener);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(registrations.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(listenerManager.getListeners(CUSTOMER_ID).size(), equalTo(500));
+        assertThat(listenerManager.hasListeners(OTHER_CUSTOMER_ID), is(false));
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.validation.Validator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.kie.baaas.dfm.api.decisions.DecisionRequest;
+import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
+import org.kie.baaas.dfm.app.dao.DecisionCountCache;
+import org.kie.baaas.dfm.app.dao.DecisionDAO;
+import org.kie.baaas.dfm.app.listener.ListenerManager;
+import org.kie.baaas.dfm.app.manager.kafkaservice.KafkaServiceProducer;
+import org.kie.baaas.dfm.app.model.Decision;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.model.deployment.Deployment;
+import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
+import org.kie.baaas.dfm.app.storage.DecisionDMNStorage;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DecisionImporterTest {
+
+    private static final String CUSTOMER_ID = "foo";
+
+    @Mock
+    private DecisionManager decisionManager;
+
+    @Mock
+    private DecisionDAO decisionDAO;
+
+    @Mock
+    private DecisionCountCache decisionCountCache;
+
+    @Mock
+    private DecisionDMNStorage decisionDMNStorage;
+
+    @Mock
+    private ListenerManager listenerManager;
+
+    @Mock
+    private KafkaServiceProducer kafkaServiceProducer;
+
+    @Mock
+    private DecisionFleetManagerConfig config;
+
+    @Mock
+    private Validator validator;
+
+    private ManagedExecutor executor;
+
+    private DecisionImporter importer;
+
+    private final List<DecisionImport> results = new ArrayList<>();
+
+    @BeforeEach
+    public void beforeEach() {
+        executor = ManagedExecutor.builder().maxAsync(4).build();
+        importer = new DecisionImporter(decisionManager, decisionDAO, decisionCountCache, decisionDMNStorage, listenerManager, kafkaServiceProducer, config, validator,
+                executor);
+        importer.concurrency = 2;
+        importer.batchSize = 2;
+    }
+
+    @AfterEach
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    private DecisionRequest createRequest(String name) {
+        DecisionRequest request = new DecisionRequest();
+        request.setName(name);
+        return request;
+    }
+
+    private void validRequests() {
+        when(config.getMaxAllowedDecisions()).thenReturn(-1L);
+        when(validator.validate(any(DecisionRequest.class))).thenReturn(Collections.emptySet());
+    }
+
+    private void staged() {
+        when(decisionDMNStorage.stageDMN(eq(CUSTOMER_ID), any(DecisionRequest.class)))
+                .thenAnswer(invocation -> new DMNStorageRequest("staged/" + invocation.<DecisionRequest> getArgument(1).getName(), "md5"));
+    }
+
+    private void recorded() {
+        doAnswer(invocation -> {
+            List<DecisionImport> decisionImports = invocation.getArgument(1);
+            decisionImports.forEach(decisionImport -> {
+                Decision decision = new Decision();
+                decision.setName(decisionImport.getRequest().getName());
+                DecisionVersion decisionVersion = new DecisionVersion();
+                decisionVersion.setDecision(decision);
+                decisionVersion.setVersion(1L);
+                decisionImport.setDecisionVersion(decisionVersion);
+            });
+            return null;
+        }).when(decisionManager).importVersions(eq(CUSTOMER_ID), anyList());
+    }
+
+    private void importDecisions(DecisionRequest... requests) {
+        importer.importDecisions(CUSTOMER_ID, Arrays.asList(requests), results::add);
+    }
+
+    private List<Integer> indexes() {
+        List<Integer> indexes = new ArrayList<>();
+        results.forEach(result -> indexes.add(result.getIndex()));
+        return indexes;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importDecisions_inBatches() {
+        validRequests();
+        staged();
+        recorded();
+
+        importDecisions(createRequest("a"), createRequest("b"), createRequest("c"));
+
+        assertThat(indexes(), contains(0, 1, 2));
+        results.forEach(result -> assertThat(result.isFailed(), is(false)));
+
+        ArgumentCaptor<List<DecisionImport>> batches = ArgumentCaptor.forClass(List.class);
+        verify(decisionManager, times(2)).importVersions(eq(CUSTOMER_ID), batches.capture());
+        assertThat(batches.getAllValues().get(0).size(), equalTo(2));
+        assertThat(batches.getAllValues().get(1).size(), equalTo(1));
+        verify(decisionDMNStorage, times(3)).promoteDMN(any(DMNStorageRequest.class), eq(CUSTOMER_ID), any(DecisionVersion.class));
+        verify(decisionManager, times(2)).releaseDeployments(anyList());
+    }
+
+    @Test
+    public void importDecisions_rejectsInvalidAndDuplicateRequests() {
+        validRequests();
+        staged();
+        recorded();
+
+        importDecisions(createRequest("a"), createRequest("a"), null);
+
+        assertThat(indexes(), contains(0, 1, 2));
+        assertThat(results.get(0).isFailed(), is(false));
+        assertThat(results.get(1).getFailure(), is(instanceOf(DecisionImportException.class)));
+        assertThat(results.get(2).getFailure(), is(instanceOf(DecisionImportException.class)));
+        verify(decisionDMNStorage).stageDMN(eq(CUSTOMER_ID), any(DecisionRequest.class));
+    }
+
+    @Test
+    public void importDecisions_withinDecisionLimit() {
+        when(config.getMaxAllowedDecisions()).thenReturn(2L);
+        when(validator.validate(any(DecisionRequest.class))).thenReturn(Collections.emptySet());
+        when(decisionDAO.findByCustomerAndNames(eq(CUSTOMER_ID), anyCollection())).thenReturn(Collections.singletonMap("a", new Decision()));
+        when(decisionCountCache.getDecisionCount(CUSTOMER_ID)).thenReturn(1L);
+        staged();
+        recorded();
+
+        importDecisions(createRequest("a"), createRequest("b"), createRequest("c"));
+
+        // "a" already exists, so only "b" fits within the limit
+        assertThat(results.get(0).isFailed(), is(false));
+        assertThat(results.get(1).isFailed(), is(false));
+        assertThat(results.get(2).getFailure(), is(instanceOf(DecisionImportException.class)));
+    }
+
+    @Test
+    public void importDecisions_failedBatchDiscardsStagedDMN() {
+        validRequests();
+        staged();
+        doThrow(new IllegalStateException("Database unavailable")).when(decisionManager).importVersions(eq(CUSTOMER_ID), anyList());
+
+        importDecisions(createRequest("a"), createRequest("b"));
+
+        results.forEach(result -> assertThat(result.isFailed(), is(true)));
+        verify(decisionDMNStorage, times(2)).discardStagedDMN(any(DMNStorageRequest.class));
+        verify(decisionDMNStorage, never()).promoteDMN(any(DMNStorageRequest.class), eq(CUSTOMER_ID), any(DecisionVersion.class));
+        verify(decisionManager, never()).releaseDeployments(anyList());
+    }
+
+    @Test
+    public void importDecisions_failedPromotionMarksVersionFailed() {
+        validRequests();
+        staged();
+        recorded();
+        doThrow(new IllegalStateException("S3 unavailable")).when(decisionDMNStorage).promoteDMN(any(DMNStorageRequest.class), eq(CUSTOMER_ID), any(DecisionVersion.class));
+
+        importDecisions(createRequest("a"));
+
+        assertThat(results.get(0).isFailed(), is(true));
+        verify(decisionManager).failed(eq(CUSTOMER_ID), any(), eq(1L), any(Deployment.class));
+        verify(decisionManager, never()).releaseDeployments(anyList());
+    }
+
+    @Test
+    public void importDecisions_boundsConcurrentStagingAndPromotion() {
+        validRequests();
+        recorded();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Answer<DMNStorageRequest> task = invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return new DMNStorageRequest("staged", "md5");
+        };
+        when(decisionDMNStorage.stageDMN(eq(CUSTOMER_ID), any(DecisionRequest.class))).thenAnswer(task);
+        doAnswer(task).when(decisionDMNStorage).promoteDMN(any(DMNStorageRequest.class), eq(CUSTOMER_ID), any(DecisionVersion.class));
+
+        importDecisions(createRequest("a"), createRequest("b"), createRequest("c"), createRequest("d"), createRequest("e"), createRequest("f"));
+
+        assertThat(indexes(), contains(0, 1, 2, 3, 4, 5));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+    }
+}
@@ -26,23 +26,21 @@ import org.kie.baaas.dfm.app.dfs.client.DecisionFleetShardClientFactory;
 import org.kie.baaas.dfm.app.exceptions.DecisionFleetManagerException;
 import org.kie.baaas.dfm.app.listener.ListenerManager;
 import org.kie.baaas.dfm.app.managedservices.ManagedServicesClient;
-import org.kie.baaas.dfm.app.managedservices.ManagedServicesException;
 import org.kie.baaas.dfm.app.manager.kafkaservice.KafkaServiceNotSupportedException;
 import org.kie.baaas.dfm.app.manager.kafkaservice.KafkaServiceProducer;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionFleetShard;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.deployment.Deployment;
-import org.kie.baaas.dfm.app.model.eventing.Credential;
-import org.kie.baaas.dfm.app.model.eventing.KafkaConfig;
+import org.kie.baaas.dfm.app.storage.DMNContent;
+import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
 import org.kie.baaas.dfm.app.storage.DecisionDMNStorage;
+import org.kie.baaas.dfm.app.storage.cache.DMNCache;
 import org.kie.baaas.dfm.app.vault.VaultService;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import com.openshift.cloud.api.kas.invoker.ApiException;
-
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -90,71 +88,92 @@ public class DecisionLifecycleOrchestratorTest {
     @Mock
     KafkaService kafkaService;
 
+    @Mock
+    DMNCache dmnCache;
+
+    private DMNStorageRequest stageDMN(String customerId, DecisionRequest request) {
+        DMNStorageRequest stagedDMN = new DMNStorageRequest("staging/" + customerId + "/dmn.xml", "md5");
+        when(decisionDMNStorage.stageDMN(customerId, request)).thenReturn(stagedDMN);
+        return stagedDMN;
+    }
+
     @Test
     public void createOrUpdateDecision() {
         String customerId = "foo";
         DecisionRequest request = mock(DecisionRequest.class);
         DecisionVersion decisionVersion = mock(DecisionVersion.class);
-        Decision decision = mock(Decision.class);
 
-        when(decisionVersion.getDecision()).thenReturn(decision);
-        when(decisionManager.createOrUpdateVersion(customerId, request)).thenReturn(decisionVersion);
-        when(selector.selectFleetShardForDeployment(decision)).thenReturn(fleetShard);
-        when(clientFactory.createClientFor(fleetShard)).thenReturn(client);
+        DMNStorageRequest stagedDMN = stageDMN(customerId, request);
+        when(decisionManager.createOrUpdateVersion(customerId, request, stagedDMN)).thenReturn(decisionVersion);
 
         DecisionVersion created = orchestrator.createOrUpdateVersion(customerId, request);
         assertThat(created, is(notNullValue()));
         assertThat(created, equalTo(decisionVersion));
 
-        verify(client).deploy(decisionVersion);
+        verify(decisionDMNStorage).promoteDMN(stagedDMN, customerId, decisionVersion);
+        verify(decisionManager).releaseDeployment(decisionVersion);
+        // The deployment is requested from the Fleet Shard in the background
+        verifyNoInteractions(client);
         verifyNoInteractions(vaultService);
     }
 
     @Test
-    public void createOrUpdateDecisionNewServiceAccount() {
+    public void createOrUpdateDecision_discardsStagedDMNOnFailure() {
+        String customerId = "foo";
+        DecisionRequest request = mock(DecisionRequest.class);
+
+        DMNStorageRequest stagedDMN = stageDMN(customerId, request);
+        when(decisionManager.createOrUpdateVersion(customerId, request, stagedDMN)).thenThrow(new DecisionFleetManagerException("Nope!"));
+
+        assertThrows(DecisionFleetManagerException.class, () -> orchestrator.createOrUpdateVersion(customerId, request));
+
+        verify(decisionDMNStorage).discardStagedDMN(stagedDMN);
+        verify(decisionDMNStorage, never()).promoteDMN(any(), any(), any());
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    public void createOrUpdateDecision_recordsPromoteFailure() {
         String customerId = "foo";
-        String saName = "daas-" + customerId + "-credentials";
+        String decisionId = "bob";
+        long version = 1l;
         DecisionRequest request = mock(DecisionRequest.class);
         DecisionVersion decisionVersion = mock(DecisionVersion.class);
+        when(decisionVersion.getVersion()).thenReturn(version);
         Decision decision = mock(Decision.class);
-
-        Eventing eventing = new Eventing();
-        eventing.setKafka(new Kafka());
-        when(request.getEventing()).thenReturn(eventing);
+        when(decision.getId()).thenReturn(decisionId);
         when(decisionVersion.getDecision()).thenReturn(decision);
-        when(decisionVersion.getKafkaConfig()).thenReturn(new KafkaConfig());
-        when(decisionManager.createOrUpdateVersion(customerId, request)).thenReturn(decisionVersion);
-        when(selector.selectFleetShardForDeployment(decision)).thenReturn(fleetShard);
-        when(clientFactory.createClientFor(fleetShard)).thenReturn(client);
 
-        when(kafkaServiceProducer.isKafkaServiceEnabled()).thenReturn(true);
-        when(kafkaService.getCustomerCredential(customerId)).thenReturn(new Credential().setClientId("client_id").setClientSecret("client_secret"));
+        DMNStorageRequest stagedDMN = stageDMN(customerId, request);
+        when(decisionManager.createOrUpdateVersion(customerId, request, stagedDMN)).thenReturn(decisionVersion);
+        doThrow(new RuntimeException("Nope!")).when(decisionDMNStorage).promoteDMN(stagedDMN, customerId, decisionVersion);
 
-        DecisionVersion created = orchestrator.createOrUpdateVersion(customerId, request);
-        assertThat(created, is(notNullValue()));
-        assertThat(created, equalTo(decisionVersion));
+        assertThrows(DecisionFleetManagerException.class, () -> orchestrator.createOrUpdateVersion(customerId, request));
 
-        verify(client).deploy(decisionVersion);
-        verify(kafkaService, times(1)).getCustomerCredential(customerId);
+        verify(decisionManager).failed(eq(customerId), eq(decisionId), eq(version), any(Deployment.class));
+        verify(decisionManager, never()).releaseDeployment(any());
+        verifyNoInteractions(client);
     }
 
     @Test
-    public void createOrUpdateDecisionErrorCreatingSA() {
+    public void createOrUpdateDecisionWithEventing() {
         String customerId = "foo";
         DecisionRequest request = mock(DecisionRequest.class);
-
         DecisionVersion decisionVersion = mock(DecisionVersion.class);
 
         Eventing eventing = new Eventing();
         eventing.setKafka(new Kafka());
         when(request.getEventing()).thenReturn(eventing);
-        when(decisionVersion.getKafkaConfig()).thenReturn(new KafkaConfig());
-        when(decisionManager.createOrUpdateVersion(customerId, request)).thenReturn(decisionVersion);
+        DMNStorageRequest stagedDMN = stageDMN(customerId, request);
+        when(decisionManager.createOrUpdateVersion(customerId, request, stagedDMN)).thenReturn(decisionVersion);
         when(kafkaServiceProducer.isKafkaServiceEnabled()).thenReturn(true);
-        when(kafkaService.getCustomerCredential(anyString()))
-                .thenThrow(new ManagedServicesException("some error", new ApiException("api error")));
 
-        assertThrows(ManagedServicesException.class, () -> orchestrator.createOrUpdateVersion(customerId, request));
+        DecisionVersion created = orchestrator.createOrUpdateVersion(customerId, request);
+        assertThat(created, equalTo(decisionVersion));
+
+        verify(decisionManager).releaseDeployment(decisionVersion);
+        // The credential is resolved when the deployment is dispatched
+        verifyNoInteractions(kafkaService);
         verifyNoInteractions(client);
     }
 
@@ -174,39 +193,6 @@ public class DecisionLifecycleOrchestratorTest {
         verifyNoInteractions(decisionManager);
     }
 
-    @Test
-    public void createOrUpdateDecision_recordsFailure() {
-        String customerId = "foo";
-        String decisionId = "bob";
-        long version = 1l;
-        DecisionRequest request = mock(DecisionRequest.class);
-        DecisionVersion decisionVersion = mock(DecisionVersion.class);
-        when(decisionVersion.getVersion()).thenReturn(version);
-        Decision decision = mock(Decision.class);
-        when(decision.getId()).thenReturn(decisionId);
-
-        Eventing eventing = new Eventing();
-        eventing.setKafka(new Kafka());
-        when(request.getEventing()).thenReturn(eventing);
-        when(decisionVersion.getDecision()).thenReturn(decision);
-        when(decisionVersion.getKafkaConfig()).thenReturn(new KafkaConfig());
-        when(decisionManager.createOrUpdateVersion(customerId, request)).thenReturn(decisionVersion);
-        when(selector.selectFleetShardForDeployment(decision)).thenReturn(fleetShard);
-
-        when(kafkaServiceProducer.isKafkaServiceEnabled()).thenReturn(true);
-        when(clientFactory.createClientFor(fleetShard)).thenReturn(client);
-        when(kafkaService.getCustomerCredential(customerId)).thenReturn(new Credential().setClientId("client_id").setClientSecret("client_secret"));
-
-        doThrow(new RuntimeException("Nope!")).when(client).deploy(decisionVersion);
-
-        assertThrows(DecisionFleetManagerException.class, () -> {
-            orchestrator.createOrUpdateVersion(customerId, request);
-        });
-
-        verify(decisionManager).failed(eq(customerId), eq(decisionId), eq(version), any(Deployment.class));
-        verify(kafkaService, times(1)).getCustomerCredential(eq(customerId));
-    }
-
     @Test
     public void deleteDecision() {
 
@@ -224,6 +210,7 @@ public class DecisionLifecycleOrchestratorTest {
 
         verify(client).delete(decision);
         verify(decisionDMNStorage).deleteDMN(customerId, deleted);
+        verify(dmnCache).invalidate(customerId, deleted.getId());
     }
 
     @Test
@@ -243,6 +230,33 @@ public class DecisionLifecycleOrchestratorTest {
 
         verify(client).delete(decision);
         verify(decisionDMNStorage).deleteDMN(customerId, deleted);
+        verify(dmnCache).invalidate(customerId, deleted.getId());
+    }
+
+    @Test
+    public void getDMN() {
+        String customerId = "foo";
+        DecisionVersion decisionVersion = mock(DecisionVersion.class);
+        DMNContent content = mock(DMNContent.class);
+
+        when(dmnCache.get(eq(customerId), eq(decisionVersion), any())).thenReturn(content);
+
+        assertThat(orchestrator.getDMN(customerId, decisionVersion, null), equalTo(content));
+        verifyNoInteractions(decisionDMNStorage);
+        verifyNoInteractions(decisionManager);
+    }
+
+    @Test
+    public void getDMN_range() {
+        String customerId = "foo";
+        DecisionVersion decisionVersion = mock(DecisionVersion.class);
+        DMNContent content = mock(DMNContent.class);
+
+        when(decisionDMNStorage.openDMN(customerId, decisionVersion, "bytes=0-3")).thenReturn(content);
+
+        assertThat(orchestrator.getDMN(customerId, decisionVersion, "bytes=0-3"), equalTo(content));
+        verifyNoInteractions(dmnCache);
+        verifyNoInteractions(decisionManager);
     }
 
     @Test
@@ -295,17 +309,13 @@ public class DecisionLifecycleOrchestratorTest {
         long version = 2l;
 
         DecisionVersion decisionVersion = mock(DecisionVersion.class);
-        Decision decision = mock(Decision.class);
-        when(decisionVersion.getDecision()).thenReturn(decision);
 
         when(decisionManager.setCurrentVersion(customerId, decisionName, version)).thenReturn(decisionVersion);
-        when(selector.selectFleetShardForDeployment(decision)).thenReturn(fleetShard);
-        when(clientFactory.createClientFor(fleetShard)).thenReturn(client);
 
         DecisionVersion rollback = orchestrator.setCurrentVersion(customerId, decisionName, version);
         assertThat(rollback, is(notNullValue()));
         assertThat(rollback, equalTo(decisionVersion));
 
-        verify(client).deploy(decisionVersion);
+        verifyNoInteractions(client);
     }
 }
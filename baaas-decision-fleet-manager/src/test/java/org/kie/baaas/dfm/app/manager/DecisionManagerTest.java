@@ -15,13 +15,19 @@
 
 package org.kie.baaas.dfm.app.manager;
 
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,12 +35,21 @@ import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.decisions.Model;
 import org.kie.baaas.dfm.api.eventing.Eventing;
 import org.kie.baaas.dfm.api.eventing.kafka.Kafka;
+import org.kie.baaas.dfm.app.controller.modelmappers.DecisionMapper;
+import org.kie.baaas.dfm.app.dao.DMNBlobDAO;
+import org.kie.baaas.dfm.app.dao.DecisionCountCache;
 import org.kie.baaas.dfm.app.dao.DecisionDAO;
+import org.kie.baaas.dfm.app.dao.DecisionFleetShardDAO;
+import org.kie.baaas.dfm.app.dao.DecisionQuotaDAO;
 import org.kie.baaas.dfm.app.dao.DecisionVersionDAO;
+import org.kie.baaas.dfm.app.dao.DeploymentRequestDAO;
+import org.kie.baaas.dfm.app.exceptions.InvalidPageCursorException;
+import org.kie.baaas.dfm.app.model.DMNBlob;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
 import org.kie.baaas.dfm.app.model.ListResult;
+import org.kie.baaas.dfm.app.model.PageCursor;
 import org.kie.baaas.dfm.app.model.deployment.Deployment;
 import org.kie.baaas.dfm.app.model.eventing.KafkaConfig;
 import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
@@ -49,7 +64,11 @@ import io.quarkus.test.junit.QuarkusTest;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.anEmptyMap;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -66,12 +85,30 @@ public class DecisionManagerTest {
     @Inject
     DecisionVersionDAO decisionVersionDAO;
 
+    @Inject
+    DMNBlobDAO dmnBlobDAO;
+
+    @Inject
+    DecisionQuotaDAO decisionQuotaDAO;
+
+    @Inject
+    DecisionCountCache decisionCountCache;
+
+    @Inject
+    DeploymentRequestDAO deploymentRequestDAO;
+
     @Inject
     DecisionManager decisionManager;
 
     @Inject
     DecisionDMNStorage dmnStorage;
 
+    @Inject
+    DecisionMapper decisionMapper;
+
+    @Inject
+    EntityManager entityManager;
+
     DMNStorageRequest request;
 
     DecisionRequest apiRequest;
@@ -102,7 +139,7 @@ public class DecisionManagerTest {
 
     private DMNStorageRequest createStorageRequest() {
         DMNStorageRequest request = new DMNStorageRequest("provider-url", "hash");
-        when(dmnStorage.writeDMN(anyString(), Mockito.any(DecisionRequest.class), Mockito.any(DecisionVersion.class))).thenReturn(request);
+        when(dmnStorage.getDMNLocation(Mockito.any(DMNStorageRequest.class), anyString(), Mockito.any(DecisionVersion.class))).thenReturn(request.getProviderUrl());
         return request;
     }
 
@@ -120,7 +157,7 @@ public class DecisionManagerTest {
         DecisionRequest apiResponse = createApiRequest();
         apiResponse.setEventing(eventing);
 
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiResponse);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiResponse, request);
         KafkaConfig kafkaConfig = decisionVersion.getKafkaConfig();
         assertThat(kafkaConfig.getSinkTopic(), equalTo(eventing.getKafka().getSink()));
         assertThat(kafkaConfig.getSourceTopic(), equalTo(eventing.getKafka().getSource()));
@@ -133,7 +170,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void createNewVersion_newDecision() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         assertThat(decisionVersion, is(notNullValue()));
 
         Decision decision = decisionVersion.getDecision();
@@ -162,10 +199,128 @@ public class DecisionManagerTest {
         return deployment;
     }
 
+    @TestTransaction
+    @Test
+    public void importVersions() {
+        DecisionVersion existing = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, existing.getDecision().getId(), existing.getVersion(), createDeployment());
+
+        DecisionRequest newRequest = createApiRequest();
+        newRequest.setName("imported-decision");
+        DecisionImport update = new DecisionImport(0, createApiRequest());
+        update.setStagedDMN(request);
+        DecisionImport create = new DecisionImport(1, newRequest);
+        create.setStagedDMN(request);
+
+        decisionManager.importVersions(DEFAULT_CUSTOMER_ID, List.of(update, create));
+
+        assertThat(update.isFailed(), is(false));
+        assertThat(update.getDecisionVersion().getVersion(), equalTo(2L));
+        assertThat(update.getDecisionVersion().getDecision().getId(), equalTo(existing.getDecision().getId()));
+        assertThat(create.isFailed(), is(false));
+        assertThat(create.getDecisionVersion().getVersion(), equalTo(1L));
+        assertThat(create.getDecisionVersion().getStatus(), equalTo(DecisionVersionStatus.BUILDING));
+
+        // A second import is rejected while the first is still being deployed
+        DecisionImport conflicting = new DecisionImport(0, createApiRequest());
+        conflicting.setStagedDMN(request);
+        decisionManager.importVersions(DEFAULT_CUSTOMER_ID, List.of(conflicting));
+        assertThat(conflicting.getFailure(), is(instanceOf(DecisionLifecycleException.class)));
+    }
+
+    @TestTransaction
+    @Test
+    public void updateDecision_allocatesNextVersion() {
+        DecisionVersion first = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        Decision decision = first.getDecision();
+        assertThat(decision.getNextVersionNumber(), equalTo(2L));
+
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, decision.getId(), first.getVersion(), createDeployment());
+        DecisionVersion second = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        assertThat(second.getVersion(), equalTo(2L));
+        assertThat(decision.getNextVersionNumber(), equalTo(3L));
+    }
+
+    @TestTransaction
+    @Test
+    public void updateDecision_modifiedConcurrently() {
+        DecisionVersion first = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        Decision decision = first.getDecision();
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, decision.getId(), first.getVersion(), createDeployment());
+        decisionDAO.flush();
+
+        // Another transaction updates the Decision after this one has read it
+        decisionDAO.update("lockVersion = lockVersion + 1 where id = ?1", decision.getId());
+
+        assertThrows(DecisionLifecycleException.class, () -> decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request));
+        assertThat(decision.getNextVersionNumber(), equalTo(2L));
+    }
+
+    @TestTransaction
+    @Test
+    public void newDecision_isPlacedOnFleetShard() {
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        Decision decision = decisionVersion.getDecision();
+        assertThat(decision.getFleetShardId(), equalTo(DecisionFleetShardDAO.DEFAULT_DFS_ID));
+
+        // Subsequent versions stay on the same Fleet Shard
+        decisionManager.deployed(decision.getCustomerId(), decision.getId(), decisionVersion.getVersion(), createDeployment());
+        DecisionVersion nextVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        assertThat(nextVersion.getDecision().getFleetShardId(), equalTo(DecisionFleetShardDAO.DEFAULT_DFS_ID));
+        assertThat(decisionDAO.countByFleetShardAndCustomer().get(DecisionFleetShardDAO.DEFAULT_DFS_ID).get(DEFAULT_CUSTOMER_ID), greaterThanOrEqualTo(1L));
+    }
+
+    private Statistics prepareCallback() {
+        // A callback arrives in a transaction of its own, with nothing loaded yet
+        decisionDAO.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private void assertCallbackStatements(Statistics statistics) {
+        decisionDAO.flush();
+        // The callback query, the removal of the deployment request and the updates of the versions and the Decision
+        assertThat(statistics.getPrepareStatementCount(), lessThanOrEqualTo(5L));
+        assertThat(statistics.getEntityFetchCount(), equalTo(0L));
+        assertThat(statistics.getCollectionFetchCount(), equalTo(0L));
+    }
+
+    @TestTransaction
+    @Test
+    public void deployed_loadsCallbackInOneQuery() {
+        DecisionVersion first = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, first.getDecision().getId(), first.getVersion(), createDeployment());
+        DecisionVersion second = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        Statistics statistics = prepareCallback();
+
+        DecisionVersion deployed = decisionManager.deployed(DEFAULT_CUSTOMER_ID, apiRequest.getName(), second.getVersion(), createDeployment());
+        decisionMapper.mapVersionToDecisionResponse(deployed);
+
+        assertCallbackStatements(statistics);
+        assertThat(deployed.getDecision().getCurrentVersion().getVersion(), equalTo(second.getVersion()));
+    }
+
+    @TestTransaction
+    @Test
+    public void failed_loadsCallbackInOneQuery() {
+        DecisionVersion first = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, first.getDecision().getId(), first.getVersion(), createDeployment());
+        DecisionVersion second = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        Statistics statistics = prepareCallback();
+
+        DecisionVersion failed = decisionManager.failed(DEFAULT_CUSTOMER_ID, first.getDecision().getId(), second.getVersion(), createDeployment());
+        decisionMapper.mapVersionToDecisionResponse(failed);
+
+        assertCallbackStatements(statistics);
+        assertThat(failed.getStatus(), equalTo(DecisionVersionStatus.FAILED));
+    }
+
     @TestTransaction
     @Test
     public void deployed_withFirstVersionOfDecision() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         Deployment deployment = createDeployment();
@@ -182,7 +337,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void failed_withFirstVersionOfDecision() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         DecisionVersion deployed = decisionManager.failed(decision.getCustomerId(), decision.getId(), decisionVersion.getVersion(), createDeployment());
@@ -198,12 +353,12 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void createNewVersion_updateFailsWhenStillCreating() {
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         apiRequest.setDescription("An updated version!");
         apiRequest.getModel().setDmn("Updated dmn!");
 
-        DecisionLifecycleException thrown = assertThrows(DecisionLifecycleException.class, () -> decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest));
+        DecisionLifecycleException thrown = assertThrows(DecisionLifecycleException.class, () -> decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request));
 
         assertThat(thrown.getMessage(), equalTo("A lifecycle operation is already in progress for Version '1' of Decision 'robs-first-decision'"));
     }
@@ -211,7 +366,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void createNewVersion_updateDecision() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         decisionManager.deployed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
@@ -219,7 +374,7 @@ public class DecisionManagerTest {
         apiRequest.setDescription("An updated version!");
         apiRequest.getModel().setDmn("Updated dmn!");
 
-        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         assertThat(decisionVersion.getStatus(), equalTo(DecisionVersionStatus.BUILDING));
         assertThat(decisionVersion.getVersion(), equalTo(2L));
 
@@ -231,7 +386,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void createNewVersion_updateDecisionUpdateSuccess() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         decisionManager.deployed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
@@ -239,7 +394,7 @@ public class DecisionManagerTest {
         apiRequest.setDescription("An updated version!");
         apiRequest.getModel().setDmn("fff");
 
-        DecisionVersion nextVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion nextVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         nextVersion = decisionManager.deployed(decision.getCustomerId(), decision.getName(), nextVersion.getVersion(), createDeployment());
         assertThat(nextVersion.getStatus(), equalTo(DecisionVersionStatus.CURRENT));
         assertThat(nextVersion.getDeployment().getVersionUrl(), is(notNullValue()));
@@ -258,14 +413,14 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void createNewVersion_twoFailures() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
         decisionManager.failed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest.setDescription("An updated version!");
         apiRequest.getModel().setDmn("fff");
 
-        DecisionVersion failedVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion failedVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         failedVersion = decisionManager.failed(decision.getCustomerId(), decision.getName(), failedVersion.getVersion(), createDeployment());
         assertThat(failedVersion.getStatus(), equalTo(DecisionVersionStatus.FAILED));
 
@@ -278,14 +433,14 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void createNewVersion_updateDecisionUpdateFailed() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
         decisionManager.deployed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest.setDescription("An updated version!");
         apiRequest.getModel().setDmn("fff");
 
-        DecisionVersion failedVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion failedVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         failedVersion = decisionManager.failed(decision.getCustomerId(), decision.getName(), failedVersion.getVersion(), createDeployment());
         assertThat(failedVersion.getStatus(), equalTo(DecisionVersionStatus.FAILED));
 
@@ -297,7 +452,7 @@ public class DecisionManagerTest {
 
     @Test
     public void deleteDecision() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         decisionVersion = decisionManager.deployed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
@@ -309,7 +464,7 @@ public class DecisionManagerTest {
 
     @Test
     public void deleteDecisionById() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         decisionVersion = decisionManager.deployed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
@@ -319,6 +474,77 @@ public class DecisionManagerTest {
         assertThat(decisionVersionDAO.findById(decisionVersion.getId()), is(nullValue()));
     }
 
+    @Test
+    public void deleteDecision_releasesDecisionCount() {
+        String customerId = "decision-count-customer";
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(customerId, apiRequest, request);
+        assertThat(decisionQuotaDAO.getDecisionCount(customerId), equalTo(1L));
+        assertThat(decisionCountCache.getDecisionCount(customerId), equalTo(1L));
+
+        decisionManager.deployed(customerId, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), createDeployment());
+        decisionManager.deleteDecision(customerId, apiRequest.getName());
+
+        assertThat(decisionQuotaDAO.getDecisionCount(customerId), equalTo(0L));
+        assertThat(decisionCountCache.getDecisionCount(customerId), equalTo(0L));
+    }
+
+    @TestTransaction
+    @Test
+    public void recountDecisions_correctsDriftedDecisionCount() {
+        String customerId = "decision-recount-customer";
+        decisionManager.createOrUpdateVersion(customerId, apiRequest, request);
+        decisionQuotaDAO.acquire(customerId, -1);
+
+        assertThat(decisionQuotaDAO.recountDecisions(List.of(customerId)).get(customerId), equalTo(1L));
+    }
+
+    @Test
+    public void deleteDecision_releasesContentAddressedDMN() {
+        DMNStorageRequest contentAddressed = new DMNStorageRequest("customers/customer-id/blobs/abc/dmn.xml", "hash", true);
+        String location = "s3://bucket/" + contentAddressed.getProviderUrl();
+        when(dmnStorage.getDMNLocation(Mockito.eq(contentAddressed), anyString(), Mockito.any(DecisionVersion.class))).thenReturn(location);
+
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, contentAddressed);
+        Decision decision = decisionVersion.getDecision();
+        decisionManager.deployed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
+
+        apiRequest.setDescription("An updated version!");
+        DecisionVersion nextVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, contentAddressed);
+        decisionManager.deployed(decision.getCustomerId(), decision.getName(), nextVersion.getVersion(), createDeployment());
+        assertThat(dmnBlobDAO.findById(location).getRefCount(), equalTo(2));
+
+        decisionManager.deleteDecision(decision.getCustomerId(), decision.getName());
+
+        DMNBlob blob = dmnBlobDAO.findById(location);
+        assertThat(blob.getRefCount(), equalTo(0));
+        assertThat(blob.getReleasedAt(), is(notNullValue()));
+    }
+
+    @Test
+    public void updateDecision_conflictLeavesStoredDMNToReaper() {
+        String customerId = "dmn-conflict-customer";
+        DecisionVersion first = decisionManager.createOrUpdateVersion(customerId, apiRequest, request);
+
+        DMNStorageRequest contentAddressed = new DMNStorageRequest("customers/" + customerId + "/blobs/conflict/dmn.xml", "hash", true);
+        String location = "s3://bucket/" + contentAddressed.getProviderUrl();
+        when(dmnStorage.getDMNLocation(Mockito.eq(contentAddressed), anyString(), Mockito.any(DecisionVersion.class))).thenReturn(location);
+        // as recorded when the DMN is stored
+        dmnBlobDAO.track(customerId, location);
+
+        try {
+            // The first version is still being built, so the update is rejected before referencing the DMN
+            assertThrows(DecisionLifecycleException.class, () -> decisionManager.createOrUpdateVersion(customerId, apiRequest, contentAddressed));
+
+            List<String> removed = new ArrayList<>();
+            dmnBlobDAO.deleteUnreferenced(ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1), 1000, removed::addAll);
+            assertThat(removed, hasItem(location));
+            assertThat(dmnBlobDAO.findById(location), is(nullValue()));
+        } finally {
+            decisionManager.deployed(customerId, first.getDecision().getId(), first.getVersion(), createDeployment());
+            decisionManager.deleteDecision(customerId, apiRequest.getName());
+        }
+    }
+
     @Test
     public void deleteDecision_decisionDoesNotExist() {
         assertThrows(NoSuchDecisionException.class, () -> {
@@ -336,7 +562,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void deleteVersion_versionDoesNotExist() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         assertThrows(NoSuchDecisionVersionException.class, () -> decisionManager.deleteVersion(DEFAULT_CUSTOMER_ID, decision.getName(), decisionVersion.getVersion() + 1L));
@@ -345,7 +571,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void deleteVersionById_versionDoesNotExist() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         assertThrows(NoSuchDecisionVersionException.class, () -> decisionManager.deleteVersion(decision.getId(), decisionVersion.getVersion() + 1L));
@@ -354,13 +580,13 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void deleteVersion() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
         decisionManager.deployed(DEFAULT_CUSTOMER_ID, decision.getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest.getModel().setDmn("updated dmn!");
 
-        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         decisionVersion = decisionManager.deployed(DEFAULT_CUSTOMER_ID, decision.getName(), decisionVersion.getVersion(), createDeployment());
         decision = decisionVersion.getDecision();
 
@@ -374,13 +600,13 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void deleteVersionById() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
         decisionManager.deployed(DEFAULT_CUSTOMER_ID, decision.getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest.getModel().setDmn("updated dmn!");
 
-        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         decisionVersion = decisionManager.deployed(DEFAULT_CUSTOMER_ID, decision.getName(), decisionVersion.getVersion(), createDeployment());
         decision = decisionVersion.getDecision();
 
@@ -394,7 +620,7 @@ public class DecisionManagerTest {
     @Test
     @TestTransaction
     public void deleteVersion_versionIsCurrentVersion() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         DecisionVersion deployed = decisionManager.deployed(decision.getCustomerId(), decision.getName(), decisionVersion.getVersion(), createDeployment());
@@ -404,7 +630,7 @@ public class DecisionManagerTest {
     @Test
     @TestTransaction
     public void deleteVersion_canDeleteAFailedVersion() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         Decision decision = decisionVersion.getDecision();
 
         decisionVersion = decisionManager.failed(DEFAULT_CUSTOMER_ID, decision.getName(), decisionVersion.getVersion(), createDeployment());
@@ -417,7 +643,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void listDecisionVersions_withDecisionId() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         ListResult<DecisionVersion> versions = decisionManager.listDecisionVersions(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), 0, 100);
         assertThat(versions.getSize(), equalTo(1L));
@@ -438,7 +664,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void getVersion_versionDoesNotExist() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         assertThrows(NoSuchDecisionVersionException.class, () -> {
             decisionManager.getVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion() + 1L);
@@ -448,7 +674,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void getVersion_byDecisionId() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion found = decisionManager.getVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion());
         assertThat(found.getId(), equalTo(decisionVersion.getId()));
@@ -457,7 +683,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void getVersion_byDecisionName() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion found = decisionManager.getVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion());
         assertThat(found.getId(), equalTo(decisionVersion.getId()));
@@ -466,7 +692,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void getCurrentVersion_byDecisionName() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion found = decisionManager.getCurrentVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName());
         assertThat(found.getId(), equalTo(decisionVersion.getId()));
@@ -475,7 +701,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void getCurrentVersion_byDecisionId() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion found = decisionManager.getCurrentVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId());
         assertThat(found.getId(), equalTo(decisionVersion.getId()));
@@ -484,7 +710,7 @@ public class DecisionManagerTest {
     @Test
     @TestTransaction
     public void getBuildingVersion_byDecisionId() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion found = decisionManager.getBuildingVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId());
         assertThat(found.getId(), equalTo(decisionVersion.getId()));
@@ -493,7 +719,7 @@ public class DecisionManagerTest {
     @Test
     @TestTransaction
     public void getBuildingVersion_byDecisionName() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion found = decisionManager.getBuildingVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName());
         assertThat(found.getId(), equalTo(decisionVersion.getId()));
@@ -502,7 +728,7 @@ public class DecisionManagerTest {
     @Test
     @TestTransaction
     public void getBuildingVersion_noBuildingVersion() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), createDeployment());
 
         assertThrows(NoSuchDecisionVersionException.class, () -> {
@@ -523,7 +749,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void listDecisionVersions_withDecisionName() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         ListResult<DecisionVersion> versions = decisionManager.listDecisionVersions(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), 0, 100);
         assertThat(versions.getSize(), equalTo(1L));
@@ -560,9 +786,9 @@ public class DecisionManagerTest {
         tags.put("tagKey", "tagValue");
         apiRequest2.setTags(tags);
 
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest2);
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest3);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest2, request);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest3, request);
 
         ListResult<Decision> decisions = decisionManager.listDecisions(DEFAULT_CUSTOMER_ID, 0, 100);
         assertThat(decisions.getTotal(), equalTo(3L));
@@ -594,9 +820,9 @@ public class DecisionManagerTest {
         DecisionRequest apiRequest3 = createApiRequest();
         apiRequest3.setName("yet-another-decision");
 
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest2);
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest3);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest2, request);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest3, request);
 
         ListResult<Decision> decisions = decisionManager.listDecisions(DEFAULT_CUSTOMER_ID, 2, 1);
         assertThat(decisions.getTotal(), equalTo(3L));
@@ -606,6 +832,102 @@ public class DecisionManagerTest {
         assertThat(found.getName(), equalTo(apiRequest3.getName()));
     }
 
+    @TestTransaction
+    @Test
+    public void listDecisions_withCursor() {
+        DecisionRequest apiRequest2 = createApiRequest();
+        apiRequest2.setName("another-decision");
+
+        DecisionRequest apiRequest3 = createApiRequest();
+        apiRequest3.setName("yet-another-decision");
+
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest2, request);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest3, request);
+
+        ListResult<Decision> decisions = decisionManager.listDecisions(DEFAULT_CUSTOMER_ID, 0, 2);
+        assertThat(decisions.getSize(), equalTo(2L));
+        assertThat(decisions.getNext(), is(notNullValue()));
+
+        // The cursor survives encoding and carries the total counted on the first page
+        PageCursor cursor = PageCursor.decode(decisions.getNext().encode());
+        decisions = decisionManager.listDecisions(DEFAULT_CUSTOMER_ID, cursor, 2);
+        assertThat(decisions.getPage(), equalTo(1L));
+        assertThat(decisions.getTotal(), equalTo(3L));
+        assertThat(decisions.getSize(), equalTo(1L));
+        assertThat(decisions.getItems().get(0).getName(), equalTo(apiRequest3.getName()));
+        assertThat(decisions.getNext(), is(nullValue()));
+    }
+
+    @TestTransaction
+    @Test
+    public void streamDecisions() {
+        DecisionRequest apiRequest2 = createApiRequest();
+        apiRequest2.setName("another-decision");
+
+        DecisionRequest otherCustomerRequest = createApiRequest();
+        otherCustomerRequest.setName("other-customer-decision");
+
+        Map<String, String> tags = new HashMap<>();
+        tags.put("tagKey", "tagValue");
+        tags.put("otherTagKey", "otherTagValue");
+        apiRequest2.setTags(tags);
+
+        DecisionVersion version = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, version.getDecision().getId(), version.getVersion(), createDeployment());
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest2, request);
+        decisionManager.createOrUpdateVersion("other-customer", otherCustomerRequest, request);
+
+        List<DecisionVersion> streamed = new ArrayList<>();
+        decisionManager.streamDecisions(DEFAULT_CUSTOMER_ID, streamed::add);
+
+        // Only the current version of each Decision, once regardless of its tags
+        assertThat(streamed.size(), equalTo(2));
+        assertThat(streamed.get(0).getDecision().getName(), equalTo(apiRequest2.getName()));
+        assertThat(streamed.get(0).getTags().size(), equalTo(2));
+        assertThat(streamed.get(1).getDecision().getName(), equalTo(apiRequest.getName()));
+        assertThat(streamed.get(1).getVersion(), equalTo(1L));
+
+        streamed.clear();
+        decisionManager.streamDecisions(null, streamed::add);
+        assertThat(streamed.stream().anyMatch(decisionVersion -> "other-customer".equals(decisionVersion.getDecision().getCustomerId())), is(true));
+
+        // Chunks continue from the last Decision of the previous chunk
+        List<DecisionVersion> first = decisionVersionDAO.listCurrentAfter(DEFAULT_CUSTOMER_ID, null, 1);
+        assertThat(first.size(), equalTo(1));
+        assertThat(first.get(0).getDecision().getName(), equalTo(apiRequest2.getName()));
+        List<DecisionVersion> second = decisionVersionDAO.listCurrentAfter(DEFAULT_CUSTOMER_ID, first.get(0), 1);
+        assertThat(second.size(), equalTo(1));
+        assertThat(second.get(0).getDecision().getName(), equalTo(apiRequest.getName()));
+        assertThat(decisionVersionDAO.listCurrentAfter(DEFAULT_CUSTOMER_ID, second.get(0), 1).isEmpty(), is(true));
+    }
+
+    @TestTransaction
+    @Test
+    public void listDecisionVersions_withCursor() {
+        DecisionVersion first = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, first.getDecision().getId(), first.getVersion(), createDeployment());
+        DecisionVersion second = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        second.setSubmittedAt(first.getSubmittedAt().plusSeconds(1));
+        decisionDAO.flush();
+
+        ListResult<DecisionVersion> versions = decisionManager.listDecisionVersions(DEFAULT_CUSTOMER_ID, apiRequest.getName(), 0, 1);
+        assertThat(versions.getItems().get(0).getVersion(), equalTo(2L));
+        assertThat(versions.getNext(), is(notNullValue()));
+
+        versions = decisionManager.listDecisionVersions(DEFAULT_CUSTOMER_ID, apiRequest.getName(), versions.getNext(), 1);
+        assertThat(versions.getItems().get(0).getVersion(), equalTo(1L));
+        assertThat(versions.getNext(), is(nullValue()));
+    }
+
+    @Test
+    public void listDecisionVersions_invalidCursor() {
+        PageCursor cursor = new PageCursor(1, 1, "not-a-timestamp", "id");
+        assertThrows(InvalidPageCursorException.class, () -> decisionManager.listDecisionVersions(DEFAULT_CUSTOMER_ID, "foo", cursor, 1));
+        assertThrows(InvalidPageCursorException.class, () -> PageCursor.decode("not a cursor"));
+    }
+
     @TestTransaction
     @Test
     public void newDecision_decisionDoesNotExist() {
@@ -617,7 +939,7 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void newDecision_decisionVersionDoesNotExist() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         assertThrows(NoSuchDecisionVersionException.class, () -> {
             decisionManager.setCurrentVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion() + 1L);
@@ -627,7 +949,7 @@ public class DecisionManagerTest {
     @Test
     @TestTransaction
     public void newDecision_decisionVersionNotInReadyState() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion deployed = decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion(), createDeployment());
 
@@ -637,20 +959,20 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void newDecision_lifecycleOperationAlreadyInProgress() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest = createApiRequest();
         apiRequest.getModel().setDmn("Updated dmn!");
 
-        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest = createApiRequest();
         apiRequest.getModel().setDmn("Updated dmn again!");
 
-        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         DecisionVersion firstVersion = decisionManager.getVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), 1L);
         assertThat(firstVersion.getStatus(), equalTo(DecisionVersionStatus.READY));
@@ -661,20 +983,20 @@ public class DecisionManagerTest {
     @TestTransaction
     @Test
     public void newVersion() {
-        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest = createApiRequest();
         apiRequest.getModel().setDmn("Updated dmn!");
 
-        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion(), createDeployment());
 
         apiRequest = createApiRequest();
         apiRequest.getModel().setDmn("Updated dmn again!");
 
-        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
         decisionVersion = decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getName(), decisionVersion.getVersion(), createDeployment());
 
         DecisionVersion firstVersion = decisionManager.getVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), 1L);
@@ -686,4 +1008,61 @@ public class DecisionManagerTest {
         assertThat(newVersion.getDecision().getCurrentVersion().getVersion(), equalTo(decisionVersion.getVersion()));
         assertThat(newVersion.getDecision().getCurrentVersion().getStatus(), equalTo(DecisionVersionStatus.CURRENT));
     }
+
+    @TestTransaction
+    @Test
+    public void newVersion_requestsDeploymentOnceReleased() {
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        ZonedDateTime later = ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1);
+
+        // The request waits for the DMN to be stored
+        assertThat(deploymentRequestDAO.findDue(later, 10).size(), equalTo(0));
+        assertThat(deploymentRequestDAO.findAwaitingDMN(later, 10).size(), equalTo(1));
+
+        decisionManager.releaseDeployment(decisionVersion);
+        assertThat(deploymentRequestDAO.findDue(later, 10).size(), equalTo(1));
+        assertThat(deploymentRequestDAO.findAwaitingDMN(later, 10).size(), equalTo(0));
+
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), createDeployment());
+        assertThat(deploymentRequestDAO.count(), equalTo(0L));
+    }
+
+    @TestTransaction
+    @Test
+    public void failed_removesDeploymentRequest() {
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.releaseDeployment(decisionVersion);
+
+        decisionManager.failed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), createDeployment());
+        assertThat(deploymentRequestDAO.count(), equalTo(0L));
+    }
+
+    @TestTransaction
+    @Test
+    public void setCurrentVersion_requestsDeployment() {
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), createDeployment());
+
+        apiRequest = createApiRequest();
+        apiRequest.getModel().setDmn("Updated dmn!");
+        DecisionVersion secondVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, secondVersion.getDecision().getId(), secondVersion.getVersion(), createDeployment());
+
+        decisionManager.setCurrentVersion(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion());
+        assertThat(deploymentRequestDAO.findDue(ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1), 10).size(), equalTo(1));
+    }
+
+    @TestTransaction
+    @Test
+    public void listAwaitingDeployment() {
+        DecisionVersion decisionVersion = decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
+        ZonedDateTime later = ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1);
+
+        assertThat(decisionVersionDAO.listAwaitingDeployment(decisionVersion.getSubmittedAt().minusMinutes(1), null, 10).size(), equalTo(0));
+        assertThat(decisionVersionDAO.listAwaitingDeployment(later, null, 10).size(), equalTo(1));
+        assertThat(decisionVersionDAO.listAwaitingDeployment(later, decisionVersion, 10).size(), equalTo(0));
+
+        decisionManager.deployed(DEFAULT_CUSTOMER_ID, decisionVersion.getDecision().getId(), decisionVersion.getVersion(), createDeployment());
+        assertThat(decisionVersionDAO.listAwaitingDeployment(later, null, 10).size(), equalTo(0));
+    }
 }
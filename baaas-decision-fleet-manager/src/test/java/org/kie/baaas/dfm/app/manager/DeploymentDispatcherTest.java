@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.manager;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.app.dao.DecisionVersionDAO;
+import org.kie.baaas.dfm.app.dao.DeploymentRequestDAO;
+import org.kie.baaas.dfm.app.dfs.DecisionFleetShardClient;
+import org.kie.baaas.dfm.app.dfs.DecisionFleetShardSelector;
+import org.kie.baaas.dfm.app.dfs.client.DecisionFleetShardClientFactory;
+import org.kie.baaas.dfm.app.managedservices.ManagedServicesException;
+import org.kie.baaas.dfm.app.model.Decision;
+import org.kie.baaas.dfm.app.model.DecisionFleetShard;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.model.DecisionVersionStatus;
+import org.kie.baaas.dfm.app.model.DeploymentRequest;
+import org.kie.baaas.dfm.app.model.deployment.Deployment;
+import org.kie.baaas.dfm.app.model.eventing.Credential;
+import org.kie.baaas.dfm.app.model.eventing.KafkaConfig;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DeploymentDispatcherTest {
+
+    private static final String CUSTOMER_ID = "foo";
+
+    private static final String DECISION_ID = "bob";
+
+    private static final long VERSION = 2L;
+
+    @Mock
+    private DeploymentRequestDAO deploymentRequestDAO;
+
+    @Mock
+    private DecisionVersionDAO decisionVersionDAO;
+
+    @Mock
+    private DecisionFleetShardSelector selector;
+
+    @Mock
+    private DecisionFleetShardClientFactory clientFactory;
+
+    @Mock
+    private DecisionFleetShardClient client;
+
+    @Mock
+    private DecisionFleetShard fleetShard;
+
+    @Mock
+    private KafkaService kafkaService;
+
+    @Mock
+    private DecisionLifecycle decisionLifecycle;
+
+    private DeploymentDispatcher dispatcher;
+
+    @BeforeEach
+    public void beforeEach() {
+        dispatcher = new DeploymentDispatcher(deploymentRequestDAO, decisionVersionDAO, selector, clientFactory, kafkaService, decisionLifecycle);
+        dispatcher.batchSize = 10;
+        dispatcher.maxAttempts = 3;
+        dispatcher.initialBackoff = Duration.ofSeconds(1);
+        dispatcher.maxBackoff = Duration.ofSeconds(5);
+        dispatcher.lease = Duration.ofMinutes(2);
+        dispatcher.maxDMNAge = Duration.ofHours(1);
+    }
+
+    private DeploymentRequest createRequest(int attempts) {
+        DeploymentRequest request = new DeploymentRequest();
+        request.setCustomerId(CUSTOMER_ID);
+        request.setDecisionId(DECISION_ID);
+        request.setVersion(VERSION);
+        request.setAttempts(attempts);
+        return request;
+    }
+
+    private DeploymentRequest due(int attempts) {
+        DeploymentRequest request = createRequest(attempts);
+        when(deploymentRequestDAO.findDue(any(ZonedDateTime.class), eq(10))).thenReturn(List.of(request));
+        when(deploymentRequestDAO.claim(eq(request), any(ZonedDateTime.class))).thenReturn(true);
+        return request;
+    }
+
+    private DecisionVersion building() {
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setDecision(new Decision());
+        decisionVersion.setStatus(DecisionVersionStatus.BUILDING);
+        when(decisionVersionDAO.findByCustomerAndDecisionIdOrName(CUSTOMER_ID, DECISION_ID, VERSION)).thenReturn(decisionVersion);
+        return decisionVersion;
+    }
+
+    private void fleetShard() {
+        when(selector.selectFleetShardForDeployment(any(Decision.class))).thenReturn(fleetShard);
+        when(clientFactory.createClientFor(fleetShard)).thenReturn(client);
+    }
+
+    @Test
+    public void dispatchDue() {
+        DeploymentRequest request = due(0);
+        DecisionVersion decisionVersion = building();
+        decisionVersion.setKafkaConfig(new KafkaConfig());
+        Credential credential = new Credential().setClientId("client_id").setClientSecret("client_secret");
+        when(kafkaService.getCustomerCredential(CUSTOMER_ID)).thenReturn(credential);
+        fleetShard();
+
+        dispatcher.dispatchDue();
+
+        verify(client).deploy(decisionVersion);
+        assertThat(decisionVersion.getKafkaConfig().getCredential(), equalTo(credential));
+        verify(deploymentRequestDAO).complete(request);
+    }
+
+    @Test
+    public void dispatchDue_claimedElsewhere() {
+        DeploymentRequest request = createRequest(0);
+        when(deploymentRequestDAO.findDue(any(ZonedDateTime.class), anyInt())).thenReturn(List.of(request));
+        when(deploymentRequestDAO.claim(eq(request), any(ZonedDateTime.class))).thenReturn(false);
+
+        dispatcher.dispatchDue();
+
+        verifyNoInteractions(decisionVersionDAO);
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    public void dispatchDue_deploymentConcluded() {
+        DeploymentRequest request = due(0);
+        building().setStatus(DecisionVersionStatus.FAILED);
+
+        dispatcher.dispatchDue();
+
+        verify(deploymentRequestDAO).complete(request);
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    public void dispatchDue_retriesWithBackoff() {
+        DeploymentRequest request = due(1);
+        DecisionVersion decisionVersion = building();
+        fleetShard();
+        doThrow(new RuntimeException("Nope!")).when(client).deploy(decisionVersion);
+
+        ZonedDateTime before = ZonedDateTime.now();
+        dispatcher.dispatchDue();
+
+        ArgumentCaptor<ZonedDateTime> retryAt = ArgumentCaptor.forClass(ZonedDateTime.class);
+        verify(deploymentRequestDAO).retry(eq(request), retryAt.capture(), eq("Nope!"));
+        assertThat(retryAt.getValue().isBefore(before.plusSeconds(2)), equalTo(false));
+        verify(deploymentRequestDAO, never()).complete(any());
+        verifyNoInteractions(decisionLifecycle);
+    }
+
+    @Test
+    public void dispatchDue_retriesCredentialFailure() {
+        DeploymentRequest request = due(0);
+        building().setKafkaConfig(new KafkaConfig());
+        when(kafkaService.getCustomerCredential(CUSTOMER_ID)).thenThrow(new ManagedServicesException("Nope!", new RuntimeException()));
+
+        dispatcher.dispatchDue();
+
+        verify(deploymentRequestDAO).retry(eq(request), any(ZonedDateTime.class), eq("Nope!"));
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    public void dispatchDue_failsAfterMaxAttempts() {
+        DeploymentRequest request = due(2);
+        DecisionVersion decisionVersion = building();
+        fleetShard();
+        doThrow(new RuntimeException("Nope!")).when(client).deploy(decisionVersion);
+        when(deploymentRequestDAO.complete(request)).thenReturn(true);
+
+        dispatcher.dispatchDue();
+
+        ArgumentCaptor<Deployment> deployment = ArgumentCaptor.forClass(Deployment.class);
+        verify(decisionLifecycle).failed(eq(CUSTOMER_ID), eq(DECISION_ID), eq(VERSION), deployment.capture());
+        assertThat(deployment.getValue().getStatusMessage(), equalTo("Failed to deploy Decision."));
+        verify(deploymentRequestDAO).complete(request);
+        verify(deploymentRequestDAO, never()).retry(any(), any(), any());
+    }
+
+    @Test
+    public void dispatchDue_reclaimedAfterMaxAttempts() {
+        DeploymentRequest request = due(2);
+        DecisionVersion decisionVersion = building();
+        fleetShard();
+        doThrow(new RuntimeException("Nope!")).when(client).deploy(decisionVersion);
+        // The lease expired and another Fleet Manager claimed the request
+        when(deploymentRequestDAO.complete(request)).thenReturn(false);
+
+        dispatcher.dispatchDue();
+
+        verifyNoInteractions(decisionLifecycle);
+        verify(deploymentRequestDAO, never()).retry(any(), any(), any());
+    }
+
+    @Test
+    public void failAwaitingDMN() {
+        DeploymentRequest request = createRequest(0);
+        when(deploymentRequestDAO.findAwaitingDMN(any(ZonedDateTime.class), eq(10))).thenReturn(List.of(request));
+        when(deploymentRequestDAO.deleteAwaitingDMN(request)).thenReturn(true);
+
+        dispatcher.failAwaitingDMN();
+
+        ArgumentCaptor<Deployment> deployment = ArgumentCaptor.forClass(Deployment.class);
+        verify(decisionLifecycle).failed(eq(CUSTOMER_ID), eq(DECISION_ID), eq(VERSION), deployment.capture());
+        assertThat(deployment.getValue().getStatusMessage(), equalTo("Failed to store DMN of Decision."));
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    public void failAwaitingDMN_releasedMeanwhile() {
+        DeploymentRequest request = createRequest(0);
+        when(deploymentRequestDAO.findAwaitingDMN(any(ZonedDateTime.class), eq(10))).thenReturn(List.of(request));
+        when(deploymentRequestDAO.deleteAwaitingDMN(request)).thenReturn(false);
+
+        dispatcher.failAwaitingDMN();
+
+        verifyNoInteractions(decisionLifecycle);
+    }
+
+    @Test
+    public void backoff() {
+        assertThat(dispatcher.backoff(1), equalTo(Duration.ofSeconds(1)));
+        assertThat(dispatcher.backoff(2), equalTo(Duration.ofSeconds(2)));
+        assertThat(dispatcher.backoff(3), equalTo(Duration.ofSeconds(4)));
+        assertThat(dispatcher.backoff(4), equalTo(Duration.ofSeconds(5)));
+        assertThat(dispatcher.backoff(100), equalTo(Duration.ofSeconds(5)));
+    }
+}
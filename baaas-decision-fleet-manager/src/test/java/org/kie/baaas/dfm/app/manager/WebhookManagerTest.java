@@ -9,7 +9,9 @@ import org.kie.baaas.dfm.app.webhook.WebhookListener;
 import io.quarkus.test.junit.QuarkusTest;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.kie.baaas.dfm.app.TestConstants.DEFAULT_CUSTOMER_ID;
 
 @QuarkusTest
 public class WebhookManagerTest {
@@ -23,9 +25,10 @@ public class WebhookManagerTest {
     @Test
     public void testWebhookMgrInit() {
         assertTrue(webhookManager.listAll().size() > 0);
-        assertTrue(listenerManager.hasListeners());
-        assertEquals(1, listenerManager.getListeners().size());
-        WebhookListener listener0 = (WebhookListener) listenerManager.getListeners().stream().findFirst().get();
+        assertTrue(listenerManager.hasListeners(DEFAULT_CUSTOMER_ID));
+        assertEquals(1, listenerManager.getListeners(DEFAULT_CUSTOMER_ID).size());
+        WebhookListener listener0 = (WebhookListener) listenerManager.getListeners(DEFAULT_CUSTOMER_ID).stream().findFirst().get();
         assertEquals("http://localhost:8080/test-builtin-webhook", listener0.getWebhook().getUrl().toString());
+        assertFalse(listenerManager.hasListeners("another-customer-id"));
     }
 }
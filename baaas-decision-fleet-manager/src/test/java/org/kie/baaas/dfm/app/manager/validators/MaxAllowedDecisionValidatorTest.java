@@ -23,6 +23,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.decisions.Model;
+import org.kie.baaas.dfm.app.manager.DecisionLimitExceededException;
 import org.kie.baaas.dfm.app.manager.DecisionManager;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.storage.DMNStorageRequest;
@@ -30,6 +31,7 @@ import org.kie.baaas.dfm.app.storage.DecisionDMNStorage;
 import org.kie.baaas.dfm.app.storage.s3.S3DMNStorage;
 import org.mockito.Mockito;
 
+import io.quarkus.test.TestTransaction;
 import io.quarkus.test.junit.QuarkusMock;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.TestProfile;
@@ -42,6 +44,9 @@ import static org.mockito.Mockito.when;
 @QuarkusTest
 @TestProfile(ValidationTestProfile.class)
 public class MaxAllowedDecisionValidatorTest {
+
+    private static final String OTHER_CUSTOMER_ID = "other-customer-id";
+
     @Inject
     DecisionDMNStorage dmnStorage;
 
@@ -68,7 +73,7 @@ public class MaxAllowedDecisionValidatorTest {
 
     private DMNStorageRequest createStorageRequest() {
         DMNStorageRequest request = new DMNStorageRequest("provider-url", "hash");
-        when(dmnStorage.writeDMN(anyString(), Mockito.any(DecisionRequest.class), Mockito.any(DecisionVersion.class))).thenReturn(request);
+        when(dmnStorage.getDMNLocation(Mockito.any(DMNStorageRequest.class), anyString(), Mockito.any(DecisionVersion.class))).thenReturn(request.getProviderUrl());
         return request;
     }
 
@@ -80,11 +85,23 @@ public class MaxAllowedDecisionValidatorTest {
     @TestSecurity(user = DEFAULT_CUSTOMER_ID)
     @Test
     void testExceedsAllowedLimit() {
-        createStorageRequest();
+        DMNStorageRequest request = createStorageRequest();
 
         DecisionRequest apiRequest = createApiRequest();
-        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest);
+        decisionManager.createOrUpdateVersion(DEFAULT_CUSTOMER_ID, apiRequest, request);
 
         Assertions.assertFalse(maxAllowedValidator.isValid(apiRequest, constraintValidatorContext));
     }
+
+    @TestTransaction
+    @Test
+    void testCreateExceedsAllowedLimit() {
+        DMNStorageRequest request = createStorageRequest();
+
+        decisionManager.createOrUpdateVersion(OTHER_CUSTOMER_ID, createApiRequest(), request);
+
+        DecisionRequest anotherRequest = createApiRequest();
+        anotherRequest.setName("robs-second-decision");
+        Assertions.assertThrows(DecisionLimitExceededException.class, () -> decisionManager.createOrUpdateVersion(OTHER_CUSTOMER_ID, anotherRequest, request));
+    }
 }
@@ -15,45 +15,74 @@
 
 package org.kie.baaas.dfm.app.storage;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.kie.baaas.dfm.api.decisions.DecisionRequest;
 import org.kie.baaas.dfm.api.decisions.Model;
 import org.kie.baaas.dfm.app.config.DecisionFleetManagerConfig;
+import org.kie.baaas.dfm.app.dao.DMNBlobDAO;
 import org.kie.baaas.dfm.app.manager.DecisionManager;
+import org.kie.baaas.dfm.app.model.DMNCompression;
 import org.kie.baaas.dfm.app.model.Decision;
 import org.kie.baaas.dfm.app.model.DecisionVersion;
 import org.kie.baaas.dfm.app.storage.hash.DMNHashGenerator;
+import org.kie.baaas.dfm.app.storage.hash.DMNPayload;
 import org.kie.baaas.dfm.app.storage.s3.S3DMNStorage;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
-import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -77,6 +106,12 @@ public class S3DMNStorageTest {
     @Mock
     DecisionManager decisionManager;
 
+    @Mock
+    DMNBlobDAO dmnBlobDAO;
+
+    @Spy
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private DecisionRequest createApiRequest() {
 
         Model model = new Model();
@@ -90,7 +125,33 @@ public class S3DMNStorageTest {
     }
 
     @Test
-    public void writeDMNTest() {
+    public void stageDMNTest() {
+
+        String bucketName = "baaas-storage-dev";
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn(bucketName);
+
+        PutObjectResponse response = mock(PutObjectResponse.class);
+        when(response.eTag()).thenReturn("ff576fa78715ffc6f9fa6d32c3bc9b9a");
+
+        ArgumentCaptor<PutObjectRequest> cap = ArgumentCaptor.forClass(PutObjectRequest.class);
+        when(s3Client.putObject(cap.capture(), any(RequestBody.class))).thenReturn(response);
+
+        DMNPayload payload = new DMNHashGenerator().encode(createApiRequest().getModel().getDmn());
+        when(hashGenerator.encode(any(String.class))).thenReturn(payload);
+
+        dmnStorageRequest = s3DMNStorage.stageDMN("customer-id-1", createApiRequest());
+
+        PutObjectRequest request = cap.getValue();
+        assertThat(request.contentMD5(), equalTo(payload.getMd5Hash()));
+        assertThat(request.bucket(), equalTo(bucketName));
+        assertThat(request.key(), startsWith("staging/customer-id-1/"));
+        assertThat(request.key(), endsWith("/dmn.xml"));
+        assertThat(dmnStorageRequest.getProviderUrl(), equalTo(request.key()));
+        assertThat(dmnStorageRequest.getMd5Hash(), equalTo("ff576fa78715ffc6f9fa6d32c3bc9b9a"));
+    }
+
+    @Test
+    public void getDMNLocationTest() {
 
         String bucketName = "baaas-storage-dev";
         when(decisionFleetManagerConfig.getBucketName()).thenReturn(bucketName);
@@ -100,48 +161,250 @@ public class S3DMNStorageTest {
         decisionVersion.setVersion(1L);
         decisionVersion.setDecision(decision);
 
+        String location = s3DMNStorage.getDMNLocation(new DMNStorageRequest("staging/customer-id-1/foo/dmn.xml", "hash"), "customer-id-1", decisionVersion);
+        assertThat(location, equalTo("s3://" + bucketName + "/customers/customer-id-1/" + decision.getId() + "/1/dmn.xml"));
+    }
+
+    @Test
+    public void stageDMN_compressed() {
+
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn("baaas-storage-dev");
+
+        DMNPayload payload = new DMNHashGenerator().encode(createApiRequest().getModel().getDmn());
+        DMNPayload compressed = new DMNHashGenerator().gzip(payload);
+        when(hashGenerator.encode(any(String.class))).thenReturn(payload);
+        when(hashGenerator.gzip(payload)).thenReturn(compressed);
+
         PutObjectResponse response = mock(PutObjectResponse.class);
-        PutObjectRequest request = PutObjectRequest.builder()
-                .key("customers/customer-id-1/" + decision.getId() + "/1/dmn.xml")
-                .contentType("application/xml")
-                .bucket(bucketName)
-                .build();
+        when(response.eTag()).thenReturn("ff576fa78715ffc6f9fa6d32c3bc9b9a");
+
+        ArgumentCaptor<PutObjectRequest> cap = ArgumentCaptor.forClass(PutObjectRequest.class);
+        when(s3Client.putObject(cap.capture(), any(RequestBody.class))).thenReturn(response);
+
+        s3DMNStorage.compression = Optional.of(DMNCompression.GZIP);
+        dmnStorageRequest = s3DMNStorage.stageDMN("customer-id-1", createApiRequest());
+
+        PutObjectRequest request = cap.getValue();
+        assertThat(request.contentEncoding(), equalTo("gzip"));
+        assertThat(request.contentMD5(), equalTo(compressed.getMd5Hash()));
+        assertThat(dmnStorageRequest.getCompression(), equalTo(DMNCompression.GZIP));
+    }
+
+    @Test
+    public void stageDMN_contentAddressedUpload() {
+
+        String bucketName = "baaas-storage-dev";
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn(bucketName);
+        when(hashGenerator.encode(any(String.class))).thenReturn(new DMNPayload(new byte[0], "AAAAAAAAAAAAAAAAAAAAAA=="));
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
 
+        PutObjectResponse response = mock(PutObjectResponse.class);
         when(response.eTag()).thenReturn("ff576fa78715ffc6f9fa6d32c3bc9b9a");
-        when(s3Client.putObject(Mockito.eq(request), any(RequestBody.class)))
-                .thenReturn(response);
 
-        dmnStorageRequest = s3DMNStorage.writeDMN("customer-id-1", createApiRequest(), decisionVersion);
+        ArgumentCaptor<PutObjectRequest> cap = ArgumentCaptor.forClass(PutObjectRequest.class);
+        when(s3Client.putObject(cap.capture(), any(RequestBody.class))).thenReturn(response);
+
+        s3DMNStorage.contentAddressed = true;
+        dmnStorageRequest = s3DMNStorage.stageDMN("customer-id-1", createApiRequest());
+
+        String blobLocation = "customers/customer-id-1/blobs/00000000000000000000000000000000/dmn.xml";
+        assertThat(cap.getValue().key(), equalTo(blobLocation));
+        assertThat(dmnStorageRequest.getProviderUrl(), equalTo(blobLocation));
+        assertThat(dmnStorageRequest.isContentAddressed(), is(true));
+        assertThat(meterRegistry.counter("daaas.dmn.storage.deduplicated").count(), equalTo(0.0));
+        // recorded unreferenced, so that it is reaped unless a DecisionVersion references it
+        verify(dmnBlobDAO).track("customer-id-1", "s3://" + bucketName + "/" + blobLocation);
+    }
+
+    @Test
+    public void stageDMN_contentAddressedAlreadyStored() {
+
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn("baaas-storage-dev");
+        when(hashGenerator.encode(any(String.class))).thenReturn(new DMNPayload(new byte[0], "AAAAAAAAAAAAAAAAAAAAAA=="));
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().eTag("ff576fa78715ffc6f9fa6d32c3bc9b9a").build());
+
+        s3DMNStorage.contentAddressed = true;
+        dmnStorageRequest = s3DMNStorage.stageDMN("customer-id-1", createApiRequest());
 
-        assertThat(dmnStorageRequest.getProviderUrl(), equalTo("s3://" + bucketName + "/customers/customer-id-1/" + decision.getId() + "/1/dmn.xml"));
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(dmnBlobDAO, never()).track(any(), any());
+        assertThat(dmnStorageRequest.getProviderUrl(), equalTo("customers/customer-id-1/blobs/00000000000000000000000000000000/dmn.xml"));
         assertThat(dmnStorageRequest.getMd5Hash(), equalTo("ff576fa78715ffc6f9fa6d32c3bc9b9a"));
+        assertThat(meterRegistry.counter("daaas.dmn.storage.deduplicated").count(), equalTo(1.0));
+    }
+
+    @Test
+    public void getDMNLocation_contentAddressed() {
+
+        String bucketName = "baaas-storage-dev";
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn(bucketName);
+
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setVersion(1L);
+        decisionVersion.setDecision(new Decision());
+
+        DMNStorageRequest stagedDMN = new DMNStorageRequest("customers/customer-id-1/blobs/abc/dmn.xml", "hash", true);
+        String location = s3DMNStorage.getDMNLocation(stagedDMN, "customer-id-1", decisionVersion);
+        assertThat(location, equalTo("s3://" + bucketName + "/customers/customer-id-1/blobs/abc/dmn.xml"));
+    }
+
+    @Test
+    public void promoteDMN_contentAddressedMissing() {
+
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn("baaas-storage-dev");
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setVersion(1L);
+        decisionVersion.setDecision(new Decision());
+
+        DMNStorageRequest stagedDMN = new DMNStorageRequest("customers/customer-id-1/blobs/abc/dmn.xml", "hash", true);
+        assertThrows(DecisionDMNStorageException.class, () -> s3DMNStorage.promoteDMN(stagedDMN, "customer-id-1", decisionVersion));
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+    }
+
+    @Test
+    public void promoteDMNTest() {
+
+        String bucketName = "baaas-storage-dev";
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn(bucketName);
+
+        Decision decision = new Decision();
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setVersion(1L);
+        decisionVersion.setDecision(decision);
+
+        String stagingLocation = "staging/customer-id-1/upload-1/dmn.xml";
+        s3DMNStorage.promoteDMN(new DMNStorageRequest(stagingLocation, "hash"), "customer-id-1", decisionVersion);
+
+        ArgumentCaptor<CopyObjectRequest> copyCap = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3Client).copyObject(copyCap.capture());
+        assertThat(copyCap.getValue().key(), equalTo("customers/customer-id-1/" + decision.getId() + "/1/dmn.xml"));
+        assertThat(copyCap.getValue().bucket(), equalTo(bucketName));
+
+        ArgumentCaptor<DeleteObjectRequest> deleteCap = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3Client).deleteObject(deleteCap.capture());
+        assertThat(deleteCap.getValue().key(), equalTo(stagingLocation));
+    }
+
+    @Test
+    public void discardStagedDMNIgnoresFailuresTest() {
+
+        when(s3Client.deleteObject(any(DeleteObjectRequest.class))).thenThrow(S3Exception.builder().message("Nope!").build());
+
+        s3DMNStorage.discardStagedDMN(new DMNStorageRequest("staging/customer-id-1/upload-1/dmn.xml", "hash"));
+
+        verify(s3Client).deleteObject(any(DeleteObjectRequest.class));
     }
 
     @Test
     public void deleteDMNTest() {
-        List<S3Object> objLIst = new ArrayList<>();
-        objLIst.add(S3Object.builder()
-                .key("obj1").lastModified(ZonedDateTime.now(ZoneOffset.MAX).toInstant())
-                .eTag("obj1-chacksum")
-                .storageClass("STANDARD")
-                .build());
+        String bucketName = "baaas-storage-dev";
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn(bucketName);
+
+        Decision decision = new Decision();
+        String prefix = "customers/customer-id-1/" + decision.getId() + "/";
+        ArgumentCaptor<ListObjectsV2Request> listCap = mockListing(createObjects(prefix, 2));
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
 
-        objLIst.add(S3Object.builder()
-                .key("obj2").lastModified(ZonedDateTime.now(ZoneOffset.MAX).toInstant())
-                .eTag("obj2-chacksum")
-                .storageClass("STANDARD")
-                .build());
+        s3DMNStorage.deleteDMN("customer-id-1", decision);
 
-        ListObjectsV2Response listObjectsV2Response = ListObjectsV2Response.builder().contents(objLIst).build();
+        assertThat(listCap.getValue().bucket(), equalTo(bucketName));
+        assertThat(listCap.getValue().prefix(), equalTo(prefix));
 
-        lenient().when(s3Client.listObjectsV2(ListObjectsV2Request.builder().build())).thenReturn(listObjectsV2Response);
+        ArgumentCaptor<DeleteObjectsRequest> deleteCap = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client).deleteObjects(deleteCap.capture());
+        assertThat(deleteCap.getValue().delete().objects(), hasSize(2));
+        assertThat(deleteCap.getValue().delete().objects().get(0).key(), equalTo(prefix + "0/dmn.xml"));
+        verify(s3Client, never()).deleteObject(any(DeleteObjectRequest.class));
 
-        // TODO finish to mock the delete request.
+        assertThat(meterRegistry.summary("daaas.dmn.storage.deleted.objects").totalAmount(), equalTo(2.0));
+    }
+
+    @Test
+    public void deleteDMNInBatchesTest() {
+        Decision decision = new Decision();
+        String prefix = "customers/customer-id-1/" + decision.getId() + "/";
+        mockListing(createObjects(prefix, 1500));
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+
+        s3DMNStorage.deleteDMN("customer-id-1", decision);
+
+        ArgumentCaptor<DeleteObjectsRequest> deleteCap = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, times(2)).deleteObjects(deleteCap.capture());
+        assertThat(deleteCap.getAllValues().get(0).delete().objects(), hasSize(1000));
+        assertThat(deleteCap.getAllValues().get(1).delete().objects(), hasSize(500));
+    }
+
+    @Test
+    public void deleteDMNNoObjectsTest() {
+        mockListing(new ArrayList<>());
 
+        assertThrows(DecisionDMNStorageException.class, () -> s3DMNStorage.deleteDMN("customer-id-1", new Decision()));
+        verify(s3Client, never()).deleteObjects(any(DeleteObjectsRequest.class));
     }
 
     @Test
-    public void readDMNTest() {
+    public void deleteDMNFailedObjectsTest() {
+        Decision decision = new Decision();
+        mockListing(createObjects("customers/customer-id-1/" + decision.getId() + "/", 2));
+        DeleteObjectsResponse response = DeleteObjectsResponse.builder()
+                .errors(S3Error.builder().key("obj1").message("Access Denied").build())
+                .build();
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(response);
+
+        assertThrows(DecisionDMNStorageException.class, () -> s3DMNStorage.deleteDMN("customer-id-1", decision));
+    }
+
+    private List<S3Object> createObjects(String prefix, int count) {
+        List<S3Object> objects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            objects.add(S3Object.builder()
+                    .key(prefix + i + "/dmn.xml")
+                    .lastModified(ZonedDateTime.now(ZoneOffset.MAX).toInstant())
+                    .eTag("obj" + i + "-checksum")
+                    .storageClass("STANDARD")
+                    .build());
+        }
+        return objects;
+    }
+
+    private ArgumentCaptor<ListObjectsV2Request> mockListing(List<S3Object> objects) {
+        ArgumentCaptor<ListObjectsV2Request> cap = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        when(s3Client.listObjectsV2Paginator(cap.capture()))
+                .thenAnswer(invocation -> new ListObjectsV2Iterable(s3Client, invocation.getArgument(0)));
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(objects).isTruncated(false).build());
+        return cap;
+    }
+
+    @Test
+    public void deleteDMN_unreferencedLocations() {
+
+        String bucketName = "baaas-storage-dev";
+        when(decisionFleetManagerConfig.getBucketName()).thenReturn(bucketName);
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+
+        List<String> locations = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            locations.add("s3://" + bucketName + "/customers/customer-id-1/blobs/" + i + "/dmn.xml");
+        }
+        s3DMNStorage.deleteDMN(locations);
+
+        ArgumentCaptor<DeleteObjectsRequest> deleteCap = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, times(2)).deleteObjects(deleteCap.capture());
+        assertThat(deleteCap.getAllValues().get(0).delete().objects(), hasSize(1000));
+        assertThat(deleteCap.getAllValues().get(1).delete().objects().get(0).key(), equalTo("customers/customer-id-1/blobs/1000/dmn.xml"));
+    }
+
+    @Test
+    public void deleteDMN_noUnreferencedLocations() {
+        s3DMNStorage.deleteDMN(Collections.emptyList());
+        verify(s3Client, never()).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    public void openDMNTest() throws IOException {
         String id = "1234";
         long version = 1l;
         Decision decision = mock(Decision.class);
@@ -150,13 +413,60 @@ public class S3DMNStorageTest {
         when(decisionVersion.getVersion()).thenReturn(version);
         when(decisionVersion.getDecision()).thenReturn(decision);
 
+        byte[] dmn = "<xml test=\"123\">foo</xml>".getBytes(StandardCharsets.UTF_8);
+        GetObjectResponse response = GetObjectResponse.builder()
+                .eTag("\"ff576fa78715ffc6f9fa6d32c3bc9b9a\"")
+                .contentLength((long) dmn.length)
+                .build();
         ArgumentCaptor<GetObjectRequest> cap = ArgumentCaptor.forClass(GetObjectRequest.class);
-        when(s3Client.getObject(cap.capture(), any(ResponseTransformer.class))).thenReturn(null);
+        when(s3Client.getObject(cap.capture()))
+                .thenReturn(new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(dmn))));
+
+        DMNContent content = s3DMNStorage.openDMN("1", decisionVersion, null);
+        assertThat(content.getETag(), equalTo("ff576fa78715ffc6f9fa6d32c3bc9b9a"));
+        assertThat(content.getContentLength(), equalTo((long) dmn.length));
+        assertThat(content.isPartial(), is(false));
 
-        ByteArrayOutputStream outputStream = s3DMNStorage.readDMN("1", decisionVersion);
-        assertThat(outputStream, is(notNullValue()));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        content.writeTo(outputStream);
+        assertThat(outputStream.toByteArray(), equalTo(dmn));
 
         GetObjectRequest getObjectRequest = cap.getValue();
         assertThat(getObjectRequest.key(), equalTo("customers/1/" + id + "/" + version + "/dmn.xml"));
+        assertThat(getObjectRequest.range(), is(nullValue()));
+    }
+
+    @Test
+    public void openDMNRangeTest() {
+        Decision decision = new Decision();
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setVersion(1L);
+        decisionVersion.setDecision(decision);
+
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentLength(4L)
+                .contentRange("bytes 0-3/25")
+                .build();
+        ArgumentCaptor<GetObjectRequest> cap = ArgumentCaptor.forClass(GetObjectRequest.class);
+        when(s3Client.getObject(cap.capture()))
+                .thenReturn(new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(new byte[4]))));
+
+        DMNContent content = s3DMNStorage.openDMN("1", decisionVersion, "bytes=0-3");
+        assertThat(content.isPartial(), is(true));
+        assertThat(content.getContentRange(), equalTo("bytes 0-3/25"));
+        assertThat(cap.getValue().range(), equalTo("bytes=0-3"));
+    }
+
+    @Test
+    public void openDMNInvalidRangeTest() {
+        Decision decision = new Decision();
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setVersion(1L);
+        decisionVersion.setDecision(decision);
+
+        when(s3Client.getObject(any(GetObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(416).message("InvalidRange").build());
+
+        assertThrows(InvalidDMNRangeException.class, () -> s3DMNStorage.openDMN("1", decisionVersion, "bytes=100-200"));
     }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kie.baaas.dfm.app.model.DMNCompression;
+import org.kie.baaas.dfm.app.model.Decision;
+import org.kie.baaas.dfm.app.model.DecisionVersion;
+import org.kie.baaas.dfm.app.storage.DMNContent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class DMNCacheTest {
+
+    private static final String CUSTOMER_ID = "customer-id-1";
+
+    private static final String DMN = "<xml test=\"123\">foo</xml>";
+
+    private MeterRegistry meterRegistry;
+
+    private AtomicInteger loads;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void beforeEach() {
+        meterRegistry = new SimpleMeterRegistry();
+        loads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    private DecisionVersion createDecisionVersion(Decision decision, long version) {
+        DecisionVersion decisionVersion = new DecisionVersion();
+        decisionVersion.setDecision(decision);
+        decisionVersion.setVersion(version);
+        decisionVersion.setDmnMd5("md5-" + version);
+        return decisionVersion;
+    }
+
+    private Supplier<DMNContent> loader(String dmn) {
+        return () -> {
+            loads.incrementAndGet();
+            byte[] bytes = dmn.getBytes(StandardCharsets.UTF_8);
+            return new DMNContent(new ByteArrayInputStream(bytes), "etag", bytes.length, null);
+        };
+    }
+
+    private String read(DMNContent content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private double count(String name) {
+        return meterRegistry.counter(name).count();
+    }
+
+    @Test
+    public void readThrough() throws IOException {
+        DMNCache cache = new DMNCache(meterRegistry, 1024, 1024, false, false);
+        DecisionVersion decisionVersion = createDecisionVersion(new Decision(), 1L);
+
+        assertThat(read(cache.get(CUSTOMER_ID, decisionVersion, loader(DMN))), equalTo(DMN));
+        assertThat(read(cache.get(CUSTOMER_ID, decisionVersion, loader(DMN))), equalTo(DMN));
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(count("daaas.dmn.cache.misses"), equalTo(1.0));
+        assertThat(count("daaas.dmn.cache.hits"), equalTo(1.0));
+    }
+
+    @Test
+    public void compressedOffHeap() throws IOException {
+        DMNCache cache = new DMNCache(meterRegistry, 1024, 1024, true, true);
+        DecisionVersion decisionVersion = createDecisionVersion(new Decision(), 1L);
+
+        cache.get(CUSTOMER_ID, decisionVersion, loader(DMN));
+        DMNContent cached = cache.get(CUSTOMER_ID, decisionVersion, loader(DMN));
+
+        assertThat(read(cached), equalTo(DMN));
+        assertThat(cached.getContentLength(), equalTo((long) DMN.length()));
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    public void entryLargerThanMaxEntryIsNotCached() throws IOException {
+        DMNCache cache = new DMNCache(meterRegistry, 1024, 8, false, false);
+        DecisionVersion decisionVersion = createDecisionVersion(new Decision(), 1L);
+
+        assertThat(read(cache.get(CUSTOMER_ID, decisionVersion, loader(DMN))), equalTo(DMN));
+        assertThat(read(cache.get(CUSTOMER_ID, decisionVersion, loader(DMN))), equalTo(DMN));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    public void evictsLeastRecentlyRead() throws IOException {
+        DMNCache cache = new DMNCache(meterRegistry, 2 * DMN.length(), 1024, false, false);
+        Decision decision = new Decision();
+        DecisionVersion version1 = createDecisionVersion(decision, 1L);
+        DecisionVersion version2 = createDecisionVersion(decision, 2L);
+        DecisionVersion version3 = createDecisionVersion(decision, 3L);
+
+        cache.get(CUSTOMER_ID, version1, loader(DMN));
+        cache.get(CUSTOMER_ID, version2, loader(DMN));
+        cache.get(CUSTOMER_ID, version1, loader(DMN));
+        cache.get(CUSTOMER_ID, version3, loader(DMN));
+        assertThat(loads.get(), equalTo(3));
+        assertThat(count("daaas.dmn.cache.evictions"), equalTo(1.0));
+
+        // version 2 was read least recently and so was evicted
+        cache.get(CUSTOMER_ID, version1, loader(DMN));
+        assertThat(loads.get(), equalTo(3));
+        cache.get(CUSTOMER_ID, version2, loader(DMN));
+        assertThat(loads.get(), equalTo(4));
+    }
+
+    @Test
+    public void invalidate() {
+        DMNCache cache = new DMNCache(meterRegistry, 1024, 1024, false, false);
+        Decision decision = new Decision();
+        DecisionVersion decisionVersion = createDecisionVersion(decision, 1L);
+        DecisionVersion otherDecisionVersion = createDecisionVersion(new Decision(), 1L);
+
+        cache.get(CUSTOMER_ID, decisionVersion, loader(DMN));
+        cache.get(CUSTOMER_ID, otherDecisionVersion, loader(DMN));
+        cache.invalidate(CUSTOMER_ID, decision.getId());
+
+        cache.get(CUSTOMER_ID, decisionVersion, loader(DMN));
+        cache.get(CUSTOMER_ID, otherDecisionVersion, loader(DMN));
+        assertThat(loads.get(), equalTo(3));
+        assertThat(meterRegistry.get("daaas.dmn.cache.size.bytes").gauge().value(), equalTo(2.0 * DMN.length()));
+    }
+
+    @Test
+    public void keepsStoredCompression() throws IOException {
+        DMNCache cache = new DMNCache(meterRegistry, 1024, 1024, true, false);
+        DecisionVersion decisionVersion = createDecisionVersion(new Decision(), 1L);
+        Supplier<DMNContent> loader = () -> {
+            loads.incrementAndGet();
+            byte[] bytes = DMN.getBytes(StandardCharsets.UTF_8);
+            return new DMNContent(new ByteArrayInputStream(bytes), "etag", bytes.length, null, DMNCompression.GZIP);
+        };
+
+        cache.get(CUSTOMER_ID, decisionVersion, loader);
+        DMNContent cached = cache.get(CUSTOMER_ID, decisionVersion, loader);
+
+        assertThat(cached.getCompression(), equalTo(DMNCompression.GZIP));
+        assertThat(read(cached), equalTo(DMN));
+        // held as stored rather than compressed again
+        assertThat(meterRegistry.get("daaas.dmn.cache.size.bytes").gauge().value(), equalTo((double) DMN.length()));
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    private Supplier<DMNContent> blockingLoader(CountDownLatch started, CountDownLatch release, Supplier<DMNContent> loader) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return loader.get();
+        };
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        DMNCache cache = new DMNCache(meterRegistry, 1024, 1024, false, false);
+        DecisionVersion decisionVersion = createDecisionVersion(new Decision(), 1L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<DMNContent> loader = blockingLoader(started, release, loader(DMN));
+
+        CompletableFuture<DMNContent> first = CompletableFuture.supplyAsync(() -> cache.get(CUSTOMER_ID, decisionVersion, loader), executor);
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture<DMNContent> second = CompletableFuture.supplyAsync(() -> cache.get(CUSTOMER_ID, decisionVersion, loader), executor);
+        // lets the second reader reach the load in progress before it completes
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(read(first.get(5, TimeUnit.SECONDS)), equalTo(DMN));
+        assertThat(read(second.get(5, TimeUnit.SECONDS)), equalTo(DMN));
+        assertThat(loads.get(), equalTo(1));
+        assertThat(count("daaas.dmn.cache.misses"), equalTo(1.0));
+    }
+
+    @Test
+    public void concurrentMissesShareFailedLoad() throws Exception {
+        DMNCache cache = new DMNCache(meterRegistry, 1024, 1024, false, false);
+        DecisionVersion decisionVersion = createDecisionVersion(new Decision(), 1L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<DMNContent> loader = blockingLoader(started, release, () -> {
+            loads.incrementAndGet();
+            throw new IllegalStateException("S3 unavailable");
+        });
+
+        CompletableFuture<DMNContent> first = CompletableFuture.supplyAsync(() -> cache.get(CUSTOMER_ID, decisionVersion, loader), executor);
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture<DMNContent> second = CompletableFuture.supplyAsync(() -> cache.get(CUSTOMER_ID, decisionVersion, loader), executor);
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(first.handle((dmn, t) -> t.getCause() instanceof IllegalStateException).get(5, TimeUnit.SECONDS), is(true));
+        assertThat(second.handle((dmn, t) -> t.getCause() instanceof IllegalStateException).get(5, TimeUnit.SECONDS), is(true));
+        assertThat(loads.get(), equalTo(1));
+
+        // a failed load is not cached
+        assertThat(read(cache.get(CUSTOMER_ID, decisionVersion, loader(DMN))), equalTo(DMN));
+    }
+}
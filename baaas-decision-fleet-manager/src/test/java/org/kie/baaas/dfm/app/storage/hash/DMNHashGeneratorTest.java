@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.storage.hash;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.utils.Md5Utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class DMNHashGeneratorTest {
+
+    private final DMNHashGenerator hashGenerator = new DMNHashGenerator();
+
+    private void assertEncoded(String dmn) throws IOException {
+        byte[] expected = dmn.getBytes(StandardCharsets.UTF_8);
+
+        DMNPayload payload = hashGenerator.encode(dmn);
+
+        assertThat(payload.getContentLength(), equalTo((long) expected.length));
+        assertThat(payload.newInputStream().readAllBytes(), equalTo(expected));
+        assertThat(payload.getMd5Hash(), equalTo(Md5Utils.md5AsBase64(expected)));
+    }
+
+    @Test
+    public void encode() throws IOException {
+        assertEncoded("");
+        assertEncoded("<xml test=\"123\">foo</xml>");
+        assertEncoded("<xml>café € 😀</xml>");
+    }
+
+    @Test
+    public void encodeUnpairedSurrogates() throws IOException {
+        assertEncoded("<xml>\uD800</xml>");
+        assertEncoded("<xml>\uDE00");
+        assertEncoded("<xml>\uD83D");
+    }
+
+    @Test
+    public void encodeAcrossChunks() throws IOException {
+        StringBuilder dmn = new StringBuilder("<xml>");
+        // places a surrogate pair on the boundary between the first two chunks
+        while (dmn.length() < 8191) {
+            dmn.append('a');
+        }
+        while (dmn.length() < 3 * 8192) {
+            dmn.append("😀é");
+        }
+        assertEncoded(dmn.append("</xml>").toString());
+    }
+
+    @Test
+    public void gzip() throws IOException {
+        String dmn = "<xml test=\"123\">foo</xml>".repeat(100);
+
+        DMNPayload compressed = hashGenerator.gzip(hashGenerator.encode(dmn));
+        byte[] bytes = compressed.newInputStream().readAllBytes();
+
+        assertThat(compressed.getContentLength(), equalTo((long) bytes.length));
+        assertThat(compressed.getMd5Hash(), equalTo(Md5Utils.md5AsBase64(bytes)));
+        assertThat(new String(new GZIPInputStream(compressed.newInputStream()).readAllBytes(), StandardCharsets.UTF_8), equalTo(dmn));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.kie.baaas.dfm.app.webhook;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.app.dao.WebhookDeliveryDAO;
+import org.kie.baaas.dfm.app.model.webhook.WebhookDelivery;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class WebhookDeliveryDispatcherTest {
+
+    private static final String URL = "http://localhost/webhook";
+
+    @Mock
+    private WebhookDeliveryDAO webhookDeliveryDAO;
+
+    @Mock
+    private WebhookHttpClient httpClient;
+
+    private MeterRegistry meterRegistry;
+
+    private WebhookEndpoints webhookEndpoints;
+
+    private WebhookDeliveryDispatcher dispatcher;
+
+    @BeforeEach
+    public void beforeEach() {
+        meterRegistry = new SimpleMeterRegistry();
+        webhookEndpoints = new WebhookEndpoints(meterRegistry);
+        webhookEndpoints.maxInFlight = 1;
+        webhookEndpoints.window = 10;
+        webhookEndpoints.minimumCalls = 10;
+        webhookEndpoints.failureRateThreshold = 50;
+        webhookEndpoints.slowCallRateThreshold = 50;
+        webhookEndpoints.slowCallDuration = Duration.ofSeconds(5);
+        webhookEndpoints.openDuration = Duration.ofSeconds(30);
+        webhookEndpoints.maxOpenDuration = Duration.ofMinutes(10);
+        dispatcher = new WebhookDeliveryDispatcher(webhookDeliveryDAO, httpClient, webhookEndpoints, meterRegistry);
+        dispatcher.batchSize = 10;
+        dispatcher.workers = 1;
+        dispatcher.maxInFlight = 100;
+        dispatcher.maxAttempts = 3;
+        dispatcher.initialBackoff = Duration.ofSeconds(1);
+        dispatcher.maxBackoff = Duration.ofSeconds(5);
+        dispatcher.timeout = Duration.ofSeconds(10);
+        dispatcher.maxWait = Duration.ofSeconds(30);
+        dispatcher.lease = Duration.ofMinutes(1);
+        dispatcher.init();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        dispatcher.shutdown();
+    }
+
+    private WebhookDelivery createDelivery(int attempts) {
+        WebhookDelivery delivery = new WebhookDelivery();
+        delivery.setUrl(URL);
+        delivery.setPayload("{}".getBytes(StandardCharsets.UTF_8));
+        delivery.setAttempts(attempts);
+        return delivery;
+    }
+
+    private WebhookDelivery due(int attempts) {
+        WebhookDelivery delivery = createDelivery(attempts);
+        when(webhookDeliveryDAO.findDue(any(ZonedDateTime.class), eq(10))).thenReturn(List.of(delivery));
+        when(webhookDeliveryDAO.claim(eq(delivery), any(ZonedDateTime.class))).thenReturn(true);
+        return delivery;
+    }
+
+    private void respond(int statusCode) {
+        HttpResponse<?> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(statusCode);
+        doReturn(CompletableFuture.completedFuture(response)).when(httpClient).sendAsync(any(), any(), any());
+    }
+
+    @Test
+    public void dispatchDue() {
+        WebhookDelivery delivery = due(0);
+        respond(204);
+
+        dispatcher.dispatchDue();
+
+        verify(webhookDeliveryDAO, timeout(5000)).complete(delivery);
+        ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpClient).sendAsync(request.capture(), any(), eq(Duration.ofSeconds(30)));
+        assertThat(request.getValue().uri().toString(), equalTo(URL));
+        assertThat(meterRegistry.counter("daaas.webhook.success", "url", URL).count(), equalTo(1.0));
+    }
+
+    @Test
+    public void dispatchDue_claimedElsewhere() {
+        WebhookDelivery delivery = createDelivery(0);
+        when(webhookDeliveryDAO.findDue(any(ZonedDateTime.class), eq(10))).thenReturn(List.of(delivery));
+        when(webhookDeliveryDAO.claim(eq(delivery), any(ZonedDateTime.class))).thenReturn(false);
+
+        dispatcher.dispatchDue();
+
+        verifyNoInteractions(httpClient);
+        assertThat(webhookEndpoints.get(URL).getInFlight(), equalTo(0));
+    }
+
+    @Test
+    public void dispatchDue_defersBeyondBulkhead() {
+        WebhookDelivery delivery = createDelivery(0);
+        WebhookDelivery other = createDelivery(0);
+        when(webhookDeliveryDAO.findDue(any(ZonedDateTime.class), eq(10))).thenReturn(List.of(delivery, other));
+        when(webhookDeliveryDAO.claim(eq(delivery), any(ZonedDateTime.class))).thenReturn(true);
+        // The request never completes, so the delivery stays in flight
+        doReturn(new CompletableFuture<>()).when(httpClient).sendAsync(any(), any(), any());
+
+        dispatcher.dispatchDue();
+
+        verify(webhookDeliveryDAO).defer(eq(other), any(ZonedDateTime.class));
+        verify(webhookDeliveryDAO, never()).claim(eq(other), any(ZonedDateTime.class));
+        assertThat(meterRegistry.get("daaas.webhook.endpoint.in-flight").tag("url", URL).gauge().value(), equalTo(1.0));
+        assertThat(meterRegistry.counter("daaas.webhook.shed", "url", URL).count(), equalTo(1.0));
+    }
+
+    @Test
+    public void dispatchDue_defersWhileCircuitOpen() {
+        webhookEndpoints.maxInFlight = 10;
+        WebhookEndpoint endpoint = webhookEndpoints.get(URL);
+        for (int i = 0; i < 10; i++) {
+            endpoint.release(endpoint.tryAcquire(System.nanoTime()).orElseThrow(), false, Duration.ZERO, System.nanoTime());
+        }
+        WebhookDelivery delivery = createDelivery(0);
+        when(webhookDeliveryDAO.findDue(any(ZonedDateTime.class), eq(10))).thenReturn(List.of(delivery));
+
+        dispatcher.dispatchDue();
+
+        ArgumentCaptor<ZonedDateTime> availableAt = ArgumentCaptor.forClass(ZonedDateTime.class);
+        verify(webhookDeliveryDAO).defer(eq(delivery), availableAt.capture());
+        assertThat(availableAt.getValue().isAfter(ZonedDateTime.now().plusSeconds(20)), is(true));
+        verifyNoInteractions(httpClient);
+        assertThat(meterRegistry.get("daaas.webhook.endpoint.state").tag("url", URL).gauge().value(), equalTo(1.0));
+    }
+
+    @Test
+    public void evictIdleEndpoints() {
+        webhookEndpoints.idleTimeout = Duration.ZERO;
+        WebhookEndpoint endpoint = webhookEndpoints.get(URL);
+        WebhookEndpoint.Permit permit = endpoint.tryAcquire(System.nanoTime()).orElseThrow();
+
+        // Kept while a delivery is in flight
+        webhookEndpoints.evictIdle();
+        assertThat(webhookEndpoints.get(URL), sameInstance(endpoint));
+
+        endpoint.release(permit, true, Duration.ZERO, System.nanoTime());
+        webhookEndpoints.evictIdle();
+
+        assertThat(meterRegistry.find("daaas.webhook.endpoint.state").tag("url", URL).gauge(), is(nullValue()));
+        assertThat(meterRegistry.find("daaas.webhook.endpoint.in-flight").tag("url", URL).gauge(), is(nullValue()));
+        assertThat(webhookEndpoints.get(URL), not(sameInstance(endpoint)));
+    }
+
+    @Test
+    public void dispatchDue_atMaxInFlight() {
+        dispatcher.maxInFlight = 0;
+
+        dispatcher.dispatchDue();
+
+        verifyNoInteractions(webhookDeliveryDAO, httpClient);
+    }
+
+    @Test
+    public void dispatchDue_retriesFailure() {
+        WebhookDelivery delivery = due(0);
+        respond(500);
+
+        dispatcher.dispatchDue();
+
+        verify(webhookDeliveryDAO, timeout(5000)).retry(eq(delivery), any(ZonedDateTime.class), eq("Response status 500"));
+        verify(webhookDeliveryDAO, never()).complete(any());
+        assertThat(meterRegistry.counter("daaas.webhook.failure", "url", URL).count(), equalTo(1.0));
+    }
+
+    @Test
+    public void dispatchDue_unclaimsWhenNotSentInTime() {
+        WebhookDelivery delivery = due(0);
+        doReturn(CompletableFuture.failedFuture(new TimeoutException("Request not started before its deadline"))).when(httpClient).sendAsync(any(), any(), any());
+
+        dispatcher.dispatchDue();
+
+        verify(webhookDeliveryDAO, timeout(5000)).unclaim(eq(delivery), any(ZonedDateTime.class));
+        verify(webhookDeliveryDAO, never()).retry(any(), any(), any());
+        assertThat(webhookEndpoints.get(URL).getInFlight(), equalTo(0));
+        assertThat(meterRegistry.counter("daaas.webhook.failure", "url", URL).count(), equalTo(0.0));
+    }
+
+    @Test
+    public void dispatchDue_retriesError() {
+        WebhookDelivery delivery = due(1);
+        doReturn(CompletableFuture.failedFuture(new IOException("Connection refused"))).when(httpClient).sendAsync(any(), any(), any());
+
+        dispatcher.dispatchDue();
+
+        verify(webhookDeliveryDAO, timeout(5000)).retry(eq(delivery), any(ZonedDateTime.class), anyString());
+    }
+
+    @Test
+    public void dispatchDue_deadLettersAfterMaxAttempts() {
+        WebhookDelivery delivery = due(2);
+        respond(503);
+
+        dispatcher.dispatchDue();
+
+        verify(webhookDeliveryDAO, timeout(5000)).deadLetter(eq(delivery), any(ZonedDateTime.class), eq("Response status 503"));
+        verify(webhookDeliveryDAO, never()).retry(any(), any(), any());
+        assertThat(meterRegistry.counter("daaas.webhook.dead-letters", "url", URL).count(), equalTo(1.0));
+    }
+
+    @Test
+    public void backoff() {
+        assertThat(dispatcher.backoff(1), equalTo(Duration.ofSeconds(1)));
+        assertThat(dispatcher.backoff(2), equalTo(Duration.ofSeconds(2)));
+        assertThat(dispatcher.backoff(3), equalTo(Duration.ofSeconds(4)));
+        assertThat(dispatcher.backoff(4), equalTo(Duration.ofSeconds(5)));
+        assertThat(dispatcher.backoff(100), equalTo(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void jitter() {
+        for (int i = 0; i < 100; i++) {
+            Duration jittered = WebhookDeliveryDispatcher.jitter(Duration.ofSeconds(4));
+            assertThat(jittered, greaterThanOrEqualTo(Duration.ofSeconds(2)));
+            assertThat(jittered, lessThanOrEqualTo(Duration.ofSeconds(4)));
+        }
+    }
+}
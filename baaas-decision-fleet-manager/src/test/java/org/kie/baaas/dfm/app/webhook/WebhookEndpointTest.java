@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.kie.baaas.dfm.app.webhook;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kie.baaas.dfm.app.webhook.WebhookEndpoint.Permit;
+import org.kie.baaas.dfm.app.webhook.WebhookEndpoint.State;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class WebhookEndpointTest {
+
+    private static final Duration FAST = Duration.ofMillis(10);
+
+    private static final Duration SLOW = Duration.ofSeconds(6);
+
+    private static final long OPEN_NANOS = Duration.ofSeconds(30).toNanos();
+
+    private WebhookEndpoint endpoint;
+
+    @BeforeEach
+    public void beforeEach() {
+        endpoint = new WebhookEndpoint(2, 4, 4, 50, 50, Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofSeconds(90));
+    }
+
+    private Permit acquire(long now) {
+        Optional<Permit> permit = endpoint.tryAcquire(now);
+        assertThat(permit.isPresent(), is(true));
+        return permit.get();
+    }
+
+    private void deliver(boolean success, Duration latency, long now) {
+        endpoint.release(acquire(now), success, latency, now);
+    }
+
+    @Test
+    public void bulkheadCapsInFlight() {
+        Permit permit = acquire(0);
+        acquire(0);
+        assertThat(endpoint.tryAcquire(0).isPresent(), is(false));
+        assertThat(endpoint.getInFlight(), equalTo(2));
+
+        endpoint.cancel(permit);
+        assertThat(endpoint.tryAcquire(0).isPresent(), is(true));
+    }
+
+    @Test
+    public void opensOnFailures() {
+        deliver(true, FAST, 0);
+        deliver(true, FAST, 0);
+        deliver(false, FAST, 0);
+        assertThat(endpoint.getState(), equalTo(State.CLOSED));
+
+        deliver(false, FAST, 0);
+
+        assertThat(endpoint.getState(), equalTo(State.OPEN));
+        assertThat(endpoint.tryAcquire(1).isPresent(), is(false));
+        assertThat(endpoint.getRemainingOpen(1), equalTo(Duration.ofNanos(OPEN_NANOS - 1)));
+    }
+
+    @Test
+    public void opensOnSlowCalls() {
+        deliver(true, FAST, 0);
+        deliver(true, FAST, 0);
+        deliver(true, SLOW, 0);
+        deliver(true, SLOW, 0);
+
+        assertThat(endpoint.getState(), equalTo(State.OPEN));
+    }
+
+    @Test
+    public void ratesCoverRecentDeliveriesOnly() {
+        deliver(false, FAST, 0);
+        for (int i = 0; i < 4; i++) {
+            deliver(true, FAST, 0);
+        }
+        deliver(false, FAST, 0);
+
+        assertThat(endpoint.getState(), equalTo(State.CLOSED));
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrial() {
+        opensOnFailures();
+
+        Permit trial = acquire(OPEN_NANOS);
+        assertThat(endpoint.getState(), equalTo(State.HALF_OPEN));
+        // A single trial at a time
+        assertThat(endpoint.tryAcquire(OPEN_NANOS).isPresent(), is(false));
+
+        endpoint.release(trial, true, FAST, OPEN_NANOS);
+
+        assertThat(endpoint.getState(), equalTo(State.CLOSED));
+        assertThat(endpoint.getRemainingOpen(OPEN_NANOS), equalTo(Duration.ZERO));
+    }
+
+    @Test
+    public void reopensForLongerAfterFailedTrial() {
+        opensOnFailures();
+
+        deliver(false, FAST, OPEN_NANOS);
+        assertThat(endpoint.getState(), equalTo(State.OPEN));
+        assertThat(endpoint.getRemainingOpen(OPEN_NANOS), equalTo(Duration.ofSeconds(60)));
+
+        deliver(true, SLOW, 3 * OPEN_NANOS);
+        // Capped at the maximum open duration
+        assertThat(endpoint.getRemainingOpen(3 * OPEN_NANOS), equalTo(Duration.ofSeconds(90)));
+    }
+
+    @Test
+    public void onlyTrialDecidesHalfOpenOutcome() {
+        Permit earlier = acquire(0);
+        opensOnFailures();
+        Permit trial = acquire(OPEN_NANOS);
+
+        // Sent while closed, so it only gives up its place
+        endpoint.release(earlier, false, SLOW, OPEN_NANOS);
+        assertThat(endpoint.getState(), equalTo(State.HALF_OPEN));
+        assertThat(endpoint.getInFlight(), equalTo(1));
+
+        endpoint.release(trial, true, FAST, OPEN_NANOS);
+        assertThat(endpoint.getState(), equalTo(State.CLOSED));
+    }
+
+    @Test
+    public void cancelOfEarlierPermitKeepsTrial() {
+        Permit earlier = acquire(0);
+        opensOnFailures();
+        acquire(OPEN_NANOS);
+
+        endpoint.cancel(earlier);
+
+        // The trial is still in flight
+        assertThat(endpoint.tryAcquire(OPEN_NANOS).isPresent(), is(false));
+    }
+
+    @Test
+    public void idleOnceUnusedAndNotOpen() {
+        Permit permit = acquire(0);
+        assertThat(endpoint.isIdle(OPEN_NANOS, Duration.ofSeconds(1)), is(false));
+
+        endpoint.release(permit, true, FAST, 0);
+        assertThat(endpoint.isIdle(1, Duration.ofSeconds(1)), is(false));
+        assertThat(endpoint.isIdle(OPEN_NANOS, Duration.ofSeconds(1)), is(true));
+
+        opensOnFailures();
+        assertThat(endpoint.isIdle(OPEN_NANOS - 1, Duration.ZERO), is(false));
+        assertThat(endpoint.isIdle(OPEN_NANOS, Duration.ZERO), is(true));
+    }
+}
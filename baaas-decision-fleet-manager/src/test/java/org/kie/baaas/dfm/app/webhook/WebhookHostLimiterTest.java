@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.webhook;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WebhookHostLimiterTest {
+
+    private final List<CompletableFuture<String>> started = new ArrayList<>();
+
+    private final long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+
+    private CompletableFuture<String> request() {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        started.add(response);
+        return response;
+    }
+
+    @Test
+    public void queuesRequestsBeyondLimit() {
+        WebhookHostLimiter limiter = new WebhookHostLimiter(2);
+
+        CompletableFuture<String> first = limiter.submit(this::request, deadline);
+        limiter.submit(this::request, deadline);
+        CompletableFuture<String> third = limiter.submit(this::request, deadline);
+
+        assertThat(started.size(), equalTo(2));
+        assertThat(limiter.getWaiting(), equalTo(1));
+
+        started.get(0).complete("first");
+        assertThat(first.join(), equalTo("first"));
+        assertThat(started.size(), equalTo(3));
+        assertThat(limiter.getWaiting(), equalTo(0));
+
+        started.get(2).complete("third");
+        assertThat(third.join(), equalTo("third"));
+    }
+
+    @Test
+    public void failedRequestReleasesPermit() {
+        WebhookHostLimiter limiter = new WebhookHostLimiter(1);
+
+        CompletableFuture<String> failed = limiter.submit(() -> {
+            throw new IllegalStateException("Unable to send");
+        }, deadline);
+        limiter.submit(this::request, deadline);
+
+        assertThat(failed.isCompletedExceptionally(), is(true));
+        assertThat(started.size(), equalTo(1));
+    }
+
+    @Test
+    public void expiredRequestIsNotStarted() {
+        WebhookHostLimiter limiter = new WebhookHostLimiter(1);
+
+        limiter.submit(this::request, deadline);
+        CompletableFuture<String> expired = limiter.submit(this::request, System.nanoTime() - 1);
+        CompletableFuture<String> next = limiter.submit(this::request, deadline);
+
+        started.get(0).complete("first");
+        CompletionException e = assertThrows(CompletionException.class, expired::join);
+        assertThat(e.getCause(), instanceOf(TimeoutException.class));
+        // The permit of the expired request goes to the next one
+        assertThat(started.size(), equalTo(2));
+        assertThat(limiter.getWaiting(), equalTo(0));
+
+        started.get(1).complete("next");
+        assertThat(next.join(), equalTo("next"));
+    }
+
+    @Test
+    public void idleOnceNothingInFlight() {
+        WebhookHostLimiter limiter = new WebhookHostLimiter(1);
+
+        limiter.submit(this::request, deadline);
+        assertThat(limiter.isIdle(System.nanoTime(), Duration.ZERO), is(false));
+
+        started.get(0).complete("first");
+        assertThat(limiter.isIdle(System.nanoTime(), Duration.ZERO), is(true));
+        assertThat(limiter.isIdle(System.nanoTime(), Duration.ofMinutes(1)), is(false));
+    }
+}
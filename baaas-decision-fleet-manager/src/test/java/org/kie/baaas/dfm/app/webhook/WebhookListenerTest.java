@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.kie.baaas.dfm.app.webhook;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kie.baaas.dfm.api.decisions.DecisionResponse;
+import org.kie.baaas.dfm.app.dao.WebhookDeliveryDAO;
+import org.kie.baaas.dfm.app.event.AfterDeployedEvent;
+import org.kie.baaas.dfm.app.listener.ListenerManager;
+import org.kie.baaas.dfm.app.model.webhook.Webhook;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.cloudevents.CloudEvent;
+import io.cloudevents.jackson.JsonFormat;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class WebhookListenerTest {
+
+    private static final String CUSTOMER_ID = "customer-id";
+
+    private static final int WEBHOOKS = 20;
+
+    @Mock
+    private WebhookDeliveryDAO webhookDeliveryDAO;
+
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void beforeEach() {
+        objectMapper = spy(new ObjectMapper().registerModule(JsonFormat.getCloudEventJacksonModule()));
+    }
+
+    private WebhookListener createListener(int i) throws IOException {
+        Webhook webhook = new Webhook(CUSTOMER_ID, new URL("http://localhost/webhook-" + i));
+        return new WebhookListener(webhook, webhookDeliveryDAO, objectMapper);
+    }
+
+    @Test
+    public void encodesEventOncePerDispatch() throws IOException {
+        ListenerManager listenerManager = new ListenerManager();
+        for (int i = 0; i < WEBHOOKS; i++) {
+            listenerManager.addListener(CUSTOMER_ID, createListener(i));
+        }
+
+        AfterDeployedEvent event = new AfterDeployedEvent(new DecisionResponse());
+        listenerManager.notifyListeners(CUSTOMER_ID, event);
+
+        // Once for the data and once for the CloudEvent, however many webhooks are notified
+        verify(objectMapper, times(2)).writeValueAsBytes(any());
+        verify(objectMapper, never()).writeValueAsString(any());
+        ArgumentCaptor<byte[]> payloads = ArgumentCaptor.forClass(byte[].class);
+        verify(webhookDeliveryDAO, times(WEBHOOKS)).enqueue(any(Webhook.class), eq(event.getEventId().get()), payloads.capture(), any(ZonedDateTime.class));
+        CloudEvent cloudEvent = objectMapper.readValue(payloads.getValue(), CloudEvent.class);
+        assertThat(cloudEvent.getId(), equalTo(event.getEventId().get()));
+    }
+
+    @Test
+    public void encodesCloudEvent() throws IOException {
+        AfterDeployedEvent event = new AfterDeployedEvent(new DecisionResponse());
+
+        EncodedCloudEvent encoded = EncodedCloudEvent.encode(event, objectMapper);
+
+        CloudEvent cloudEvent = objectMapper.readValue(encoded.toByteArray(), CloudEvent.class);
+        assertThat(encoded.getEventId(), equalTo(event.getEventId().get()));
+        assertThat(cloudEvent.getId(), equalTo(event.getEventId().get()));
+        assertThat(cloudEvent.getType(), equalTo(AfterDeployedEvent.class.getCanonicalName()));
+        assertThat(encoded.bodyPublisher().contentLength(), equalTo((long) encoded.length()));
+    }
+}